@@ -0,0 +1,51 @@
+#!/usr/bin/env bash
+# Mede o tempo até a primeira requisição atendida (GET /v1/produto) do jar padrão
+# e do mesmo jar executado com processamento AOT e arquivo CDS.
+#
+# Uso: scripts/startup-benchmark.sh target/exerc4-itau-unibanco-0.0.1-SNAPSHOT.jar
+# Requer MySQL e RabbitMQ acessíveis (ex.: docker-compose up mysql rabbitmq) e o jar gerado com -Pfast-startup.
+set -euo pipefail
+
+JAR="$(realpath "${1:?Informe o caminho do jar}")"
+PORTA="${PORTA:-8090}"
+TENTATIVAS="${TENTATIVAS:-3}"
+TRABALHO="$(mktemp -d)"
+trap 'rm -rf "$TRABALHO"' EXIT
+
+java -Djarmode=tools -jar "$JAR" extract --destination "$TRABALHO/application" > /dev/null
+APP_JAR="$TRABALHO/application/$(basename "$JAR")"
+
+echo "Treinando arquivo CDS..."
+java -XX:ArchiveClassesAtExit="$TRABALHO/application.jsa" \
+    -Dspring.aot.enabled=true \
+    -Dspring.context.exit=onRefresh \
+    -Dproduto.inicializacao.treinamento=true \
+    -Dspring.jpa.properties.hibernate.boot.allow_jdbc_metadata_access=false \
+    -Dspring.jpa.database-platform=org.hibernate.dialect.MySQLDialect \
+    -jar "$APP_JAR" > "$TRABALHO/treinamento.log" 2>&1
+
+medir() {
+    local inicio fim pid
+    inicio=$(date +%s%N)
+    java "$@" -Dserver.port="$PORTA" > "$TRABALHO/execucao.log" 2>&1 &
+    pid=$!
+    until curl -sf "http://localhost:$PORTA/v1/produto" > /dev/null 2>&1; do
+        if ! kill -0 "$pid" 2> /dev/null; then
+            echo "A aplicação encerrou antes de responder:" >&2
+            tail -20 "$TRABALHO/execucao.log" >&2
+            exit 1
+        fi
+        sleep 0.05
+    done
+    fim=$(date +%s%N)
+    kill "$pid"
+    wait "$pid" 2> /dev/null || true
+    echo $(((fim - inicio) / 1000000))
+}
+
+printf "%-10s %-22s %-22s\n" "execução" "jar padrão (ms)" "AOT + CDS (ms)"
+for i in $(seq 1 "$TENTATIVAS"); do
+    padrao=$(medir -jar "$JAR")
+    rapido=$(medir -XX:SharedArchiveFile="$TRABALHO/application.jsa" -Dspring.aot.enabled=true -jar "$APP_JAR")
+    printf "%-10s %-22s %-22s\n" "$i" "$padrao" "$rapido"
+done
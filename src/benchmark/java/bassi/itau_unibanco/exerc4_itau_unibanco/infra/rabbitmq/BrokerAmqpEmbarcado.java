@@ -0,0 +1,65 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.rabbitmq;
+
+import lombok.SneakyThrows;
+import org.apache.qpid.server.SystemLauncher;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Broker AMQP 0-9-1 (Qpid Broker-J) no mesmo processo, com armazenamento em memória, em uma porta livre
+ * de {@code 127.0.0.1}.
+ * <p>
+ * Argumentos de declaração de fila exclusivos do RabbitMQ (ex.: {@code x-queue-master-locator} das filas anônimas)
+ * são ignorados; com isso, as filas de retentativa não devolvem mensagens por TTL, o que não afeta o caminho medido.
+ */
+final class BrokerAmqpEmbarcado implements AutoCloseable {
+
+    static final String USUARIO = "benchmark";
+
+    static final String SENHA = "benchmark";
+
+    private final SystemLauncher launcher = new SystemLauncher();
+
+    private final int porta;
+
+    @SneakyThrows
+    BrokerAmqpEmbarcado() {
+        this.porta = portaLivre();
+        var diretorio = Files.createTempDirectory("qpid-benchmark");
+        diretorio.toFile().deleteOnExit();
+        this.launcher.startup(Map.of(
+                "type", "Memory",
+                "initialConfigurationLocation", Objects.requireNonNull(BrokerAmqpEmbarcado.class.getResource("/qpid-benchmark.json")).toExternalForm(),
+                "startupLoggedToSystemOut", false,
+                "context", Map.of(
+                        "qpid.amqp_port", String.valueOf(this.porta),
+                        "qpid.work_dir", diretorio.toString(),
+                        "qpid.benchmark.usuario", USUARIO,
+                        "qpid.benchmark.senha", SENHA,
+                        "queue.behaviourOnUnknownDeclareArgument", "IGNORE"
+                )
+        ));
+    }
+
+    int porta() {
+        return this.porta;
+    }
+
+    @Override
+    public void close() {
+        this.launcher.shutdown();
+    }
+
+    private static int portaLivre() {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
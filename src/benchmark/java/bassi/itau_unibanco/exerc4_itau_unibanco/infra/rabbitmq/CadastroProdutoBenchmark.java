@@ -0,0 +1,292 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.rabbitmq;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.producer.ProdutoEventoProducer;
+import org.aopalliance.aop.Advice;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Vazão e latência do caminho {@link ProdutoEventoProducer} → fila {@value RabbitMqConfiguration#CADASTRO_PRODUTO_QUEUE}
+ * → {@code CadastroProdutoListener}, com os beans reais da aplicação e um {@link BrokerAmqpEmbarcado broker embarcado}.
+ * <p>
+ * O envio é marcado em um cabeçalho pelo {@link RabbitTemplate} e o fim do processamento por um advice no container
+ * do listener; o lag é a diferença entre mensagens publicadas e processadas, amostrada a cada 10 ms. Executado com
+ * {@code mvn test -Pamqp-benchmark} e os parâmetros:
+ * <ul>
+ *     <li>{@code benchmark.mensagens} (padrão 20.000) e {@code benchmark.aquecimento} (padrão 2.000);</li>
+ *     <li>{@code benchmark.taxa}: mensagens por segundo somando os publicadores, {@code 0} sem limite;</li>
+ *     <li>{@code benchmark.publicadores}: threads publicando em paralelo (padrão 1);</li>
+ *     <li>{@code benchmark.tamanho-nome}: caracteres do nome do produto, que definem o tamanho da mensagem (padrão 32).</li>
+ * </ul>
+ * Prefetch, consumidores e confirmação são as propriedades da aplicação, por exemplo
+ * {@code -Dspring.rabbitmq.listener.simple.prefetch=50 -Dspring.rabbitmq.listener.simple.concurrency=4}.
+ * Os números servem para comparar configurações entre si: o broker embarcado não tem a latência de rede nem a
+ * persistência de um RabbitMQ real.
+ */
+@SpringBootTest
+@ActiveProfiles({"test"})
+class CadastroProdutoBenchmark {
+
+    private static final String CABECALHO_ENVIO = "x-benchmark-enviado-em";
+
+    private static final BrokerAmqpEmbarcado BROKER = new BrokerAmqpEmbarcado();
+
+    @Autowired
+    private ProdutoEventoProducer produtor;
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
+    @Autowired
+    private Medicao medicao;
+
+    @Value("${benchmark.mensagens:20000}")
+    private int mensagens;
+
+    @Value("${benchmark.aquecimento:2000}")
+    private int aquecimento;
+
+    @Value("${benchmark.taxa:0}")
+    private int taxa;
+
+    @Value("${benchmark.publicadores:1}")
+    private int publicadores;
+
+    @Value("${benchmark.tamanho-nome:32}")
+    private int tamanhoNome;
+
+    @Value("${benchmark.timeout:5m}")
+    private Duration timeout;
+
+    @Value("${spring.rabbitmq.listener.simple.prefetch:250}")
+    private int prefetch;
+
+    @Value("${spring.rabbitmq.listener.simple.concurrency:1}")
+    private int consumidores;
+
+    @Value("${spring.rabbitmq.publisher-confirm-type:none}")
+    private String confirmacao;
+
+    private final AtomicLong bytesPublicados = new AtomicLong();
+
+    @DynamicPropertySource
+    static void broker(DynamicPropertyRegistry registry) {
+        registry.add("spring.rabbitmq.host", () -> "127.0.0.1");
+        registry.add("spring.rabbitmq.port", BROKER::porta);
+        registry.add("spring.rabbitmq.username", () -> BrokerAmqpEmbarcado.USUARIO);
+        registry.add("spring.rabbitmq.password", () -> BrokerAmqpEmbarcado.SENHA);
+    }
+
+    @AfterAll
+    static void encerrarBroker() {
+        BROKER.close();
+    }
+
+    @Test
+    @DisplayName("Benchmark: publicação e consumo de eventos de cadastro.")
+    void benchmark() throws InterruptedException {
+        this.rabbitTemplate.addBeforePublishPostProcessors(message -> {
+            message.getMessageProperties().setHeader(CABECALHO_ENVIO, System.nanoTime());
+            this.bytesPublicados.addAndGet(message.getBody().length);
+            return message;
+        });
+
+        this.medicao.iniciar(this.aquecimento);
+        this.publicar(this.aquecimento);
+        this.aguardar(this.aquecimento);
+
+        this.bytesPublicados.set(0);
+        this.medicao.iniciar(this.mensagens);
+        var publicadas = new AtomicInteger();
+        var lag = new long[2];
+        var amostras = new AtomicInteger();
+        var amostragem = Executors.newSingleThreadScheduledExecutor();
+        amostragem.scheduleAtFixedRate(() -> {
+            var atual = publicadas.get() - this.medicao.consumidas();
+            lag[0] += atual;
+            lag[1] = Math.max(lag[1], atual);
+            amostras.incrementAndGet();
+        }, 0, 10, TimeUnit.MILLISECONDS);
+
+        var inicio = System.nanoTime();
+        this.publicar(this.mensagens, publicadas);
+        var fimPublicacao = System.nanoTime();
+        var consumidas = this.aguardar(this.mensagens);
+        amostragem.shutdownNow();
+
+        this.relatar(inicio, fimPublicacao, lag[0] / Math.max(1, amostras.get()), lag[1]);
+        assertEquals(this.mensagens, consumidas, "mensagens não processadas dentro do timeout");
+    }
+
+    private void publicar(int quantidade) throws InterruptedException {
+        this.publicar(quantidade, new AtomicInteger());
+    }
+
+    /**
+     * Cada publicador envia sua parte no ritmo da taxa dividida entre eles, sem compensar atrasos acumulados
+     * além do intervalo seguinte.
+     */
+    private void publicar(int quantidade, AtomicInteger publicadas) throws InterruptedException {
+        var threads = new ArrayList<Thread>(this.publicadores);
+        var intervalo = this.taxa > 0 ? TimeUnit.SECONDS.toNanos(this.publicadores) / this.taxa : 0;
+        var nome = "P".repeat(this.tamanhoNome);
+        for (var publicador = 0; publicador < this.publicadores; publicador++) {
+            var parte = quantidade / this.publicadores + (publicador < quantidade % this.publicadores ? 1 : 0);
+            var thread = new Thread(() -> {
+                var proximo = System.nanoTime();
+                for (var i = 0; i < parte; i++) {
+                    if (intervalo > 0) {
+                        proximo += intervalo;
+                        LockSupport.parkNanos(proximo - System.nanoTime());
+                    }
+                    this.produtor.publicar(new AlteracaoProdutoResponse((long) i, UUID.randomUUID(),
+                            AlteracaoProdutoEntity.Operacao.CADASTRO, nome, new BigDecimal("1299.90"), "PJ", Instant.now()));
+                    publicadas.incrementAndGet();
+                }
+            }, "benchmark-publicador-" + publicador);
+            thread.start();
+            threads.add(thread);
+        }
+        for (var thread : threads)
+            thread.join();
+    }
+
+    private int aguardar(int quantidade) {
+        var limite = System.nanoTime() + this.timeout.toNanos();
+        while (this.medicao.consumidas() < quantidade && System.nanoTime() < limite)
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        return this.medicao.consumidas();
+    }
+
+    private void relatar(long inicio, long fimPublicacao, long lagMedio, long lagMaximo) {
+        var latencias = this.medicao.latencias();
+        Arrays.sort(latencias);
+        System.out.printf("Mensageria de cadastro (broker embarcado): %d mensagens de %d bytes, taxa %s, %d publicador(es)%n",
+                this.mensagens, this.bytesPublicados.get() / Math.max(1, this.mensagens),
+                this.taxa > 0 ? this.taxa + " msg/s" : "sem limite", this.publicadores);
+        System.out.printf("  prefetch %d, consumidores %d, confirmação %s%n", this.prefetch, this.consumidores, this.confirmacao);
+        System.out.printf("  publicação  %10.0f msg/s%n", vazao(this.mensagens, fimPublicacao - inicio));
+        System.out.printf("  consumo     %10.0f msg/s%n", vazao(latencias.length, this.medicao.ultimoConsumo() - inicio));
+        System.out.printf("  latência    p50 %.2f ms  p90 %.2f ms  p99 %.2f ms  p99.9 %.2f ms  máx %.2f ms%n",
+                percentil(latencias, 0.5), percentil(latencias, 0.9), percentil(latencias, 0.99),
+                percentil(latencias, 0.999), percentil(latencias, 1));
+        System.out.printf("  lag         médio %d  máximo %d mensagens%n", lagMedio, lagMaximo);
+    }
+
+    private static double vazao(int mensagens, long nanos) {
+        return mensagens * 1e9 / Math.max(1, nanos);
+    }
+
+    private static double percentil(long[] ordenadas, double percentil) {
+        if (ordenadas.length == 0)
+            return 0;
+        var indice = (int) Math.ceil(percentil * ordenadas.length) - 1;
+        return ordenadas[Math.max(0, indice)] / 1e6;
+    }
+
+    @TestConfiguration
+    static class Configuracao {
+
+        @Bean
+        static Medicao medicao() {
+            return new Medicao();
+        }
+    }
+
+    /**
+     * Advice incluído na cadeia do container do listener de cadastro, registrando o fim do processamento de cada
+     * mensagem marcada no envio.
+     */
+    static class Medicao implements BeanPostProcessor, MethodInterceptor {
+
+        private final AtomicInteger consumidas = new AtomicInteger();
+
+        private volatile long[] latencias = new long[0];
+
+        private volatile long ultimoConsumo;
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (RabbitMqConfiguration.CADASTRO_PRODUTO_CONTAINER_FACTORY.equals(beanName)
+                    && bean instanceof SimpleRabbitListenerContainerFactory factory) {
+                var cadeia = new ArrayList<Advice>();
+                if (factory.getAdviceChain() != null)
+                    cadeia.addAll(List.of(factory.getAdviceChain()));
+                cadeia.add(this);
+                factory.setAdviceChain(cadeia.toArray(Advice[]::new));
+            }
+            return bean;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            var resultado = invocation.proceed();
+            if (invocation.getArguments()[1] instanceof Message message)
+                this.registrar(message);
+            else if (invocation.getArguments()[1] instanceof List<?> lote)
+                lote.forEach(message -> this.registrar((Message) message));
+            return resultado;
+        }
+
+        private void registrar(Message message) {
+            Long enviadaEm = message.getMessageProperties().getHeader(CABECALHO_ENVIO);
+            if (enviadaEm == null)
+                return;
+            var agora = System.nanoTime();
+            var indice = this.consumidas.getAndIncrement();
+            var latencias = this.latencias;
+            if (indice < latencias.length)
+                latencias[indice] = agora - enviadaEm;
+            this.ultimoConsumo = agora;
+        }
+
+        void iniciar(int capacidade) {
+            this.latencias = new long[capacidade];
+            this.consumidas.set(0);
+        }
+
+        int consumidas() {
+            return this.consumidas.get();
+        }
+
+        long ultimoConsumo() {
+            return this.ultimoConsumo;
+        }
+
+        long[] latencias() {
+            return Arrays.copyOf(this.latencias, Math.min(this.consumidas(), this.latencias.length));
+        }
+    }
+}
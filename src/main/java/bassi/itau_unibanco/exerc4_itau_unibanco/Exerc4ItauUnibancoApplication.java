@@ -2,7 +2,9 @@ package bassi.itau_unibanco.exerc4_itau_unibanco;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
+@EnableScheduling
 @SpringBootApplication
 public class Exerc4ItauUnibancoApplication {
 
@@ -0,0 +1,84 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.controller;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ImportacaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.ImportacaoProdutoService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.net.URI;
+import java.util.UUID;
+
+/*
+ * Importação de catálogos inteiros em CSV: o arquivo é aceito imediatamente e processado em segundo plano,
+ * em lotes, pelo `ImportacaoProdutoService`.
+ */
+@RestController
+@Profile("!replica")
+@RequestMapping("/v1/produto/importacao")
+@RequiredArgsConstructor
+@Tag(name = "1.4. [v1] Importação de Produtos", description = "API para importação de catálogos em CSV, com gravação em lotes e acompanhamento do progresso.")
+public class ImportacaoProdutoController {
+
+    private final ImportacaoProdutoService service;
+
+    @Operation(summary = "Importar catálogo em CSV",
+            description = "Recebe um arquivo CSV com as colunas nome, preco e categoria e agenda sua importação. Retorna imediatamente a URL para acompanhamento.",
+            responses = {
+                    @ApiResponse(responseCode = "202", description = "Arquivo aceito para importação.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ImportacaoProdutoResponse.class))),
+                    @ApiResponse(responseCode = "400", description = "Arquivo vazio ou sem as colunas obrigatórias.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class))),
+                    @ApiResponse(responseCode = "500", description = "Erro interno do servidor.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class)))
+            })
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ImportacaoProdutoResponse> importar(@RequestParam("arquivo") MultipartFile arquivo) {
+        var response = this.service.importar(arquivo);
+        return ResponseEntity.accepted()
+                .location(URI.create(response.url()))
+                .body(response);
+    }
+
+    @Operation(summary = "Consultar progresso da importação",
+            description = "Retorna o status da importação, as linhas processadas, gravadas e rejeitadas, a vazão em linhas por segundo e os erros por linha.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Progresso retornado com sucesso.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ImportacaoProdutoResponse.class))),
+                    @ApiResponse(responseCode = "422", description = "Importação não encontrada nesta instância.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class))),
+                    @ApiResponse(responseCode = "500", description = "Erro interno do servidor.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class)))
+            })
+    @GetMapping("/{id}")
+    @ResponseStatus(HttpStatus.OK)
+    public ImportacaoProdutoResponse consultar(@PathVariable UUID id) {
+        return this.service.consultar(id);
+    }
+
+    @Operation(summary = "Retomar importação",
+            description = "Retoma uma importação que falhou a partir do último lote gravado. Importações em outros status não são alteradas.",
+            responses = {
+                    @ApiResponse(responseCode = "202", description = "Importação agendada novamente.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ImportacaoProdutoResponse.class))),
+                    @ApiResponse(responseCode = "422", description = "Importação não encontrada nesta instância.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class))),
+                    @ApiResponse(responseCode = "500", description = "Erro interno do servidor.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class)))
+            })
+    @PostMapping("/{id}/retomada")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public ImportacaoProdutoResponse retomar(@PathVariable UUID id) {
+        return this.service.retomar(id);
+    }
+}
@@ -0,0 +1,70 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.controller;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.IngestaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoRequest;
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.IngestaoProdutoService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.URI;
+import java.util.UUID;
+
+/*
+ * Modo alternativo de cadastro para cargas em massa: a requisição é validada e aceita imediatamente,
+ * e a gravação é delegada à fila de ingestão, consumida em lotes pelo `IngestaoProdutoService`.
+ */
+@RestController
+@Profile("!replica")
+@RequestMapping("/v1/produto/ingestao")
+@RequiredArgsConstructor
+@Tag(name = "1.2. [v1] Ingestão de Produto", description = "API para cadastro assíncrono de produtos, com gravação em lotes e consulta de status.")
+public class IngestaoProdutoController {
+
+    private final IngestaoProdutoService service;
+
+    @Operation(summary = "Cadastrar produto de forma assíncrona",
+            description = "Valida o produto, atribui seu ID e o enfileira para gravação em lote. Retorna imediatamente a URL para consulta do status.",
+            responses = {
+                    @ApiResponse(responseCode = "202", description = "Produto aceito para gravação.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = IngestaoProdutoResponse.class))),
+                    @ApiResponse(responseCode = "400", description = "Requisição com parâmetros inválidos.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class))),
+                    @ApiResponse(responseCode = "500", description = "Erro interno do servidor.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class)))
+            })
+    @PostMapping
+    public ResponseEntity<IngestaoProdutoResponse> cadastrar(@RequestBody @Valid ProdutoRequest data) {
+        var response = this.service.aceitar(data);
+        return ResponseEntity.accepted()
+                .location(URI.create(response.url()))
+                .body(response);
+    }
+
+    @Operation(summary = "Consultar status da ingestão",
+            description = "Retorna se o produto aceito para gravação assíncrona ainda está pendente, já foi gravado ou foi rejeitado.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Status retornado com sucesso.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = IngestaoProdutoResponse.class))),
+                    @ApiResponse(responseCode = "400", description = "Requisição com parâmetros inválidos.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class))),
+                    @ApiResponse(responseCode = "404", description = "Id não aceito pela ingestão.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class))),
+                    @ApiResponse(responseCode = "500", description = "Erro interno do servidor.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class)))
+            })
+    @GetMapping("/{id}")
+    @ResponseStatus(HttpStatus.OK)
+    public IngestaoProdutoResponse consultar(@PathVariable UUID id) {
+        return this.service.consultar(id);
+    }
+}
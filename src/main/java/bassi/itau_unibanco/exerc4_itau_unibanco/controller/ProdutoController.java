@@ -1,7 +1,14 @@
 package bassi.itau_unibanco.exerc4_itau_unibanco.controller;
 
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracoesProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.BuscaProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.EstatisticaCategoriaResponse;
 import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoRequest;
 import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutosPorIdRequest;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutosPorIdResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.SugestaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.AgrupadorAtualizacoes;
 import bassi.itau_unibanco.exerc4_itau_unibanco.service.ProdutoService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.ArraySchema;
@@ -11,6 +18,7 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ProblemDetail;
 import org.springframework.web.bind.annotation.*;
@@ -31,6 +39,7 @@ import java.util.UUID;
  * Isso permite que o controlador seja facilmente testado com mocks ou stubs, além de promover maior flexibilidade.
  */
 @RestController
+@Profile("!replica")
 @RequestMapping("/v1/produto")
 @RequiredArgsConstructor
 @Tag(name = "1.1. [v1] Produto", description = "API para gerenciamento de produtos, permitindo operações de consulta, cadastro, atualização e exclusão de produtos.")
@@ -38,6 +47,8 @@ public class ProdutoController {
 
     private final ProdutoService service;
 
+    private final AgrupadorAtualizacoes agrupador;
+
     @Operation(summary = "Listar todos os produtos",
             description = "Retorna uma lista completa de todos os produtos cadastrados na plataforma.",
             responses = {
@@ -94,6 +105,115 @@ public class ProdutoController {
         return this.service.listagemPersonalizada(nome, preco, categoria);
     }
 
+    @Operation(summary = "Consultar produtos por IDs",
+            description = "Retorna, em uma única requisição, os produtos dos IDs informados (até 500) e a lista de IDs não encontrados, ambos na ordem da requisição e sem repetições.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Produtos encontrados e IDs não encontrados retornados com sucesso.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProdutosPorIdResponse.class))),
+                    @ApiResponse(responseCode = "400", description = "Lista de IDs vazia, com mais de 500 IDs ou com IDs inválidos.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class))),
+                    @ApiResponse(responseCode = "500", description = "Erro interno do servidor.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class)))
+            })
+    @PostMapping("/ids")
+    @ResponseStatus(HttpStatus.OK)
+    public ProdutosPorIdResponse listarPelosIds(@RequestBody @Valid ProdutosPorIdRequest request) {
+        return this.service.listarPelosIds(request.ids());
+    }
+
+    @Operation(summary = "Consultar produtos com facetas",
+            description = "Aplica os mesmos filtros opcionais da busca e retorna, junto com os produtos, a quantidade de produtos encontrados por categoria e por faixa de preço. " +
+                    "Com o índice de facetas habilitado, o resultado e as facetas vêm de interseções de bitmaps em memória, sem acesso ao banco.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Produtos e facetas retornados com sucesso.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = BuscaProdutoResponse.class))),
+                    @ApiResponse(responseCode = "400", description = "Requisição com parâmetros inválidos.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class))),
+                    @ApiResponse(responseCode = "500", description = "Erro interno do servidor.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class)))
+            })
+    @GetMapping("/busca/facetas")
+    @ResponseStatus(HttpStatus.OK)
+    public BuscaProdutoResponse buscarComFacetas(
+            @RequestParam(required = false) String nome,
+            @RequestParam(required = false) BigDecimal preco,
+            @RequestParam(required = false) String categoria
+    ) {
+        return this.service.buscarComFacetas(nome, preco, categoria);
+    }
+
+    @Operation(summary = "Sugerir produtos por prefixo",
+            description = "Retorna os produtos cujo nome, ou alguma palavra do nome, começa pelo prefixo informado, ignorando acentos e maiúsculas, opcionalmente restritos a uma categoria. " +
+                    "Atendido por um índice em memória, sem acesso ao banco; limitado a 50 sugestões.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Sugestões retornadas com sucesso.",
+                            content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = SugestaoProdutoResponse.class)))),
+                    @ApiResponse(responseCode = "400", description = "Requisição com parâmetros inválidos.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class))),
+                    @ApiResponse(responseCode = "500", description = "Erro interno do servidor.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class)))
+            })
+    @GetMapping("/sugestoes")
+    @ResponseStatus(HttpStatus.OK)
+    public List<SugestaoProdutoResponse> sugerir(
+            @RequestParam String prefixo,
+            @RequestParam(required = false) String categoria,
+            @RequestParam(defaultValue = "10") int limit
+    ) {
+        return this.service.sugerir(prefixo, categoria, limit);
+    }
+
+    @Operation(summary = "Consultar alterações de produtos",
+            description = "Retorna, em ordem, as alterações do catálogo (cadastros, atualizações e remoções) posteriores ao cursor informado, permitindo a sincronização incremental. " +
+                    "Com sharding, cada shard tem seu próprio log de alterações e cursor.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Alterações retornadas com sucesso.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = AlteracoesProdutoResponse.class))),
+                    @ApiResponse(responseCode = "400", description = "Requisição com parâmetros inválidos.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class))),
+                    @ApiResponse(responseCode = "410", description = "Cursor anterior à retenção do log, é necessária uma nova sincronização completa.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class))),
+                    @ApiResponse(responseCode = "500", description = "Erro interno do servidor.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class)))
+            })
+    @GetMapping("/alteracoes")
+    @ResponseStatus(HttpStatus.OK)
+    public AlteracoesProdutoResponse listarAlteracoes(
+            @RequestParam(required = false) Long desde,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(defaultValue = "0") int shard
+    ) {
+        return this.service.listarAlteracoes(shard, desde, limit);
+    }
+
+    @Operation(summary = "Consultar estatísticas por categoria",
+            description = "Retorna quantidade, preço mínimo, máximo e médio dos produtos de cada categoria, servidos a partir de uma visão materializada em memória.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Estatísticas retornadas com sucesso.",
+                            content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = EstatisticaCategoriaResponse.class)))),
+                    @ApiResponse(responseCode = "500", description = "Erro interno do servidor.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class)))
+            })
+    @GetMapping("/estatisticas")
+    @ResponseStatus(HttpStatus.OK)
+    public List<EstatisticaCategoriaResponse> listarEstatisticas() {
+        return this.service.listarEstatisticas();
+    }
+
+    @Operation(summary = "Recalcular estatísticas por categoria",
+            description = "Recalcula as estatísticas por categoria diretamente do banco de dados, substituindo a visão incremental. Utilizado para verificação.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Estatísticas recalculadas com sucesso.",
+                            content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = EstatisticaCategoriaResponse.class)))),
+                    @ApiResponse(responseCode = "500", description = "Erro interno do servidor.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class)))
+            })
+    @PostMapping("/estatisticas/recalculo")
+    @ResponseStatus(HttpStatus.OK)
+    public List<EstatisticaCategoriaResponse> recalcularEstatisticas() {
+        return this.service.recalcularEstatisticas();
+    }
+
     @Operation(summary = "Cadastrar novo produto",
             description = "Realiza o cadastro de um novo produto utilizando os dados fornecidos no corpo da requisição.",
             responses = {
@@ -128,7 +248,7 @@ public class ProdutoController {
     @PutMapping("/{id}")
     @ResponseStatus(HttpStatus.OK)
     public ProdutoResponse atualizar(@PathVariable UUID id, @RequestBody @Valid ProdutoRequest data) {
-        return this.service.atualizar(id, data);
+        return this.agrupador.atualizar(id, data);
     }
 
     @Operation(summary = "Deletar produto por ID",
@@ -0,0 +1,113 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.controller;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutosPorIdRequest;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutosPorIdResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.ReplicaSomenteLeituraException;
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.CatalogoReplica;
+import io.swagger.v3.oas.annotations.Hidden;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.web.bind.annotation.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+/*
+ * Consultas de produto da réplica de leitura, atendidas pelo catálogo em memória (`CatalogoReplica`), com os mesmos
+ * caminhos e respostas do `ProdutoController` da instância primária. Escritas são recusadas com 405.
+ */
+@RestController
+@Profile("replica")
+@RequestMapping("/v1/produto")
+@RequiredArgsConstructor
+@Tag(name = "1.1. [v1] Produto", description = "API de consulta de produtos da réplica de leitura; cadastro, atualização e exclusão são feitos na instância primária.")
+public class ProdutoReplicaController {
+
+    private final CatalogoReplica catalogo;
+
+    @Operation(summary = "Listar todos os produtos",
+            description = "Retorna uma lista completa de todos os produtos cadastrados na plataforma, a partir do catálogo em memória da réplica.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Lista de produtos retornada com sucesso.",
+                            content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = ProdutoResponse.class)))),
+                    @ApiResponse(responseCode = "500", description = "Erro interno do servidor.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class)))
+            })
+    @GetMapping
+    @ResponseStatus(HttpStatus.OK)
+    public List<ProdutoResponse> listar() {
+        return this.catalogo.listar(null, null, null);
+    }
+
+    @Operation(summary = "Consultar produto por ID",
+            description = "Retorna os detalhes de um produto específico com base no ID fornecido, a partir do catálogo em memória da réplica.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Produto encontrado e retornado com sucesso.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProdutoResponse.class))),
+                    @ApiResponse(responseCode = "400", description = "Requisição com parâmetros inválidos.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class))),
+                    @ApiResponse(responseCode = "422", description = "Produto não encontrado para o ID fornecido.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class))),
+                    @ApiResponse(responseCode = "500", description = "Erro interno do servidor.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class)))
+            })
+    @GetMapping("/{id}")
+    @ResponseStatus(HttpStatus.OK)
+    public ProdutoResponse listarPeloId(@PathVariable UUID id) {
+        return this.catalogo.buscar(id);
+    }
+
+    @Operation(summary = "Consultar produto por nome, preço e categoria",
+            description = "Retorna os detalhes de uma lista de produtos com base no nome, preço e categoria fornecidos, a partir do catálogo em memória da réplica.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Lista de produtos retornada com sucesso.",
+                            content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = ProdutoResponse.class)))),
+                    @ApiResponse(responseCode = "400", description = "Requisição com parâmetros inválidos.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class))),
+                    @ApiResponse(responseCode = "500", description = "Erro interno do servidor.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class)))
+            })
+    @GetMapping("/busca")
+    @ResponseStatus(HttpStatus.OK)
+    public List<ProdutoResponse> listagemPersonalizada(
+            @RequestParam(required = false) String nome,
+            @RequestParam(required = false) BigDecimal preco,
+            @RequestParam(required = false) String categoria
+    ) {
+        return this.catalogo.listar(nome, preco, categoria);
+    }
+
+    @Operation(summary = "Consultar produtos por IDs",
+            description = "Retorna, em uma única requisição, os produtos dos IDs informados (até 500) e a lista de IDs não encontrados, ambos na ordem da requisição e sem repetições.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Produtos encontrados e IDs não encontrados retornados com sucesso.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProdutosPorIdResponse.class))),
+                    @ApiResponse(responseCode = "400", description = "Lista de IDs vazia, com mais de 500 IDs ou com IDs inválidos.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class))),
+                    @ApiResponse(responseCode = "500", description = "Erro interno do servidor.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class)))
+            })
+    @PostMapping("/ids")
+    @ResponseStatus(HttpStatus.OK)
+    public ProdutosPorIdResponse listarPelosIds(@RequestBody @Valid ProdutosPorIdRequest request) {
+        return this.catalogo.listarPelosIds(request.ids());
+    }
+
+    @Hidden
+    @RequestMapping(path = {"", "/**"}, method = {RequestMethod.POST, RequestMethod.PUT, RequestMethod.PATCH, RequestMethod.DELETE})
+    public void recusarEscrita(HttpServletRequest request) {
+        throw new ReplicaSomenteLeituraException(request.getMethod(), request.getRequestURI());
+    }
+}
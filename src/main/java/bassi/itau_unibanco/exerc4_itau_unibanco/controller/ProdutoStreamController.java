@@ -0,0 +1,47 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.controller;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.ProdutoStreamService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/*
+ * Stream das alterações de produtos em Server-Sent Events, alimentado pelos eventos publicados no RabbitMQ.
+ * O ID de cada evento é a sequência do log de alterações, de modo que a reconexão com `Last-Event-ID`
+ * retoma a partir do último evento recebido.
+ */
+@RestController
+@Profile("!replica")
+@RequestMapping("/v1/produto/stream")
+@RequiredArgsConstructor
+@Tag(name = "1.3. [v1] Stream de Produtos", description = "API para acompanhar em tempo real os cadastros, atualizações e remoções de produtos.")
+public class ProdutoStreamController {
+
+    private final ProdutoStreamService service;
+
+    @Operation(summary = "Acompanhar alterações de produtos",
+            description = "Abre um stream de Server-Sent Events com os eventos `cadastro`, `atualizacao` e `remocao`, opcionalmente filtrados por categoria. " +
+                    "Ao reconectar com o cabeçalho `Last-Event-ID`, os eventos perdidos são reenviados; se o cursor já expirou, o evento `ressincronizar` é enviado e o stream é encerrado.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Stream aberto com sucesso.",
+                            content = @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE, schema = @Schema(implementation = AlteracaoProdutoResponse.class))),
+                    @ApiResponse(responseCode = "400", description = "Requisição com parâmetros inválidos.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class))),
+                    @ApiResponse(responseCode = "500", description = "Erro interno do servidor.",
+                            content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProblemDetail.class)))
+            })
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter acompanhar(@RequestParam(required = false) String categoria,
+                                 @RequestHeader(value = "Last-Event-ID", required = false) Long ultimoEventoId) {
+        return this.service.assinar(categoria, ultimoEventoId);
+    }
+}
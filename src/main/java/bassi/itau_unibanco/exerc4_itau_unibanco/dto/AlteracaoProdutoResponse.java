@@ -0,0 +1,23 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.dto;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record AlteracaoProdutoResponse(
+        Long sequencia,
+        UUID produtoId,
+        AlteracaoProdutoEntity.Operacao operacao,
+        String nome,
+        BigDecimal preco,
+        String categoria,
+        Instant registradoEm
+) {
+}
@@ -0,0 +1,17 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.dto;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+import java.util.List;
+
+/**
+ * Página do log de alterações. {@code cursor} deve ser enviado como {@code desde} na próxima consulta.
+ */
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record AlteracoesProdutoResponse(
+        List<AlteracaoProdutoResponse> alteracoes,
+        long cursor,
+        boolean possuiMais
+) {
+}
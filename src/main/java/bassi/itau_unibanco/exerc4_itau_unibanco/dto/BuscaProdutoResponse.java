@@ -0,0 +1,38 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Resultado da busca com a quantidade de produtos encontrados por categoria e por faixa de preço.
+ */
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record BuscaProdutoResponse(
+        List<ProdutoResponse> produtos,
+        long total,
+        List<FacetaCategoria> categorias,
+        List<FacetaPreco> faixasPreco
+) {
+
+    public record FacetaCategoria(
+            String categoria,
+            long quantidade
+    ) {
+    }
+
+    /**
+     * @param minimo inclusivo; ausente na primeira faixa
+     * @param maximo exclusivo; ausente na última faixa
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record FacetaPreco(
+            BigDecimal minimo,
+            BigDecimal maximo,
+            long quantidade
+    ) {
+    }
+}
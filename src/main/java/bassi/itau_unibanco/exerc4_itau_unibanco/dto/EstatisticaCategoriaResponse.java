@@ -0,0 +1,16 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.dto;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+import java.math.BigDecimal;
+
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record EstatisticaCategoriaResponse(
+        String categoria,
+        long quantidade,
+        BigDecimal precoMinimo,
+        BigDecimal precoMaximo,
+        BigDecimal precoMedio
+) {
+}
@@ -0,0 +1,39 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * @param erros as primeiras linhas rejeitadas, com o número da linha no arquivo e o motivo
+ */
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ImportacaoProdutoResponse(
+        UUID id,
+        Status status,
+        String url,
+        long linhasProcessadas,
+        long linhasGravadas,
+        long linhasRejeitadas,
+        double linhasPorSegundo,
+        List<ErroLinha> erros,
+        String motivo
+) {
+
+    public enum Status {
+        PENDENTE,
+        EM_ANDAMENTO,
+        CONCLUIDA,
+        FALHOU
+    }
+
+    public record ErroLinha(
+            long linha,
+            String motivo
+    ) {
+    }
+}
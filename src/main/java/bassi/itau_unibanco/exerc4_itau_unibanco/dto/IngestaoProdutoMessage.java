@@ -0,0 +1,12 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.dto;
+
+import java.util.UUID;
+
+/**
+ * Mensagem da fila de ingestão assíncrona: o produto validado e o id já informado ao cliente.
+ */
+public record IngestaoProdutoMessage(
+        UUID id,
+        ProdutoRequest produto
+) {
+}
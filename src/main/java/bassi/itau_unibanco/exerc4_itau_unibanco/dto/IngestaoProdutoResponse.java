@@ -0,0 +1,23 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+import java.util.UUID;
+
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record IngestaoProdutoResponse(
+        UUID id,
+        Status status,
+        String url,
+        String motivo
+) {
+
+    public enum Status {
+        PENDENTE,
+        CONCLUIDA,
+        REJEITADA
+    }
+}
@@ -0,0 +1,17 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.dto;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Produtos encontrados e ids não encontrados, ambos na ordem da requisição e sem repetições.
+ */
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public record ProdutosPorIdResponse(
+        List<ProdutoResponse> produtos,
+        List<UUID> naoEncontrados
+) {
+}
@@ -0,0 +1,17 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Parte de um snapshot do catálogo enviado a uma réplica de leitura. Todas as partes de uma solicitação trazem
+ * a marca do log de alterações de cada shard, e os produtos refletem todas as alterações até ela.
+ */
+public record SnapshotCatalogoMessage(
+        UUID solicitacao,
+        int parte,
+        int partes,
+        List<Long> marcas,
+        List<ProdutoResponse> produtos
+) {
+}
@@ -0,0 +1,12 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.dto;
+
+import java.util.UUID;
+
+/**
+ * Pedido de snapshot do catálogo feito por uma réplica de leitura; as partes são enviadas à {@code fila} informada.
+ */
+public record SolicitacaoSnapshotMessage(
+        UUID id,
+        String fila
+) {
+}
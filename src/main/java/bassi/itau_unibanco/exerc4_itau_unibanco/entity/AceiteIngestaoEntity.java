@@ -0,0 +1,27 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Produto aceito na ingestão assíncrona e ainda não necessariamente gravado, no shard do seu id.
+ */
+@Entity
+@Table(name = "produto_ingestao_aceite", schema = "public")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+public class AceiteIngestaoEntity {
+
+    @Id
+    private UUID id;
+
+    @Column(name = "aceito_em", nullable = false)
+    private Instant aceitoEm;
+}
@@ -0,0 +1,56 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.entity;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.converter.CategoriaConverter;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Registro do log de alterações de produtos. Remoções são gravadas como marcadores (tombstones),
+ * apenas com a categoria do produto, usada para filtrar o stream de eventos.
+ */
+@Entity
+@Table(name = "produto_alteracao", schema = "public")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+public class AlteracaoProdutoEntity {
+
+    /**
+     * Atribuída por {@link bassi.itau_unibanco.exerc4_itau_unibanco.service.SequenciaAlteracoes}.
+     */
+    @Id
+    private Long sequencia;
+
+    @Column(name = "produto_id", nullable = false)
+    private UUID produtoId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "operacao", nullable = false, length = 20)
+    private Operacao operacao;
+
+    @Column(name = "nome")
+    private String nome;
+
+    @Column(name = "preco", precision = 10, scale = 2)
+    private BigDecimal preco;
+
+    @Column(name = "categoria_id")
+    @Convert(converter = CategoriaConverter.class)
+    private String categoria;
+
+    @Column(name = "registrado_em", nullable = false)
+    private Instant registradoEm;
+
+    public enum Operacao {
+        CADASTRO,
+        ATUALIZACAO,
+        REMOCAO
+    }
+}
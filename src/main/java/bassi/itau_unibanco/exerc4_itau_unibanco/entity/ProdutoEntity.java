@@ -1,5 +1,7 @@
 package bassi.itau_unibanco.exerc4_itau_unibanco.entity;
 
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.converter.CategoriaConverter;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.generator.UuidAtribuivel;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -17,7 +19,7 @@ import java.util.UUID;
 public class ProdutoEntity {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @UuidAtribuivel
     private UUID id;
 
     @Column(name = "nome", nullable = false, length = 100)
@@ -26,6 +28,7 @@ public class ProdutoEntity {
     @Column(name = "preco", precision = 10, scale = 2, nullable = false)
     private BigDecimal preco;
 
-    @Column(name = "categoria", length = 50, nullable = false)
+    @Column(name = "categoria_id", nullable = false)
+    @Convert(converter = CategoriaConverter.class)
     private String categoria;
 }
\ No newline at end of file
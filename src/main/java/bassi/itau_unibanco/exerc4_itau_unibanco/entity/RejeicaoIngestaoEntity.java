@@ -0,0 +1,33 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Produto rejeitado na ingestão assíncrona, gravado no shard do seu id para que o status seja o mesmo
+ * em qualquer instância e após reinícios.
+ */
+@Entity
+@Table(name = "produto_ingestao_rejeicao", schema = "public")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+public class RejeicaoIngestaoEntity {
+
+    public static final int TAMANHO_MOTIVO = 1000;
+
+    @Id
+    private UUID id;
+
+    @Column(name = "motivo", nullable = false, length = TAMANHO_MOTIVO)
+    private String motivo;
+
+    @Column(name = "rejeitado_em", nullable = false)
+    private Instant rejeitadoEm;
+}
@@ -0,0 +1,26 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * Bloco de sequências do log de alterações reservado por uma transação ainda em andamento.
+ */
+@Entity
+@Table(name = "produto_alteracao_reserva", schema = "public")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+public class ReservaAlteracaoEntity {
+
+    @Id
+    private Long inicio;
+
+    @Column(name = "reservado_em", nullable = false)
+    private Instant reservadoEm;
+}
@@ -0,0 +1,27 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Marca d'água da retenção do log de alterações: cursores anteriores a {@code sequenciaExpirada}
+ * podem ter perdido remoções já descartadas e não são mais aceitos.
+ */
+@Entity
+@Table(name = "produto_alteracao_retencao", schema = "public")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+public class RetencaoAlteracaoEntity {
+
+    public static final Integer ID = 1;
+
+    @Id
+    private Integer id;
+
+    @Column(name = "sequencia_expirada", nullable = false)
+    private Long sequenciaExpirada;
+}
@@ -0,0 +1,26 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Contador das sequências do log de alterações: {@code proxima} é o início do próximo bloco a ser reservado.
+ */
+@Entity
+@Table(name = "produto_alteracao_sequencia", schema = "public")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+public class SequenciaAlteracaoEntity {
+
+    public static final Integer ID = 1;
+
+    @Id
+    private Integer id;
+
+    @Column(name = "proxima", nullable = false)
+    private Long proxima;
+}
@@ -0,0 +1,37 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.entity.converter;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.CategoriaDicionario;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * Converte o nome da categoria exposto pela entidade na chave inteira gravada em {@code produto.categoria_id}.
+ * <p>
+ * O dicionário é obtido sob demanda para não criar um ciclo entre o conversor, instanciado pelo Hibernate
+ * durante a criação do EntityManagerFactory, e o repositório de categorias que depende dele.
+ */
+@Component
+@Converter
+@RequiredArgsConstructor
+public class CategoriaConverter implements AttributeConverter<String, Integer> {
+
+    private final ObjectProvider<CategoriaDicionario> dicionario;
+
+    @Override
+    public Integer convertToDatabaseColumn(String nome) {
+        if (nome == null)
+            return null;
+        var id = this.dicionario.getObject().idDe(nome);
+        if (id == null)
+            throw new IllegalStateException("Categoria não registrada: %s.".formatted(nome));
+        return id;
+    }
+
+    @Override
+    public String convertToEntityAttribute(Integer id) {
+        return id == null ? null : this.dicionario.getObject().nomeDe(id);
+    }
+}
@@ -0,0 +1,22 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.entity.generator;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Gera um UUID aleatório para o identificador, preservando o valor quando ele já foi atribuído pela aplicação.
+ * <p>
+ * Permite que o id seja informado ao cliente antes da gravação (ex.: ingestão assíncrona),
+ * mantendo a geração automática para os demais fluxos.
+ */
+@IdGeneratorType(UuidAtribuivelGenerator.class)
+@Retention(RUNTIME)
+@Target({FIELD, METHOD})
+public @interface UuidAtribuivel {
+}
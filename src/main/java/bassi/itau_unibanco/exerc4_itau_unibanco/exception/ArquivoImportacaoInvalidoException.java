@@ -0,0 +1,22 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+
+public class ArquivoImportacaoInvalidoException extends ProdutoException {
+
+    private final String motivo;
+
+    public ArquivoImportacaoInvalidoException(String motivo) {
+        super("Arquivo de importação inválido: %s".formatted(motivo));
+        this.motivo = motivo;
+    }
+
+    @Override
+    public ProblemDetail toProblemDetail() {
+        var problemDetail = ProblemDetail.forStatus(HttpStatus.BAD_REQUEST);
+        problemDetail.setTitle("Arquivo de importação inválido.");
+        problemDetail.setDetail(motivo);
+        return problemDetail;
+    }
+}
@@ -0,0 +1,25 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+
+public class CursorExpiradoException extends ProdutoException {
+
+    private final long cursor;
+
+    private final long sequenciaExpirada;
+
+    public CursorExpiradoException(long cursor, long sequenciaExpirada) {
+        super("Cursor %s anterior à retenção do log de alterações (%s).".formatted(cursor, sequenciaExpirada));
+        this.cursor = cursor;
+        this.sequenciaExpirada = sequenciaExpirada;
+    }
+
+    @Override
+    public ProblemDetail toProblemDetail() {
+        var problemDetail = ProblemDetail.forStatus(HttpStatus.GONE);
+        problemDetail.setTitle("Cursor %s expirado, é necessária uma nova sincronização completa.".formatted(cursor));
+        problemDetail.setProperty("sequencia_expirada", sequenciaExpirada);
+        return problemDetail;
+    }
+}
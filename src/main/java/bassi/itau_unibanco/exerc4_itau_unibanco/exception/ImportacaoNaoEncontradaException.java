@@ -0,0 +1,23 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+
+import java.util.UUID;
+
+public class ImportacaoNaoEncontradaException extends ProdutoException {
+
+    private final UUID id;
+
+    public ImportacaoNaoEncontradaException(UUID id) {
+        super("Importação não encontrada pelo id %s.".formatted(id));
+        this.id = id;
+    }
+
+    @Override
+    public ProblemDetail toProblemDetail() {
+        var problemDetail = ProblemDetail.forStatus(HttpStatus.UNPROCESSABLE_ENTITY);
+        problemDetail.setTitle("Importação não encontrada pelo id %s.".formatted(id));
+        return problemDetail;
+    }
+}
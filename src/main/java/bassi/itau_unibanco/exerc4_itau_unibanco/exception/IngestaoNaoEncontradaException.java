@@ -0,0 +1,23 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+
+import java.util.UUID;
+
+public class IngestaoNaoEncontradaException extends ProdutoException {
+
+    private final UUID id;
+
+    public IngestaoNaoEncontradaException(UUID id) {
+        super("Ingestão não encontrada pelo id %s.".formatted(id));
+        this.id = id;
+    }
+
+    @Override
+    public ProblemDetail toProblemDetail() {
+        var problemDetail = ProblemDetail.forStatus(HttpStatus.NOT_FOUND);
+        problemDetail.setTitle("Ingestão não encontrada pelo id %s.".formatted(id));
+        return problemDetail;
+    }
+}
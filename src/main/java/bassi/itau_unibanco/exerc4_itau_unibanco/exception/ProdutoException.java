@@ -19,6 +19,14 @@ public class ProdutoException extends RuntimeException {
         super(message);
     }
 
+    /**
+     * Para exceções esperadas em caminhos frequentes, convertidas em resposta sem serem registradas em log:
+     * sem a pilha de chamadas, cuja captura domina o custo de criar a exceção.
+     */
+    protected ProdutoException(String message, boolean capturarPilha) {
+        super(message, null, false, capturarPilha);
+    }
+
     /**
      * Converte a exceção para um formato padronizado de Problem Detail.
      * Segue o contrato comum para todas as exceções derivadas.
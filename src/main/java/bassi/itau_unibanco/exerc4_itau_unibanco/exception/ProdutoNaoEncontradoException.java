@@ -9,8 +9,12 @@ public class ProdutoNaoEncontradoException extends ProdutoException {
 
     private final UUID id;
 
+    /**
+     * Sem pilha de chamadas: ids inexistentes são frequentes (clientes desatualizados, crawlers) e a exceção
+     * só é convertida na resposta 422.
+     */
     public ProdutoNaoEncontradoException(UUID id) {
-        super("Produto não encontrado pelo id %s.".formatted(id));
+        super("Produto não encontrado pelo id %s.".formatted(id), false);
         this.id = id;
     }
 
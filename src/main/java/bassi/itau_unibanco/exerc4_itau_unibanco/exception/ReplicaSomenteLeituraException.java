@@ -0,0 +1,28 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+
+public class ReplicaSomenteLeituraException extends ProdutoException {
+
+    private final String metodo;
+
+    private final String caminho;
+
+    /**
+     * Sem pilha de chamadas: a rejeição é esperada e só é convertida na resposta 405.
+     */
+    public ReplicaSomenteLeituraException(String metodo, String caminho) {
+        super("Escrita %s %s recebida por uma réplica somente leitura.".formatted(metodo, caminho), false);
+        this.metodo = metodo;
+        this.caminho = caminho;
+    }
+
+    @Override
+    public ProblemDetail toProblemDetail() {
+        var problemDetail = ProblemDetail.forStatus(HttpStatus.METHOD_NOT_ALLOWED);
+        problemDetail.setTitle("Instância somente leitura.");
+        problemDetail.setDetail("%s %s não é aceito por uma réplica de leitura; envie a escrita à instância primária.".formatted(metodo, caminho));
+        return problemDetail;
+    }
+}
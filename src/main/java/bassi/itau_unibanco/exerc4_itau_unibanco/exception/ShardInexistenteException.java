@@ -0,0 +1,25 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+
+public class ShardInexistenteException extends ProdutoException {
+
+    private final int shard;
+
+    private final int quantidade;
+
+    public ShardInexistenteException(int shard, int quantidade) {
+        super("Shard %s inexistente (%s shards configurados).".formatted(shard, quantidade));
+        this.shard = shard;
+        this.quantidade = quantidade;
+    }
+
+    @Override
+    public ProblemDetail toProblemDetail() {
+        var problemDetail = ProblemDetail.forStatus(HttpStatus.BAD_REQUEST);
+        problemDetail.setTitle("Shard %s inexistente.".formatted(shard));
+        problemDetail.setProperty("quantidade_shards", quantidade);
+        return problemDetail;
+    }
+}
@@ -0,0 +1,30 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.alocacao;
+
+import io.micrometer.core.instrument.Tags;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+
+/**
+ * Mede a alocação e o tempo de CPU de cada método do serviço de produtos, incluindo consultas e mapeamento
+ * para os DTOs. Comparada à medição da requisição, separa o custo do serviço do custo da serialização.
+ */
+@Aspect
+class AlocacaoAspect {
+
+    private final MedidorAlocacao medidor;
+
+    AlocacaoAspect(MedidorAlocacao medidor) {
+        this.medidor = medidor;
+    }
+
+    @Around("execution(public * bassi.itau_unibanco.exerc4_itau_unibanco.service.ProdutoService.*(..))")
+    public Object operacao(ProceedingJoinPoint joinPoint) throws Throwable {
+        var inicio = ContadoresThread.ler();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            this.medidor.registrar(MedidorAlocacao.SERVICO, Tags.of("metodo", joinPoint.getSignature().getName()), inicio.consumo());
+        }
+    }
+}
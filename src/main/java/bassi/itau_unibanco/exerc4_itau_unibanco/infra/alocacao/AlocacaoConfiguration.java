@@ -0,0 +1,73 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.alocacao;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aopalliance.aop.Advice;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Medição de alocação e tempo de CPU por requisição, por método do serviço de produtos e por mensagem
+ * consumida, habilitada com {@code produto.profiler.alocacao.enabled=true}.
+ * <p>
+ * Os valores vêm dos contadores da própria thread na JVM e são publicados como histogramas no Micrometer
+ * ({@code /actuator/metrics}). O cabeçalho de depuração da resposta depende também de
+ * {@code produto.profiler.alocacao.cabecalho=true}.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "produto.profiler.alocacao", name = "enabled", havingValue = "true")
+public class AlocacaoConfiguration {
+
+    @Bean
+    public MedidorAlocacao medidorAlocacao(MeterRegistry registry) {
+        return new MedidorAlocacao(registry);
+    }
+
+    /**
+     * Primeiro filtro da cadeia, para que a medição inclua os demais filtros e a escrita da resposta.
+     */
+    @Bean
+    public FilterRegistrationBean<AlocacaoFilter> alocacaoFilter(
+            MedidorAlocacao medidor,
+            @Value("${produto.profiler.alocacao.cabecalho:false}") boolean cabecalho,
+            @Value("${produto.profiler.alocacao.rotas-stream:/v1/produto/stream}") List<String> rotasStream
+    ) {
+        var registro = new FilterRegistrationBean<>(new AlocacaoFilter(medidor, cabecalho, rotasStream));
+        registro.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registro;
+    }
+
+    @Bean
+    public AlocacaoAspect alocacaoAspect(MedidorAlocacao medidor) {
+        return new AlocacaoAspect(medidor);
+    }
+
+    /**
+     * Inclui a medição no início da cadeia de advices de cada container factory, envolvendo as retentativas.
+     */
+    @Bean
+    public static BeanPostProcessor alocacaoListenerPostProcessor(ObjectProvider<MedidorAlocacao> medidor) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof SimpleRabbitListenerContainerFactory factory) {
+                    var cadeia = new ArrayList<Advice>();
+                    cadeia.add(new AlocacaoListenerInterceptor(medidor.getObject()));
+                    if (factory.getAdviceChain() != null)
+                        cadeia.addAll(List.of(factory.getAdviceChain()));
+                    factory.setAdviceChain(cadeia.toArray(Advice[]::new));
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,101 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.alocacao;
+
+import io.micrometer.core.instrument.Tags;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.UrlPathHelper;
+import org.springframework.web.util.WebUtils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Mede a alocação e o tempo de CPU de cada requisição na thread do servlet, da leitura do corpo à escrita da
+ * resposta (inclusive a serialização), por método, padrão da rota e status.
+ * <p>
+ * Com o cabeçalho de depuração habilitado, requisições com {@code X-Perfil-Alocacao} recebem o consumo em
+ * {@code X-Alocacao-Bytes} e {@code X-Cpu-Ms}; a resposta é retida até o fim para que os cabeçalhos ainda
+ * possam ser escritos. O trabalho feito em outras threads, como a consulta paralela aos shards e o stream de
+ * alterações, não entra na medição.
+ * <p>
+ * As rotas de stream nunca são retidas, já que a resposta só terminaria ao fechar a conexão. Uma resposta
+ * retida que passa a ser processada de forma assíncrona não recebe os cabeçalhos, e o conteúdo é liberado no
+ * despacho assíncrono que a conclui.
+ */
+public class AlocacaoFilter extends OncePerRequestFilter {
+
+    static final String PERFIL = "X-Perfil-Alocacao";
+
+    static final String ALOCACAO_BYTES = "X-Alocacao-Bytes";
+
+    static final String CPU_MS = "X-Cpu-Ms";
+
+    private static final UrlPathHelper CAMINHOS = new UrlPathHelper();
+
+    private final MedidorAlocacao medidor;
+
+    private final boolean cabecalho;
+
+    private final List<String> rotasStream;
+
+    public AlocacaoFilter(MedidorAlocacao medidor, boolean cabecalho, List<String> rotasStream) {
+        this.medidor = medidor;
+        this.cabecalho = cabecalho;
+        this.rotasStream = List.copyOf(rotasStream);
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        if (this.isAsyncDispatch(request)) {
+            try {
+                filterChain.doFilter(request, response);
+            } finally {
+                var retida = WebUtils.getNativeResponse(response, ContentCachingResponseWrapper.class);
+                if (retida != null && !request.isAsyncStarted())
+                    retida.copyBodyToResponse();
+            }
+            return;
+        }
+        var depuracao = this.cabecalho && request.getHeader(PERFIL) != null && !this.stream(request);
+        var resposta = depuracao ? new ContentCachingResponseWrapper(response) : response;
+        var inicio = ContadoresThread.ler();
+        try {
+            filterChain.doFilter(request, resposta);
+        } finally {
+            var consumo = inicio.consumo();
+            this.medidor.registrar(MedidorAlocacao.REQUISICAO, Tags.of(
+                    "metodo", request.getMethod(),
+                    "uri", rota(request),
+                    "status", String.valueOf(resposta.getStatus())
+            ), consumo);
+            if (depuracao && !request.isAsyncStarted()) {
+                resposta.setHeader(ALOCACAO_BYTES, String.valueOf(consumo.bytes()));
+                resposta.setHeader(CPU_MS, String.format(Locale.ROOT, "%.3f", consumo.cpu() / 1_000_000.0));
+                ((ContentCachingResponseWrapper) resposta).copyBodyToResponse();
+            }
+        }
+    }
+
+    private boolean stream(HttpServletRequest request) {
+        var caminho = CAMINHOS.getPathWithinApplication(request);
+        return this.rotasStream.stream().anyMatch(caminho::startsWith);
+    }
+
+    /**
+     * Padrão da rota atendida, para não criar uma série por id; requisições sem rota ficam agrupadas.
+     */
+    private static String rota(HttpServletRequest request) {
+        return request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE) instanceof String padrao ? padrao : "UNKNOWN";
+    }
+}
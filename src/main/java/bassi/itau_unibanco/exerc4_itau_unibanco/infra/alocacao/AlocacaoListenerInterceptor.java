@@ -0,0 +1,43 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.alocacao;
+
+import io.micrometer.core.instrument.Tags;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.amqp.core.Message;
+
+import java.util.List;
+
+/**
+ * Advice da cadeia dos containers de listeners que mede a alocação e o tempo de CPU de cada entrega (uma
+ * mensagem ou um lote), incluindo a conversão do payload e as retentativas, por fila.
+ */
+class AlocacaoListenerInterceptor implements MethodInterceptor {
+
+    private final MedidorAlocacao medidor;
+
+    AlocacaoListenerInterceptor(MedidorAlocacao medidor) {
+        this.medidor = medidor;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        var inicio = ContadoresThread.ler();
+        try {
+            return invocation.proceed();
+        } finally {
+            this.medidor.registrar(MedidorAlocacao.MENSAGEM, Tags.of("fila", fila(invocation.getArguments())), inicio.consumo());
+        }
+    }
+
+    /**
+     * Os containers invocam o listener com o canal e a mensagem, ou a lista de mensagens do lote.
+     */
+    private static String fila(Object[] argumentos) {
+        var dados = argumentos.length > 1 ? argumentos[1] : null;
+        if (dados instanceof List<?> lote && !lote.isEmpty())
+            dados = lote.get(0);
+        if (dados instanceof Message message && message.getMessageProperties().getConsumerQueue() != null)
+            return message.getMessageProperties().getConsumerQueue();
+        return "UNKNOWN";
+    }
+}
@@ -0,0 +1,48 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.alocacao;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Contadores de alocação e de tempo de CPU da thread atual, mantidos pela própria JVM (o de alocação é a soma
+ * dos TLABs da thread, sem custo adicional por objeto). Em JVMs sem suporte, as leituras são zero.
+ */
+final class ContadoresThread {
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private ContadoresThread() {
+    }
+
+    /**
+     * Leitura dos contadores no início de um trecho medido.
+     */
+    record Inicio(long bytes, long cpu) {
+
+        Consumo consumo() {
+            var atual = ler();
+            return new Consumo(Math.max(0, atual.bytes - this.bytes), Math.max(0, atual.cpu - this.cpu));
+        }
+    }
+
+    /**
+     * @param bytes bytes alocados pela thread no trecho
+     * @param cpu   tempo de CPU da thread no trecho, em nanossegundos
+     */
+    record Consumo(long bytes, long cpu) {
+    }
+
+    static Inicio ler() {
+        if (THREADS == null)
+            return new Inicio(0, 0);
+        return new Inicio(THREADS.getCurrentThreadAllocatedBytes(), THREADS.getCurrentThreadCpuTime());
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads)
+                || !threads.isThreadAllocatedMemorySupported() || !threads.isCurrentThreadCpuTimeSupported())
+            return null;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        threads.setThreadCpuTimeEnabled(true);
+        return threads;
+    }
+}
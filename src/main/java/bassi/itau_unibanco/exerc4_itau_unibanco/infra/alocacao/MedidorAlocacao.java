@@ -0,0 +1,61 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.alocacao;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registra o consumo de cada trecho medido em dois histogramas, {@code <nome>.alocacao} (bytes) e
+ * {@code <nome>.cpu} (tempo de CPU), com as tags do trecho.
+ * <p>
+ * Os histogramas de cada combinação de nome e tags são criados uma vez e reaproveitados: o registro pelo
+ * builder monta o id e consulta o registry a cada medição, alocando no próprio trecho medido.
+ */
+public class MedidorAlocacao {
+
+    static final String REQUISICAO = "produto.requisicao";
+
+    static final String SERVICO = "produto.servico";
+
+    static final String MENSAGEM = "produto.mensagem";
+
+    private final MeterRegistry registry;
+
+    private final Map<Chave, Histogramas> histogramas = new ConcurrentHashMap<>();
+
+    public MedidorAlocacao(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    private record Chave(String nome, Tags tags) {
+    }
+
+    private record Histogramas(DistributionSummary alocacao, Timer cpu) {
+    }
+
+    void registrar(String nome, Tags tags, ContadoresThread.Consumo consumo) {
+        var histogramas = this.histogramas.computeIfAbsent(new Chave(nome, tags), this::criar);
+        histogramas.alocacao().record(consumo.bytes());
+        histogramas.cpu().record(consumo.cpu(), TimeUnit.NANOSECONDS);
+    }
+
+    private Histogramas criar(Chave chave) {
+        return new Histogramas(
+                DistributionSummary.builder(chave.nome() + ".alocacao")
+                        .baseUnit("bytes")
+                        .tags(chave.tags())
+                        .publishPercentiles(0.5, 0.9, 0.99)
+                        .publishPercentileHistogram()
+                        .register(this.registry),
+                Timer.builder(chave.nome() + ".cpu")
+                        .tags(chave.tags())
+                        .publishPercentiles(0.5, 0.9, 0.99)
+                        .publishPercentileHistogram()
+                        .register(this.registry));
+    }
+}
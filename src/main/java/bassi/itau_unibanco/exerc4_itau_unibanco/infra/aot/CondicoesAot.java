@@ -0,0 +1,65 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.aot;
+
+import org.springframework.core.env.Environment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Decisões de configuração que o processamento AOT (perfil Maven {@code fast-startup}) fixa no build:
+ * as chaves lidas por {@code @ConditionalOnProperty} e os perfis ativos, usados em {@code @Profile}.
+ * Propriedades lidas por {@code @Value} (facetas, sugestões, agrupamento de atualizações, catálogo,
+ * filtro de ids) continuam sendo avaliadas na execução e não entram aqui.
+ * <p>
+ * Ao incluir uma nova condição por propriedade, a chave deve ser registrada em {@link #PROPRIEDADES}.
+ */
+final class CondicoesAot {
+
+    static final String ARQUIVO = "META-INF/produto/condicoes-aot.properties";
+
+    static final String PERFIS = "spring.profiles.active";
+
+    /** Chave e valor padrão de cada propriedade avaliada por {@code @ConditionalOnProperty}. */
+    static final Map<String, String> PROPRIEDADES = Map.of(
+            "produto.cache-respostas.enabled", "false",
+            "produto.jfr.enabled", "false",
+            "produto.particoes.enabled", "false",
+            "produto.profiler.alocacao.enabled", "false",
+            "produto.profiler.jdbc.enabled", "false",
+            "produto.sharding.enabled", "false"
+    );
+
+    private CondicoesAot() {
+    }
+
+    static Properties capturar(Environment environment) {
+        var condicoes = new Properties();
+        PROPRIEDADES.forEach((chave, padrao) -> condicoes.setProperty(chave, valor(environment, chave, padrao)));
+        condicoes.setProperty(PERFIS, perfis(environment));
+        return condicoes;
+    }
+
+    /** Lista, em ordem de chave, as condições cujo valor na execução difere do fixado no build. */
+    static List<String> divergencias(Properties build, Environment environment) {
+        var atuais = capturar(environment);
+        var divergencias = new ArrayList<String>();
+        new TreeMap<>(build).forEach((chave, fixado) -> {
+            var atual = atuais.getProperty((String) chave);
+            if (atual != null && !atual.equals(fixado))
+                divergencias.add(chave + "=" + atual + " (build: " + fixado + ")");
+        });
+        return divergencias;
+    }
+
+    private static String valor(Environment environment, String chave, String padrao) {
+        return environment.getProperty(chave, padrao).trim().toLowerCase();
+    }
+
+    private static String perfis(Environment environment) {
+        return String.join(",", Arrays.stream(environment.getActiveProfiles()).sorted().toList());
+    }
+}
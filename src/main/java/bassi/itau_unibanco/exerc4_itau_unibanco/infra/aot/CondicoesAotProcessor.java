@@ -0,0 +1,30 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.aot;
+
+import org.springframework.beans.factory.aot.BeanFactoryInitializationAotContribution;
+import org.springframework.beans.factory.aot.BeanFactoryInitializationAotProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+
+/**
+ * Grava, junto do código gerado pelo AOT, os valores de {@link CondicoesAot} usados no build,
+ * para que {@link VerificacaoCondicoesAot} possa compará-los com os da execução.
+ */
+class CondicoesAotProcessor implements BeanFactoryInitializationAotProcessor {
+
+    @Override
+    public BeanFactoryInitializationAotContribution processAheadOfTime(ConfigurableListableBeanFactory beanFactory) {
+        var conteudo = new StringWriter();
+        try {
+            CondicoesAot.capturar(beanFactory.getBean(Environment.class))
+                    .store(conteudo, "Condições fixadas pelo processamento AOT");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return (generationContext, code) -> generationContext.getGeneratedFiles()
+                .addResourceFile(CondicoesAot.ARQUIVO, conteudo.toString());
+    }
+}
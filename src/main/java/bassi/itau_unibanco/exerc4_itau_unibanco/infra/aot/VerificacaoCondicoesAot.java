@@ -0,0 +1,39 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.aot;
+
+import org.springframework.aot.AotDetector;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Properties;
+
+/**
+ * Com o contexto gerado pelo AOT, uma propriedade de {@link CondicoesAot} alterada na execução seria ignorada
+ * em silêncio (ex.: {@code PRODUTO_SHARDING_ENABLED=true} numa imagem gerada sem sharding). A inicialização
+ * é interrompida, indicando quais valores divergem do build.
+ */
+class VerificacaoCondicoesAot implements EnvironmentPostProcessor {
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (!AotDetector.useGeneratedArtifacts())
+            return;
+        var arquivo = new ClassPathResource(CondicoesAot.ARQUIVO, application.getClassLoader());
+        if (!arquivo.exists())
+            return;
+        var build = new Properties();
+        try (var entrada = arquivo.getInputStream()) {
+            build.load(entrada);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        var divergencias = CondicoesAot.divergencias(build, environment);
+        if (!divergencias.isEmpty())
+            throw new IllegalStateException("Propriedades fixadas pelo processamento AOT divergem da execução: "
+                    + String.join(", ", divergencias)
+                    + ". Gere o jar novamente com -Pfast-startup e esses valores, ou execute sem -Dspring.aot.enabled=true.");
+    }
+}
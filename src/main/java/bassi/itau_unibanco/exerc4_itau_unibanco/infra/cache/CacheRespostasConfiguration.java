@@ -0,0 +1,29 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.cache;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.VersaoCatalogo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Cache de respostas das listagens de produtos, habilitado com {@code produto.cache-respostas.enabled=true}.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "produto.cache-respostas", name = "enabled", havingValue = "true")
+public class CacheRespostasConfiguration {
+
+    @Bean
+    public FilterRegistrationBean<CacheRespostasFilter> cacheRespostasFilter(
+            VersaoCatalogo versao,
+            @Value("${produto.cache-respostas.maximo-entradas:64}") int maximoEntradas,
+            @Value("${produto.cache-respostas.validade:30s}") Duration validade
+    ) {
+        var registro = new FilterRegistrationBean<>(new CacheRespostasFilter(versao, maximoEntradas, validade));
+        registro.addUrlPatterns("/v1/produto", "/v1/produto/busca", "/v1/produto/busca/facetas");
+        return registro;
+    }
+}
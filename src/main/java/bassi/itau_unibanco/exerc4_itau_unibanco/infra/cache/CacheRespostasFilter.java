@@ -0,0 +1,172 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.cache;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.VersaoCatalogo;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache dos bytes finais das respostas, sem compressão e com gzip, por URI, parâmetros e
+ * {@link VersaoCatalogo versão do catálogo}.
+ * <p>
+ * Uma resposta em cache é escrita diretamente, sem consulta, mapeamento ou serialização, com o
+ * {@code Content-Encoding} aceito pelo cliente e um {@code ETag} da versão e do conteúdo; um
+ * {@code If-None-Match} com o mesmo {@code ETag} recebe 304. A versão é lida antes de a resposta ser
+ * calculada, então qualquer alteração posterior invalida a entrada. Como as alterações de outras instâncias
+ * só mudam a versão quando o seu evento chega, as entradas expiram também após a validade.
+ * <p>
+ * Apenas respostas 200 de requisições GET são guardadas, até o limite de entradas, descartando as menos
+ * usadas.
+ */
+public class CacheRespostasFilter extends OncePerRequestFilter {
+
+    private static final String GZIP = "gzip";
+
+    private final VersaoCatalogo versao;
+
+    private final long validade;
+
+    private final Map<String, Resposta> respostas;
+
+    public CacheRespostasFilter(VersaoCatalogo versao, int maximoEntradas, Duration validade) {
+        this.versao = versao;
+        this.validade = validade.toNanos();
+        this.respostas = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Resposta> maisAntiga) {
+                return this.size() > maximoEntradas;
+            }
+        };
+    }
+
+    /**
+     * @param hash CRC32 do conteúdo sem compressão
+     */
+    private record Resposta(long versao, long criadaEm, String tipo, byte[] identidade, byte[] gzip, long hash) {
+
+        String etag(boolean gzip) {
+            return "\"" + this.versao + "-" + Long.toHexString(this.hash) + (gzip ? "-gzip\"" : "\"");
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !HttpMethod.GET.matches(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        var chave = chave(request);
+        var versao = this.versao.atual();
+        var resposta = this.buscar(chave, versao);
+        if (resposta != null) {
+            escrever(request, response, resposta);
+            return;
+        }
+        var conteudo = new ContentCachingResponseWrapper(response);
+        filterChain.doFilter(request, conteudo);
+        if (conteudo.getStatus() != HttpServletResponse.SC_OK || response.containsHeader(HttpHeaders.CONTENT_ENCODING)) {
+            conteudo.copyBodyToResponse();
+            return;
+        }
+        resposta = criar(versao, conteudo.getContentType(), conteudo.getContentAsByteArray());
+        this.guardar(chave, resposta);
+        escrever(request, response, resposta);
+    }
+
+    private synchronized Resposta buscar(String chave, long versao) {
+        var resposta = this.respostas.get(chave);
+        if (resposta == null)
+            return null;
+        if (resposta.versao() != versao || System.nanoTime() - resposta.criadaEm() > this.validade) {
+            this.respostas.remove(chave);
+            return null;
+        }
+        return resposta;
+    }
+
+    /**
+     * Entradas de versões anteriores não serão mais usadas e são descartadas.
+     */
+    private synchronized void guardar(String chave, Resposta resposta) {
+        if (resposta.versao() != this.versao.atual())
+            return;
+        this.respostas.values().removeIf(anterior -> anterior.versao() != resposta.versao());
+        this.respostas.put(chave, resposta);
+    }
+
+    private static Resposta criar(long versao, String tipo, byte[] identidade) {
+        var crc = new CRC32();
+        crc.update(identidade);
+        var gzip = new ByteArrayOutputStream(Math.max(64, identidade.length / 4));
+        try (var saida = new GZIPOutputStream(gzip)) {
+            saida.write(identidade);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Resposta(versao, System.nanoTime(), tipo, identidade, gzip.toByteArray(), crc.getValue());
+    }
+
+    private static void escrever(HttpServletRequest request, HttpServletResponse response, Resposta resposta) throws IOException {
+        var gzip = aceitaGzip(request);
+        var etag = resposta.etag(gzip);
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (correspondeEtag(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        var corpo = gzip ? resposta.gzip() : resposta.identidade();
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(resposta.tipo());
+        if (gzip)
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+        response.setContentLength(corpo.length);
+        response.getOutputStream().write(corpo);
+    }
+
+    /**
+     * URI com os parâmetros em ordem, para que a ordem na requisição não gere entradas distintas.
+     */
+    private static String chave(HttpServletRequest request) {
+        return request.getRequestURI() + "?" + new TreeMap<>(request.getParameterMap()).entrySet().stream()
+                .map(parametro -> parametro.getKey() + "=" + String.join(",", parametro.getValue()))
+                .collect(Collectors.joining("&"));
+    }
+
+    private static boolean aceitaGzip(HttpServletRequest request) {
+        var cabecalho = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (cabecalho == null)
+            return false;
+        return Arrays.stream(cabecalho.split(","))
+                .map(codificacao -> codificacao.strip().split(";"))
+                .anyMatch(partes -> (GZIP.equalsIgnoreCase(partes[0].strip()) || "*".equals(partes[0].strip()))
+                        && Arrays.stream(partes).skip(1).map(String::strip).noneMatch(parametro -> parametro.matches("q=0(\\.0{0,3})?")));
+    }
+
+    private static boolean correspondeEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null)
+            return false;
+        return Arrays.stream(ifNoneMatch.split(","))
+                .map(String::strip)
+                .map(valor -> valor.startsWith("W/") ? valor.substring(2) : valor)
+                .anyMatch(valor -> valor.equals("*") || valor.equals(etag));
+    }
+}
@@ -0,0 +1,46 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.flyway;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+@Slf4j
+@Configuration
+@Profile("!replica")
+public class FlywayConfiguration {
+
+    /**
+     * Durante a execução de treinamento do arquivo CDS (ver Dockerfile.fast-startup) não há banco disponível.
+     * Com o processamento AOT as condições de auto-configuração ficam fixas no build, então a migração
+     * é ignorada aqui, em tempo de execução, em vez de desabilitar o Flyway por propriedade.
+     * <p>
+     * Com sharding, as migrações são aplicadas em cada shard, com a mesma configuração.
+     */
+    @Bean
+    public FlywayMigrationStrategy flywayMigrationStrategy(
+            @Value("${produto.inicializacao.treinamento:false}") boolean treinamento,
+            Shards shards
+    ) {
+        return flyway -> {
+            if (treinamento) {
+                log.info("Execução de treinamento: migrações do Flyway ignoradas.");
+                return;
+            }
+            if (!shards.habilitado()) {
+                flyway.migrate();
+                return;
+            }
+            for (var dataSource : shards.dataSources())
+                Flyway.configure()
+                        .configuration(flyway.getConfiguration())
+                        .dataSource(dataSource)
+                        .load()
+                        .migrate();
+        };
+    }
+}
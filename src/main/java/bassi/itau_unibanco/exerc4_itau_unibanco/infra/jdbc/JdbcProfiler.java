@@ -0,0 +1,238 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.jdbc;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Perfil das instruções SQL executadas pela aplicação, agrupadas pelo formato da instrução
+ * (literais e listas de parâmetros normalizados).
+ * <p>
+ * Para cada formato registra execuções, histograma de latência, linhas lidas e tamanhos de lote.
+ * Instruções acima do limite de lentidão são guardadas com seus parâmetros, que só vão para o log em
+ * {@code DEBUG}, e consultas repetidas dentro de um mesmo escopo (uma chamada ao serviço de produtos) são
+ * sinalizadas como suspeitas de N+1. O escopo é da thread: consultas feitas em paralelo nos shards ficam
+ * fora dele.
+ */
+@Slf4j
+public class JdbcProfiler {
+
+    static final long[] LIMITES_HISTOGRAMA_MS = {1, 5, 10, 50, 100, 500, 1000};
+
+    private static final int LIMITE_REGISTROS = 100;
+
+    private static final int LIMITE_FORMATOS_EM_CACHE = 10_000;
+
+    private static final Pattern LITERAIS = Pattern.compile("'(?:[^']|'')*'|\\b\\d+(?:\\.\\d+)?\\b");
+
+    private static final Pattern LISTAS = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+
+    private static final Pattern ESPACOS = Pattern.compile("\\s+");
+
+    private final long limiteLentaNanos;
+
+    private final int limiteRepeticoes;
+
+    private final Map<String, String> formatos = new ConcurrentHashMap<>();
+
+    private final Map<String, Estatistica> estatisticas = new ConcurrentHashMap<>();
+
+    private final Deque<ConsultaLenta> lentas = new ArrayDeque<>();
+
+    private final Deque<SuspeitaNMaisUm> suspeitas = new ArrayDeque<>();
+
+    private final ThreadLocal<Escopo> escopo = new ThreadLocal<>();
+
+    public JdbcProfiler(long limiteLentaMs, int limiteRepeticoes) {
+        this.limiteLentaNanos = TimeUnit.MILLISECONDS.toNanos(limiteLentaMs);
+        this.limiteRepeticoes = limiteRepeticoes;
+    }
+
+    /**
+     * Envolve o DataSource para que as suas instruções alimentem este perfil.
+     */
+    public DataSource instrumentar(DataSource dataSource) {
+        return ProfilingProxies.dataSource(dataSource, this);
+    }
+
+    /**
+     * Abre o escopo de detecção de N+1 na thread corrente, se ainda não houver um.
+     *
+     * @return se o escopo foi aberto; chamadas aninhadas participam do escopo já aberto
+     */
+    public boolean iniciarEscopo(String nome) {
+        if (this.escopo.get() != null)
+            return false;
+        this.escopo.set(new Escopo(nome));
+        return true;
+    }
+
+    /**
+     * Fecha o escopo da thread corrente, registrando as consultas repetidas acima do limite.
+     */
+    public void encerrarEscopo() {
+        var atual = this.escopo.get();
+        this.escopo.remove();
+        if (atual == null)
+            return;
+        atual.execucoes.forEach((formato, execucoes) -> {
+            if (execucoes < this.limiteRepeticoes || !formato.regionMatches(true, 0, "select", 0, 6))
+                return;
+            log.warn("Possível N+1 em {}: {} execuções de {}", atual.nome, execucoes, formato);
+            adicionar(this.suspeitas, new SuspeitaNMaisUm(atual.nome, formato, execucoes, Instant.now()));
+        });
+    }
+
+    public Relatorio relatorio() {
+        var resumo = this.estatisticas.entrySet().stream()
+                .map(entry -> entry.getValue().resumir(entry.getKey()))
+                .sorted(Comparator.comparingLong(ResumoInstrucao::tempoTotalMs).reversed())
+                .toList();
+        synchronized (this) {
+            return new Relatorio(resumo, List.copyOf(this.lentas), List.copyOf(this.suspeitas));
+        }
+    }
+
+    public synchronized void limpar() {
+        this.estatisticas.clear();
+        this.lentas.clear();
+        this.suspeitas.clear();
+    }
+
+    Estatistica estatistica(String sql) {
+        return this.estatisticas.computeIfAbsent(this.formato(sql), formato -> new Estatistica());
+    }
+
+    void registrarExecucao(String sql, long nanos, Map<Integer, Object> parametros, int tamanhoLote) {
+        var formato = this.formato(sql);
+        this.estatisticas.computeIfAbsent(formato, f -> new Estatistica()).registrar(nanos, tamanhoLote);
+        var atual = this.escopo.get();
+        if (atual != null)
+            atual.execucoes.merge(formato, 1, Integer::sum);
+        if (nanos >= this.limiteLentaNanos) {
+            var ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+            log.warn("Consulta lenta ({} ms): {}", ms, sql);
+            log.debug("Parâmetros da consulta lenta: {}", parametros.values());
+            adicionar(this.lentas, new ConsultaLenta(sql, parametros.values().stream().map(String::valueOf).toList(), ms, Instant.now()));
+        }
+    }
+
+    String formato(String sql) {
+        var formato = this.formatos.get(sql);
+        if (formato != null)
+            return formato;
+        formato = normalizar(sql);
+        if (this.formatos.size() < LIMITE_FORMATOS_EM_CACHE)
+            this.formatos.put(sql, formato);
+        return formato;
+    }
+
+    static String normalizar(String sql) {
+        var formato = LITERAIS.matcher(sql.strip()).replaceAll("?");
+        formato = LISTAS.matcher(formato).replaceAll("(?, ...)");
+        return ESPACOS.matcher(formato).replaceAll(" ");
+    }
+
+    private synchronized <T> void adicionar(Deque<T> registros, T registro) {
+        if (registros.size() == LIMITE_REGISTROS)
+            registros.removeFirst();
+        registros.addLast(registro);
+    }
+
+    private static final class Escopo {
+
+        private final String nome;
+
+        private final Map<String, Integer> execucoes = new HashMap<>();
+
+        private Escopo(String nome) {
+            this.nome = nome;
+        }
+    }
+
+    static final class Estatistica {
+
+        private final LongAdder execucoes = new LongAdder();
+
+        private final LongAdder nanos = new LongAdder();
+
+        private final AtomicLong nanosMaximo = new AtomicLong();
+
+        private final LongAdder[] histograma = new LongAdder[LIMITES_HISTOGRAMA_MS.length + 1];
+
+        private final LongAdder linhas = new LongAdder();
+
+        private final LongAdder lotes = new LongAdder();
+
+        private final LongAdder itensEmLote = new LongAdder();
+
+        private Estatistica() {
+            for (var i = 0; i < this.histograma.length; i++)
+                this.histograma[i] = new LongAdder();
+        }
+
+        void registrarLinha() {
+            this.linhas.increment();
+        }
+
+        private void registrar(long nanos, int tamanhoLote) {
+            this.execucoes.increment();
+            this.nanos.add(nanos);
+            this.nanosMaximo.accumulateAndGet(nanos, Math::max);
+            var ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+            var faixa = 0;
+            while (faixa < LIMITES_HISTOGRAMA_MS.length && ms > LIMITES_HISTOGRAMA_MS[faixa])
+                faixa++;
+            this.histograma[faixa].increment();
+            if (tamanhoLote > 0) {
+                this.lotes.increment();
+                this.itensEmLote.add(tamanhoLote);
+            }
+        }
+
+        private ResumoInstrucao resumir(String formato) {
+            var execucoes = this.execucoes.sum();
+            var histograma = new LinkedHashMap<String, Long>();
+            for (var i = 0; i < this.histograma.length; i++)
+                histograma.put(i < LIMITES_HISTOGRAMA_MS.length ? "ate_" + LIMITES_HISTOGRAMA_MS[i] + "ms" : "acima", this.histograma[i].sum());
+            var lotes = this.lotes.sum();
+            return new ResumoInstrucao(
+                    formato,
+                    execucoes,
+                    TimeUnit.NANOSECONDS.toMillis(this.nanos.sum()),
+                    execucoes == 0 ? 0 : this.nanos.sum() / execucoes / 1_000,
+                    TimeUnit.NANOSECONDS.toMillis(this.nanosMaximo.get()),
+                    histograma,
+                    this.linhas.sum(),
+                    lotes,
+                    lotes == 0 ? 0 : this.itensEmLote.sum() / lotes
+            );
+        }
+    }
+
+    public record Relatorio(List<ResumoInstrucao> instrucoes, List<ConsultaLenta> lentas, List<SuspeitaNMaisUm> suspeitasNMaisUm) {
+    }
+
+    public record ResumoInstrucao(String sql, long execucoes, long tempoTotalMs, long tempoMedioMicros, long tempoMaximoMs,
+                                  Map<String, Long> histograma, long linhas, long lotes, long tamanhoMedioLote) {
+    }
+
+    public record ConsultaLenta(String sql, List<String> parametros, long tempoMs, Instant instante) {
+    }
+
+    public record SuspeitaNMaisUm(String escopo, String sql, int execucoes, Instant instante) {
+    }
+}
@@ -0,0 +1,30 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.jdbc;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+
+/**
+ * Abre um escopo de detecção de N+1 em cada chamada ao serviço de produtos, qualquer que seja a origem:
+ * controllers, listeners do RabbitMQ, o agrupador de atualizações ou tarefas agendadas.
+ */
+@Aspect
+class JdbcProfilerAspect {
+
+    private final JdbcProfiler profiler;
+
+    JdbcProfilerAspect(JdbcProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    @Around("execution(public * bassi.itau_unibanco.exerc4_itau_unibanco.service.ProdutoService.*(..))")
+    public Object operacao(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!this.profiler.iniciarEscopo("ProdutoService." + joinPoint.getSignature().getName()))
+            return joinPoint.proceed();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            this.profiler.encerrarEscopo();
+        }
+    }
+}
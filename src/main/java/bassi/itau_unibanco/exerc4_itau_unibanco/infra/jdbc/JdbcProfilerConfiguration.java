@@ -0,0 +1,53 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.jdbc;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Perfil de instruções SQL, habilitado com {@code produto.profiler.jdbc.enabled=true}.
+ * <p>
+ * Apenas os pools do Hikari são envolvidos pelo proxy que mede cada instrução, para que nenhuma instrução
+ * seja medida duas vezes; com sharding, não há pool registrado como bean, e os pools de cada shard são
+ * envolvidos pela {@code ShardingConfiguration}. Cada chamada ao {@code ProdutoService}, seja de uma
+ * requisição HTTP, de um listener ou de uma tarefa agendada, abre um escopo de detecção de N+1.
+ * O relatório fica disponível em {@code /actuator/jdbc}.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "produto.profiler.jdbc", name = "enabled", havingValue = "true")
+public class JdbcProfilerConfiguration {
+
+    @Bean
+    public JdbcProfiler jdbcProfiler(
+            @Value("${produto.profiler.jdbc.limite-lenta-ms:200}") long limiteLentaMs,
+            @Value("${produto.profiler.jdbc.limite-repeticoes:10}") int limiteRepeticoes
+    ) {
+        return new JdbcProfiler(limiteLentaMs, limiteRepeticoes);
+    }
+
+    @Bean
+    public static BeanPostProcessor jdbcProfilerDataSourcePostProcessor(ObjectProvider<JdbcProfiler> profiler) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource dataSource)
+                    return profiler.getObject().instrumentar(dataSource);
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public JdbcProfilerAspect jdbcProfilerAspect(JdbcProfiler profiler) {
+        return new JdbcProfilerAspect(profiler);
+    }
+
+    @Bean
+    public JdbcProfilerEndpoint jdbcProfilerEndpoint(JdbcProfiler profiler) {
+        return new JdbcProfilerEndpoint(profiler);
+    }
+}
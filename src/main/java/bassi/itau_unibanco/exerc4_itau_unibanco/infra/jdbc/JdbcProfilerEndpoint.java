@@ -0,0 +1,26 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.jdbc;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+/**
+ * Expõe o relatório do {@link JdbcProfiler}: {@code GET /actuator/jdbc} consulta e {@code DELETE /actuator/jdbc} zera.
+ */
+@Endpoint(id = "jdbc")
+@RequiredArgsConstructor
+public class JdbcProfilerEndpoint {
+
+    private final JdbcProfiler profiler;
+
+    @ReadOperation
+    public JdbcProfiler.Relatorio relatorio() {
+        return this.profiler.relatorio();
+    }
+
+    @DeleteOperation
+    public void limpar() {
+        this.profiler.limpar();
+    }
+}
@@ -0,0 +1,188 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.jdbc;
+
+import lombok.RequiredArgsConstructor;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Proxies dinâmicos que instrumentam {@link DataSource}, {@link Connection}, {@link Statement} e {@link ResultSet}
+ * para alimentar o {@link JdbcProfiler}. Chamadas não instrumentadas são repassadas sem alteração ao objeto original.
+ */
+final class ProfilingProxies {
+
+    private static final Set<String> EXECUCOES = Set.of(
+            "execute", "executeQuery", "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch"
+    );
+
+    private ProfilingProxies() {
+    }
+
+    static DataSource dataSource(DataSource alvo, JdbcProfiler profiler) {
+        return proxy(DataSource.class, new DataSourceHandler(alvo, profiler));
+    }
+
+    private static <T> T proxy(Class<T> tipo, InvocationHandler handler) {
+        return tipo.cast(Proxy.newProxyInstance(ProfilingProxies.class.getClassLoader(), new Class<?>[]{tipo}, handler));
+    }
+
+    private static Object invocar(Object alvo, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(alvo, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    /**
+     * Base dos handlers: {@code equals} e {@code hashCode} respeitam a identidade do proxy, e {@code unwrap}
+     * e {@code isWrapperFor} consideram o próprio proxy antes do objeto original, permitindo que integrações
+     * como as métricas do Hikari continuem encontrando o pool.
+     */
+    @RequiredArgsConstructor
+    private abstract static class Handler<T> implements InvocationHandler {
+
+        protected final T alvo;
+
+        @Override
+        public final Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "unwrap", "isWrapperFor":
+                    var tipo = (Class<?>) args[0];
+                    if (tipo.isInstance(proxy))
+                        return method.getName().equals("unwrap") ? proxy : Boolean.TRUE;
+                    return invocar(this.alvo, method, args);
+                default:
+                    return this.interceptar(method, args);
+            }
+        }
+
+        protected abstract Object interceptar(Method method, Object[] args) throws Throwable;
+    }
+
+    private static final class DataSourceHandler extends Handler<DataSource> {
+
+        private final JdbcProfiler profiler;
+
+        private DataSourceHandler(DataSource alvo, JdbcProfiler profiler) {
+            super(alvo);
+            this.profiler = profiler;
+        }
+
+        @Override
+        protected Object interceptar(Method method, Object[] args) throws Throwable {
+            var resultado = invocar(this.alvo, method, args);
+            if (resultado instanceof Connection connection)
+                return proxy(Connection.class, new ConnectionHandler(connection, this.profiler));
+            return resultado;
+        }
+    }
+
+    private static final class ConnectionHandler extends Handler<Connection> {
+
+        private final JdbcProfiler profiler;
+
+        private ConnectionHandler(Connection alvo, JdbcProfiler profiler) {
+            super(alvo);
+            this.profiler = profiler;
+        }
+
+        @Override
+        protected Object interceptar(Method method, Object[] args) throws Throwable {
+            var resultado = invocar(this.alvo, method, args);
+            if (resultado instanceof Statement statement) {
+                var sql = args != null && args.length > 0 && args[0] instanceof String texto ? texto : null;
+                return proxy(method.getReturnType(), new StatementHandler(statement, sql, this.profiler));
+            }
+            return resultado;
+        }
+    }
+
+    private static final class StatementHandler extends Handler<Statement> {
+
+        private final JdbcProfiler profiler;
+
+        private final TreeMap<Integer, Object> parametros = new TreeMap<>();
+
+        private String sql;
+
+        private int lote;
+
+        private StatementHandler(Statement alvo, String sql, JdbcProfiler profiler) {
+            super(alvo);
+            this.sql = sql;
+            this.profiler = profiler;
+        }
+
+        @Override
+        protected Object interceptar(Method method, Object[] args) throws Throwable {
+            var nome = method.getName();
+            if (nome.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer indice)
+                this.parametros.put(indice, nome.equals("setNull") ? null : args[1]);
+            else if (nome.equals("clearParameters"))
+                this.parametros.clear();
+            else if (nome.equals("addBatch")) {
+                this.lote++;
+                if (args != null && args.length == 1)
+                    this.sql = (String) args[0];
+            } else if (nome.equals("clearBatch"))
+                this.lote = 0;
+            else if (EXECUCOES.contains(nome))
+                return this.executar(method, args);
+            else if (nome.equals("getResultSet"))
+                return this.embrulhar(invocar(this.alvo, method, args));
+            return invocar(this.alvo, method, args);
+        }
+
+        private Object executar(Method method, Object[] args) throws Throwable {
+            if (args != null && args.length > 0 && args[0] instanceof String texto)
+                this.sql = texto;
+            var lote = method.getName().contains("Batch") ? this.lote : 0;
+            var inicio = System.nanoTime();
+            try {
+                return this.embrulhar(invocar(this.alvo, method, args));
+            } finally {
+                if (this.sql != null)
+                    this.profiler.registrarExecucao(this.sql, System.nanoTime() - inicio, this.parametros, lote);
+                if (lote > 0)
+                    this.lote = 0;
+            }
+        }
+
+        private Object embrulhar(Object resultado) {
+            if (resultado instanceof ResultSet resultSet && this.sql != null)
+                return proxy(ResultSet.class, new ResultSetHandler(resultSet, this.profiler.estatistica(this.sql)));
+            return resultado;
+        }
+    }
+
+    private static final class ResultSetHandler extends Handler<ResultSet> {
+
+        private final JdbcProfiler.Estatistica estatistica;
+
+        private ResultSetHandler(ResultSet alvo, JdbcProfiler.Estatistica estatistica) {
+            super(alvo);
+            this.estatistica = estatistica;
+        }
+
+        @Override
+        protected Object interceptar(Method method, Object[] args) throws Throwable {
+            var resultado = invocar(this.alvo, method, args);
+            if (method.getName().equals("next") && Boolean.TRUE.equals(resultado))
+                this.estatistica.registrarLinha();
+            return resultado;
+        }
+    }
+}
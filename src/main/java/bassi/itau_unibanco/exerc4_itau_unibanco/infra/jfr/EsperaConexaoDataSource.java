@@ -0,0 +1,54 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.jfr;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Registra um {@link EsperaConexaoEvento} para cada conexão obtida do pool que demore mais que o limite do evento.
+ * Encerra o pool junto com o DataSource.
+ */
+class EsperaConexaoDataSource extends DelegatingDataSource implements AutoCloseable {
+
+    private final HikariDataSource pool;
+
+    EsperaConexaoDataSource(HikariDataSource pool) {
+        super(pool);
+        this.pool = pool;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        var evento = new EsperaConexaoEvento();
+        if (!evento.isEnabled())
+            return super.getConnection();
+        evento.begin();
+        try {
+            return super.getConnection();
+        } finally {
+            evento.pool = this.pool.getPoolName();
+            evento.commit();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        var evento = new EsperaConexaoEvento();
+        if (!evento.isEnabled())
+            return super.getConnection(username, password);
+        evento.begin();
+        try {
+            return super.getConnection(username, password);
+        } finally {
+            evento.pool = this.pool.getPoolName();
+            evento.commit();
+        }
+    }
+
+    @Override
+    public void close() {
+        this.pool.close();
+    }
+}
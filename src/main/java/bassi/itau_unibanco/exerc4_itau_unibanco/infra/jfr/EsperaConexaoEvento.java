@@ -0,0 +1,21 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name(EsperaConexaoEvento.NOME)
+@Label("Espera por Conexão")
+@Category({"Produto", "Banco de Dados"})
+@Description("Tempo para obter uma conexão do pool do Hikari.")
+@Threshold("1 ms")
+class EsperaConexaoEvento extends Event {
+
+    static final String NOME = "bassi.produto.EsperaConexao";
+
+    @Label("Pool")
+    String pool;
+}
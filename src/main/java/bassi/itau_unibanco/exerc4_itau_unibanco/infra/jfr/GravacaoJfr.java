@@ -0,0 +1,142 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.jfr;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Gravação JFR sob demanda, limitada em duração e tamanho, com no máximo uma gravação por vez.
+ * <p>
+ * A gravação usa uma das configurações do JDK ({@code default} ou {@code profile}), que já incluem
+ * GC, alocação, locks e amostragem de CPU, além dos eventos do serviço de produtos, habilitados por padrão.
+ * Uma gravação encerrada continua disponível para download até a próxima ser iniciada.
+ */
+public class GravacaoJfr {
+
+    static final String NOME = "produto";
+
+    private final Duration duracaoMaxima;
+
+    private final long tamanhoMaximo;
+
+    private Recording gravacao;
+
+    private String configuracao;
+
+    public GravacaoJfr(Duration duracaoMaxima, long tamanhoMaximo) {
+        this.duracaoMaxima = duracaoMaxima;
+        this.tamanhoMaximo = tamanhoMaximo;
+    }
+
+    public record Estado(String estado, String configuracao, Instant inicio, Duration duracao, long tamanho) {
+    }
+
+    /**
+     * Inicia uma gravação, a menos que já haja uma em andamento.
+     *
+     * @param duracao limitada à duração máxima; quando ausente, a duração máxima é usada
+     */
+    public synchronized Estado iniciar(Duration duracao, String configuracao) throws IOException, ParseException {
+        if (this.gravacao != null && this.gravacao.getState() == RecordingState.RUNNING)
+            return this.estado();
+        var gravacao = new Recording(Configuration.getConfiguration(configuracao));
+        gravacao.setName(NOME);
+        gravacao.setToDisk(true);
+        gravacao.setMaxSize(this.tamanhoMaximo);
+        gravacao.setDuration(duracao == null || duracao.compareTo(this.duracaoMaxima) > 0 ? this.duracaoMaxima : duracao);
+        gravacao.start();
+        if (this.gravacao != null)
+            this.gravacao.close();
+        this.gravacao = gravacao;
+        this.configuracao = configuracao;
+        return this.estado();
+    }
+
+    public synchronized Estado parar() {
+        if (this.gravacao != null && this.gravacao.getState() == RecordingState.RUNNING)
+            this.gravacao.stop();
+        return this.estado();
+    }
+
+    public synchronized Estado estado() {
+        if (this.gravacao == null)
+            return new Estado(RecordingState.NEW.name(), null, null, null, 0);
+        return new Estado(
+                this.gravacao.getState().name(),
+                this.configuracao,
+                this.gravacao.getStartTime(),
+                this.gravacao.getDuration(),
+                this.gravacao.getSize()
+        );
+    }
+
+    /**
+     * O conteúdo é gravado em um arquivo temporário e lido dele na escrita da resposta, sem passar pelo heap;
+     * o arquivo é removido quando a leitura termina.
+     *
+     * @return a gravação em andamento ou a última encerrada, no formato {@code .jfr}
+     */
+    public synchronized Optional<Resource> dump() {
+        if (this.gravacao == null || this.gravacao.getState() == RecordingState.CLOSED)
+            return Optional.empty();
+        try {
+            var arquivo = Files.createTempFile(NOME, ".jfr");
+            try {
+                this.gravacao.dump(arquivo);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(arquivo);
+                throw e;
+            }
+            arquivo.toFile().deleteOnExit();
+            return Optional.of(new ArquivoTemporario(arquivo));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Arquivo removido ao fechar a leitura do seu conteúdo.
+     */
+    private static final class ArquivoTemporario extends FileSystemResource {
+
+        private final Path arquivo;
+
+        ArquivoTemporario(Path arquivo) {
+            super(arquivo);
+            this.arquivo = arquivo;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new FilterInputStream(super.getInputStream()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        Files.deleteIfExists(ArquivoTemporario.this.arquivo);
+                    }
+                }
+            };
+        }
+    }
+
+    public synchronized void encerrar() {
+        if (this.gravacao != null)
+            this.gravacao.close();
+        this.gravacao = null;
+    }
+}
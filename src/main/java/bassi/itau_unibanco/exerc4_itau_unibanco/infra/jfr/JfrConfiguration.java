@@ -0,0 +1,66 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.jfr;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Eventos JFR do serviço de produtos e gravação sob demanda, habilitados com {@code produto.jfr.enabled=true}.
+ * <p>
+ * Os eventos das operações de produto, das mensagens e da espera por conexões do Hikari só são registrados
+ * durante uma gravação, iniciada pelo endpoint {@code /actuator/jfr} ou por ferramentas externas; fora dela,
+ * o custo é uma verificação por operação.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "produto.jfr", name = "enabled", havingValue = "true")
+public class JfrConfiguration {
+
+    @Bean
+    public JfrEventosAspect jfrEventosAspect() {
+        return new JfrEventosAspect();
+    }
+
+    @Bean
+    public static BeanPostProcessor jfrDataSourcePostProcessor() {
+        return new EsperaConexaoPostProcessor();
+    }
+
+    @Bean(destroyMethod = "encerrar")
+    public GravacaoJfr gravacaoJfr(
+            @Value("${produto.jfr.duracao-maxima:10m}") Duration duracaoMaxima,
+            @Value("${produto.jfr.tamanho-maximo:100MB}") DataSize tamanhoMaximo
+    ) {
+        return new GravacaoJfr(duracaoMaxima, tamanhoMaximo.toBytes());
+    }
+
+    @Bean
+    public JfrEndpoint jfrEndpoint(GravacaoJfr gravacao) {
+        return new JfrEndpoint(gravacao);
+    }
+
+    /**
+     * Executado antes dos demais pós-processadores, que podem envolver o pool em outros proxies.
+     * Com sharding, os pools de cada shard não são beans e não registram a espera por conexão.
+     */
+    private static class EsperaConexaoPostProcessor implements BeanPostProcessor, Ordered {
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (bean instanceof HikariDataSource pool)
+                return new EsperaConexaoDataSource(pool);
+            return bean;
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+    }
+}
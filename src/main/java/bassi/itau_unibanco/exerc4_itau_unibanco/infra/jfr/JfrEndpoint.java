@@ -0,0 +1,64 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.jfr;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.time.Duration;
+
+/**
+ * Controla a {@link GravacaoJfr}: {@code POST /actuator/jfr} inicia, {@code DELETE /actuator/jfr} encerra,
+ * {@code GET /actuator/jfr} consulta o estado e {@code GET /actuator/jfr/dump} baixa a gravação.
+ */
+@Endpoint(id = "jfr")
+@RequiredArgsConstructor
+public class JfrEndpoint {
+
+    static final String DUMP = "dump";
+
+    private final GravacaoJfr gravacao;
+
+    @ReadOperation
+    public GravacaoJfr.Estado estado() {
+        return this.gravacao.estado();
+    }
+
+    /**
+     * @param duracaoSegundos limitada a {@code produto.jfr.duracao-maxima}
+     * @param configuracao {@code default} (padrão) ou {@code profile}, com mais detalhes e maior custo
+     */
+    @WriteOperation
+    public GravacaoJfr.Estado iniciar(@Nullable Long duracaoSegundos, @Nullable String configuracao) {
+        var nome = configuracao == null ? "default" : configuracao;
+        if (!nome.equals("default") && !nome.equals("profile"))
+            throw new InvalidEndpointRequestException("Configuração JFR %s inexistente.".formatted(nome), "Configuração JFR inexistente.");
+        try {
+            return this.gravacao.iniciar(duracaoSegundos == null ? null : Duration.ofSeconds(duracaoSegundos), nome);
+        } catch (IOException | ParseException e) {
+            throw new IllegalStateException("Falha ao carregar a configuração JFR %s.".formatted(nome), e);
+        }
+    }
+
+    @DeleteOperation
+    public GravacaoJfr.Estado parar() {
+        return this.gravacao.parar();
+    }
+
+    @ReadOperation(produces = "application/octet-stream")
+    public WebEndpointResponse<Resource> dump(@Selector String recurso) {
+        if (!DUMP.equals(recurso))
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        return this.gravacao.dump()
+                .map(WebEndpointResponse::new)
+                .orElseGet(() -> new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND));
+    }
+}
@@ -0,0 +1,89 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.jfr;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracoesProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoResponse;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Emite os eventos JFR das operações de produto e das mensagens publicadas e consumidas.
+ * Sem uma gravação ativa que habilite o evento, a operação é executada sem nenhum registro.
+ */
+@Aspect
+class JfrEventosAspect {
+
+    static final String SUCESSO = "sucesso";
+
+    @Around("execution(public * bassi.itau_unibanco.exerc4_itau_unibanco.service.ProdutoService.*(..))")
+    public Object operacao(ProceedingJoinPoint joinPoint) throws Throwable {
+        var evento = new OperacaoProdutoEvento();
+        if (!evento.isEnabled())
+            return joinPoint.proceed();
+        evento.begin();
+        evento.metodo = joinPoint.getSignature().getName();
+        evento.produtoId = Arrays.stream(joinPoint.getArgs())
+                .filter(UUID.class::isInstance)
+                .map(Object::toString)
+                .findFirst()
+                .orElse(null);
+        try {
+            var resultado = joinPoint.proceed();
+            if (evento.produtoId == null && resultado instanceof ProdutoResponse produto && produto.id() != null)
+                evento.produtoId = produto.id().toString();
+            evento.linhas = linhas(resultado);
+            evento.resultado = SUCESSO;
+            return resultado;
+        } catch (Throwable e) {
+            evento.resultado = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            evento.commit();
+        }
+    }
+
+    @Around("execution(public * bassi.itau_unibanco.exerc4_itau_unibanco.producer.*.*(..))")
+    public Object publicacao(ProceedingJoinPoint joinPoint) throws Throwable {
+        return this.mensagem(joinPoint, "publicacao");
+    }
+
+    @Around("@annotation(org.springframework.amqp.rabbit.annotation.RabbitListener)")
+    public Object consumo(ProceedingJoinPoint joinPoint) throws Throwable {
+        return this.mensagem(joinPoint, "consumo");
+    }
+
+    private Object mensagem(ProceedingJoinPoint joinPoint, String direcao) throws Throwable {
+        var evento = new MensagemEvento();
+        if (!evento.isEnabled())
+            return joinPoint.proceed();
+        evento.begin();
+        evento.direcao = direcao;
+        evento.componente = joinPoint.getSignature().getDeclaringType().getSimpleName();
+        evento.mensagens = joinPoint.getArgs().length > 0 && joinPoint.getArgs()[0] instanceof Collection<?> lote ? lote.size() : 1;
+        try {
+            var resultado = joinPoint.proceed();
+            evento.resultado = SUCESSO;
+            return resultado;
+        } catch (Throwable e) {
+            evento.resultado = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            evento.commit();
+        }
+    }
+
+    private static int linhas(Object resultado) {
+        if (resultado instanceof Collection<?> colecao)
+            return colecao.size();
+        if (resultado instanceof AlteracoesProdutoResponse alteracoes)
+            return alteracoes.alteracoes().size();
+        if (resultado instanceof Optional<?> opcional)
+            return opcional.isPresent() ? 1 : 0;
+        return resultado == null ? 0 : 1;
+    }
+}
@@ -0,0 +1,33 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name(MensagemEvento.NOME)
+@Label("Mensagem de Produto")
+@Category({"Produto", "Mensageria"})
+@Description("Publicação ou consumo de mensagens no RabbitMQ.")
+@StackTrace(false)
+class MensagemEvento extends Event {
+
+    static final String NOME = "bassi.produto.Mensagem";
+
+    @Label("Direção")
+    @Description("\"publicacao\" ou \"consumo\".")
+    String direcao;
+
+    @Label("Componente")
+    String componente;
+
+    @Label("Mensagens")
+    @Description("Quantidade de mensagens; lotes contam cada item.")
+    int mensagens;
+
+    @Label("Resultado")
+    @Description("\"sucesso\" ou o nome da exceção lançada.")
+    String resultado;
+}
@@ -0,0 +1,32 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name(OperacaoProdutoEvento.NOME)
+@Label("Operação de Produto")
+@Category({"Produto", "Serviço"})
+@Description("Execução de uma operação do serviço de produtos.")
+@StackTrace(false)
+class OperacaoProdutoEvento extends Event {
+
+    static final String NOME = "bassi.produto.Operacao";
+
+    @Label("Método")
+    String metodo;
+
+    @Label("Produto")
+    String produtoId;
+
+    @Label("Resultado")
+    @Description("\"sucesso\" ou o nome da exceção lançada.")
+    String resultado;
+
+    @Label("Linhas")
+    @Description("Quantidade de produtos retornados.")
+    int linhas;
+}
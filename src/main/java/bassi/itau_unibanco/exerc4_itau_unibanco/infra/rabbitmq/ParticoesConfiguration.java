@@ -0,0 +1,95 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.rabbitmq;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.listener.CadastroProdutoListener;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.RetryInterceptorBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.retry.RepublishMessageRecoverer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.util.ArrayList;
+
+/**
+ * Com {@code produto.particoes.enabled=true}, os eventos de produto são consumidos por partição: cada produto
+ * pertence a uma das {@code produto.particoes.quantidade} filas, e cada fila tem um único consumidor ativo no
+ * cluster ({@code x-single-active-consumer}), processando uma mensagem por vez. Os eventos de um mesmo produto
+ * são processados na ordem de publicação, e produtos de partições diferentes em paralelo.
+ * <p>
+ * A quantidade de partições só pode ser alterada com as filas drenadas, já que muda a partição dos produtos.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "produto.particoes", name = "enabled", havingValue = "true")
+@Profile("!replica")
+public class ParticoesConfiguration {
+
+    @Bean
+    public Declarables produtoParticoesTopology(@Value("${produto.particoes.quantidade:8}") int particoes) {
+        var exchange = new TopicExchange(RabbitMqConfiguration.PRODUTO_EVENTOS_EXCHANGE);
+        var declarables = new ArrayList<Declarable>();
+        for (var particao = 0; particao < particoes; particao++) {
+            var queue = QueueBuilder.durable(particaoQueue(particao))
+                    .singleActiveConsumer()
+                    .build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(exchange).with("produto.*.%d".formatted(particao)));
+        }
+        declarables.add(QueueBuilder.durable(RabbitMqConfiguration.PRODUTO_PARTICOES_MEMBROS_QUEUE).build());
+        log.info("Consumo particionado habilitado com {} partições.", particoes);
+        return new Declarables(declarables);
+    }
+
+    public static String particaoQueue(int particao) {
+        return RabbitMqConfiguration.PRODUTO_PARTICAO_QUEUE_PREFIX + particao;
+    }
+
+    @Bean
+    public ParticoesConsumo particoesConsumo(
+            CadastroProdutoListener listener,
+            @Qualifier(RabbitMqConfiguration.PRODUTO_PARTICOES_CONTAINER_FACTORY) SimpleRabbitListenerContainerFactory factory,
+            AmqpAdmin admin,
+            RabbitListenerEndpointRegistry registry,
+            @Value("${produto.particoes.quantidade:8}") int particoes
+    ) {
+        return new ParticoesConsumo(listener, factory, admin, registry, particoes);
+    }
+
+    /**
+     * Um consumidor por partição em cada instância. Falhas são retentadas na própria thread, bloqueando a
+     * partição para não reordenar os eventos do produto; esgotadas as tentativas, a mensagem é estacionada
+     * na DLQ (parking lot) das retentativas de cadastro.
+     */
+    @Bean(RabbitMqConfiguration.PRODUTO_PARTICOES_CONTAINER_FACTORY)
+    public SimpleRabbitListenerContainerFactory produtoParticoesContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            RabbitTemplate rabbitTemplate,
+            @Value("${produto.particoes.prefetch:50}") int prefetch
+    ) {
+        var factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setConcurrentConsumers(1);
+        factory.setMaxConcurrentConsumers(1);
+        factory.setPrefetchCount(prefetch);
+        factory.setAdviceChain(RetryInterceptorBuilder.stateless()
+                .maxAttempts(3)
+                .backOffOptions(1000, 2.0, 5000)
+                .recoverer(new RepublishMessageRecoverer(
+                        rabbitTemplate,
+                        RabbitMqConfiguration.CADASTRO_PRODUTO_RETRY_EXCHANGE,
+                        RabbitMqConfiguration.PARKING_LOT_ROUTING_KEY
+                ))
+                .build());
+        return factory;
+    }
+}
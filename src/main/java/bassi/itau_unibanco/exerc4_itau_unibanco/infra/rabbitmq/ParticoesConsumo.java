@@ -0,0 +1,151 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.rabbitmq;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.listener.CadastroProdutoListener;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.ListenerContainerConsumerFailedEvent;
+import org.springframework.amqp.rabbit.listener.MethodRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.handler.annotation.support.DefaultMessageHandlerMethodFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Consumidores das partições de eventos de produto desta instância e rebalanceamento entre as instâncias.
+ * <p>
+ * Cada instância registra um consumidor em todas as partições e um na fila de membros, sem mensagens, cuja
+ * quantidade de consumidores é a quantidade de instâncias. O broker entrega cada partição a um único consumidor
+ * e mantém os demais em espera, então uma instância nova começa sem partições ativas. O AMQP não informa a
+ * ativação do consumidor, então a partição passa a ser desta instância na primeira entrega ao seu consumidor e
+ * continua sendo, mesmo sem tráfego, até o consumidor ser reiniciado ou falhar. A cada intervalo, a instância com
+ * mais partições ativas que a sua parte reinicia o consumidor das excedentes, que voltam ao fim da fila de espera
+ * e passam ao próximo consumidor. As mensagens não confirmadas voltam à partição, preservando a ordem.
+ */
+@Slf4j
+public class ParticoesConsumo implements RabbitListenerConfigurer {
+
+    private static final String ENDPOINT_PREFIX = "particao-";
+
+    private final CadastroProdutoListener listener;
+
+    private final SimpleRabbitListenerContainerFactory factory;
+
+    private final AmqpAdmin admin;
+
+    private final RabbitListenerEndpointRegistry registry;
+
+    private final int particoes;
+
+    private final Set<String> ativas = ConcurrentHashMap.newKeySet();
+
+    public ParticoesConsumo(
+            CadastroProdutoListener listener,
+            SimpleRabbitListenerContainerFactory factory,
+            AmqpAdmin admin,
+            RabbitListenerEndpointRegistry registry,
+            int particoes
+    ) {
+        this.listener = listener;
+        this.factory = factory;
+        this.admin = admin;
+        this.registry = registry;
+        this.particoes = particoes;
+    }
+
+    @Override
+    @SneakyThrows
+    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+        this.factory.setAfterReceivePostProcessors(this::registrarEntrega);
+        var handlerMethodFactory = new DefaultMessageHandlerMethodFactory();
+        handlerMethodFactory.afterPropertiesSet();
+        var metodo = CadastroProdutoListener.class.getMethod("listen", org.springframework.messaging.Message.class);
+        for (var particao = 0; particao < this.particoes; particao++) {
+            var endpoint = new MethodRabbitListenerEndpoint();
+            endpoint.setId(endpointId(particao));
+            endpoint.setQueueNames(ParticoesConfiguration.particaoQueue(particao));
+            endpoint.setBean(this.listener);
+            endpoint.setMethod(metodo);
+            endpoint.setMessageHandlerMethodFactory(handlerMethodFactory);
+            registrar.registerEndpoint(endpoint, this.factory);
+        }
+        var membro = new SimpleRabbitListenerEndpoint();
+        membro.setId(ENDPOINT_PREFIX + "membro");
+        membro.setQueueNames(RabbitMqConfiguration.PRODUTO_PARTICOES_MEMBROS_QUEUE);
+        membro.setMessageListener(message -> {
+        });
+        registrar.registerEndpoint(membro, this.factory);
+    }
+
+    /**
+     * Marca a partição como ativa nesta instância; aplicado a cada mensagem recebida.
+     */
+    Message registrarEntrega(Message message) {
+        var fila = message.getMessageProperties().getConsumerQueue();
+        if (fila != null)
+            this.ativas.add(fila);
+        return message;
+    }
+
+    /**
+     * Um consumidor que falha é recriado no fim da fila de espera, e a partição passa a outra instância.
+     */
+    @EventListener
+    public void consumidorFalhou(ListenerContainerConsumerFailedEvent evento) {
+        if (evento.getSource() instanceof AbstractMessageListenerContainer container)
+            Arrays.asList(container.getQueueNames()).forEach(this.ativas::remove);
+    }
+
+    @Scheduled(fixedDelayString = "${produto.particoes.rebalanceamento-ms:10000}", initialDelayString = "${produto.particoes.rebalanceamento-ms:10000}")
+    public void rebalancear() {
+        var membros = this.admin.getQueueInfo(RabbitMqConfiguration.PRODUTO_PARTICOES_MEMBROS_QUEUE);
+        if (membros == null || membros.getConsumerCount() <= 1)
+            return;
+        var ativas = this.ativas();
+        var excedentes = excedentes(ativas, this.particoes, membros.getConsumerCount());
+        if (excedentes.isEmpty())
+            return;
+        log.info("Liberando {} de {} partições ativas para {} instâncias: {}.", excedentes.size(), ativas.size(), membros.getConsumerCount(), excedentes);
+        for (var particao : excedentes) {
+            var container = this.registry.getListenerContainer(endpointId(particao));
+            this.ativas.remove(ParticoesConfiguration.particaoQueue(particao));
+            container.stop();
+            container.start();
+        }
+    }
+
+    /**
+     * Partições cujo consumidor desta instância recebeu mensagens desde o seu último início.
+     */
+    List<Integer> ativas() {
+        var ativas = new ArrayList<Integer>();
+        for (var particao = 0; particao < this.particoes; particao++)
+            if (this.ativas.contains(ParticoesConfiguration.particaoQueue(particao)))
+                ativas.add(particao);
+        return ativas;
+    }
+
+    /**
+     * Partições ativas além da parte desta instância, {@code particoes / instancias} arredondado para cima.
+     */
+    static List<Integer> excedentes(List<Integer> ativas, int particoes, int instancias) {
+        var parte = (particoes + instancias - 1) / instancias;
+        return ativas.size() > parte ? ativas.subList(parte, ativas.size()) : List.of();
+    }
+
+    private static String endpointId(int particao) {
+        return ENDPOINT_PREFIX + particao;
+    }
+}
@@ -0,0 +1,228 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.rabbitmq;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Codifica os eventos de produto em um formato binário compacto e versionado; as demais mensagens
+ * (e eventos ainda em JSON) passam pelo conversor delegado.
+ * <p>
+ * O corpo tem a quantidade de eventos seguida dos eventos, com inteiros em tamanho variável (varint),
+ * UUID em 16 bytes, preço como escala e valor sem escala, e um byte com os campos opcionais presentes.
+ * A operação é gravada pela sua posição no enum, então novas operações só podem ser acrescentadas
+ * ao final; qualquer outra mudança de layout exige uma nova {@link #VERSAO}, informada no cabeçalho
+ * {@value #X_VERSAO}. Lotes de eventos acima de {@code limiteCompressao} bytes são comprimidos com deflate.
+ */
+public class ProdutoEventoMessageConverter implements MessageConverter {
+
+    public static final String CONTENT_TYPE = "application/x-produto-evento";
+
+    public static final String X_VERSAO = "x-produto-evento-versao";
+
+    public static final String X_LOTE = "x-produto-evento-lote";
+
+    public static final String DEFLATE = "deflate";
+
+    public static final int VERSAO = 1;
+
+    private static final int NOME = 1;
+
+    private static final int PRECO = 1 << 1;
+
+    private static final int CATEGORIA = 1 << 2;
+
+    private static final AlteracaoProdutoEntity.Operacao[] OPERACOES = AlteracaoProdutoEntity.Operacao.values();
+
+    private final MessageConverter delegate;
+
+    private final int limiteCompressao;
+
+    public ProdutoEventoMessageConverter(MessageConverter delegate, int limiteCompressao) {
+        this.delegate = delegate;
+        this.limiteCompressao = limiteCompressao;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) {
+        if (object instanceof AlteracaoProdutoResponse evento)
+            return this.toMessage(List.of(evento), false, messageProperties);
+        if (object instanceof Collection<?> lote && !lote.isEmpty() && lote.stream().allMatch(AlteracaoProdutoResponse.class::isInstance))
+            return this.toMessage(lote.stream().map(AlteracaoProdutoResponse.class::cast).toList(), true, messageProperties);
+        return this.delegate.toMessage(object, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) {
+        var properties = message.getMessageProperties();
+        if (!CONTENT_TYPE.equals(properties.getContentType()))
+            return this.delegate.fromMessage(message);
+        var versao = properties.getHeader(X_VERSAO) instanceof Number numero ? numero.intValue() : -1;
+        if (versao != VERSAO)
+            throw new MessageConversionException("Versão %d do evento de produto não suportada.".formatted(versao));
+        var corpo = DEFLATE.equals(properties.getContentEncoding()) ? descomprimir(message.getBody()) : message.getBody();
+        try {
+            var eventos = decodificar(ByteBuffer.wrap(corpo));
+            return Boolean.TRUE.equals(properties.getHeader(X_LOTE)) ? eventos : eventos.get(0);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new MessageConversionException("Evento de produto malformado.", e);
+        }
+    }
+
+    private Message toMessage(List<AlteracaoProdutoResponse> eventos, boolean lote, MessageProperties properties) {
+        var corpo = codificar(eventos);
+        if (lote && corpo.length >= this.limiteCompressao) {
+            corpo = comprimir(corpo);
+            properties.setContentEncoding(DEFLATE);
+        }
+        properties.setContentType(CONTENT_TYPE);
+        properties.setContentLength(corpo.length);
+        properties.setHeader(X_VERSAO, VERSAO);
+        if (lote)
+            properties.setHeader(X_LOTE, true);
+        return new Message(corpo, properties);
+    }
+
+    static byte[] codificar(List<AlteracaoProdutoResponse> eventos) {
+        var out = new ByteArrayOutputStream(64 * eventos.size());
+        escreverVarLong(out, eventos.size());
+        for (var evento : eventos) {
+            escreverVarLong(out, evento.sequencia());
+            escreverLong(out, evento.produtoId().getMostSignificantBits());
+            escreverLong(out, evento.produtoId().getLeastSignificantBits());
+            out.write(evento.operacao().ordinal());
+            out.write((evento.nome() != null ? NOME : 0)
+                    | (evento.preco() != null ? PRECO : 0)
+                    | (evento.categoria() != null ? CATEGORIA : 0));
+            if (evento.nome() != null)
+                escreverTexto(out, evento.nome());
+            if (evento.preco() != null) {
+                escreverVarLong(out, zigZag(evento.preco().scale()));
+                escreverVarLong(out, zigZag(evento.preco().unscaledValue().longValueExact()));
+            }
+            if (evento.categoria() != null)
+                escreverTexto(out, evento.categoria());
+            escreverVarLong(out, zigZag(evento.registradoEm().getEpochSecond()));
+            escreverVarLong(out, evento.registradoEm().getNano());
+        }
+        return out.toByteArray();
+    }
+
+    static List<AlteracaoProdutoResponse> decodificar(ByteBuffer in) {
+        var quantidade = (int) lerVarLong(in);
+        var eventos = new ArrayList<AlteracaoProdutoResponse>(quantidade);
+        for (var i = 0; i < quantidade; i++) {
+            var sequencia = lerVarLong(in);
+            var produtoId = new UUID(in.getLong(), in.getLong());
+            var operacao = OPERACOES[in.get()];
+            var campos = in.get();
+            var nome = (campos & NOME) != 0 ? lerTexto(in) : null;
+            BigDecimal preco = null;
+            if ((campos & PRECO) != 0) {
+                var escala = (int) zagZig(lerVarLong(in));
+                preco = new BigDecimal(BigInteger.valueOf(zagZig(lerVarLong(in))), escala);
+            }
+            var categoria = (campos & CATEGORIA) != 0 ? lerTexto(in) : null;
+            var registradoEm = Instant.ofEpochSecond(zagZig(lerVarLong(in)), lerVarLong(in));
+            eventos.add(new AlteracaoProdutoResponse(sequencia, produtoId, operacao, nome, preco, categoria, registradoEm));
+        }
+        return eventos;
+    }
+
+    private static byte[] comprimir(byte[] corpo) {
+        var deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(corpo);
+            deflater.finish();
+            var out = new ByteArrayOutputStream(corpo.length / 2);
+            var buffer = new byte[4096];
+            while (!deflater.finished())
+                out.write(buffer, 0, deflater.deflate(buffer));
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] descomprimir(byte[] corpo) {
+        var inflater = new Inflater();
+        try {
+            inflater.setInput(corpo);
+            var out = new ByteArrayOutputStream(corpo.length * 4);
+            var buffer = new byte[4096];
+            while (!inflater.finished()) {
+                var lidos = inflater.inflate(buffer);
+                if (lidos == 0 && inflater.needsInput())
+                    throw new MessageConversionException("Lote de eventos de produto comprimido truncado.");
+                out.write(buffer, 0, lidos);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new MessageConversionException("Lote de eventos de produto comprimido inválido.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void escreverTexto(ByteArrayOutputStream out, String texto) {
+        var bytes = texto.getBytes(StandardCharsets.UTF_8);
+        escreverVarLong(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private static String lerTexto(ByteBuffer in) {
+        var bytes = new byte[(int) lerVarLong(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void escreverLong(ByteArrayOutputStream out, long valor) {
+        for (var deslocamento = 56; deslocamento >= 0; deslocamento -= 8)
+            out.write((int) (valor >>> deslocamento));
+    }
+
+    private static void escreverVarLong(ByteArrayOutputStream out, long valor) {
+        while ((valor & ~0x7FL) != 0) {
+            out.write((int) (valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+        out.write((int) valor);
+    }
+
+    private static long lerVarLong(ByteBuffer in) {
+        long valor = 0;
+        for (var deslocamento = 0; deslocamento < 64; deslocamento += 7) {
+            var b = in.get();
+            valor |= (long) (b & 0x7F) << deslocamento;
+            if ((b & 0x80) == 0)
+                return valor;
+        }
+        throw new IllegalArgumentException("Varint com mais de 10 bytes.");
+    }
+
+    private static long zigZag(long valor) {
+        return (valor << 1) ^ (valor >> 63);
+    }
+
+    private static long zagZig(long valor) {
+        return (valor >>> 1) ^ -(valor & 1);
+    }
+}
@@ -1,23 +1,223 @@
 package bassi.itau_unibanco.exerc4_itau_unibanco.infra.rabbitmq;
 
-import org.springframework.amqp.core.Declarable;
-import org.springframework.amqp.core.Queue;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.util.DistribuicaoPorId;
+import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.RetryInterceptorBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
 
 @Configuration
 public class RabbitMqConfiguration {
 
     public static final String CADASTRO_PRODUTO_QUEUE = "itau-unibanco-cadastro-produto";
 
+    public static final String CADASTRO_PRODUTO_RETRY_EXCHANGE = "itau-unibanco-cadastro-produto.retry";
+
+    public static final String CADASTRO_PRODUTO_PARKING_LOT_QUEUE = "itau-unibanco-cadastro-produto.parking-lot";
+
+    public static final String PARKING_LOT_ROUTING_KEY = "parking-lot";
+
+    public static final String CADASTRO_PRODUTO_CONTAINER_FACTORY = "cadastroProdutoContainerFactory";
+
+    public static final String PRODUTO_EVENTOS_EXCHANGE = "itau-unibanco-produto.eventos";
+
+    public static final String PRODUTO_STREAM_QUEUE_BEAN = "produtoStreamQueue";
+
+    public static final String PRODUTO_PARTICAO_QUEUE_PREFIX = "itau-unibanco-produto.particao.";
+
+    public static final String PRODUTO_PARTICOES_MEMBROS_QUEUE = "itau-unibanco-produto.particoes.membros";
+
+    public static final String PRODUTO_PARTICOES_CONTAINER_FACTORY = "produtoParticoesContainerFactory";
+
+    public static final String PRODUTO_SNAPSHOT_SOLICITACOES_QUEUE = "itau-unibanco-produto.snapshot.solicitacoes";
+
+    public static final String INGESTAO_PRODUTO_QUEUE = "itau-unibanco-ingestao-produto";
+
+    public static final String INGESTAO_PRODUTO_RETRY_EXCHANGE = "itau-unibanco-ingestao-produto.retry";
+
+    public static final String INGESTAO_PRODUTO_PARKING_LOT_QUEUE = "itau-unibanco-ingestao-produto.parking-lot";
+
+    public static final String INGESTAO_PRODUTO_CONTAINER_FACTORY = "ingestaoProdutoContainerFactory";
+
     @Bean
     public Declarable produtoCadastradoQueue() {
         return new Queue(CADASTRO_PRODUTO_QUEUE);
     }
 
+    /**
+     * Topologia de retentativas da fila de cadastro: uma fila de espera por tentativa, cujo TTL
+     * devolve a mensagem à fila de origem via dead-letter, e uma DLQ final (parking lot).
+     */
+    @Bean
+    public Declarables cadastroProdutoRetryTopology(@Value("${produto.cadastro.retentativas.atrasos-ms}") List<Long> atrasos) {
+        return retentativas(CADASTRO_PRODUTO_RETRY_EXCHANGE, CADASTRO_PRODUTO_QUEUE, CADASTRO_PRODUTO_PARKING_LOT_QUEUE, atrasos);
+    }
+
+    /**
+     * Mesma topologia para a fila de ingestão, com atrasos próprios: as falhas ali são de infraestrutura
+     * (banco indisponível, timeouts), já que dados inválidos são rejeitados pelo listener.
+     */
+    @Bean
+    public Declarables ingestaoProdutoRetryTopology(@Value("${produto.ingestao.retentativas.atrasos-ms}") List<Long> atrasos) {
+        return retentativas(INGESTAO_PRODUTO_RETRY_EXCHANGE, INGESTAO_PRODUTO_QUEUE, INGESTAO_PRODUTO_PARKING_LOT_QUEUE, atrasos);
+    }
+
+    private static Declarables retentativas(String retryExchange, String origem, String parkingLotQueue, List<Long> atrasos) {
+        var exchange = new DirectExchange(retryExchange);
+        var declarables = new ArrayList<Declarable>();
+        declarables.add(exchange);
+        for (var tentativa = 1; tentativa <= atrasos.size(); tentativa++) {
+            var queue = QueueBuilder.durable(retentativaRoutingKey(retryExchange, tentativa))
+                    .ttl(atrasos.get(tentativa - 1).intValue())
+                    .deadLetterExchange("")
+                    .deadLetterRoutingKey(origem)
+                    .build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(exchange).with(queue.getName()));
+        }
+        var parkingLot = QueueBuilder.durable(parkingLotQueue).build();
+        declarables.add(parkingLot);
+        declarables.add(BindingBuilder.bind(parkingLot).to(exchange).with(PARKING_LOT_ROUTING_KEY));
+        return new Declarables(declarables);
+    }
+
+    public static String retentativaRoutingKey(String retryExchange, int tentativa) {
+        return "%s.%d".formatted(retryExchange, tentativa);
+    }
+
+    /**
+     * Exchange de eventos de produto (cadastro, atualização e remoção), roteados por operação e partição
+     * ({@code produto.<operacao>.<particao>}). A fila de cadastro recebe apenas os cadastros, exceto com o
+     * consumo particionado, que recebe todos os eventos nas filas das partições; o stream de eventos de cada
+     * instância recebe todos.
+     */
     @Bean
-    public Jackson2JsonMessageConverter jackson2JsonMessageConverter() {
-        return new Jackson2JsonMessageConverter();
+    public Declarables produtoEventosTopology(@Value("${produto.particoes.enabled:false}") boolean particionado) {
+        var exchange = new TopicExchange(PRODUTO_EVENTOS_EXCHANGE);
+        if (particionado)
+            return new Declarables(exchange);
+        return new Declarables(
+                exchange,
+                BindingBuilder.bind(new Queue(CADASTRO_PRODUTO_QUEUE))
+                        .to(exchange)
+                        .with(eventoRoutingKey(AlteracaoProdutoEntity.Operacao.CADASTRO, "*"))
+        );
+    }
+
+    /**
+     * Fila exclusiva e temporária de cada instância, removida quando a instância se desconecta,
+     * que alimenta os clientes do stream conectados a ela. As réplicas de leitura usam uma fila durável própria.
+     */
+    @Bean(PRODUTO_STREAM_QUEUE_BEAN)
+    @Profile("!replica")
+    public Queue produtoStreamQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    @Profile("!replica")
+    public Binding produtoStreamBinding(@Qualifier(PRODUTO_STREAM_QUEUE_BEAN) Queue produtoStreamQueue) {
+        return BindingBuilder.bind(produtoStreamQueue)
+                .to(new TopicExchange(PRODUTO_EVENTOS_EXCHANGE))
+                .with("produto.#");
+    }
+
+    public static String eventoRoutingKey(AlteracaoProdutoEntity.Operacao operacao, int particao) {
+        return eventoRoutingKey(operacao, String.valueOf(particao));
+    }
+
+    static String eventoRoutingKey(AlteracaoProdutoEntity.Operacao operacao, String particao) {
+        return "produto.%s.%s".formatted(operacao.name().toLowerCase(), particao);
+    }
+
+    /**
+     * Partição dos eventos de um produto, estável enquanto a quantidade de partições não mudar.
+     */
+    public static int particao(UUID produtoId, int particoes) {
+        return DistribuicaoPorId.parte(produtoId, particoes);
+    }
+
+    /**
+     * Falhas no listener de cadastro não são retentadas na thread do consumidor: a mensagem é
+     * imediatamente republicada na topologia de retentativas e o consumo segue sem pausa.
+     */
+    @Bean(CADASTRO_PRODUTO_CONTAINER_FACTORY)
+    public SimpleRabbitListenerContainerFactory cadastroProdutoContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            RabbitTemplate rabbitTemplate,
+            @Value("${produto.cadastro.retentativas.atrasos-ms}") List<Long> atrasos
+    ) {
+        var factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setAdviceChain(RetryInterceptorBuilder.stateless()
+                .maxAttempts(1)
+                .recoverer(new RetentativaMessageRecoverer(rabbitTemplate, CADASTRO_PRODUTO_RETRY_EXCHANGE, atrasos.size()))
+                .build());
+        return factory;
+    }
+
+    /**
+     * Pedidos de snapshot do catálogo das réplicas de leitura, atendidos por qualquer instância primária.
+     */
+    @Bean
+    public Declarable produtoSnapshotSolicitacoesQueue() {
+        return new Queue(PRODUTO_SNAPSHOT_SOLICITACOES_QUEUE, true);
+    }
+
+    @Bean
+    public Declarable ingestaoProdutoQueue() {
+        return new Queue(INGESTAO_PRODUTO_QUEUE, true);
+    }
+
+    /**
+     * Eventos de produto trafegam no formato binário versionado; as demais mensagens seguem em JSON.
+     */
+    @Bean
+    public MessageConverter messageConverter(@Value("${produto.eventos.limite-compressao-bytes:1024}") int limiteCompressao) {
+        return new ProdutoEventoMessageConverter(new Jackson2JsonMessageConverter(), limiteCompressao);
+    }
+
+    /**
+     * Consome a fila de ingestão em lotes, entregando ao listener até {@code tamanhoLote} mensagens
+     * por vez para que sejam gravadas em uma única transação. As mensagens de um lote que falha são
+     * republicadas na topologia de retentativas da ingestão, sem pausar o consumidor, e estacionadas na
+     * DLQ da ingestão ao esgotar as tentativas, de onde podem ser devolvidas à fila após a correção.
+     */
+    @Bean(INGESTAO_PRODUTO_CONTAINER_FACTORY)
+    public SimpleRabbitListenerContainerFactory ingestaoProdutoContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            RabbitTemplate rabbitTemplate,
+            @Value("${produto.ingestao.tamanho-lote}") int tamanhoLote,
+            @Value("${produto.ingestao.espera-lote-ms}") long esperaLote,
+            @Value("${produto.ingestao.retentativas.atrasos-ms}") List<Long> atrasos
+    ) {
+        var factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(tamanhoLote);
+        factory.setPrefetchCount(tamanhoLote);
+        factory.setReceiveTimeout(esperaLote);
+        factory.setAdviceChain(RetryInterceptorBuilder.stateless()
+                .maxAttempts(1)
+                .recoverer(new RetentativaMessageRecoverer(rabbitTemplate, INGESTAO_PRODUTO_RETRY_EXCHANGE, atrasos.size()))
+                .build());
+        return factory;
     }
 }
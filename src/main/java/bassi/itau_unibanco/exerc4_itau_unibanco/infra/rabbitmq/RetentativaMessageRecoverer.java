@@ -0,0 +1,56 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.rabbitmq;
+
+import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.retry.MessageBatchRecoverer;
+import org.springframework.amqp.rabbit.retry.RepublishMessageRecoverer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Republica a mensagem que falhou na exchange de retentativas, sem bloquear a thread do consumidor.
+ * <p>
+ * Cada tentativa vai para uma fila de espera com TTL própria, que devolve a mensagem à fila de origem
+ * por dead-letter ao expirar. Esgotadas as tentativas, a mensagem é estacionada na DLQ (parking lot)
+ * com a causa da falha nos cabeçalhos. Em listeners de lote, cada mensagem segue a sua própria contagem.
+ */
+public class RetentativaMessageRecoverer extends RepublishMessageRecoverer implements MessageBatchRecoverer {
+
+    public static final String X_TENTATIVA = "x-tentativa";
+
+    private final String retryExchange;
+
+    private final int maximoTentativas;
+
+    public RetentativaMessageRecoverer(AmqpTemplate errorTemplate, String retryExchange, int maximoTentativas) {
+        super(errorTemplate, retryExchange);
+        this.retryExchange = retryExchange;
+        this.maximoTentativas = maximoTentativas;
+    }
+
+    @Override
+    public void recover(List<Message> messages, Throwable cause) {
+        messages.forEach(message -> this.recover(message, cause));
+    }
+
+    @Override
+    protected Map<? extends String, ?> additionalHeaders(Message message, Throwable cause) {
+        var headers = new HashMap<String, Object>();
+        headers.put(X_TENTATIVA, tentativa(message) + 1);
+        return headers;
+    }
+
+    @Override
+    protected void doSend(String exchange, String routingKey, Message message) {
+        var tentativa = tentativa(message);
+        super.doSend(exchange, tentativa > this.maximoTentativas
+                ? RabbitMqConfiguration.PARKING_LOT_ROUTING_KEY
+                : RabbitMqConfiguration.retentativaRoutingKey(this.retryExchange, tentativa), message);
+    }
+
+    private static int tentativa(Message message) {
+        return message.getMessageProperties().getHeader(X_TENTATIVA) instanceof Number tentativa ? tentativa.intValue() : 0;
+    }
+}
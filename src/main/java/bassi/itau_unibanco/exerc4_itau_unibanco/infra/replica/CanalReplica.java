@@ -0,0 +1,52 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.replica;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.SolicitacaoSnapshotMessage;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.rabbitmq.RabbitMqConfiguration;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.util.OptionalInt;
+import java.util.UUID;
+
+/**
+ * Comunicação da réplica de leitura com o broker: o pedido de snapshot às instâncias primárias e a quantidade
+ * de eventos aguardando na fila da réplica.
+ */
+public class CanalReplica {
+
+    private final RabbitTemplate rabbitTemplate;
+
+    private final AmqpAdmin admin;
+
+    private final String filaEventos;
+
+    private final String filaSnapshot;
+
+    public CanalReplica(RabbitTemplate rabbitTemplate, AmqpAdmin admin, String filaEventos, String filaSnapshot) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.admin = admin;
+        this.filaEventos = filaEventos;
+        this.filaSnapshot = filaSnapshot;
+    }
+
+    /**
+     * @throws AmqpException quando o broker está indisponível
+     */
+    public void solicitarSnapshot(UUID solicitacao) {
+        this.rabbitTemplate.convertAndSend(RabbitMqConfiguration.PRODUTO_SNAPSHOT_SOLICITACOES_QUEUE,
+                new SolicitacaoSnapshotMessage(solicitacao, this.filaSnapshot));
+    }
+
+    /**
+     * @return os eventos prontos para entrega na fila da réplica, ou vazio quando o broker está indisponível
+     */
+    public OptionalInt eventosPendentes() {
+        try {
+            var fila = this.admin.getQueueInfo(this.filaEventos);
+            return fila == null ? OptionalInt.empty() : OptionalInt.of(fila.getMessageCount());
+        } catch (AmqpException e) {
+            return OptionalInt.empty();
+        }
+    }
+}
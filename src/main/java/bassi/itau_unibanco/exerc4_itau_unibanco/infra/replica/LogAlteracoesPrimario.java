@@ -0,0 +1,43 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.replica;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracoesProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.CursorExpiradoException;
+import org.springframework.http.ProblemDetail;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+
+import java.util.Optional;
+
+/**
+ * Cliente do log de alterações da instância primária ({@code GET /v1/produto/alteracoes}).
+ */
+public class LogAlteracoesPrimario {
+
+    private final RestClient client;
+
+    public LogAlteracoesPrimario(RestClient client) {
+        this.client = client;
+    }
+
+    /**
+     * @param desde cursor da última alteração lida; quando ausente, lê o log desde o início da retenção
+     * @throws CursorExpiradoException quando o cursor é anterior à retenção do log no primário
+     */
+    public AlteracoesProdutoResponse alteracoes(int shard, Long desde, int limite) {
+        try {
+            return this.client.get()
+                    .uri(uri -> uri.path("/v1/produto/alteracoes")
+                            .queryParamIfPresent("desde", Optional.ofNullable(desde))
+                            .queryParam("limit", limite)
+                            .queryParam("shard", shard)
+                            .build())
+                    .retrieve()
+                    .body(AlteracoesProdutoResponse.class);
+        } catch (HttpClientErrorException.Gone e) {
+            var problema = e.getResponseBodyAs(ProblemDetail.class);
+            var expirada = problema != null && problema.getProperties() != null
+                    && problema.getProperties().get("sequencia_expirada") instanceof Number sequencia ? sequencia.longValue() : 0;
+            throw new CursorExpiradoException(desde == null ? 0 : desde, expirada);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.replica;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.rabbitmq.RabbitMqConfiguration;
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.CatalogoReplica;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+
+import java.time.Duration;
+
+/**
+ * Réplica de leitura, ativada pelo perfil {@code replica}: uma instância sem banco, cujo catálogo vem de um
+ * snapshot enviado pelas instâncias primárias pelo broker e dos eventos de produto, recebidos em uma fila durável
+ * da réplica. O log de alterações da instância primária em {@code produto.replica.primario-url} só é lido para
+ * reparar lacunas. As configurações de banco são desativadas em {@code application-replica.yml}.
+ */
+@Configuration
+@Profile("replica")
+public class ReplicaConfiguration {
+
+    public static final String PRODUTO_REPLICA_QUEUE_PREFIX = "itau-unibanco-produto.replica.";
+
+    public static final String PRODUTO_REPLICA_QUEUE_BEAN = "produtoReplicaQueue";
+
+    public static final String REPLICA_SNAPSHOT_QUEUE_BEAN = "replicaSnapshotQueue";
+
+    /**
+     * Fila durável da réplica, identificada por {@code produto.replica.id}: os eventos publicados enquanto a
+     * réplica reinicia continuam nela. Sem consumidor por {@code produto.replica.fila-expiracao}, a fila é removida.
+     */
+    @Bean(PRODUTO_REPLICA_QUEUE_BEAN)
+    public Queue produtoReplicaQueue(
+            @Value("${produto.replica.id}") String id,
+            @Value("${produto.replica.fila-expiracao:1d}") Duration expiracao
+    ) {
+        return QueueBuilder.durable(PRODUTO_REPLICA_QUEUE_PREFIX + id)
+                .expires(Math.toIntExact(expiracao.toMillis()))
+                .build();
+    }
+
+    @Bean
+    public Binding produtoReplicaBinding(@Qualifier(PRODUTO_REPLICA_QUEUE_BEAN) Queue produtoReplicaQueue) {
+        return BindingBuilder.bind(produtoReplicaQueue)
+                .to(new TopicExchange(RabbitMqConfiguration.PRODUTO_EVENTOS_EXCHANGE))
+                .with("produto.#");
+    }
+
+    /**
+     * Fila temporária em que as partes do snapshot solicitado por esta réplica são recebidas.
+     */
+    @Bean(REPLICA_SNAPSHOT_QUEUE_BEAN)
+    public Queue replicaSnapshotQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public CanalReplica canalReplica(
+            RabbitTemplate rabbitTemplate,
+            AmqpAdmin admin,
+            @Qualifier(PRODUTO_REPLICA_QUEUE_BEAN) Queue produtoReplicaQueue,
+            @Qualifier(REPLICA_SNAPSHOT_QUEUE_BEAN) Queue replicaSnapshotQueue
+    ) {
+        return new CanalReplica(rabbitTemplate, admin, produtoReplicaQueue.getName(), replicaSnapshotQueue.getName());
+    }
+
+    @Bean
+    public LogAlteracoesPrimario logAlteracoesPrimario(
+            RestClient.Builder builder,
+            @Value("${produto.replica.primario-url}") String primario,
+            @Value("${produto.replica.timeout:5s}") Duration timeout
+    ) {
+        var requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeout);
+        requestFactory.setReadTimeout(timeout);
+        return new LogAlteracoesPrimario(builder.baseUrl(primario).requestFactory(requestFactory).build());
+    }
+
+    @Bean
+    public ReplicaHealthIndicator replicaHealthIndicator(
+            CatalogoReplica catalogo,
+            @Value("${produto.replica.lag-maximo:10s}") Duration lagMaximo
+    ) {
+        return new ReplicaHealthIndicator(catalogo, lagMaximo);
+    }
+}
@@ -0,0 +1,38 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.replica;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.CatalogoReplica;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+import java.time.Duration;
+
+/**
+ * Fora de serviço até a carga inicial do catálogo e enquanto a fila de eventos da réplica estiver sem esvaziar
+ * por mais que o lag máximo; incluído no grupo de readiness, tira a réplica do balanceamento sem reiniciá-la.
+ */
+public class ReplicaHealthIndicator implements HealthIndicator {
+
+    private final CatalogoReplica catalogo;
+
+    private final Duration lagMaximo;
+
+    public ReplicaHealthIndicator(CatalogoReplica catalogo, Duration lagMaximo) {
+        this.catalogo = catalogo;
+        this.lagMaximo = lagMaximo;
+    }
+
+    @Override
+    public Health health() {
+        var lag = this.catalogo.lag();
+        if (lag.isEmpty())
+            return Health.outOfService()
+                    .withDetail("motivo", "Snapshot do catálogo ainda não recebido.")
+                    .build();
+        var saude = lag.get().compareTo(this.lagMaximo) > 0 ? Health.outOfService() : Health.up();
+        return saude
+                .withDetail("produtos", this.catalogo.quantidade())
+                .withDetail("lag_ms", lag.get().toMillis())
+                .withDetail("lag_maximo_ms", this.lagMaximo.toMillis())
+                .build();
+    }
+}
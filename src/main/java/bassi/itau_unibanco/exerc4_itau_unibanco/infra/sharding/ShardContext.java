@@ -0,0 +1,32 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.function.Supplier;
+
+/**
+ * Shard da thread corrente, lido pelo {@link ShardRoutingDataSource} quando a conexão é de fato obtida.
+ * Sem shard definido, as conexões vão para o shard principal.
+ */
+@UtilityClass
+class ShardContext {
+
+    private static final ThreadLocal<Integer> SHARD = new ThreadLocal<>();
+
+    static Integer atual() {
+        return SHARD.get();
+    }
+
+    static <T> T executar(int shard, Supplier<T> acao) {
+        var anterior = SHARD.get();
+        SHARD.set(shard);
+        try {
+            return acao.get();
+        } finally {
+            if (anterior == null)
+                SHARD.remove();
+            else
+                SHARD.set(anterior);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Direciona cada nova conexão ao shard definido em {@link ShardContext}.
+ */
+class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.atual();
+    }
+}
@@ -0,0 +1,117 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.jdbc.JdbcProfiler;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import net.ttddyy.observation.boot.autoconfigure.DataSourceProxyConnectionIdManagerProvider;
+import net.ttddyy.observation.boot.autoconfigure.JdbcProperties;
+import net.ttddyy.observation.tracing.DataSourceObservationListener;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Com {@code produto.sharding.enabled=true}, o DataSource da aplicação passa a rotear as conexões entre os
+ * bancos listados em {@code produto.sharding.shards}, cada um com seu pool; o primeiro é o shard principal.
+ * Sem a propriedade, o DataSource configurado pelo Spring Boot é usado como shard único.
+ */
+@Slf4j
+@Configuration
+@Profile("!replica")
+public class ShardingConfiguration {
+
+    private static final String PREFIXO = "produto.sharding";
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = PREFIXO, name = "enabled", havingValue = "true")
+    public Shards shards(
+            Environment environment,
+            ObjectProvider<PlatformTransactionManager> transactionManager,
+            @Value("${produto.sharding.maximo-conexoes:3}") int maximoConexoes
+    ) {
+        var configurados = Binder.get(environment)
+                .bind(PREFIXO + ".shards", Bindable.listOf(Shard.class))
+                .orElseThrow(() -> new IllegalStateException("Sharding habilitado sem %s.shards configurados.".formatted(PREFIXO)));
+        var dataSources = new ArrayList<DataSource>(configurados.size());
+        for (var indice = 0; indice < configurados.size(); indice++) {
+            var shard = configurados.get(indice);
+            var dataSource = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(shard.url())
+                    .username(shard.username())
+                    .password(shard.password())
+                    .build();
+            dataSource.setPoolName("shard-%d".formatted(indice));
+            dataSource.setMaximumPoolSize(maximoConexoes);
+            dataSources.add(dataSource);
+        }
+        log.info("Sharding habilitado com {} shards.", dataSources.size());
+        return new Shards(dataSources, transactionManager::getObject);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = PREFIXO, name = "enabled", havingValue = "false", matchIfMissing = true)
+    public Shards shardUnico(ObjectProvider<PlatformTransactionManager> transactionManager) {
+        return Shards.unico(transactionManager::getObject);
+    }
+
+    /**
+     * Substitui o DataSource auto-configurado. A conexão só é obtida na primeira instrução SQL,
+     * depois que o shard da operação já foi definido.
+     * <p>
+     * O rastreamento de JDBC fica nos pools de cada shard, e não neste DataSource: ele lê os metadados da
+     * conexão assim que ela é entregue, o que obteria a conexão antes de o shard ser definido. O perfil de
+     * instruções SQL também envolve cada pool, e só ele, para medir cada instrução uma vez.
+     */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(prefix = PREFIXO, name = "enabled", havingValue = "true")
+    public DataSource dataSource(
+            Shards shards,
+            ObjectProvider<JdbcProperties> jdbc,
+            ObjectProvider<DataSourceObservationListener> observacao,
+            ObjectProvider<DataSourceProxyConnectionIdManagerProvider> conexoes,
+            ObjectProvider<JdbcProfiler> profiler
+    ) {
+        jdbc.ifAvailable(propriedades -> propriedades.getExcludedDataSourceBeanNames().add("dataSource"));
+        var listener = observacao.getIfAvailable();
+        var perfil = profiler.getIfAvailable();
+        var destinos = new HashMap<Object, Object>();
+        for (var indice = 0; indice < shards.quantidade(); indice++) {
+            DataSource destino = shards.dataSources().get(indice);
+            if (perfil != null)
+                destino = perfil.instrumentar(destino);
+            if (listener != null) {
+                var builder = ProxyDataSourceBuilder.create("shard-%d".formatted(indice), destino)
+                        .listener(listener)
+                        .methodListener(listener);
+                conexoes.ifAvailable(provider -> builder.connectionIdManager(provider.get()));
+                destino = builder.build();
+            }
+            destinos.put(indice, destino);
+        }
+        var roteado = new ShardRoutingDataSource();
+        roteado.setTargetDataSources(destinos);
+        roteado.setDefaultTargetDataSource(destinos.get(0));
+        roteado.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(roteado);
+    }
+
+    record Shard(String url, String username, String password) {
+    }
+}
@@ -0,0 +1,197 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.ShardInexistenteException;
+import bassi.itau_unibanco.exerc4_itau_unibanco.util.DistribuicaoPorId;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Distribuição dos produtos entre os bancos de dados (shards), pelo hash do id.
+ * <p>
+ * Cada shard tem o esquema completo: o produto e suas alterações são gravados na mesma transação local,
+ * e as categorias são replicadas em todos os shards com o mesmo id. Operações sobre um único produto
+ * são direcionadas ao seu shard; listagens consultam todos os shards em paralelo e reúnem os resultados.
+ * <p>
+ * O shard é escolhido pela thread antes da primeira instrução SQL: o DataSource roteado fica atrás de um
+ * {@code LazyConnectionDataSourceProxy}, então a transação já aberta só obtém a conexão quando necessário.
+ * Sem sharding, há um único shard e as operações apenas participam da transação corrente.
+ */
+public class Shards implements AutoCloseable {
+
+    private final List<DataSource> dataSources;
+
+    private final Supplier<PlatformTransactionManager> transactionManager;
+
+    private final ExecutorService executor;
+
+    private volatile TransactionTemplate leitura;
+
+    private volatile TransactionTemplate escrita;
+
+    Shards(List<DataSource> dataSources, Supplier<PlatformTransactionManager> transactionManager) {
+        this.dataSources = List.copyOf(dataSources);
+        this.transactionManager = transactionManager;
+        this.executor = dataSources.isEmpty()
+                ? null
+                : Executors.newFixedThreadPool(dataSources.size(), new CustomizableThreadFactory("shard-"));
+    }
+
+    public static Shards unico(Supplier<PlatformTransactionManager> transactionManager) {
+        return new Shards(List.of(), transactionManager);
+    }
+
+    public boolean habilitado() {
+        return !this.dataSources.isEmpty();
+    }
+
+    public int quantidade() {
+        return this.habilitado() ? this.dataSources.size() : 1;
+    }
+
+    public int shardDe(UUID id) {
+        return DistribuicaoPorId.parte(id, this.quantidade());
+    }
+
+    /**
+     * Executa a ação no shard do produto. Deve envolver toda a transação, ou ser chamado nela
+     * antes de qualquer consulta.
+     */
+    public <T> T executar(UUID id, Supplier<T> acao) {
+        if (!this.habilitado() || id == null)
+            return acao.get();
+        return ShardContext.executar(this.shardDe(id), acao);
+    }
+
+    public <T> T executar(int shard, Supplier<T> acao) {
+        if (shard < 0 || shard >= this.quantidade())
+            throw new ShardInexistenteException(shard, this.quantidade());
+        if (!this.habilitado())
+            return acao.get();
+        return ShardContext.executar(shard, acao);
+    }
+
+    /**
+     * Executa a consulta no shard do produto em uma transação somente leitura, aberta pela própria consulta:
+     * quem a chama pode atender a leitura de outra forma sem obter uma conexão.
+     */
+    public <T> T consultar(UUID id, Supplier<T> consulta) {
+        return this.consultar(this.shardDe(id), consulta);
+    }
+
+    public <T> T consultar(int shard, Supplier<T> consulta) {
+        var template = this.leitura();
+        return this.executar(shard, () -> template.execute(status -> consulta.get()));
+    }
+
+    /**
+     * Executa a ação em cada shard, em paralelo e cada um em sua própria transação.
+     * Sem sharding, a ação participa da transação corrente, quando houver.
+     */
+    public <T> List<T> emCadaShard(boolean somenteLeitura, Supplier<T> acao) {
+        var template = somenteLeitura ? this.leitura() : this.escrita();
+        if (!this.habilitado())
+            return Collections.singletonList(template.execute(status -> acao.get()));
+        var tarefas = new ArrayList<CompletableFuture<T>>(this.dataSources.size());
+        for (var shard = 0; shard < this.dataSources.size(); shard++) {
+            var indice = shard;
+            tarefas.add(CompletableFuture.supplyAsync(
+                    () -> ShardContext.executar(indice, () -> template.execute(status -> acao.get())), this.executor));
+        }
+        try {
+            return tarefas.stream().map(CompletableFuture::join).toList();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa)
+                throw causa;
+            throw e;
+        }
+    }
+
+    /**
+     * Consulta todos os shards e reúne os resultados; com sharding, o resultado combinado é ordenado.
+     */
+    public <T> List<T> reunir(Supplier<List<T>> consulta, Comparator<? super T> ordem) {
+        var parciais = this.emCadaShard(true, consulta);
+        if (!this.habilitado())
+            return parciais.get(0);
+        return parciais.stream()
+                .flatMap(List::stream)
+                .sorted(ordem)
+                .toList();
+    }
+
+    /**
+     * Agrupa os itens pelo shard do seu id e grava cada grupo em uma transação no respectivo shard.
+     * Com sharding, a gravação não é atômica entre shards.
+     */
+    public <T> void porShard(Collection<T> itens, Function<T, UUID> id, Consumer<List<T>> acao) {
+        var template = this.escrita();
+        if (!this.habilitado()) {
+            template.executeWithoutResult(status -> acao.accept(List.copyOf(itens)));
+            return;
+        }
+        var grupos = new LinkedHashMap<Integer, List<T>>();
+        itens.forEach(item -> grupos.computeIfAbsent(this.shardDe(id.apply(item)), shard -> new ArrayList<>()).add(item));
+        grupos.forEach((shard, grupo) -> ShardContext.executar(shard, () -> {
+            template.executeWithoutResult(status -> acao.accept(grupo));
+            return null;
+        }));
+    }
+
+    /**
+     * DataSources de cada shard, sem roteamento; vazio quando não há sharding.
+     */
+    public List<DataSource> dataSources() {
+        return this.dataSources;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (this.executor != null)
+            this.executor.shutdownNow();
+        for (var dataSource : this.dataSources)
+            if (dataSource instanceof AutoCloseable closeable)
+                closeable.close();
+    }
+
+    private TransactionTemplate leitura() {
+        if (this.leitura == null)
+            this.leitura = this.template(true);
+        return this.leitura;
+    }
+
+    private TransactionTemplate escrita() {
+        if (this.escrita == null)
+            this.escrita = this.template(false);
+        return this.escrita;
+    }
+
+    /**
+     * Com sharding, cada shard precisa de uma transação nova: uma transação externa já pode estar
+     * ligada à conexão de outro shard.
+     */
+    private TransactionTemplate template(boolean somenteLeitura) {
+        var template = new TransactionTemplate(this.transactionManager.get());
+        template.setReadOnly(somenteLeitura);
+        if (this.habilitado())
+            template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return template;
+    }
+}
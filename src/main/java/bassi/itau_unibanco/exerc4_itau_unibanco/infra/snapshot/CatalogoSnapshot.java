@@ -0,0 +1,228 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.snapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Snapshot binário do catálogo de produtos, gravado em um arquivo local e consultado pelo mapeamento
+ * do arquivo em memória, sem ser carregado no heap.
+ * <p>
+ * O arquivo tem um cabeçalho (identificador, {@link #VERSAO}, a marca do log de alterações de cada shard
+ * e a quantidade de registros), um índice ordenado pelo id com entradas de tamanho fixo (id, sequência da
+ * última alteração e posição dos dados) e os dados de cada produto. As consultas por id fazem uma busca
+ * binária no índice e decodificam apenas o registro encontrado. Produtos removidos após a marca são
+ * mantidos no índice, sem dados, para que alterações anteriores não os recriem.
+ * <p>
+ * A gravação ocorre em um arquivo temporário, movido sobre o anterior ao final; um snapshot interrompido
+ * nunca substitui o último válido. O arquivo é limitado a 2 GB.
+ */
+public final class CatalogoSnapshot {
+
+    public static final int VERSAO = 1;
+
+    private static final int IDENTIFICADOR = 0x50524F44;
+
+    private static final int ENTRADA = 2 * Long.BYTES + Long.BYTES + Integer.BYTES;
+
+    private static final int REMOVIDO = -1;
+
+    private static final Comparator<Registro> ORDEM = Comparator
+            .comparingLong((Registro registro) -> registro.id().getMostSignificantBits())
+            .thenComparingLong(registro -> registro.id().getLeastSignificantBits());
+
+    private final ByteBuffer buffer;
+
+    private final long[] marcas;
+
+    private final int quantidade;
+
+    private final int inicioIndice;
+
+    private final int inicioDados;
+
+    private CatalogoSnapshot(ByteBuffer buffer, long[] marcas, int quantidade, int inicioIndice) {
+        this.buffer = buffer;
+        this.marcas = marcas;
+        this.quantidade = quantidade;
+        this.inicioIndice = inicioIndice;
+        this.inicioDados = inicioIndice + quantidade * ENTRADA;
+    }
+
+    /**
+     * Produto do catálogo; sem nome, indica um produto removido.
+     */
+    public record Registro(UUID id, long sequencia, String nome, BigDecimal preco, int categoria) {
+
+        public static Registro remocao(UUID id, long sequencia) {
+            return new Registro(id, sequencia, null, null, 0);
+        }
+
+        public boolean removido() {
+            return this.nome == null;
+        }
+    }
+
+    /**
+     * @return o snapshot mapeado, ou vazio quando o arquivo não existe, está em outro formato
+     * ou foi gravado com outra quantidade de shards
+     */
+    public static Optional<CatalogoSnapshot> mapear(Path arquivo, int shards) {
+        ByteBuffer buffer;
+        try (var channel = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        var cabecalho = 3 * Integer.BYTES + shards * Long.BYTES + Integer.BYTES;
+        if (buffer.capacity() < cabecalho || buffer.getInt(0) != IDENTIFICADOR
+                || buffer.getInt(Integer.BYTES) != VERSAO || buffer.getInt(2 * Integer.BYTES) != shards)
+            return Optional.empty();
+        var marcas = new long[shards];
+        for (var shard = 0; shard < shards; shard++)
+            marcas[shard] = buffer.getLong(3 * Integer.BYTES + shard * Long.BYTES);
+        var quantidade = buffer.getInt(cabecalho - Integer.BYTES);
+        if (quantidade < 0 || (long) cabecalho + (long) quantidade * ENTRADA > buffer.capacity())
+            return Optional.empty();
+        return Optional.of(new CatalogoSnapshot(buffer, marcas, quantidade, cabecalho));
+    }
+
+    /**
+     * Grava os registros, em qualquer ordem, e mapeia o novo snapshot.
+     */
+    public static CatalogoSnapshot gravar(Path arquivo, long[] marcas, List<Registro> registros) {
+        var ordenados = registros.stream()
+                .sorted(ORDEM)
+                .toList();
+        var dados = new ByteArrayOutputStream(32 * ordenados.size());
+        var posicoes = new int[ordenados.size()];
+        try {
+            var out = new DataOutputStream(dados);
+            for (var i = 0; i < ordenados.size(); i++) {
+                var registro = ordenados.get(i);
+                if (registro.removido()) {
+                    posicoes[i] = REMOVIDO;
+                    continue;
+                }
+                posicoes[i] = out.size();
+                var nome = registro.nome().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(nome.length);
+                out.write(nome);
+                out.writeInt(registro.preco().scale());
+                out.writeLong(registro.preco().unscaledValue().longValueExact());
+                out.writeInt(registro.categoria());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        var cabecalho = 3 * Integer.BYTES + marcas.length * Long.BYTES + Integer.BYTES;
+        var tamanho = Math.addExact(Math.addExact(cabecalho, Math.multiplyExact(ordenados.size(), ENTRADA)), dados.size());
+        var temporario = arquivo.resolveSibling(arquivo.getFileName() + ".tmp");
+        try {
+            if (arquivo.toAbsolutePath().getParent() != null)
+                Files.createDirectories(arquivo.toAbsolutePath().getParent());
+            try (var channel = FileChannel.open(temporario, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, tamanho);
+                buffer.putInt(IDENTIFICADOR).putInt(VERSAO).putInt(marcas.length);
+                for (var marca : marcas)
+                    buffer.putLong(marca);
+                buffer.putInt(ordenados.size());
+                for (var i = 0; i < ordenados.size(); i++) {
+                    var registro = ordenados.get(i);
+                    buffer.putLong(registro.id().getMostSignificantBits())
+                            .putLong(registro.id().getLeastSignificantBits())
+                            .putLong(registro.sequencia())
+                            .putInt(posicoes[i]);
+                }
+                buffer.put(dados.toByteArray());
+                buffer.force();
+            }
+            Files.move(temporario, arquivo, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return mapear(arquivo, marcas.length)
+                .orElseThrow(() -> new IllegalStateException("Snapshot %s gravado em formato inválido.".formatted(arquivo)));
+    }
+
+    /**
+     * Marca do log de alterações de cada shard: as alterações até ela já estão no snapshot.
+     */
+    public long[] marcas() {
+        return this.marcas.clone();
+    }
+
+    public int quantidade() {
+        return this.quantidade;
+    }
+
+    public Optional<Registro> buscar(UUID id) {
+        var indice = this.indiceDe(id);
+        return indice < 0 ? Optional.empty() : Optional.of(this.registro(indice));
+    }
+
+    /**
+     * @return a sequência da última alteração do produto no snapshot, ou {@code -1} quando ele não está no snapshot
+     */
+    public long sequenciaDe(UUID id) {
+        var indice = this.indiceDe(id);
+        return indice < 0 ? -1 : this.buffer.getLong(this.inicioIndice + indice * ENTRADA + 2 * Long.BYTES);
+    }
+
+    public Stream<Registro> registros() {
+        return IntStream.range(0, this.quantidade).mapToObj(this::registro);
+    }
+
+    private int indiceDe(UUID id) {
+        int inicio = 0, fim = this.quantidade - 1;
+        while (inicio <= fim) {
+            var meio = (inicio + fim) >>> 1;
+            var posicao = this.inicioIndice + meio * ENTRADA;
+            var comparacao = Long.compare(this.buffer.getLong(posicao), id.getMostSignificantBits());
+            if (comparacao == 0)
+                comparacao = Long.compare(this.buffer.getLong(posicao + Long.BYTES), id.getLeastSignificantBits());
+            if (comparacao < 0)
+                inicio = meio + 1;
+            else if (comparacao > 0)
+                fim = meio - 1;
+            else
+                return meio;
+        }
+        return -1;
+    }
+
+    private Registro registro(int indice) {
+        var entrada = this.inicioIndice + indice * ENTRADA;
+        var id = new UUID(this.buffer.getLong(entrada), this.buffer.getLong(entrada + Long.BYTES));
+        var sequencia = this.buffer.getLong(entrada + 2 * Long.BYTES);
+        var posicao = this.buffer.getInt(entrada + 3 * Long.BYTES);
+        if (posicao == REMOVIDO)
+            return Registro.remocao(id, sequencia);
+        var dados = this.buffer.slice(this.inicioDados + posicao, this.buffer.capacity() - this.inicioDados - posicao);
+        var nome = new byte[dados.getInt()];
+        dados.get(nome);
+        var escala = dados.getInt();
+        var preco = BigDecimal.valueOf(dados.getLong(), escala);
+        return new Registro(id, sequencia, new String(nome, StandardCharsets.UTF_8), preco, dados.getInt());
+    }
+}
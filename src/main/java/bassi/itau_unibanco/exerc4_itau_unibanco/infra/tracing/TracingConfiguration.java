@@ -0,0 +1,29 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.tracing;
+
+import io.micrometer.observation.ObservationPredicate;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Rastreamento distribuído das requisições HTTP, do serviço de produtos, das instruções SQL e das mensagens
+ * do RabbitMQ, cujo contexto segue nos cabeçalhos das mensagens e continua nos listeners.
+ * <p>
+ * Os spans são amostrados com {@code management.tracing.sampling.probability} e exportados via OTLP quando
+ * {@code management.otlp.tracing.endpoint} está configurado. Tarefas agendadas, como a sincronização do
+ * catálogo local, não são rastreadas, e instruções SQL fora de uma operação rastreada não geram traces próprios.
+ */
+@Configuration
+public class TracingConfiguration {
+
+    private static final String TAREFA_AGENDADA = "tasks.scheduled.execution";
+
+    private static final String PREFIXO_JDBC = "jdbc.";
+
+    @Bean
+    public ObservationPredicate rastreamentoSomenteDeOperacoes(ObjectProvider<ObservationRegistry> registry) {
+        return (nome, contexto) -> !nome.equals(TAREFA_AGENDADA)
+                && (!nome.startsWith(PREFIXO_JDBC) || registry.getObject().getCurrentObservation() != null);
+    }
+}
@@ -1,30 +1,50 @@
 package bassi.itau_unibanco.exerc4_itau_unibanco.listener;
 
-import bassi.itau_unibanco.exerc4_itau_unibanco.entity.ProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoResponse;
 import bassi.itau_unibanco.exerc4_itau_unibanco.infra.rabbitmq.RabbitMqConfiguration;
+import bassi.itau_unibanco.exerc4_itau_unibanco.util.LogAmostrado;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.messaging.Message;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
-
+/**
+ * Registra os eventos de cadastro de produto e, com o consumo particionado, também os de atualização e remoção,
+ * na ordem de cada produto.
+ * <p>
+ * Apenas uma amostra dos eventos é registrada, com limite de registros por segundo; cada registro
+ * é uma única linha com os campos do evento como pares chave-valor, sem o payload completo.
+ */
 @Component
+@Profile("!replica")
 @Slf4j
 public class CadastroProdutoListener {
 
-    @RabbitListener(queues = RabbitMqConfiguration.CADASTRO_PRODUTO_QUEUE)
-    public void listen(Message<ProdutoEntity> message) {
-        log.info("""
-                                                        
-                        Evento: Cadastro de Produto
-                        Status: Sucesso
-                        Produto ID: {}
-                        Payload: {}
-                        Timestamp: {}""",
-                message.getPayload().getId(),
-                message.getPayload(),
-                LocalDateTime.now()
-        );
+    private final LogAmostrado amostragem;
+
+    public CadastroProdutoListener(
+            @Value("${produto.cadastro.log.amostragem:100}") long intervalo,
+            @Value("${produto.cadastro.log.limite-por-segundo:10}") long limitePorSegundo
+    ) {
+        this.amostragem = new LogAmostrado(intervalo, limitePorSegundo);
+    }
+
+    @RabbitListener(
+            queues = RabbitMqConfiguration.CADASTRO_PRODUTO_QUEUE,
+            containerFactory = RabbitMqConfiguration.CADASTRO_PRODUTO_CONTAINER_FACTORY
+    )
+    public void listen(Message<AlteracaoProdutoResponse> message) {
+        if (!log.isInfoEnabled() || !this.amostragem.amostrar())
+            return;
+        var evento = message.getPayload();
+        log.atInfo()
+                .addKeyValue("evento", "%s_produto".formatted(evento.operacao().name().toLowerCase()))
+                .addKeyValue("sequencia", evento.sequencia())
+                .addKeyValue("produto_id", evento.produtoId())
+                .addKeyValue("categoria", evento.categoria())
+                .addKeyValue("eventos_recebidos", this.amostragem.eventos())
+                .log("Evento de produto recebido.");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,51 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.listener;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.IngestaoProdutoMessage;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.rabbitmq.RabbitMqConfiguration;
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.IngestaoProdutoService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.exception.DataException;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@Profile("!replica")
+@Slf4j
+@RequiredArgsConstructor
+public class IngestaoProdutoListener {
+
+    private final IngestaoProdutoService service;
+
+    /**
+     * Grava o lote inteiro em uma transação; se ela falhar por dados inválidos, os itens são regravados
+     * um a um para isolar e rejeitar apenas os inválidos. Demais falhas levam o lote às retentativas da ingestão.
+     */
+    @RabbitListener(
+            queues = RabbitMqConfiguration.INGESTAO_PRODUTO_QUEUE,
+            containerFactory = RabbitMqConfiguration.INGESTAO_PRODUTO_CONTAINER_FACTORY
+    )
+    public void listen(List<IngestaoProdutoMessage> lote) {
+        try {
+            this.service.gravarLote(lote);
+            log.debug("Lote de ingestão gravado: {} produtos.", lote.size());
+        } catch (ConstraintViolationException | DataException | DataIntegrityViolationException e) {
+            log.warn("Falha ao gravar lote de ingestão com {} produtos, gravando individualmente.", lote.size(), e);
+            lote.forEach(this::gravar);
+        }
+    }
+
+    private void gravar(IngestaoProdutoMessage message) {
+        try {
+            this.service.gravarLote(List.of(message));
+        } catch (ConstraintViolationException | DataException | DataIntegrityViolationException e) {
+            log.error("Produto {} rejeitado na ingestão.", message.id(), e);
+            this.service.registrarRejeicao(message.id(), e.getMessage());
+        }
+    }
+}
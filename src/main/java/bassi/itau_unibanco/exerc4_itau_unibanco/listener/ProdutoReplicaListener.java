@@ -0,0 +1,31 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.listener;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.SnapshotCatalogoMessage;
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.CatalogoReplica;
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Na réplica de leitura, os eventos de produto chegam pela fila durável da réplica e as partes do snapshot pela
+ * fila temporária informada no pedido; ambos são aplicados diretamente ao catálogo em memória.
+ */
+@Component
+@Profile("replica")
+@RequiredArgsConstructor
+public class ProdutoReplicaListener {
+
+    private final CatalogoReplica catalogo;
+
+    @RabbitListener(queues = "#{produtoReplicaQueue.name}")
+    public void listen(AlteracaoProdutoResponse evento) {
+        this.catalogo.aplicar(evento);
+    }
+
+    @RabbitListener(queues = "#{replicaSnapshotQueue.name}")
+    public void receberSnapshot(SnapshotCatalogoMessage parte) {
+        this.catalogo.receber(parte);
+    }
+}
@@ -0,0 +1,43 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.listener;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.CatalogoLocal;
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.FiltroIdsProduto;
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.IndiceFacetas;
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.IndiceSugestoes;
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.ProdutoStreamService;
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.VersaoCatalogo;
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+@Component
+@Profile("!replica")
+@RequiredArgsConstructor
+public class ProdutoStreamListener {
+
+    private final ProdutoStreamService stream;
+
+    private final CatalogoLocal catalogo;
+
+    private final FiltroIdsProduto filtroIds;
+
+    private final IndiceSugestoes sugestoes;
+
+    private final IndiceFacetas facetas;
+
+    private final VersaoCatalogo versao;
+
+    @RabbitListener(queues = "#{produtoStreamQueue.name}")
+    public void listen(AlteracaoProdutoResponse evento) {
+        if (evento.operacao() == AlteracaoProdutoEntity.Operacao.CADASTRO)
+            this.filtroIds.registrar(evento.produtoId());
+        this.catalogo.aplicar(evento);
+        this.sugestoes.aplicar(evento);
+        this.facetas.aplicar(evento);
+        this.versao.incrementar();
+        this.stream.publicar(evento);
+    }
+}
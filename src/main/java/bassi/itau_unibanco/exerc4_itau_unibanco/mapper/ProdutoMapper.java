@@ -1,7 +1,9 @@
 package bassi.itau_unibanco.exerc4_itau_unibanco.mapper;
 
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoResponse;
 import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoRequest;
 import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
 import bassi.itau_unibanco.exerc4_itau_unibanco.entity.ProdutoEntity;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
@@ -25,4 +27,6 @@ public interface ProdutoMapper {
 
     @Mapping(target = "id", ignore = true)
     void mapToProdutoEntity(ProdutoRequest produtoRequest, @MappingTarget ProdutoEntity produtoAtual);
+
+    AlteracaoProdutoResponse mapToAlteracaoProdutoResponse(AlteracaoProdutoEntity data);
 }
@@ -0,0 +1,30 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.producer;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.IngestaoProdutoMessage;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.rabbitmq.RabbitMqConfiguration;
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+@RequiredArgsConstructor
+public class IngestaoProdutoProducer {
+
+    private final RabbitTemplate rabbitTemplate;
+
+    @Value("${produto.ingestao.timeout-confirmacao-ms}")
+    private long timeoutConfirmacao;
+
+    /**
+     * Publica a mensagem como persistente e aguarda a confirmação do broker,
+     * garantindo que o produto aceito não se perca antes de ser gravado.
+     */
+    public void sendMessage(IngestaoProdutoMessage message) {
+        this.rabbitTemplate.invoke(operations -> {
+            operations.convertAndSend(RabbitMqConfiguration.INGESTAO_PRODUTO_QUEUE, message);
+            operations.waitForConfirmsOrDie(this.timeoutConfirmacao);
+            return null;
+        });
+    }
+}
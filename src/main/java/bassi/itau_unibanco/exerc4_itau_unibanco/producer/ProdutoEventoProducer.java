@@ -0,0 +1,40 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.producer;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.rabbitmq.RabbitMqConfiguration;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Slf4j
+@Service
+public class ProdutoEventoProducer {
+
+    private final RabbitTemplate rabbitTemplate;
+
+    private final int particoes;
+
+    public ProdutoEventoProducer(RabbitTemplate rabbitTemplate, @Value("${produto.particoes.quantidade:8}") int particoes) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.particoes = particoes;
+    }
+
+    /**
+     * Publica a alteração na exchange de eventos de produto, roteada pela operação e pela partição do produto.
+     * A publicação ocorre após o commit, então falhas são apenas registradas: o log de alterações
+     * continua sendo a fonte para quem precisa de todas as alterações.
+     */
+    public void publicar(AlteracaoProdutoResponse evento) {
+        try {
+            this.rabbitTemplate.convertAndSend(
+                    RabbitMqConfiguration.PRODUTO_EVENTOS_EXCHANGE,
+                    RabbitMqConfiguration.eventoRoutingKey(evento.operacao(), RabbitMqConfiguration.particao(evento.produtoId(), this.particoes)),
+                    evento
+            );
+        } catch (AmqpException e) {
+            log.warn("Falha ao publicar evento {} do produto {}.", evento.sequencia(), evento.produtoId(), e);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.repository;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AceiteIngestaoEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Repository
+public interface AceiteIngestaoRepository extends JpaRepository<AceiteIngestaoEntity, UUID> {
+
+    @Modifying
+    @Query("DELETE FROM AceiteIngestaoEntity a WHERE a.aceitoEm < :limite")
+    int removerAntesDe(@Param("limite") Instant limite);
+}
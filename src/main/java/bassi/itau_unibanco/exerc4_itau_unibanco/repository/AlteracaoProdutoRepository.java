@@ -0,0 +1,49 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.repository;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface AlteracaoProdutoRepository extends JpaRepository<AlteracaoProdutoEntity, Long> {
+
+    List<AlteracaoProdutoEntity> findBySequenciaGreaterThanOrderBySequencia(long sequencia, Limit limit);
+
+    /**
+     * Compactação: remove as alterações já superadas por uma alteração posterior do mesmo produto,
+     * mantendo apenas o estado mais recente de cada um.
+     */
+    @Modifying
+    @Query(value = """
+                DELETE a FROM produto_alteracao a
+                JOIN produto_alteracao b ON b.produto_id = a.produto_id AND b.sequencia > a.sequencia
+            """, nativeQuery = true)
+    int compactar();
+
+    @Query("""
+                SELECT MAX(a.sequencia) FROM AlteracaoProdutoEntity a
+                WHERE a.operacao = :operacao AND a.registradoEm < :limite
+            """)
+    Optional<Long> ultimaSequenciaAntesDe(
+            @Param("operacao") AlteracaoProdutoEntity.Operacao operacao,
+            @Param("limite") Instant limite
+    );
+
+    @Query("SELECT MAX(a.sequencia) FROM AlteracaoProdutoEntity a WHERE a.sequencia <= :limite")
+    Optional<Long> ultimaSequenciaAte(@Param("limite") long limite);
+
+    @Modifying
+    @Query("DELETE FROM AlteracaoProdutoEntity a WHERE a.operacao = :operacao AND a.sequencia <= :sequencia")
+    int removerAte(
+            @Param("operacao") AlteracaoProdutoEntity.Operacao operacao,
+            @Param("sequencia") long sequencia
+    );
+}
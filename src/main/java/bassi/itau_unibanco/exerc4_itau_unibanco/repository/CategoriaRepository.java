@@ -0,0 +1,13 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.repository;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.CategoriaEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface CategoriaRepository extends JpaRepository<CategoriaEntity, Integer> {
+
+    Optional<CategoriaEntity> findByNome(String nome);
+}
@@ -1,6 +1,7 @@
 package bassi.itau_unibanco.exerc4_itau_unibanco.repository;
 
 import bassi.itau_unibanco.exerc4_itau_unibanco.entity.ProdutoEntity;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -24,4 +25,66 @@ public interface ProdutoRepository extends JpaRepository<ProdutoEntity, UUID> {
             @Param("preco") BigDecimal preco,
             @Param("categoria") String categoria
     );
+
+    /**
+     * Agrega a quantidade de produtos por categoria e preço em uma única consulta,
+     * usada para semear a visão materializada de estatísticas por categoria.
+     */
+    @Query("""
+                SELECT p.categoria AS categoria, p.preco AS preco, COUNT(p) AS quantidade
+                FROM ProdutoEntity p
+                GROUP BY p.categoria, p.preco
+            """)
+    List<QuantidadePorCategoriaEPreco> agruparPorCategoriaEPreco();
+
+    /**
+     * Primeira página dos ids, na ordem do banco; as seguintes são lidas por {@link #listarIdsApos}.
+     */
+    @Query("SELECT p.id FROM ProdutoEntity p ORDER BY p.id")
+    List<UUID> listarIds(Pageable pagina);
+
+    @Query("SELECT p.id FROM ProdutoEntity p WHERE p.id > :depois ORDER BY p.id")
+    List<UUID> listarIdsApos(@Param("depois") UUID depois, Pageable pagina);
+
+    @Query("SELECT p FROM ProdutoEntity p ORDER BY p.id")
+    List<ProdutoEntity> listarProdutos(Pageable pagina);
+
+    @Query("SELECT p FROM ProdutoEntity p WHERE p.id > :depois ORDER BY p.id")
+    List<ProdutoEntity> listarProdutosApos(@Param("depois") UUID depois, Pageable pagina);
+
+    @Query("SELECT p.id AS id, p.nome AS nome, p.categoria AS categoria FROM ProdutoEntity p ORDER BY p.id")
+    List<NomeProduto> listarNomes(Pageable pagina);
+
+    @Query("SELECT p.id AS id, p.nome AS nome, p.categoria AS categoria FROM ProdutoEntity p WHERE p.id > :depois ORDER BY p.id")
+    List<NomeProduto> listarNomesApos(@Param("depois") UUID depois, Pageable pagina);
+
+    /**
+     * Sugestões sem o {@link bassi.itau_unibanco.exerc4_itau_unibanco.service.IndiceSugestoes}: apenas pelo
+     * início do nome, com acentos e maiúsculas conforme a collation da coluna.
+     */
+    @Query("""
+                SELECT p.id AS id, p.nome AS nome, p.categoria AS categoria FROM ProdutoEntity p WHERE
+                LOWER(p.nome) LIKE LOWER(CONCAT(:prefixo, '%')) AND
+                (:categoria IS NULL OR p.categoria = :categoria)
+                ORDER BY p.nome, p.id
+            """)
+    List<NomeProduto> sugerir(@Param("prefixo") String prefixo, @Param("categoria") String categoria, Pageable pagina);
+
+    interface NomeProduto {
+
+        UUID getId();
+
+        String getNome();
+
+        String getCategoria();
+    }
+
+    interface QuantidadePorCategoriaEPreco {
+
+        String getCategoria();
+
+        BigDecimal getPreco();
+
+        long getQuantidade();
+    }
 }
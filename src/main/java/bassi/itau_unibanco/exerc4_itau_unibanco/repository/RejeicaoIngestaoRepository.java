@@ -0,0 +1,19 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.repository;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.RejeicaoIngestaoEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Repository
+public interface RejeicaoIngestaoRepository extends JpaRepository<RejeicaoIngestaoEntity, UUID> {
+
+    @Modifying
+    @Query("DELETE FROM RejeicaoIngestaoEntity r WHERE r.rejeitadoEm < :limite")
+    int removerAntesDe(@Param("limite") Instant limite);
+}
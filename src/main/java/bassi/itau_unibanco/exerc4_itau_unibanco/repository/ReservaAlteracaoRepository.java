@@ -0,0 +1,22 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.repository;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.ReservaAlteracaoEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Optional;
+
+@Repository
+public interface ReservaAlteracaoRepository extends JpaRepository<ReservaAlteracaoEntity, Long> {
+
+    @Query("SELECT MIN(r.inicio) FROM ReservaAlteracaoEntity r WHERE r.reservadoEm > :limite")
+    Optional<Long> menorInicioApos(@Param("limite") Instant limite);
+
+    @Modifying
+    @Query("DELETE FROM ReservaAlteracaoEntity r WHERE r.reservadoEm <= :limite")
+    int removerAte(@Param("limite") Instant limite);
+}
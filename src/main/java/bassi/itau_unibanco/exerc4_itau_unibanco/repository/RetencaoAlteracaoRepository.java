@@ -0,0 +1,9 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.repository;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.RetencaoAlteracaoEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface RetencaoAlteracaoRepository extends JpaRepository<RetencaoAlteracaoEntity, Integer> {
+}
@@ -0,0 +1,184 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoRequest;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.ProdutoNaoEncontradoException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.exception.DataException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Agrupamento das atualizações de produtos (write coalescing), habilitado com
+ * {@code produto.atualizacoes.agrupamento.enabled=true}.
+ * <p>
+ * Atualizações recebidas durante a janela são retidas e gravadas juntas por
+ * {@link ProdutoService#atualizarLote}: para um mesmo produto prevalece a última, e todos os chamadores
+ * recebem o estado gravado, após o commit. Rajadas de reprecificação sobre os mesmos produtos viram uma
+ * única escrita por produto e janela, em vez de disputar o lock da linha.
+ * <p>
+ * Com sharding, cada shard grava a sua parte do lote em uma transação própria. Se a de um shard falhar por
+ * dados inválidos, só as atualizações desse shard são regravadas, uma a uma, para isolar a inválida; as dos
+ * shards já gravados não são repetidas. Desabilitado ou encerrado, cada atualização é gravada imediatamente.
+ */
+@Slf4j
+@Service
+@Profile("!replica")
+public class AgrupadorAtualizacoes {
+
+    private final ProdutoService service;
+
+    private final boolean habilitado;
+
+    private final long janela;
+
+    private final ScheduledExecutorService executor;
+
+    private final Map<UUID, Pendente> pendentes = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean agendado = new AtomicBoolean();
+
+    private volatile boolean encerrado;
+
+    @Autowired
+    public AgrupadorAtualizacoes(
+            ProdutoService service,
+            @Value("${produto.atualizacoes.agrupamento.enabled:false}") boolean habilitado,
+            @Value("${produto.atualizacoes.agrupamento.janela:50ms}") Duration janela
+    ) {
+        this.service = service;
+        this.habilitado = habilitado;
+        this.janela = janela.toNanos();
+        this.executor = habilitado
+                ? Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("agrupador-atualizacoes-"))
+                : null;
+    }
+
+    /**
+     * Atualização retida de um produto; as seguintes substituem o request e compartilham o resultado.
+     */
+    private static final class Pendente {
+
+        private final CompletableFuture<ProdutoResponse> resultado = new CompletableFuture<>();
+
+        private ProdutoRequest produtoRequest;
+
+        private Pendente(ProdutoRequest produtoRequest) {
+            this.produtoRequest = produtoRequest;
+        }
+    }
+
+    /**
+     * Aguarda a gravação do lote em que a atualização foi incluída. Incluída durante o encerramento, depois
+     * que o executor deixou de aceitar tarefas, a atualização é gravada pelo próprio chamador.
+     */
+    public ProdutoResponse atualizar(UUID id, ProdutoRequest produtoRequest) {
+        if (!this.habilitado || this.encerrado)
+            return this.service.atualizar(id, produtoRequest);
+        var pendente = this.pendentes.compute(id, (chave, atual) -> {
+            if (atual == null)
+                return new Pendente(produtoRequest);
+            atual.produtoRequest = produtoRequest;
+            return atual;
+        });
+        if (this.agendado.compareAndSet(false, true)) {
+            try {
+                this.executor.schedule(this::descarregar, this.janela, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                this.descarregar();
+            }
+        }
+        try {
+            return pendente.resultado.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa)
+                throw causa;
+            throw e;
+        }
+    }
+
+    /**
+     * Retira todas as atualizações pendentes; as que chegarem durante a gravação agendam o próximo lote.
+     */
+    void descarregar() {
+        this.agendado.set(false);
+        var lote = new LinkedHashMap<UUID, Pendente>();
+        for (var id : this.pendentes.keySet()) {
+            var pendente = this.pendentes.remove(id);
+            if (pendente != null)
+                lote.put(id, pendente);
+        }
+        if (lote.isEmpty())
+            return;
+        var atualizacoes = new LinkedHashMap<UUID, ProdutoRequest>();
+        lote.forEach((id, pendente) -> atualizacoes.put(id, pendente.produtoRequest));
+        ProdutoService.LoteAtualizado resultado;
+        try {
+            resultado = this.service.atualizarLote(atualizacoes);
+        } catch (RuntimeException e) {
+            lote.values().forEach(pendente -> pendente.resultado.completeExceptionally(e));
+            return;
+        }
+        if (!resultado.falhas().isEmpty())
+            log.warn("Falha ao gravar {} de {} produtos do lote de atualizações.", resultado.falhas().size(), lote.size(),
+                    resultado.falhas().values().iterator().next());
+        lote.forEach((id, pendente) -> {
+            var produto = resultado.atualizados().get(id);
+            var falha = resultado.falhas().get(id);
+            if (produto != null)
+                pendente.resultado.complete(produto);
+            else if (falha == null)
+                pendente.resultado.completeExceptionally(new ProdutoNaoEncontradoException(id));
+            else if (dadosInvalidos(falha))
+                this.gravar(id, pendente);
+            else
+                pendente.resultado.completeExceptionally(falha);
+        });
+        log.debug("Lote de atualizações gravado: {} produtos.", resultado.atualizados().size());
+    }
+
+    private static boolean dadosInvalidos(RuntimeException falha) {
+        return falha instanceof ConstraintViolationException
+                || falha instanceof DataException
+                || falha instanceof DataIntegrityViolationException;
+    }
+
+    private void gravar(UUID id, Pendente pendente) {
+        try {
+            pendente.resultado.complete(this.service.atualizar(id, pendente.produtoRequest));
+        } catch (RuntimeException e) {
+            pendente.resultado.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Deixa de reter novas atualizações antes de encerrar o executor e gravar as pendentes.
+     */
+    @PreDestroy
+    public void encerrar() {
+        if (this.executor == null)
+            return;
+        this.encerrado = true;
+        this.executor.shutdown();
+        this.descarregar();
+    }
+}
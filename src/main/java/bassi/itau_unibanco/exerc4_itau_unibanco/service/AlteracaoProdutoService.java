@@ -0,0 +1,189 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracoesProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.ProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.RetencaoAlteracaoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.CursorExpiradoException;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import bassi.itau_unibanco.exerc4_itau_unibanco.mapper.ProdutoMapper;
+import bassi.itau_unibanco.exerc4_itau_unibanco.producer.ProdutoEventoProducer;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.AlteracaoProdutoRepository;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.RetencaoAlteracaoRepository;
+import bassi.itau_unibanco.exerc4_itau_unibanco.util.AfterCommit;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Log de alterações do catálogo, consumido pelos sistemas que mantêm uma cópia dos produtos.
+ * <p>
+ * Cada cadastro, atualização e remoção grava uma alteração na mesma transação da escrita, com uma
+ * sequência crescente usada como cursor. O log é compactado periodicamente, mantendo apenas a alteração
+ * mais recente de cada produto, e remoções mais antigas que a retenção são descartadas; cursores anteriores
+ * a elas deixam de ser aceitos e o cliente precisa de uma nova sincronização completa.
+ * <p>
+ * As sequências vêm de blocos reservados por {@link SequenciaAlteracoes}, e não da ordem de commit: o log só
+ * é entregue até a sequência anterior ao bloco pendente mais antigo, para que transações em andamento não
+ * sejam puladas por um cursor já adiantado.
+ * <p>
+ * Após o commit, cada alteração também é publicada como evento na exchange de eventos de produto.
+ */
+@Slf4j
+@Service
+@Profile("!replica")
+public class AlteracaoProdutoService {
+
+    private final AlteracaoProdutoRepository repository;
+
+    private final RetencaoAlteracaoRepository retencao;
+
+    private final ProdutoMapper mapper;
+
+    private final ProdutoEventoProducer eventos;
+
+    private final Shards shards;
+
+    private final SequenciaAlteracoes sequencias;
+
+    private final EntityManager entityManager;
+
+    private final Clock clock;
+
+    private final int limiteMaximo;
+
+    private final Duration retencaoRemocoes;
+
+    @Autowired
+    public AlteracaoProdutoService(
+            AlteracaoProdutoRepository repository,
+            RetencaoAlteracaoRepository retencao,
+            ProdutoMapper mapper,
+            ProdutoEventoProducer eventos,
+            Shards shards,
+            SequenciaAlteracoes sequencias,
+            EntityManager entityManager,
+            @Value("${produto.alteracoes.limite-maximo:1000}") int limiteMaximo,
+            @Value("${produto.alteracoes.retencao-remocoes:7d}") Duration retencaoRemocoes
+    ) {
+        this(repository, retencao, mapper, eventos, shards, sequencias, entityManager, Clock.systemUTC(), limiteMaximo, retencaoRemocoes);
+    }
+
+    AlteracaoProdutoService(AlteracaoProdutoRepository repository, RetencaoAlteracaoRepository retencao, ProdutoMapper mapper,
+                            ProdutoEventoProducer eventos, Shards shards, SequenciaAlteracoes sequencias,
+                            EntityManager entityManager, Clock clock, int limiteMaximo, Duration retencaoRemocoes) {
+        this.repository = repository;
+        this.retencao = retencao;
+        this.mapper = mapper;
+        this.eventos = eventos;
+        this.shards = shards;
+        this.sequencias = sequencias;
+        this.entityManager = entityManager;
+        this.clock = clock;
+        this.limiteMaximo = limiteMaximo;
+        this.retencaoRemocoes = retencaoRemocoes;
+    }
+
+    /**
+     * Deve ser chamado dentro da transação que grava o produto. A sequência já é atribuída aqui, então a
+     * inserção fica para o flush e é feita em lote com as demais da transação.
+     *
+     * @return a alteração registrada, com a sua sequência
+     */
+    public AlteracaoProdutoResponse registrar(AlteracaoProdutoEntity.Operacao operacao, ProdutoEntity produto) {
+        var sequencia = this.sequencias.proxima(produto.getId());
+        var alteracao = operacao == AlteracaoProdutoEntity.Operacao.REMOCAO
+                ? new AlteracaoProdutoEntity(sequencia, produto.getId(), operacao, null, null, produto.getCategoria(), this.clock.instant())
+                : new AlteracaoProdutoEntity(sequencia, produto.getId(), operacao, produto.getNome(), produto.getPreco(), produto.getCategoria(), this.clock.instant());
+        this.entityManager.persist(alteracao);
+        var evento = this.mapper.mapToAlteracaoProdutoResponse(alteracao);
+        AfterCommit.execute(() -> this.eventos.publicar(evento));
+        return evento;
+    }
+
+    /**
+     * @param desde cursor da última alteração recebida; quando ausente, lê o log desde o início da retenção
+     */
+    @Transactional(readOnly = true)
+    public AlteracoesProdutoResponse listar(Long desde, int limite) {
+        return this.listar(desde, limite, this.sequencias.visivelAte());
+    }
+
+    /**
+     * Variante que não espera pelas transações em andamento, usada para retomar o stream de eventos, em que
+     * as alterações mais recentes também chegam pelo próprio stream.
+     */
+    @Transactional(readOnly = true)
+    public AlteracoesProdutoResponse listarSemAtraso(long desde, int limite) {
+        return this.listar(desde, limite, Long.MAX_VALUE);
+    }
+
+    /**
+     * Última sequência já visível no log: uma cópia do catálogo lida a partir de agora deve acompanhar
+     * as alterações posteriores a ela.
+     */
+    @Transactional(readOnly = true)
+    public long sequenciaVisivel() {
+        return Math.max(this.sequenciaExpirada(), this.repository.ultimaSequenciaAte(this.sequencias.visivelAte()).orElse(0L));
+    }
+
+    private AlteracoesProdutoResponse listar(Long desde, int limite, long visivelAte) {
+        var sequenciaExpirada = this.sequenciaExpirada();
+        var inicio = desde == null ? sequenciaExpirada : desde;
+        if (inicio < sequenciaExpirada)
+            throw new CursorExpiradoException(inicio, sequenciaExpirada);
+        var tamanho = Math.max(1, Math.min(limite, this.limiteMaximo));
+        var pagina = this.repository.findBySequenciaGreaterThanOrderBySequencia(inicio, Limit.of(tamanho + 1));
+        var alteracoes = pagina.stream()
+                .limit(tamanho)
+                .takeWhile(alteracao -> alteracao.getSequencia() <= visivelAte)
+                .map(this.mapper::mapToAlteracaoProdutoResponse)
+                .toList();
+        var cursor = alteracoes.isEmpty() ? inicio : alteracoes.get(alteracoes.size() - 1).sequencia();
+        return new AlteracoesProdutoResponse(alteracoes, cursor, pagina.size() > alteracoes.size());
+    }
+
+    /**
+     * Compacta o log e descarta as remoções mais antigas que a retenção, avançando a marca d'água dos cursores,
+     * e as reservas de sequências abandonadas. Com sharding, cada shard é compactado em sua própria transação.
+     */
+    @Scheduled(cron = "${produto.alteracoes.compactacao-cron:0 0 3 * * *}")
+    public void compactar() {
+        this.shards.emCadaShard(false, () -> {
+            this.compactarShard();
+            return null;
+        });
+    }
+
+    private void compactarShard() {
+        var compactadas = this.repository.compactar();
+        var limite = this.clock.instant().minus(this.retencaoRemocoes);
+        var expiradas = this.repository.ultimaSequenciaAntesDe(AlteracaoProdutoEntity.Operacao.REMOCAO, limite)
+                .filter(sequencia -> sequencia > this.sequenciaExpirada())
+                .map(sequencia -> {
+                    this.retencao.save(new RetencaoAlteracaoEntity(RetencaoAlteracaoEntity.ID, sequencia));
+                    return this.repository.removerAte(AlteracaoProdutoEntity.Operacao.REMOCAO, sequencia);
+                })
+                .orElse(0);
+        var reservas = this.sequencias.removerExpiradas();
+        log.info("Log de alterações compactado: {} alterações superadas, {} remoções expiradas e {} reservas abandonadas descartadas.",
+                compactadas, expiradas, reservas);
+    }
+
+    private long sequenciaExpirada() {
+        return this.retencao.findById(RetencaoAlteracaoEntity.ID)
+                .map(RetencaoAlteracaoEntity::getSequenciaExpirada)
+                .orElse(0L);
+    }
+}
@@ -0,0 +1,313 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracoesProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.CursorExpiradoException;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.snapshot.CatalogoSnapshot;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.ProdutoRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Cópia local do catálogo de produtos, usada pelas consultas quando habilitada, para que a inicialização
+ * de cada instância não dependa de ler o catálogo inteiro do banco.
+ * <p>
+ * A base é um {@link CatalogoSnapshot} mapeado em memória, com a marca do log de alterações de cada shard;
+ * as alterações posteriores ficam em memória, por cima da base, e são incorporadas a um novo snapshot
+ * periodicamente e no encerramento. Na inicialização, o snapshot existente é mapeado e já atende às
+ * consultas enquanto o log é lido a partir da marca; o catálogo só é carregado do banco sem um snapshot
+ * válido ou quando a marca já expirou no log.
+ * <p>
+ * As alterações chegam pelo log e pelos eventos de produto. Cada produto guarda a sequência da sua última
+ * alteração, então alterações repetidas ou fora de ordem são descartadas. As consultas são eventualmente
+ * consistentes: uma escrita aparece após o seu evento ou a próxima sincronização com o log.
+ */
+@Slf4j
+@Component
+@Profile("!replica")
+public class CatalogoLocal {
+
+    private static final Comparator<ProdutoResponse> ORDEM = Comparator.comparing(ProdutoResponse::nome)
+            .thenComparing(ProdutoResponse::id);
+
+    private static final int TAMANHO_PAGINA = 1000;
+
+    private final ProdutoRepository repository;
+
+    private final AlteracaoProdutoService alteracoes;
+
+    private final CategoriaDicionario categorias;
+
+    private final Shards shards;
+
+    private final VersaoCatalogo versao;
+
+    private final boolean habilitado;
+
+    private final Path arquivo;
+
+    private final AtomicLongArray marcas;
+
+    private final Map<UUID, Entrada> recentes = new ConcurrentHashMap<>();
+
+    private volatile CatalogoSnapshot base;
+
+    private volatile Listagem listagem;
+
+    public CatalogoLocal(
+            ProdutoRepository repository,
+            AlteracaoProdutoService alteracoes,
+            CategoriaDicionario categorias,
+            Shards shards,
+            VersaoCatalogo versao,
+            @Value("${produto.catalogo.enabled:false}") boolean habilitado,
+            @Value("${produto.catalogo.arquivo:data/catalogo.snapshot}") Path arquivo
+    ) {
+        this.repository = repository;
+        this.alteracoes = alteracoes;
+        this.categorias = categorias;
+        this.shards = shards;
+        this.versao = versao;
+        this.habilitado = habilitado;
+        this.arquivo = arquivo;
+        this.marcas = new AtomicLongArray(shards.quantidade());
+    }
+
+    /**
+     * Alteração de um produto posterior ao snapshot; sem produto, indica uma remoção.
+     */
+    private record Entrada(long sequencia, ProdutoResponse produto) {
+    }
+
+    /**
+     * Produtos do catálogo em ordem, montados na versão indicada.
+     */
+    private record Listagem(long versao, List<ProdutoResponse> produtos) {
+    }
+
+    public boolean disponivel() {
+        return this.base != null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void carregar() {
+        if (!this.habilitado)
+            return;
+        var inicio = System.nanoTime();
+        try {
+            var snapshot = CatalogoSnapshot.mapear(this.arquivo, this.shards.quantidade());
+            if (snapshot.isPresent()) {
+                this.usar(snapshot.get());
+                log.info("Catálogo local mapeado do snapshot {}: {} produtos em {} ms, marcas {}.", this.arquivo,
+                        snapshot.get().quantidade(), (System.nanoTime() - inicio) / 1_000_000, Arrays.toString(snapshot.get().marcas()));
+                return;
+            }
+            this.carregarDoBanco();
+            log.info("Catálogo local carregado do banco em {} ms: {} produtos.",
+                    (System.nanoTime() - inicio) / 1_000_000, this.base.quantidade());
+        } catch (UncheckedIOException e) {
+            log.error("Falha ao carregar o snapshot {}; as consultas continuam no banco.", this.arquivo, e);
+        }
+    }
+
+    /**
+     * Lê o log de alterações de cada shard a partir da marca. Com a marca expirada, o catálogo é recarregado
+     * do banco, e o snapshot anterior continua atendendo às consultas até lá.
+     */
+    @Scheduled(fixedDelayString = "${produto.catalogo.sincronizacao-ms:1000}")
+    public synchronized void sincronizar() {
+        if (this.base == null)
+            return;
+        try {
+            for (var shard = 0; shard < this.shards.quantidade(); shard++)
+                this.sincronizar(shard);
+        } catch (CursorExpiradoException e) {
+            log.warn("Marca do catálogo local expirada no log de alterações; recarregando do banco.", e);
+            this.carregarDoBanco();
+        }
+    }
+
+    private void sincronizar(int shard) {
+        AlteracoesProdutoResponse pagina;
+        do {
+            var desde = this.marcas.get(shard);
+            pagina = this.shards.executar(shard, () -> this.alteracoes.listar(desde, TAMANHO_PAGINA));
+            pagina.alteracoes().forEach(this::registrar);
+            this.marcas.set(shard, pagina.cursor());
+            if (!pagina.alteracoes().isEmpty())
+                this.versao.incrementar();
+        } while (pagina.possuiMais() && !pagina.alteracoes().isEmpty());
+    }
+
+    /**
+     * Aplica uma alteração recebida pelos eventos de produto; as anteriores à marca já foram lidas do log.
+     */
+    public void aplicar(AlteracaoProdutoResponse alteracao) {
+        if (this.base == null || alteracao.sequencia() <= this.marcas.get(this.shards.shardDe(alteracao.produtoId())))
+            return;
+        this.registrar(alteracao);
+    }
+
+    /**
+     * Grava um novo snapshot com as alterações acumuladas, que deixam de ocupar o heap.
+     */
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${produto.catalogo.snapshot-ms:300000}", initialDelayString = "${produto.catalogo.snapshot-ms:300000}")
+    public synchronized void gravarSnapshot() {
+        var base = this.base;
+        var marcas = this.marcas();
+        if (base == null || this.recentes.isEmpty() && Arrays.equals(marcas, base.marcas()))
+            return;
+        var incorporadas = Map.copyOf(this.recentes);
+        var registros = Stream.concat(
+                        base.registros().filter(registro -> !incorporadas.containsKey(registro.id())),
+                        incorporadas.entrySet().stream().map(entrada -> this.registro(entrada.getKey(), entrada.getValue())))
+                .filter(registro -> !registro.removido() || registro.sequencia() > marcas[this.shards.shardDe(registro.id())])
+                .toList();
+        try {
+            this.base = CatalogoSnapshot.gravar(this.arquivo, marcas, registros);
+        } catch (UncheckedIOException e) {
+            log.error("Falha ao gravar o snapshot {}.", this.arquivo, e);
+            return;
+        }
+        incorporadas.forEach(this.recentes::remove);
+        log.info("Snapshot do catálogo gravado em {}: {} produtos, {} alterações incorporadas.",
+                this.arquivo, this.base.quantidade(), incorporadas.size());
+    }
+
+    public Optional<ProdutoResponse> buscar(UUID id) {
+        var entrada = this.recentes.get(id);
+        if (entrada != null)
+            return Optional.ofNullable(entrada.produto());
+        return this.base.buscar(id)
+                .filter(registro -> !registro.removido())
+                .map(this::produto);
+    }
+
+    /**
+     * Mesmos filtros da listagem personalizada do banco; a categoria é comparada exatamente, como na collation
+     * binária da tabela de categorias. Parâmetros nulos não filtram.
+     */
+    public List<ProdutoResponse> listar(String nome, BigDecimal preco, String categoria) {
+        var produtos = this.produtos();
+        if (nome == null && preco == null && categoria == null)
+            return produtos;
+        var trecho = nome != null ? nome.toLowerCase(Locale.ROOT) : null;
+        Predicate<ProdutoResponse> filtro = produto ->
+                (trecho == null || produto.nome().toLowerCase(Locale.ROOT).contains(trecho))
+                        && (preco == null || produto.preco().compareTo(preco) == 0)
+                        && (categoria == null || produto.categoria().equals(categoria));
+        return produtos.stream()
+                .filter(filtro)
+                .toList();
+    }
+
+    /**
+     * Decodificar o snapshot inteiro custa o mesmo que lê-lo do banco, então a listagem ordenada é mantida
+     * em memória até a próxima mudança da {@link VersaoCatalogo}, e as consultas seguintes apenas a filtram.
+     * A versão é lida antes da montagem: uma alteração concorrente a torna obsoleta, mesmo que já incluída.
+     */
+    private List<ProdutoResponse> produtos() {
+        var versao = this.versao.atual();
+        var listagem = this.listagem;
+        if (listagem != null && listagem.versao() == versao)
+            return listagem.produtos();
+        var recentes = Map.copyOf(this.recentes);
+        var produtos = Stream.concat(
+                        this.base.registros()
+                                .filter(registro -> !registro.removido() && !recentes.containsKey(registro.id()))
+                                .map(this::produto),
+                        recentes.values().stream().map(Entrada::produto).filter(Objects::nonNull))
+                .sorted(ORDEM)
+                .toList();
+        this.listagem = new Listagem(versao, produtos);
+        return produtos;
+    }
+
+    /**
+     * As marcas são obtidas antes da leitura dos produtos: alterações concorrentes à leitura são posteriores
+     * à marca e serão reaplicadas pela sincronização.
+     */
+    private void carregarDoBanco() {
+        var marcas = this.shards.emCadaShard(true, this.alteracoes::sequenciaVisivel).stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+        var registros = this.shards.emCadaShard(true, this.repository::findAll).stream()
+                .flatMap(List::stream)
+                .map(produto -> new CatalogoSnapshot.Registro(produto.getId(), marcas[this.shards.shardDe(produto.getId())],
+                        produto.getNome(), produto.getPreco(), this.categorias.idDe(produto.getCategoria())))
+                .toList();
+        var snapshot = CatalogoSnapshot.gravar(this.arquivo, marcas, registros);
+        this.recentes.entrySet().removeIf(entrada -> entrada.getValue().sequencia() <= marcas[this.shards.shardDe(entrada.getKey())]);
+        this.usar(snapshot);
+    }
+
+    /**
+     * O snapshot carregado pode diferir do anterior em qualquer produto, então a versão do catálogo muda.
+     */
+    private void usar(CatalogoSnapshot snapshot) {
+        var marcas = snapshot.marcas();
+        for (var shard = 0; shard < marcas.length; shard++)
+            this.marcas.set(shard, marcas[shard]);
+        this.base = snapshot;
+        this.versao.incrementar();
+    }
+
+    /**
+     * Mantém a alteração se for mais recente que a do produto em memória ou, na ausência dela, no snapshot.
+     * A base é lida dentro do {@code compute}: ao gravar um snapshot, ela é trocada antes de as alterações
+     * incorporadas saírem da memória.
+     */
+    private void registrar(AlteracaoProdutoResponse alteracao) {
+        var entrada = alteracao.operacao() == AlteracaoProdutoEntity.Operacao.REMOCAO
+                ? new Entrada(alteracao.sequencia(), null)
+                : new Entrada(alteracao.sequencia(), new ProdutoResponse(alteracao.produtoId(), alteracao.nome(), alteracao.preco(), alteracao.categoria()));
+        this.recentes.compute(alteracao.produtoId(), (id, atual) -> {
+            var sequenciaAtual = atual != null ? atual.sequencia() : this.base.sequenciaDe(id);
+            return entrada.sequencia() > sequenciaAtual ? entrada : atual;
+        });
+    }
+
+    private long[] marcas() {
+        var marcas = new long[this.marcas.length()];
+        for (var shard = 0; shard < marcas.length; shard++)
+            marcas[shard] = this.marcas.get(shard);
+        return marcas;
+    }
+
+    private CatalogoSnapshot.Registro registro(UUID id, Entrada entrada) {
+        if (entrada.produto() == null)
+            return CatalogoSnapshot.Registro.remocao(id, entrada.sequencia());
+        var produto = entrada.produto();
+        return new CatalogoSnapshot.Registro(id, entrada.sequencia(), produto.nome(), produto.preco(), this.categorias.idDe(produto.categoria()));
+    }
+
+    private ProdutoResponse produto(CatalogoSnapshot.Registro registro) {
+        return new ProdutoResponse(registro.id(), registro.nome(), registro.preco(), this.categorias.nomeDe(registro.categoria()));
+    }
+}
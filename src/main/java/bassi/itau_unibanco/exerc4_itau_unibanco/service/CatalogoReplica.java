@@ -0,0 +1,333 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracoesProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutosPorIdResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.SnapshotCatalogoMessage;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.CursorExpiradoException;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.ProdutoNaoEncontradoException;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.replica.CanalReplica;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.replica.LogAlteracoesPrimario;
+import bassi.itau_unibanco.exerc4_itau_unibanco.util.DistribuicaoPorId;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Catálogo das réplicas de leitura (perfil {@code replica}), mantido inteiramente em memória, sem banco e sem
+ * consultas recorrentes ao primário.
+ * <p>
+ * A carga inicial é um snapshot pedido pelo broker a qualquer instância primária, com a marca do log de
+ * alterações de cada shard. Depois, as alterações chegam pelos eventos de produto, em uma fila durável da
+ * réplica criada antes do pedido, então nenhum evento posterior ao snapshot se perde, inclusive durante
+ * reinícios. Cada produto guarda a sequência da sua última alteração, e as remoções são mantidas como marcas,
+ * então alterações repetidas ou fora de ordem são descartadas.
+ * <p>
+ * O log de alterações do primário só é lido para reparar lacunas: logo após cada snapshot, que pode ter sido
+ * gerado antes da fila existir, e a cada {@code produto.replica.reparo-ms}, para recuperar eventos perdidos.
+ * Com a marca expirada no log, um novo snapshot é pedido, e o catálogo atual continua atendendo às consultas.
+ * <p>
+ * O lag de replicação é o tempo desde a última vez em que a fila da réplica foi vista sem eventos pendentes.
+ */
+@Slf4j
+@Service
+@Profile("replica")
+public class CatalogoReplica {
+
+    private static final Comparator<ProdutoResponse> ORDEM = Comparator.comparing(ProdutoResponse::nome)
+            .thenComparing(ProdutoResponse::id);
+
+    private static final int TAMANHO_PAGINA = 1000;
+
+    private final CanalReplica canal;
+
+    private final LogAlteracoesPrimario primario;
+
+    private final VersaoCatalogo versao;
+
+    private final Duration esperaSnapshot;
+
+    private final Map<UUID, Entrada> produtos = new ConcurrentHashMap<>();
+
+    private volatile AtomicLongArray marcas = new AtomicLongArray(0);
+
+    private volatile boolean carregado;
+
+    private volatile long emDiaEm;
+
+    private volatile Listagem listagem;
+
+    private Montagem montagem;
+
+    private boolean recarregar;
+
+    private boolean reparar;
+
+    public CatalogoReplica(
+            CanalReplica canal,
+            LogAlteracoesPrimario primario,
+            VersaoCatalogo versao,
+            @Value("${produto.replica.snapshot.espera:30s}") Duration esperaSnapshot
+    ) {
+        this.canal = canal;
+        this.primario = primario;
+        this.versao = versao;
+        this.esperaSnapshot = esperaSnapshot;
+    }
+
+    /**
+     * Alteração mais recente de um produto; sem produto, indica uma remoção.
+     */
+    private record Entrada(long sequencia, ProdutoResponse produto) {
+    }
+
+    /**
+     * Produtos do catálogo em ordem, montados na versão indicada.
+     */
+    private record Listagem(long versao, List<ProdutoResponse> produtos) {
+    }
+
+    /**
+     * Partes recebidas do snapshot pedido.
+     */
+    private record Montagem(UUID solicitacao, long solicitadaEm, Map<Integer, SnapshotCatalogoMessage> partes) {
+    }
+
+    public boolean disponivel() {
+        return this.carregado;
+    }
+
+    /**
+     * Tempo desde a última vez em que a fila da réplica foi vista sem eventos pendentes; vazio antes da carga inicial.
+     */
+    public Optional<Duration> lag() {
+        if (!this.carregado)
+            return Optional.empty();
+        return Optional.of(Duration.ofNanos(System.nanoTime() - this.emDiaEm));
+    }
+
+    public int quantidade() {
+        return (int) this.produtos.values().stream().filter(entrada -> entrada.produto() != null).count();
+    }
+
+    /**
+     * Acompanha a fila da réplica, pede o snapshot enquanto o catálogo não está carregado (de novo, se a resposta
+     * não chegar em {@code produto.replica.snapshot.espera}) e repara a lacuna após cada snapshot.
+     */
+    @Scheduled(fixedDelayString = "${produto.replica.sincronizacao-ms:1000}")
+    public void verificar() {
+        var pendentes = this.canal.eventosPendentes();
+        if (pendentes.isPresent() && pendentes.getAsInt() == 0)
+            this.emDiaEm = System.nanoTime();
+        synchronized (this) {
+            if ((!this.carregado || this.recarregar) && (this.montagem == null
+                    || System.nanoTime() - this.montagem.solicitadaEm() > this.esperaSnapshot.toNanos()))
+                this.solicitar();
+            if (this.reparar)
+                this.reparar();
+        }
+    }
+
+    /**
+     * Lê o log de alterações do primário a partir da marca de cada shard. Falhas de comunicação com o primário
+     * só adiam o reparo; os eventos continuam chegando pela fila.
+     */
+    @Scheduled(fixedDelayString = "${produto.replica.reparo-ms:300000}", initialDelayString = "${produto.replica.reparo-ms:300000}")
+    public synchronized void reparar() {
+        if (!this.carregado)
+            return;
+        try {
+            var marcas = this.marcas;
+            for (var shard = 0; shard < marcas.length(); shard++)
+                marcas.set(shard, this.ler(shard, marcas.get(shard)));
+            this.reparar = false;
+            this.produtos.entrySet().removeIf(entrada -> entrada.getValue().produto() == null
+                    && entrada.getValue().sequencia() <= this.marcaDe(entrada.getKey()));
+        } catch (CursorExpiradoException e) {
+            log.warn("Marca da réplica expirada no log de alterações do primário; pedindo um novo snapshot.", e);
+            this.reparar = false;
+            this.recarregar = true;
+        } catch (RestClientException e) {
+            log.warn("Falha ao ler o log de alterações do primário para reparar a réplica.", e);
+        }
+    }
+
+    /**
+     * Recebe uma parte do snapshot pedido; partes de pedidos anteriores são descartadas.
+     */
+    public synchronized void receber(SnapshotCatalogoMessage parte) {
+        if (this.montagem == null || !this.montagem.solicitacao().equals(parte.solicitacao())) {
+            log.debug("Parte {} do snapshot {} descartada: não corresponde ao pedido atual.", parte.parte(), parte.solicitacao());
+            return;
+        }
+        this.montagem.partes().put(parte.parte(), parte);
+        if (this.montagem.partes().size() == parte.partes())
+            this.carregar(List.copyOf(this.montagem.partes().values()));
+    }
+
+    /**
+     * Aplica uma alteração recebida pelos eventos de produto; as anteriores à marca já foram lidas do log.
+     */
+    public void aplicar(AlteracaoProdutoResponse alteracao) {
+        if (alteracao.sequencia() <= this.marcaDe(alteracao.produtoId()))
+            return;
+        if (registrar(this.produtos, alteracao))
+            this.versao.incrementar();
+    }
+
+    /**
+     * Mesmos filtros da listagem personalizada do primário, com a categoria comparada exatamente;
+     * parâmetros nulos não filtram.
+     */
+    public List<ProdutoResponse> listar(String nome, BigDecimal preco, String categoria) {
+        var produtos = this.produtos();
+        if (nome == null && preco == null && categoria == null)
+            return produtos;
+        var trecho = nome != null ? nome.toLowerCase(Locale.ROOT) : null;
+        return produtos.stream()
+                .filter(produto -> (trecho == null || produto.nome().toLowerCase(Locale.ROOT).contains(trecho))
+                        && (preco == null || produto.preco().compareTo(preco) == 0)
+                        && (categoria == null || produto.categoria().equals(categoria)))
+                .toList();
+    }
+
+    public ProdutoResponse buscar(UUID id) {
+        var entrada = this.produtos.get(id);
+        if (entrada == null || entrada.produto() == null)
+            throw new ProdutoNaoEncontradoException(id);
+        return entrada.produto();
+    }
+
+    /**
+     * Ids repetidos são considerados uma vez.
+     */
+    public ProdutosPorIdResponse listarPelosIds(List<UUID> ids) {
+        var produtos = new ArrayList<ProdutoResponse>();
+        var naoEncontrados = new ArrayList<UUID>();
+        for (var id : new LinkedHashSet<>(ids)) {
+            var entrada = this.produtos.get(id);
+            if (entrada != null && entrada.produto() != null)
+                produtos.add(entrada.produto());
+            else
+                naoEncontrados.add(id);
+        }
+        return new ProdutosPorIdResponse(produtos, naoEncontrados);
+    }
+
+    /**
+     * Listagem ordenada reaproveitada enquanto a {@link VersaoCatalogo} não mudar, já que toda alteração
+     * aplicada a incrementa; sem isso, cada consulta ordenaria o catálogo inteiro.
+     */
+    private List<ProdutoResponse> produtos() {
+        var versao = this.versao.atual();
+        var listagem = this.listagem;
+        if (listagem != null && listagem.versao() == versao)
+            return listagem.produtos();
+        var produtos = this.produtos.values().stream()
+                .map(Entrada::produto)
+                .filter(Objects::nonNull)
+                .sorted(ORDEM)
+                .toList();
+        this.listagem = new Listagem(versao, produtos);
+        return produtos;
+    }
+
+    private void solicitar() {
+        var solicitacao = UUID.randomUUID();
+        try {
+            this.canal.solicitarSnapshot(solicitacao);
+            this.montagem = new Montagem(solicitacao, System.nanoTime(), new ConcurrentHashMap<>());
+            log.info("Snapshot do catálogo pedido às instâncias primárias: {}.", solicitacao);
+        } catch (AmqpException e) {
+            log.warn("Falha ao pedir o snapshot do catálogo.", e);
+        }
+    }
+
+    /**
+     * Incorpora o snapshot ao catálogo em memória. Alterações já recebidas pelos eventos e posteriores à marca
+     * do snapshot são mantidas; as demais são substituídas pelo snapshot, e produtos ausentes dele são removidos.
+     */
+    private void carregar(List<SnapshotCatalogoMessage> partes) {
+        var marcas = new AtomicLongArray(partes.get(0).marcas().stream().mapToLong(Long::longValue).toArray());
+        var ids = new HashSet<UUID>();
+        for (var parte : partes)
+            for (var produto : parte.produtos()) {
+                ids.add(produto.id());
+                var entrada = new Entrada(marcas.get(DistribuicaoPorId.parte(produto.id(), marcas.length())), produto);
+                this.produtos.compute(produto.id(), (id, atual) ->
+                        atual == null || entrada.sequencia() > atual.sequencia() ? entrada : atual);
+            }
+        this.produtos.entrySet().removeIf(entrada -> !ids.contains(entrada.getKey())
+                && entrada.getValue().sequencia() <= marcas.get(DistribuicaoPorId.parte(entrada.getKey(), marcas.length())));
+        this.marcas = marcas;
+        this.montagem = null;
+        this.recarregar = false;
+        this.reparar = true;
+        if (!this.carregado)
+            this.emDiaEm = System.nanoTime();
+        this.carregado = true;
+        this.versao.incrementar();
+        log.info("Catálogo da réplica carregado do snapshot: {} produtos, marcas {}.", this.quantidade(), marcas);
+    }
+
+    /**
+     * @return a nova marca do shard
+     */
+    private long ler(int shard, long desde) {
+        AlteracoesProdutoResponse pagina;
+        var cursor = desde;
+        do {
+            pagina = this.primario.alteracoes(shard, cursor, TAMANHO_PAGINA);
+            var alteradas = 0;
+            for (var alteracao : pagina.alteracoes())
+                if (registrar(this.produtos, alteracao))
+                    alteradas++;
+            cursor = pagina.cursor();
+            if (alteradas > 0)
+                this.versao.incrementar();
+        } while (pagina.possuiMais() && !pagina.alteracoes().isEmpty());
+        return cursor;
+    }
+
+    /**
+     * @return a marca do shard do produto, ou {@code -1} antes da carga inicial
+     */
+    private long marcaDe(UUID id) {
+        var marcas = this.marcas;
+        return marcas.length() == 0 ? -1 : marcas.get(DistribuicaoPorId.parte(id, marcas.length()));
+    }
+
+    /**
+     * Mantém a alteração se for mais recente que a do produto em memória.
+     *
+     * @return se a alteração foi mantida
+     */
+    private static boolean registrar(Map<UUID, Entrada> produtos, AlteracaoProdutoResponse alteracao) {
+        var entrada = alteracao.operacao() == AlteracaoProdutoEntity.Operacao.REMOCAO
+                ? new Entrada(alteracao.sequencia(), null)
+                : new Entrada(alteracao.sequencia(), new ProdutoResponse(alteracao.produtoId(), alteracao.nome(), alteracao.preco(), alteracao.categoria()));
+        return produtos.compute(alteracao.produtoId(), (id, atual) ->
+                atual == null || entrada.sequencia() > atual.sequencia() ? entrada : atual) == entrada;
+    }
+}
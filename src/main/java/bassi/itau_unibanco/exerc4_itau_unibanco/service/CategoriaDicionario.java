@@ -0,0 +1,190 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.CategoriaEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.CategoriaRepository;
+import bassi.itau_unibanco.exerc4_itau_unibanco.util.AfterCommit;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dicionário em memória entre o id e o nome das categorias.
+ * <p>
+ * Os produtos armazenam apenas a chave inteira da categoria; o dicionário resolve a conversão
+ * nos dois sentidos sem consultas adicionais e devolve sempre a mesma instância de {@link String}
+ * para cada categoria, evitando cópias duplicadas no caminho de leitura.
+ * Categorias criadas por outras instâncias são buscadas no banco na primeira ocorrência. As lidas ou
+ * cadastradas dentro de uma transação ficam visíveis só a ela e entram no dicionário após o commit, para que
+ * uma transação desfeita não deixe no dicionário um id sem registro.
+ * Com sharding, as categorias são cadastradas no shard principal e replicadas nos demais.
+ * <p>
+ * A coluna {@code categoria.nome} usa collation binária, então o banco compara os nomes como o mapa: grafias
+ * que diferem só em maiúsculas ou acentos são categorias distintas, e cada uma é encontrada no dicionário.
+ */
+@Slf4j
+@Component
+@Profile("!replica")
+@RequiredArgsConstructor
+public class CategoriaDicionario {
+
+    private final CategoriaRepository repository;
+
+    private final Shards shards;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<String, Integer> idsPorNome = new ConcurrentHashMap<>();
+
+    private final Map<Integer, String> nomesPorId = new ConcurrentHashMap<>();
+
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void carregar() {
+        var categorias = this.repository.findAll();
+        categorias.forEach(this::armazenar);
+        if (this.shards.habilitado())
+            categorias.forEach(this::replicar);
+        log.info("Dicionário de categorias carregado: {} categorias.", this.nomesPorId.size());
+    }
+
+    /**
+     * @return o id da categoria, ou {@code null} quando ela não existe
+     */
+    public Integer idDe(String nome) {
+        var id = this.idsPorNome.get(nome);
+        if (id != null)
+            return id;
+        var pendentes = this.pendentes(false);
+        if (pendentes != null && pendentes.containsKey(nome))
+            return pendentes.get(nome);
+        return this.repository.findByNome(nome)
+                .map(this::armazenarAposCommit)
+                .orElse(null);
+    }
+
+    public String nomeDe(Integer id) {
+        var nome = this.nomesPorId.get(id);
+        if (nome != null)
+            return nome;
+        var pendentes = this.pendentes(false);
+        if (pendentes != null)
+            for (var pendente : pendentes.entrySet())
+                if (pendente.getValue().equals(id))
+                    return pendente.getKey();
+        return this.repository.findById(id)
+                .map(categoria -> this.nomesPorId.getOrDefault(this.armazenarAposCommit(categoria), categoria.getNome()))
+                .orElseThrow(() -> new IllegalStateException("Categoria não encontrada pelo id %s.".formatted(id)));
+    }
+
+    /**
+     * Obtém o id da categoria, cadastrando-a quando ainda não existir.
+     * Deve ser chamado dentro da transação que grava o produto; a categoria recém-criada só entra no
+     * dicionário após o commit.
+     */
+    public Integer registrar(String nome) {
+        var id = this.idDe(nome);
+        if (id != null)
+            return id;
+        if (this.shards.habilitado())
+            return this.armazenar(this.registrarNoShardPrincipal(nome));
+        return this.armazenarAposCommit(this.cadastrar(nome));
+    }
+
+    /**
+     * Cadastra a categoria na transação do produto. Se outra transação cadastrar o mesmo nome ao mesmo tempo,
+     * a inserção espera pelo seu commit e falha pela chave única; a falha desfaz só a instrução, e não a
+     * transação, e o id é relido com leitura bloqueante, que enxerga o registro confirmado mesmo com o
+     * snapshot da transação já aberto.
+     */
+    private CategoriaEntity cadastrar(String nome) {
+        try {
+            this.jdbcTemplate.update("INSERT INTO categoria (nome) VALUES (?)", nome);
+        } catch (DuplicateKeyException e) {
+            log.debug("Categoria {} cadastrada por outra transação.", nome);
+        }
+        return new CategoriaEntity(this.jdbcTemplate.queryForObject("SELECT id FROM categoria WHERE nome = ? FOR UPDATE", Integer.class, nome), nome);
+    }
+
+    /**
+     * Com sharding, o shard principal atribui o id e a categoria é replicada nos demais com o mesmo id,
+     * fora da transação do produto, já que os produtos de qualquer shard a referenciam por chave estrangeira.
+     * As gravações são idempotentes: uma replicação interrompida é completada no próximo registro ou na
+     * próxima inicialização.
+     */
+    private CategoriaEntity registrarNoShardPrincipal(String nome) {
+        var principal = new JdbcTemplate(this.shards.dataSources().get(0));
+        try {
+            principal.update("INSERT INTO categoria (nome) VALUES (?)", nome);
+        } catch (DuplicateKeyException e) {
+            log.debug("Categoria {} já cadastrada no shard principal.", nome);
+        }
+        var categoria = new CategoriaEntity(principal.queryForObject("SELECT id FROM categoria WHERE nome = ?", Integer.class, nome), nome);
+        this.replicar(categoria);
+        return categoria;
+    }
+
+    private void replicar(CategoriaEntity categoria) {
+        this.shards.dataSources().stream().skip(1).forEach(dataSource -> {
+            try {
+                new JdbcTemplate(dataSource).update("INSERT INTO categoria (id, nome) VALUES (?, ?)", categoria.getId(), categoria.getNome());
+            } catch (DuplicateKeyException e) {
+                log.trace("Categoria {} já replicada.", categoria.getNome());
+            }
+        });
+    }
+
+    private Integer armazenar(CategoriaEntity categoria) {
+        var nome = this.nomesPorId.computeIfAbsent(categoria.getId(), id -> categoria.getNome());
+        this.idsPorNome.putIfAbsent(nome, categoria.getId());
+        return categoria.getId();
+    }
+
+    /**
+     * Na transação corrente, a categoria fica entre as pendentes até o commit; o conversor da categoria a
+     * resolve durante o flush sem nova consulta.
+     */
+    private Integer armazenarAposCommit(CategoriaEntity categoria) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+            return this.armazenar(categoria);
+        this.pendentes(true).put(categoria.getNome(), categoria.getId());
+        AfterCommit.execute(() -> this.armazenar(categoria));
+        return categoria.getId();
+    }
+
+    /**
+     * Categorias pendentes da transação corrente, ligadas a ela e descartadas ao seu término.
+     *
+     * @param criar se o mapa deve ser criado quando ainda não houver
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Integer> pendentes(boolean criar) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+            return null;
+        var pendentes = (Map<String, Integer>) TransactionSynchronizationManager.getResource(this);
+        if (pendentes != null || !criar)
+            return pendentes;
+        var novas = new HashMap<String, Integer>();
+        TransactionSynchronizationManager.bindResource(this, novas);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(CategoriaDicionario.this);
+            }
+        });
+        return novas;
+    }
+}
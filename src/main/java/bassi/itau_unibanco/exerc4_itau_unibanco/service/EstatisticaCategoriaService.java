@@ -0,0 +1,211 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.EstatisticaCategoriaResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.ProdutoRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Visão materializada em memória das estatísticas de preço por categoria.
+ * <p>
+ * É semeada por uma única consulta agregada e mantida incrementalmente a cada escrita confirmada,
+ * evitando que os painéis transfiram o catálogo inteiro para calcular contagem, mínimo, máximo e média.
+ * Cada categoria guarda a distribuição de preços (preço → quantidade), o que mantém mínimo e máximo
+ * exatos mesmo após remoções.
+ * <p>
+ * A carga e o recálculo leem o banco com a trava de escrita de {@code escritas}, enquanto cada escrita mantém
+ * a trava de leitura desde o registro, dentro da transação, até aplicar o delta após o commit (ou até o
+ * rollback). Assim, a consulta agregada nunca vê um commit cujo delta ainda não foi aplicado, nem perde um
+ * delta aplicado antes da troca da visão; em troca, novas escritas aguardam o fim do recálculo.
+ */
+@Slf4j
+@Service
+@Profile("!replica")
+@RequiredArgsConstructor
+public class EstatisticaCategoriaService {
+
+    private final ProdutoRepository repository;
+
+    private final Shards shards;
+
+    private final ReentrantReadWriteLock escritas = new ReentrantReadWriteLock();
+
+    private volatile Map<String, Acumulador> categorias = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void carregar() {
+        var trava = this.escritas.writeLock();
+        trava.lock();
+        try {
+            this.categorias = this.agregar();
+        } finally {
+            trava.unlock();
+        }
+        log.info("Estatísticas por categoria carregadas: {} categorias.", this.categorias.size());
+    }
+
+    public List<EstatisticaCategoriaResponse> listar() {
+        return this.listar(this.categorias);
+    }
+
+    /**
+     * Recalcula as estatísticas a partir do banco de dados, substituindo a visão incremental.
+     * Divergências entre as duas são registradas em log para verificação; com as escritas em andamento
+     * concluídas antes da leitura, elas indicam um delta incorreto, e não uma corrida com o recálculo.
+     */
+    @Transactional(readOnly = true)
+    public List<EstatisticaCategoriaResponse> recalcular() {
+        var trava = this.escritas.writeLock();
+        trava.lock();
+        try {
+            var incremental = this.listar(this.categorias);
+            var recalculado = this.agregar();
+            this.categorias = recalculado;
+            var exato = this.listar(recalculado);
+            if (!exato.equals(incremental))
+                log.warn("Estatísticas por categoria divergentes. Incremental: {} Recalculado: {}", incremental, exato);
+            return exato;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    public void registrarInclusao(String categoria, BigDecimal preco) {
+        this.aplicarAposCommit(() -> this.incluir(categoria, preco));
+    }
+
+    public void registrarAlteracao(String categoriaAnterior, BigDecimal precoAnterior, String categoria, BigDecimal preco) {
+        if (Objects.equals(categoriaAnterior, categoria) && precoAnterior.compareTo(preco) == 0)
+            return;
+        this.aplicarAposCommit(() -> {
+            this.remover(categoriaAnterior, precoAnterior);
+            this.incluir(categoria, preco);
+        });
+    }
+
+    public void registrarRemocao(String categoria, BigDecimal preco) {
+        this.aplicarAposCommit(() -> this.remover(categoria, preco));
+    }
+
+    /**
+     * Como {@link bassi.itau_unibanco.exerc4_itau_unibanco.util.AfterCommit}, mas mantendo a trava de leitura
+     * até o fim da transação; a trava é reentrante, então um lote registra quantos produtos tiver.
+     */
+    private void aplicarAposCommit(Runnable delta) {
+        var trava = this.escritas.readLock();
+        trava.lock();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            try {
+                delta.run();
+            } finally {
+                trava.unlock();
+            }
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                delta.run();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                trava.unlock();
+            }
+        });
+    }
+
+    private void incluir(String categoria, BigDecimal preco) {
+        this.categorias.compute(categoria, (chave, acumulador) -> {
+            var atual = acumulador == null ? new Acumulador() : acumulador;
+            atual.adicionar(preco, 1);
+            return atual;
+        });
+    }
+
+    private void remover(String categoria, BigDecimal preco) {
+        this.categorias.computeIfPresent(categoria, (chave, acumulador) -> acumulador.remover(preco) ? null : acumulador);
+    }
+
+    private Map<String, Acumulador> agregar() {
+        var resultado = new ConcurrentHashMap<String, Acumulador>();
+        this.shards.emCadaShard(true, this.repository::agruparPorCategoriaEPreco)
+                .stream()
+                .flatMap(List::stream)
+                .forEach(linha -> resultado
+                        .computeIfAbsent(linha.getCategoria(), chave -> new Acumulador())
+                        .adicionar(linha.getPreco(), linha.getQuantidade()));
+        return resultado;
+    }
+
+    private List<EstatisticaCategoriaResponse> listar(Map<String, Acumulador> categorias) {
+        return categorias.entrySet()
+                .stream()
+                .map(entrada -> entrada.getValue().toResponse(entrada.getKey()))
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparing(EstatisticaCategoriaResponse::categoria))
+                .toList();
+    }
+
+    private static final class Acumulador {
+
+        private final TreeMap<BigDecimal, Long> precos = new TreeMap<>();
+
+        private long quantidade;
+
+        private BigDecimal soma = BigDecimal.ZERO;
+
+        synchronized void adicionar(BigDecimal preco, long ocorrencias) {
+            this.precos.merge(preco, ocorrencias, Long::sum);
+            this.quantidade += ocorrencias;
+            this.soma = this.soma.add(preco.multiply(BigDecimal.valueOf(ocorrencias)));
+        }
+
+        /**
+         * @return {@code true} quando a categoria deixa de ter produtos
+         */
+        synchronized boolean remover(BigDecimal preco) {
+            var ocorrencias = this.precos.get(preco);
+            if (ocorrencias == null)
+                return this.quantidade <= 0;
+            if (ocorrencias > 1)
+                this.precos.put(preco, ocorrencias - 1);
+            else
+                this.precos.remove(preco);
+            this.quantidade--;
+            this.soma = this.soma.subtract(preco);
+            return this.quantidade <= 0;
+        }
+
+        synchronized EstatisticaCategoriaResponse toResponse(String categoria) {
+            if (this.quantidade <= 0)
+                return null;
+            return new EstatisticaCategoriaResponse(
+                    categoria,
+                    this.quantidade,
+                    this.precos.firstKey().setScale(2, RoundingMode.HALF_UP),
+                    this.precos.lastKey().setScale(2, RoundingMode.HALF_UP),
+                    this.soma.divide(BigDecimal.valueOf(this.quantidade), 2, RoundingMode.HALF_UP)
+            );
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.ProdutoRepository;
+import bassi.itau_unibanco.exerc4_itau_unibanco.util.AfterCommit;
+import bassi.itau_unibanco.exerc4_itau_unibanco.util.FiltroBloom;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Filtro de Bloom com os ids dos produtos existentes, consultado antes do banco nas operações por id:
+ * quando o id certamente não existe, a operação responde sem acessar o banco.
+ * <p>
+ * O filtro é carregado na inicialização e reconstruído periodicamente, o que o redimensiona e descarta os
+ * ids removidos, já que um filtro de Bloom não admite remoções. Cadastros desta instância são registrados
+ * após o commit; os das demais chegam pelos eventos de produto. Um id ausente do filtro é rejeitado sem
+ * nenhuma consulta ao banco, então um produto cadastrado em outra instância recebe 422 aqui até o seu
+ * evento chegar, normalmente em milissegundos; se o evento se perder, até a próxima reconstrução.
+ * <p>
+ * Durante a reconstrução, os cadastros são registrados também no novo filtro, que é publicado antes da
+ * leitura dos ids: um cadastro confirmado antes da leitura é lido do banco, e um confirmado depois é
+ * registrado nos dois filtros. Enquanto o filtro não é carregado, todos os ids são considerados existentes.
+ */
+@Slf4j
+@Component
+@Profile("!replica")
+public class FiltroIdsProduto {
+
+    private static final int TAMANHO_PAGINA = 10_000;
+
+    private final ProdutoRepository repository;
+
+    private final Shards shards;
+
+    private final boolean habilitado;
+
+    private final double falsosPositivos;
+
+    private final long capacidadeMinima;
+
+    private volatile FiltroBloom atual;
+
+    private volatile FiltroBloom emConstrucao;
+
+    public FiltroIdsProduto(
+            ProdutoRepository repository,
+            Shards shards,
+            @Value("${produto.filtro-ids.enabled:false}") boolean habilitado,
+            @Value("${produto.filtro-ids.falsos-positivos:0.01}") double falsosPositivos,
+            @Value("${produto.filtro-ids.capacidade-minima:100000}") long capacidadeMinima
+    ) {
+        this.repository = repository;
+        this.shards = shards;
+        this.habilitado = habilitado;
+        this.falsosPositivos = falsosPositivos;
+        this.capacidadeMinima = capacidadeMinima;
+    }
+
+    /**
+     * @return {@code false} quando o produto certamente não existe
+     */
+    public boolean talvezExista(UUID id) {
+        return !this.talvezExistam(List.of(id)).isEmpty();
+    }
+
+    /**
+     * @return os ids que podem existir, na ordem recebida
+     */
+    public List<UUID> talvezExistam(Collection<UUID> ids) {
+        var filtro = this.atual;
+        if (filtro == null)
+            return List.copyOf(ids);
+        return ids.stream()
+                .filter(filtro::talvezContenha)
+                .toList();
+    }
+
+    /**
+     * Registra um produto cadastrado; na transação do cadastro, apenas após o commit.
+     */
+    public void registrar(UUID id) {
+        if (!this.habilitado)
+            return;
+        AfterCommit.execute(() -> {
+            var atual = this.atual;
+            if (atual != null)
+                atual.adicionar(id);
+            var novo = this.emConstrucao;
+            if (novo != null)
+                novo.adicionar(id);
+        });
+    }
+
+    /**
+     * Dimensionado para o dobro dos produtos existentes, para acomodar os cadastros até a próxima reconstrução.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${produto.filtro-ids.reconstrucao-ms:3600000}", initialDelayString = "${produto.filtro-ids.reconstrucao-ms:3600000}")
+    public synchronized void reconstruir() {
+        if (!this.habilitado)
+            return;
+        var inicio = System.nanoTime();
+        var quantidade = this.shards.emCadaShard(true, this.repository::count).stream()
+                .mapToLong(Long::longValue)
+                .sum();
+        var filtro = FiltroBloom.para(Math.max(this.capacidadeMinima, 2 * quantidade), this.falsosPositivos);
+        this.emConstrucao = filtro;
+        try {
+            var lidos = 0L;
+            for (var shard = 0; shard < this.shards.quantidade(); shard++)
+                lidos += this.carregar(shard, filtro);
+            this.atual = filtro;
+            log.info("Filtro de ids de produto reconstruído em {} ms: {} ids, {} KB.",
+                    (System.nanoTime() - inicio) / 1_000_000, lidos, filtro.bytes() / 1024);
+        } catch (RuntimeException e) {
+            log.error("Falha ao reconstruir o filtro de ids de produto; o filtro anterior continua em uso.", e);
+        } finally {
+            this.emConstrucao = null;
+        }
+    }
+
+    private long carregar(int shard, FiltroBloom filtro) {
+        var pagina = PageRequest.of(0, TAMANHO_PAGINA);
+        var ids = this.shards.executar(shard, () -> this.repository.listarIds(pagina));
+        var lidos = 0L;
+        while (!ids.isEmpty()) {
+            ids.forEach(filtro::adicionar);
+            lidos += ids.size();
+            if (ids.size() < TAMANHO_PAGINA)
+                break;
+            var ultimo = ids.get(ids.size() - 1);
+            ids = this.shards.executar(shard, () -> this.repository.listarIdsApos(ultimo, pagina));
+        }
+        return lidos;
+    }
+}
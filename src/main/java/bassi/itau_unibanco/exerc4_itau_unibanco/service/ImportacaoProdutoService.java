@@ -0,0 +1,552 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ImportacaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ImportacaoProdutoResponse.ErroLinha;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ImportacaoProdutoResponse.Status;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.IngestaoProdutoMessage;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoRequest;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.ArquivoImportacaoInvalidoException;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.ImportacaoNaoEncontradaException;
+import bassi.itau_unibanco.exerc4_itau_unibanco.util.BigDecimalTwoDecimalDeserializer;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.exception.DataException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Importação de catálogos em CSV, para cargas grandes demais para o cadastro por requisição.
+ * <p>
+ * O arquivo recebido é gravado em disco e lido linha a linha, sem ser carregado no heap, em lotes de
+ * {@code produto.importacao.tamanho-lote} linhas. As linhas de cada lote são validadas em paralelo, com as
+ * mesmas regras do {@link ProdutoRequest}, e as válidas são gravadas pelo {@link IngestaoProdutoService}
+ * em uma transação por lote (com sharding, uma por shard). Linhas inválidas são rejeitadas com o motivo,
+ * sem interromper a importação.
+ * <p>
+ * Após cada lote, o progresso é gravado ao lado do arquivo: uma importação interrompida é retomada do último
+ * lote confirmado na inicialização seguinte, e uma que falhou pode ser retomada sob demanda. O id de cada
+ * produto é derivado da importação e da linha, então um lote regravado após uma interrupção não duplica
+ * produtos, e as linhas gravadas contam apenas os produtos inseridos, não os que o lote regravado já encontra.
+ * Campos entre aspas são aceitos, mas não quebras de linha dentro deles.
+ * <p>
+ * O arquivo e o estado da importação ficam apenas no disco da instância que a recebeu: com mais de uma
+ * instância, a consulta e a retomada precisam de afinidade no balanceador (por exemplo, pelo id no caminho
+ * da URL de status), e o diretório deve estar em um volume persistente para a retomada após um reinício.
+ */
+@Slf4j
+@Service
+@Profile("!replica")
+public class ImportacaoProdutoService {
+
+    private static final String URL_STATUS = "/v1/produto/importacao/%s";
+
+    private static final List<String> COLUNAS = List.of("nome", "preco", "categoria");
+
+    private static final int LIMITE_ERROS = 1000;
+
+    private final IngestaoProdutoService ingestao;
+
+    private final Validator validator;
+
+    private final Path diretorio;
+
+    private final int tamanhoLote;
+
+    private final Executor executor;
+
+    private final ForkJoinPool validacao;
+
+    private final Map<UUID, Importacao> importacoes = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ImportacaoProdutoService(
+            IngestaoProdutoService ingestao,
+            Validator validator,
+            @Value("${produto.importacao.diretorio:data/importacao}") Path diretorio,
+            @Value("${produto.importacao.tamanho-lote:1000}") int tamanhoLote,
+            @Value("${produto.importacao.paralelismo:4}") int paralelismo
+    ) {
+        this(ingestao, validator, diretorio, tamanhoLote,
+                Executors.newSingleThreadExecutor(new CustomizableThreadFactory("produto-importacao-")), new ForkJoinPool(paralelismo));
+    }
+
+    ImportacaoProdutoService(IngestaoProdutoService ingestao, Validator validator, Path diretorio, int tamanhoLote,
+                             Executor executor, ForkJoinPool validacao) {
+        this.ingestao = ingestao;
+        this.validator = validator;
+        this.diretorio = diretorio;
+        this.tamanhoLote = tamanhoLote;
+        this.executor = executor;
+        this.validacao = validacao;
+    }
+
+    /**
+     * Grava o arquivo em disco, confere o cabeçalho e agenda a importação; as importações são executadas
+     * uma por vez, na ordem de recebimento.
+     */
+    public ImportacaoProdutoResponse importar(MultipartFile arquivo) {
+        var importacao = new Importacao(UUID.randomUUID(), this.diretorio);
+        try {
+            Files.createDirectories(this.diretorio);
+            arquivo.transferTo(importacao.csv);
+            try (var leitor = Files.newBufferedReader(importacao.csv, StandardCharsets.UTF_8)) {
+                colunas(leitor.readLine());
+            }
+        } catch (IOException e) {
+            importacao.excluir();
+            throw new UncheckedIOException(e);
+        } catch (ArquivoImportacaoInvalidoException e) {
+            importacao.excluir();
+            throw e;
+        }
+        importacao.salvarProgresso();
+        this.importacoes.put(importacao.id, importacao);
+        this.agendar(importacao);
+        return importacao.toResponse();
+    }
+
+    public ImportacaoProdutoResponse consultar(UUID id) {
+        return this.buscar(id).toResponse();
+    }
+
+    /**
+     * Retoma uma importação que falhou a partir do último lote confirmado; as demais não são alteradas.
+     */
+    public ImportacaoProdutoResponse retomar(UUID id) {
+        var importacao = this.buscar(id);
+        if (importacao.reiniciar())
+            this.agendar(importacao);
+        return importacao.toResponse();
+    }
+
+    /**
+     * Recupera as importações registradas no diretório e retoma as interrompidas pelo encerramento anterior.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void retomarInterrompidas() {
+        if (!Files.isDirectory(this.diretorio))
+            return;
+        try (var arquivos = Files.list(this.diretorio)) {
+            arquivos.filter(arquivo -> arquivo.getFileName().toString().endsWith(Importacao.EXTENSAO_PROGRESSO))
+                    .map(Importacao::carregar)
+                    .forEach(importacao -> {
+                        this.importacoes.put(importacao.id, importacao);
+                        if (importacao.status == Status.PENDENTE || importacao.status == Status.EM_ANDAMENTO) {
+                            log.info("Retomando a importação {} a partir da linha {}.", importacao.id, importacao.linha + 1);
+                            this.agendar(importacao);
+                        }
+                    });
+        } catch (IOException e) {
+            log.error("Falha ao listar as importações em {}.", this.diretorio, e);
+        }
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        if (this.executor instanceof ExecutorService executorService)
+            executorService.shutdownNow();
+        this.validacao.shutdownNow();
+    }
+
+    private Importacao buscar(UUID id) {
+        var importacao = this.importacoes.get(id);
+        if (importacao == null)
+            throw new ImportacaoNaoEncontradaException(id);
+        return importacao;
+    }
+
+    private void agendar(Importacao importacao) {
+        this.executor.execute(() -> this.processar(importacao));
+    }
+
+    /**
+     * Uma interrupção (encerramento da aplicação) entre lotes mantém a importação em andamento, para ser
+     * retomada na próxima inicialização.
+     */
+    private void processar(Importacao importacao) {
+        importacao.iniciar();
+        try (var leitor = Files.newBufferedReader(importacao.csv, StandardCharsets.UTF_8)) {
+            var colunas = colunas(leitor.readLine());
+            var numero = 1L;
+            while (numero < importacao.linha && leitor.readLine() != null)
+                numero++;
+            var lote = new ArrayList<Linha>(this.tamanhoLote);
+            String texto;
+            while ((texto = leitor.readLine()) != null) {
+                numero++;
+                if (!texto.isBlank())
+                    lote.add(new Linha(numero, texto));
+                if (lote.size() == this.tamanhoLote) {
+                    if (Thread.currentThread().isInterrupted())
+                        return;
+                    this.processarLote(importacao, colunas, lote, numero);
+                    lote = new ArrayList<>(this.tamanhoLote);
+                }
+            }
+            this.processarLote(importacao, colunas, lote, numero);
+            importacao.concluir();
+            log.info("Importação {} concluída: {} produtos gravados e {} linhas rejeitadas.",
+                    importacao.id, importacao.gravadas, importacao.rejeitadas);
+        } catch (IOException | RuntimeException e) {
+            log.error("Falha na importação {} após a linha {}.", importacao.id, importacao.linha, e);
+            importacao.falhar(e.getMessage());
+        }
+    }
+
+    private void processarLote(Importacao importacao, Colunas colunas, List<Linha> lote, long ultimaLinha) {
+        var validadas = this.validacao.submit(() -> lote.parallelStream()
+                        .map(linha -> this.validar(importacao.id, colunas, linha))
+                        .toList())
+                .join();
+        var erros = new ArrayList<ErroLinha>();
+        var validas = new ArrayList<LinhaValidada>(validadas.size());
+        for (var linha : validadas) {
+            if (linha.erro() != null)
+                erros.add(new ErroLinha(linha.numero(), linha.erro()));
+            else
+                validas.add(linha);
+        }
+        var gravadas = this.gravar(validas, erros);
+        importacao.registrarLote(ultimaLinha, validadas.size(), gravadas, erros);
+    }
+
+    /**
+     * Mesmo tratamento da ingestão: se o lote falhar por dados inválidos, as linhas são regravadas uma a uma
+     * para rejeitar apenas as inválidas. Demais falhas interrompem a importação.
+     *
+     * @return os produtos inseridos; os de um lote regravado após uma interrupção que já estavam no banco
+     * não contam de novo
+     */
+    private int gravar(List<LinhaValidada> validas, List<ErroLinha> erros) {
+        if (validas.isEmpty())
+            return 0;
+        var gravadas = new AtomicInteger();
+        try {
+            this.ingestao.gravarLote(validas.stream().map(LinhaValidada::mensagem).toList(), gravadas::addAndGet);
+        } catch (ConstraintViolationException | DataException | DataIntegrityViolationException e) {
+            log.warn("Falha ao gravar lote de importação com {} produtos, gravando individualmente.", validas.size(), e);
+            for (var linha : validas) {
+                try {
+                    this.ingestao.gravarLote(List.of(linha.mensagem()), gravadas::addAndGet);
+                } catch (ConstraintViolationException | DataException | DataIntegrityViolationException erro) {
+                    erros.add(new ErroLinha(linha.numero(), erro.getMessage()));
+                }
+            }
+            erros.sort((a, b) -> Long.compare(a.linha(), b.linha()));
+        }
+        return gravadas.get();
+    }
+
+    private LinhaValidada validar(UUID importacao, Colunas colunas, Linha linha) {
+        var campos = campos(linha.texto());
+        if (campos == null)
+            return LinhaValidada.rejeitada(linha.numero(), "Aspas não fechadas.");
+        if (campos.size() != colunas.quantidade())
+            return LinhaValidada.rejeitada(linha.numero(),
+                    "Esperadas %d colunas, encontradas %d.".formatted(colunas.quantidade(), campos.size()));
+        ProdutoRequest produto;
+        try {
+            produto = new ProdutoRequest(campos.get(colunas.nome()),
+                    BigDecimalTwoDecimalDeserializer.converter(campos.get(colunas.preco()).trim()), campos.get(colunas.categoria()));
+        } catch (NumberFormatException e) {
+            return LinhaValidada.rejeitada(linha.numero(), "preco: O formato ou a escala do número fornecido é inválido.");
+        } catch (IllegalArgumentException e) {
+            return LinhaValidada.rejeitada(linha.numero(), "preco: " + e.getMessage());
+        }
+        var violacoes = this.validator.validate(produto);
+        if (!violacoes.isEmpty())
+            return LinhaValidada.rejeitada(linha.numero(), violacoes.stream()
+                    .map(violacao -> violacao.getPropertyPath() + ": " + violacao.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining("; ")));
+        var id = UUID.nameUUIDFromBytes((importacao + ":" + linha.numero()).getBytes(StandardCharsets.UTF_8));
+        return new LinhaValidada(linha.numero(), new IngestaoProdutoMessage(id, produto), null);
+    }
+
+    /**
+     * Posição de cada coluna, pelo cabeçalho; colunas extras são ignoradas.
+     */
+    private static Colunas colunas(String cabecalho) {
+        if (cabecalho == null)
+            throw new ArquivoImportacaoInvalidoException("O arquivo está vazio.");
+        var nomes = campos(cabecalho.replace("\uFEFF", ""));
+        var posicoes = nomes == null ? List.<String>of() : nomes.stream()
+                .map(nome -> nome.trim().toLowerCase(Locale.ROOT))
+                .toList();
+        if (!posicoes.containsAll(COLUNAS))
+            throw new ArquivoImportacaoInvalidoException("O cabeçalho deve conter as colunas %s.".formatted(String.join(", ", COLUNAS)));
+        return new Colunas(posicoes.indexOf("nome"), posicoes.indexOf("preco"), posicoes.indexOf("categoria"), posicoes.size());
+    }
+
+    /**
+     * Separa os campos de uma linha CSV, com vírgula como separador e aspas duplas (escapadas por {@code ""})
+     * delimitando campos.
+     *
+     * @return os campos, ou {@code null} quando há aspas não fechadas
+     */
+    static List<String> campos(String linha) {
+        var campos = new ArrayList<String>();
+        var campo = new StringBuilder();
+        var aspas = false;
+        for (var i = 0; i < linha.length(); i++) {
+            var c = linha.charAt(i);
+            if (aspas) {
+                if (c != '"')
+                    campo.append(c);
+                else if (i + 1 < linha.length() && linha.charAt(i + 1) == '"')
+                    campo.append(linha.charAt(++i));
+                else
+                    aspas = false;
+            } else if (c == '"') {
+                aspas = true;
+            } else if (c == ',') {
+                campos.add(campo.toString());
+                campo.setLength(0);
+            } else {
+                campo.append(c);
+            }
+        }
+        if (aspas)
+            return null;
+        campos.add(campo.toString());
+        return campos;
+    }
+
+    private record Colunas(int nome, int preco, int categoria, int quantidade) {
+    }
+
+    private record Linha(long numero, String texto) {
+    }
+
+    private record LinhaValidada(long numero, IngestaoProdutoMessage mensagem, String erro) {
+
+        static LinhaValidada rejeitada(long numero, String erro) {
+            return new LinhaValidada(numero, null, erro);
+        }
+    }
+
+    /**
+     * Estado de uma importação, gravado em {@code <id>.progresso} após cada lote; as linhas rejeitadas são
+     * acrescentadas a {@code <id>.erros} antes do progresso. O arquivo CSV é removido ao final.
+     */
+    private static final class Importacao {
+
+        static final String EXTENSAO_PROGRESSO = ".progresso";
+
+        final UUID id;
+
+        final Path csv;
+
+        final Path progresso;
+
+        final Path arquivoErros;
+
+        final List<ErroLinha> erros = new ArrayList<>();
+
+        volatile Status status = Status.PENDENTE;
+
+        /**
+         * Última linha do arquivo (o cabeçalho é a linha 1) cujo lote já foi confirmado.
+         */
+        volatile long linha = 1;
+
+        /**
+         * Linhas de dados lidas; pode superar a soma de gravadas e rejeitadas quando um lote regravado encontra
+         * produtos que já estavam no banco.
+         */
+        volatile long processadas;
+
+        volatile long gravadas;
+
+        volatile long rejeitadas;
+
+        volatile String motivo;
+
+        volatile long inicio;
+
+        volatile long fim;
+
+        volatile long processadasNoInicio;
+
+        Importacao(UUID id, Path diretorio) {
+            this.id = id;
+            this.csv = diretorio.resolve(id + ".csv");
+            this.progresso = diretorio.resolve(id + EXTENSAO_PROGRESSO);
+            this.arquivoErros = diretorio.resolve(id + ".erros");
+        }
+
+        /**
+         * Erros gravados após o último progresso pertencem a um lote que será reprocessado e são descartados.
+         */
+        static Importacao carregar(Path progresso) {
+            var nome = progresso.getFileName().toString();
+            var importacao = new Importacao(UUID.fromString(nome.substring(0, nome.length() - EXTENSAO_PROGRESSO.length())), progresso.getParent());
+            var propriedades = new Properties();
+            try (var leitor = Files.newBufferedReader(progresso, StandardCharsets.UTF_8)) {
+                propriedades.load(leitor);
+                importacao.status = Status.valueOf(propriedades.getProperty("status"));
+                importacao.linha = Long.parseLong(propriedades.getProperty("linha"));
+                importacao.gravadas = Long.parseLong(propriedades.getProperty("gravadas"));
+                importacao.rejeitadas = Long.parseLong(propriedades.getProperty("rejeitadas"));
+                importacao.processadas = Long.parseLong(propriedades.getProperty("processadas",
+                        Long.toString(importacao.gravadas + importacao.rejeitadas)));
+                importacao.motivo = propriedades.getProperty("motivo");
+                if (Files.exists(importacao.arquivoErros)) {
+                    List<ErroLinha> confirmados;
+                    try (var linhas = Files.lines(importacao.arquivoErros, StandardCharsets.UTF_8)) {
+                        confirmados = linhas.map(Importacao::erro)
+                                .filter(erro -> erro.linha() <= importacao.linha)
+                                .toList();
+                    }
+                    Files.write(importacao.arquivoErros, confirmados.stream().map(Importacao::linhaDe).toList(), StandardCharsets.UTF_8);
+                    importacao.erros.addAll(confirmados.subList(0, Math.min(LIMITE_ERROS, confirmados.size())));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return importacao;
+        }
+
+        synchronized void iniciar() {
+            this.status = Status.EM_ANDAMENTO;
+            this.inicio = System.nanoTime();
+            this.fim = 0;
+            this.processadasNoInicio = this.processadas;
+            this.salvarProgresso();
+        }
+
+        synchronized boolean reiniciar() {
+            if (this.status != Status.FALHOU)
+                return false;
+            this.status = Status.PENDENTE;
+            this.motivo = null;
+            this.salvarProgresso();
+            return true;
+        }
+
+        synchronized void registrarLote(long ultimaLinha, int processadas, int gravadas, List<ErroLinha> erros) {
+            if (!erros.isEmpty()) {
+                try {
+                    Files.write(this.arquivoErros, erros.stream().map(Importacao::linhaDe).toList(), StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                erros.stream().limit(Math.max(0, LIMITE_ERROS - this.erros.size())).forEach(this.erros::add);
+            }
+            this.linha = ultimaLinha;
+            this.processadas += processadas;
+            this.gravadas += gravadas;
+            this.rejeitadas += erros.size();
+            this.salvarProgresso();
+        }
+
+        synchronized void concluir() {
+            this.status = Status.CONCLUIDA;
+            this.fim = System.nanoTime();
+            this.salvarProgresso();
+            this.excluirCsv();
+        }
+
+        synchronized void falhar(String motivo) {
+            this.status = Status.FALHOU;
+            this.motivo = motivo;
+            this.fim = System.nanoTime();
+            try {
+                this.salvarProgresso();
+            } catch (UncheckedIOException e) {
+                log.error("Falha ao gravar o progresso da importação {}.", this.id, e);
+            }
+        }
+
+        /**
+         * O progresso é gravado em um arquivo temporário e movido sobre o anterior, para nunca ficar incompleto.
+         */
+        synchronized void salvarProgresso() {
+            var propriedades = new Properties();
+            propriedades.setProperty("status", this.status.name());
+            propriedades.setProperty("linha", Long.toString(this.linha));
+            propriedades.setProperty("processadas", Long.toString(this.processadas));
+            propriedades.setProperty("gravadas", Long.toString(this.gravadas));
+            propriedades.setProperty("rejeitadas", Long.toString(this.rejeitadas));
+            if (this.motivo != null)
+                propriedades.setProperty("motivo", this.motivo);
+            var temporario = this.progresso.resolveSibling(this.progresso.getFileName() + ".tmp");
+            try {
+                try (var escritor = Files.newBufferedWriter(temporario, StandardCharsets.UTF_8)) {
+                    propriedades.store(escritor, null);
+                }
+                Files.move(temporario, this.progresso, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void excluir() {
+            try {
+                for (var arquivo : List.of(this.csv, this.progresso, this.arquivoErros))
+                    Files.deleteIfExists(arquivo);
+            } catch (IOException e) {
+                log.warn("Falha ao remover os arquivos da importação {}.", this.id, e);
+            }
+        }
+
+        private void excluirCsv() {
+            try {
+                Files.deleteIfExists(this.csv);
+            } catch (IOException e) {
+                log.warn("Falha ao remover o arquivo da importação {}.", this.id, e);
+            }
+        }
+
+        synchronized ImportacaoProdutoResponse toResponse() {
+            var linhasPorSegundo = 0.0;
+            if (this.inicio != 0) {
+                var segundos = ((this.fim != 0 ? this.fim : System.nanoTime()) - this.inicio) / 1e9;
+                if (segundos > 0)
+                    linhasPorSegundo = Math.round((this.processadas - this.processadasNoInicio) / segundos * 10) / 10.0;
+            }
+            return new ImportacaoProdutoResponse(this.id, this.status, URL_STATUS.formatted(this.id), this.processadas,
+                    this.gravadas, this.rejeitadas, linhasPorSegundo, List.copyOf(this.erros), this.motivo);
+        }
+
+        private static String linhaDe(ErroLinha erro) {
+            return erro.linha() + ";" + erro.motivo().replace('\n', ' ').replace('\r', ' ');
+        }
+
+        private static ErroLinha erro(String texto) {
+            var separador = texto.indexOf(';');
+            return new ErroLinha(Long.parseLong(texto.substring(0, separador)), texto.substring(separador + 1));
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.BuscaProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.ProdutoRepository;
+import bassi.itau_unibanco.exerc4_itau_unibanco.util.AfterCommit;
+import bassi.itau_unibanco.exerc4_itau_unibanco.util.BitmapCompacto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * Índice de bitmaps dos produtos para a busca com facetas, mantido em memória quando habilitado.
+ * <p>
+ * Cada produto ocupa uma linha de um array, e as linhas liberadas nas remoções são reaproveitadas, para que
+ * os números de linha continuem densos. Há um {@link BitmapCompacto} das linhas de cada categoria e de cada
+ * faixa de preço: os filtros de categoria e preço são interseções de bitmaps, e apenas o filtro de nome e o
+ * preço exato são verificados linha a linha nos candidatos. As facetas são as cardinalidades das
+ * interseções do resultado com cada bitmap, então o seu custo depende da quantidade de categorias e faixas
+ * e do tamanho do catálogo, e não do tamanho do resultado.
+ * <p>
+ * O índice é carregado do banco na inicialização e recarregado periodicamente. As alterações desta
+ * instância são aplicadas após o commit; as das demais chegam pelos eventos de produto. Cada produto guarda
+ * a sequência da sua última alteração, então alterações repetidas ou fora de ordem são descartadas.
+ */
+@Slf4j
+@Component
+@Profile("!replica")
+public class IndiceFacetas {
+
+    private static final Comparator<ProdutoResponse> ORDEM = Comparator.comparing(ProdutoResponse::nome)
+            .thenComparing(ProdutoResponse::id);
+
+    private static final int TAMANHO_PAGINA = 10_000;
+
+    private static final int SEM_LINHA = -1;
+
+    private final ProdutoRepository repository;
+
+    private final AlteracaoProdutoService alteracoes;
+
+    private final Shards shards;
+
+    private final VersaoCatalogo versao;
+
+    private final boolean habilitado;
+
+    private final BigDecimal[] limites;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<UUID, Registro> registros = new HashMap<>();
+
+    private final Deque<Integer> livres = new ArrayDeque<>();
+
+    private final BitmapCompacto vivos = new BitmapCompacto();
+
+    private final Map<String, BitmapCompacto> categorias = new TreeMap<>();
+
+    private final BitmapCompacto[] faixas;
+
+    private ProdutoResponse[] linhas = new ProdutoResponse[1024];
+
+    private int proximaLinha;
+
+    private volatile boolean carregado;
+
+    public IndiceFacetas(
+            ProdutoRepository repository,
+            AlteracaoProdutoService alteracoes,
+            Shards shards,
+            VersaoCatalogo versao,
+            @Value("${produto.facetas.enabled:false}") boolean habilitado,
+            @Value("${produto.facetas.faixas-preco:50,100,500,1000}") BigDecimal[] limites
+    ) {
+        this.repository = repository;
+        this.alteracoes = alteracoes;
+        this.shards = shards;
+        this.versao = versao;
+        this.habilitado = habilitado;
+        this.limites = limites.clone();
+        Arrays.sort(this.limites);
+        this.faixas = new BitmapCompacto[this.limites.length + 1];
+        Arrays.setAll(this.faixas, faixa -> new BitmapCompacto());
+    }
+
+    /**
+     * Linha do produto e sequência da sua última alteração; sem linha, indica uma remoção.
+     */
+    private record Registro(int linha, long sequencia) {
+    }
+
+    public boolean disponivel() {
+        return this.carregado;
+    }
+
+    /**
+     * Mesmos filtros da listagem personalizada; parâmetros nulos não filtram.
+     */
+    public BuscaProdutoResponse buscar(String nome, BigDecimal preco, String categoria) {
+        this.lock.readLock().lock();
+        try {
+            var candidatos = this.vivos;
+            if (categoria != null)
+                candidatos = this.categorias.getOrDefault(categoria, new BitmapCompacto());
+            if (preco != null)
+                candidatos = candidatos.e(this.faixas[this.faixa(preco)]);
+            var resultado = candidatos;
+            if (nome != null || preco != null) {
+                var filtro = filtro(nome, preco);
+                var filtrados = new BitmapCompacto();
+                candidatos.paraCada(linha -> {
+                    if (filtro.test(this.linhas[linha]))
+                        filtrados.adicionar(linha);
+                });
+                resultado = filtrados;
+            }
+            var produtos = new ArrayList<ProdutoResponse>(resultado.cardinalidade());
+            resultado.paraCada(linha -> produtos.add(this.linhas[linha]));
+            produtos.sort(ORDEM);
+            var porCategoria = new ArrayList<BuscaProdutoResponse.FacetaCategoria>();
+            for (var entrada : this.categorias.entrySet()) {
+                var quantidade = resultado.cardinalidadeE(entrada.getValue());
+                if (quantidade > 0)
+                    porCategoria.add(new BuscaProdutoResponse.FacetaCategoria(entrada.getKey(), quantidade));
+            }
+            var quantidades = new long[this.faixas.length];
+            for (var faixa = 0; faixa < this.faixas.length; faixa++)
+                quantidades[faixa] = resultado.cardinalidadeE(this.faixas[faixa]);
+            return new BuscaProdutoResponse(produtos, produtos.size(), porCategoria, this.faixasPreco(quantidades));
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Facetas calculadas a partir de um resultado já obtido, usadas quando o índice não está disponível.
+     */
+    public BuscaProdutoResponse resumir(List<ProdutoResponse> produtos) {
+        var porCategoria = new TreeMap<String, Long>();
+        var quantidades = new long[this.faixas.length];
+        for (var produto : produtos) {
+            porCategoria.merge(produto.categoria(), 1L, Long::sum);
+            quantidades[this.faixa(produto.preco())]++;
+        }
+        return new BuscaProdutoResponse(produtos, produtos.size(),
+                porCategoria.entrySet().stream().map(entrada -> new BuscaProdutoResponse.FacetaCategoria(entrada.getKey(), entrada.getValue())).toList(),
+                this.faixasPreco(quantidades));
+    }
+
+    private static Predicate<ProdutoResponse> filtro(String nome, BigDecimal preco) {
+        var trecho = nome == null ? null : nome.toLowerCase(Locale.ROOT);
+        return produto -> (trecho == null || produto.nome().toLowerCase(Locale.ROOT).contains(trecho))
+                && (preco == null || produto.preco().compareTo(preco) == 0);
+    }
+
+    /**
+     * Faixas vazias são omitidas.
+     */
+    private List<BuscaProdutoResponse.FacetaPreco> faixasPreco(long[] quantidades) {
+        var faixas = new ArrayList<BuscaProdutoResponse.FacetaPreco>();
+        for (var faixa = 0; faixa < quantidades.length; faixa++)
+            if (quantidades[faixa] > 0)
+                faixas.add(new BuscaProdutoResponse.FacetaPreco(
+                        faixa == 0 ? null : this.limites[faixa - 1],
+                        faixa == this.limites.length ? null : this.limites[faixa],
+                        quantidades[faixa]));
+        return faixas;
+    }
+
+    /**
+     * @return a quantidade de limites menores ou iguais ao preço
+     */
+    private int faixa(BigDecimal preco) {
+        var faixa = 0;
+        while (faixa < this.limites.length && this.limites[faixa].compareTo(preco) <= 0)
+            faixa++;
+        return faixa;
+    }
+
+    /**
+     * Aplica uma alteração de produto; na transação da alteração, apenas após o commit.
+     */
+    public void aplicar(AlteracaoProdutoResponse alteracao) {
+        if (!this.habilitado)
+            return;
+        var produto = alteracao.operacao() == AlteracaoProdutoEntity.Operacao.REMOCAO
+                ? null
+                : new ProdutoResponse(alteracao.produtoId(), alteracao.nome(), alteracao.preco(), alteracao.categoria());
+        AfterCommit.execute(() -> this.registrar(alteracao.produtoId(), alteracao.sequencia(), produto));
+    }
+
+    /**
+     * @param produto sem produto, indica uma remoção
+     */
+    private void registrar(UUID id, long sequencia, ProdutoResponse produto) {
+        this.lock.writeLock().lock();
+        try {
+            var atual = this.registros.get(id);
+            if (atual != null && atual.sequencia() >= sequencia)
+                return;
+            var linha = atual == null ? SEM_LINHA : atual.linha();
+            if (linha != SEM_LINHA)
+                this.desindexar(linha);
+            if (produto == null) {
+                if (linha != SEM_LINHA)
+                    this.livres.push(linha);
+                this.registros.put(id, new Registro(SEM_LINHA, sequencia));
+                return;
+            }
+            if (linha == SEM_LINHA)
+                linha = this.novaLinha();
+            this.linhas[linha] = produto;
+            this.vivos.adicionar(linha);
+            this.categorias.computeIfAbsent(produto.categoria(), categoria -> new BitmapCompacto()).adicionar(linha);
+            this.faixas[this.faixa(produto.preco())].adicionar(linha);
+            this.registros.put(id, new Registro(linha, sequencia));
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void desindexar(int linha) {
+        var produto = this.linhas[linha];
+        this.vivos.remover(linha);
+        var categoria = this.categorias.get(produto.categoria());
+        categoria.remover(linha);
+        if (categoria.cardinalidade() == 0)
+            this.categorias.remove(produto.categoria());
+        this.faixas[this.faixa(produto.preco())].remover(linha);
+        this.linhas[linha] = null;
+    }
+
+    private int novaLinha() {
+        if (!this.livres.isEmpty())
+            return this.livres.pop();
+        if (this.proximaLinha == this.linhas.length)
+            this.linhas = Arrays.copyOf(this.linhas, this.linhas.length * 2);
+        return this.proximaLinha++;
+    }
+
+    /**
+     * Cada produto lido recebe a marca do log do seu shard, lida antes dos produtos: alterações até a marca
+     * já estão no banco, e as posteriores, aplicadas durante a carga, prevalecem. Produtos ausentes do banco
+     * com alteração até a marca foram removidos. Ao final, a versão do catálogo é incrementada: as buscas e
+     * facetas do índice recarregado podem diferir das anteriores.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${produto.facetas.recarga-ms:3600000}", initialDelayString = "${produto.facetas.recarga-ms:3600000}")
+    public synchronized void carregar() {
+        if (!this.habilitado)
+            return;
+        var inicio = System.nanoTime();
+        try {
+            var marcas = this.shards.emCadaShard(true, this.alteracoes::sequenciaVisivel);
+            var lidos = new HashSet<UUID>();
+            for (var shard = 0; shard < this.shards.quantidade(); shard++)
+                this.carregar(shard, marcas.get(shard), lidos);
+            this.lock.writeLock().lock();
+            try {
+                List.copyOf(this.registros.entrySet()).stream()
+                        .filter(entrada -> !lidos.contains(entrada.getKey())
+                                && entrada.getValue().sequencia() <= marcas.get(this.shards.shardDe(entrada.getKey())))
+                        .forEach(entrada -> {
+                            if (entrada.getValue().linha() != SEM_LINHA) {
+                                this.desindexar(entrada.getValue().linha());
+                                this.livres.push(entrada.getValue().linha());
+                            }
+                            this.registros.remove(entrada.getKey());
+                        });
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+            this.carregado = true;
+            this.versao.incrementar();
+            log.info("Índice de facetas carregado em {} ms: {} produtos, {} KB de bitmaps.",
+                    (System.nanoTime() - inicio) / 1_000_000, lidos.size(), this.bytes() / 1024);
+        } catch (RuntimeException e) {
+            log.error("Falha ao carregar o índice de facetas; o índice anterior continua em uso.", e);
+        }
+    }
+
+    private void carregar(int shard, long marca, Set<UUID> lidos) {
+        var pagina = PageRequest.of(0, TAMANHO_PAGINA);
+        var produtos = this.shards.executar(shard, () -> this.repository.listarProdutos(pagina));
+        while (!produtos.isEmpty()) {
+            for (var produto : produtos) {
+                lidos.add(produto.getId());
+                this.registrar(produto.getId(), marca, new ProdutoResponse(produto.getId(), produto.getNome(), produto.getPreco(), produto.getCategoria()));
+            }
+            if (produtos.size() < TAMANHO_PAGINA)
+                break;
+            var ultimo = produtos.get(produtos.size() - 1).getId();
+            produtos = this.shards.executar(shard, () -> this.repository.listarProdutosApos(ultimo, pagina));
+        }
+    }
+
+    private long bytes() {
+        this.lock.readLock().lock();
+        try {
+            var bytes = this.vivos.bytes();
+            for (var bitmap : this.categorias.values())
+                bytes += bitmap.bytes();
+            for (var bitmap : this.faixas)
+                bytes += bitmap.bytes();
+            return bytes;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+}
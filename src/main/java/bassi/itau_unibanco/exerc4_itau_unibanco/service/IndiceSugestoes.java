@@ -0,0 +1,365 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.SugestaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.ProdutoRepository;
+import bassi.itau_unibanco.exerc4_itau_unibanco.util.AfterCommit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Índice em memória dos nomes dos produtos para as sugestões por prefixo, sem acesso ao banco, mantido
+ * quando habilitado.
+ * <p>
+ * Os nomes são normalizados sem acentos e em minúsculas, e o prefixo é procurado no início do nome e no
+ * início de cada palavra. A base é um par de arrays ordenados de chaves, um com os nomes e outro com as
+ * palavras seguintes, geral e por categoria, em que o prefixo é localizado por busca binária e as sugestões
+ * são lidas em sequência. Cada chave é o produto e a posição no nome normalizado em que o trecho começa,
+ * comparado sem cópia, então a memória cresce com o número de palavras, e não com o tamanho dos trechos. As alterações posteriores ficam em um mapa de
+ * recentes, percorrido em cada consulta, e são incorporadas a uma nova base quando acumulam ou
+ * periodicamente.
+ * <p>
+ * O índice é carregado do banco na inicialização e recarregado periodicamente. As alterações desta
+ * instância são aplicadas após o commit; as das demais chegam pelos eventos de produto. Cada produto guarda
+ * a sequência da sua última alteração, então alterações repetidas ou fora de ordem são descartadas.
+ */
+@Slf4j
+@Component
+@Profile("!replica")
+public class IndiceSugestoes {
+
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+
+    private static final Pattern ESPACOS = Pattern.compile("\\s+");
+
+    private static final Comparator<Chave> ORDEM_CHAVES = ((Comparator<Chave>) IndiceSugestoes::comparar)
+            .thenComparing(chave -> chave.produto().id());
+
+    private static final Comparator<Chave> ORDEM_SUGESTOES = Comparator.comparing(Chave::palavra)
+            .thenComparing(ORDEM_CHAVES);
+
+    private static final int TAMANHO_PAGINA = 10_000;
+
+    private final ProdutoRepository repository;
+
+    private final AlteracaoProdutoService alteracoes;
+
+    private final Shards shards;
+
+    private final VersaoCatalogo versao;
+
+    private final boolean habilitado;
+
+    private final int limiteRecentes;
+
+    private final long intervaloCompactacao;
+
+    private final Map<UUID, Produto> produtos = new ConcurrentHashMap<>();
+
+    private final Map<UUID, Produto> recentes = new ConcurrentHashMap<>();
+
+    private volatile Base base = new Base(Indice.VAZIO, Map.of());
+
+    private volatile long ultimaCompactacao = System.nanoTime();
+
+    private volatile boolean carregado;
+
+    public IndiceSugestoes(
+            ProdutoRepository repository,
+            AlteracaoProdutoService alteracoes,
+            Shards shards,
+            VersaoCatalogo versao,
+            @Value("${produto.sugestoes.enabled:false}") boolean habilitado,
+            @Value("${produto.sugestoes.limite-recentes:1000}") int limiteRecentes,
+            @Value("${produto.sugestoes.intervalo-compactacao:60s}") Duration intervaloCompactacao
+    ) {
+        this.repository = repository;
+        this.alteracoes = alteracoes;
+        this.shards = shards;
+        this.versao = versao;
+        this.habilitado = habilitado;
+        this.limiteRecentes = limiteRecentes;
+        this.intervaloCompactacao = intervaloCompactacao.toNanos();
+    }
+
+    /**
+     * Última versão conhecida de um produto; sem nome, indica uma remoção.
+     */
+    private record Produto(UUID id, String nome, String categoria, String normalizado, long sequencia) {
+
+        boolean removido() {
+            return this.nome == null;
+        }
+    }
+
+    /**
+     * Trecho do nome normalizado do produto a partir de {@code inicio}, o começo do nome ou de uma palavra.
+     */
+    private record Chave(Produto produto, int inicio) {
+
+        /**
+         * Se o trecho começa em uma palavra seguinte, e não no início do nome.
+         */
+        boolean palavra() {
+            return this.inicio > 0;
+        }
+
+        boolean comecaPor(String prefixo) {
+            return this.produto.normalizado().startsWith(prefixo, this.inicio);
+        }
+    }
+
+    private record Indice(Chave[] nomes, Chave[] palavras) {
+
+        static final Indice VAZIO = new Indice(new Chave[0], new Chave[0]);
+    }
+
+    private record Base(Indice geral, Map<String, Indice> categorias) {
+    }
+
+    /**
+     * Se o índice já foi carregado; até lá, e sem habilitar, as sugestões vêm do banco.
+     */
+    public boolean disponivel() {
+        return this.carregado;
+    }
+
+    /**
+     * Sugestões cujo nome ou alguma palavra começa pelo prefixo, ignorando acentos e maiúsculas; primeiro as
+     * encontradas no início do nome, em ordem alfabética.
+     *
+     * @param categoria sem categoria, não filtra
+     */
+    public List<SugestaoProdutoResponse> sugerir(String prefixo, String categoria, int limite) {
+        var chave = normalizar(prefixo).stripLeading();
+        if (chave.isEmpty() || limite < 1)
+            return List.of();
+        var base = this.base;
+        var indice = categoria == null ? base.geral() : base.categorias().getOrDefault(categoria, Indice.VAZIO);
+        var sugestoes = new HashMap<UUID, Chave>();
+        this.coletar(indice.nomes(), chave, limite, sugestoes);
+        this.coletar(indice.palavras(), chave, limite, sugestoes);
+        for (var produto : this.recentes.values()) {
+            if (produto.removido() || categoria != null && !categoria.equals(produto.categoria()) || this.produtos.get(produto.id()) != produto)
+                continue;
+            var inicio = correspondencia(produto.normalizado(), chave);
+            if (inicio >= 0)
+                sugestoes.merge(produto.id(), new Chave(produto, inicio), IndiceSugestoes::melhor);
+        }
+        return sugestoes.values().stream()
+                .sorted(ORDEM_SUGESTOES)
+                .limit(limite)
+                .map(sugestao -> new SugestaoProdutoResponse(sugestao.produto().id(), sugestao.produto().nome(), sugestao.produto().categoria()))
+                .toList();
+    }
+
+    /**
+     * Lê as chaves a partir do prefixo até reunir o limite de produtos válidos; as chaves de produtos
+     * alterados depois da base são ignoradas, já que a versão atual está nos recentes.
+     */
+    private void coletar(Chave[] chaves, String prefixo, int limite, Map<UUID, Chave> sugestoes) {
+        var encontradas = 0;
+        for (var i = inicio(chaves, prefixo); i < chaves.length && encontradas < limite && chaves[i].comecaPor(prefixo); i++) {
+            var produto = chaves[i].produto();
+            if (this.produtos.get(produto.id()) != produto)
+                continue;
+            if (sugestoes.putIfAbsent(produto.id(), chaves[i]) == null)
+                encontradas++;
+        }
+    }
+
+    private static int inicio(Chave[] chaves, String prefixo) {
+        int baixo = 0, alto = chaves.length;
+        while (baixo < alto) {
+            var meio = (baixo + alto) >>> 1;
+            if (comparar(chaves[meio].produto().normalizado(), chaves[meio].inicio(), prefixo, 0) < 0)
+                baixo = meio + 1;
+            else
+                alto = meio;
+        }
+        return baixo;
+    }
+
+    private static int comparar(Chave a, Chave b) {
+        return comparar(a.produto().normalizado(), a.inicio(), b.produto().normalizado(), b.inicio());
+    }
+
+    /**
+     * Compara os trechos {@code a} a partir de {@code inicioA} e {@code b} a partir de {@code inicioB} na
+     * ordem de {@link String#compareTo}, sem criar substrings.
+     */
+    private static int comparar(String a, int inicioA, String b, int inicioB) {
+        var tamanhoA = a.length() - inicioA;
+        var tamanhoB = b.length() - inicioB;
+        var comum = Math.min(tamanhoA, tamanhoB);
+        for (var i = 0; i < comum; i++) {
+            var diferenca = a.charAt(inicioA + i) - b.charAt(inicioB + i);
+            if (diferenca != 0)
+                return diferenca;
+        }
+        return tamanhoA - tamanhoB;
+    }
+
+    private static Chave melhor(Chave a, Chave b) {
+        return ORDEM_SUGESTOES.compare(a, b) <= 0 ? a : b;
+    }
+
+    /**
+     * @return a posição do primeiro ponto do nome, no início do nome ou de uma palavra, que começa pelo
+     * prefixo, ou {@code -1} quando não há
+     */
+    private static int correspondencia(String normalizado, String prefixo) {
+        if (normalizado.startsWith(prefixo))
+            return 0;
+        for (var inicio : inicioPalavras(normalizado))
+            if (normalizado.startsWith(prefixo, inicio))
+                return inicio;
+        return -1;
+    }
+
+    /**
+     * Posições em que começam as palavras seguintes à primeira.
+     */
+    private static List<Integer> inicioPalavras(String normalizado) {
+        var inicios = new ArrayList<Integer>();
+        for (var i = 1; i < normalizado.length(); i++)
+            if (Character.isLetterOrDigit(normalizado.charAt(i)) && !Character.isLetterOrDigit(normalizado.charAt(i - 1)))
+                inicios.add(i);
+        return inicios;
+    }
+
+    /**
+     * Remove os acentos, passa para minúsculas e reduz os espaços consecutivos a um.
+     */
+    static String normalizar(String texto) {
+        var semAcentos = MARCAS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+        return ESPACOS.matcher(semAcentos.toLowerCase(Locale.ROOT)).replaceAll(" ");
+    }
+
+    /**
+     * Aplica uma alteração de produto; na transação da alteração, apenas após o commit.
+     */
+    public void aplicar(AlteracaoProdutoResponse alteracao) {
+        if (!this.habilitado)
+            return;
+        var produto = alteracao.operacao() == AlteracaoProdutoEntity.Operacao.REMOCAO
+                ? new Produto(alteracao.produtoId(), null, alteracao.categoria(), null, alteracao.sequencia())
+                : new Produto(alteracao.produtoId(), alteracao.nome(), alteracao.categoria(), normalizar(alteracao.nome()).strip(), alteracao.sequencia());
+        AfterCommit.execute(() -> this.registrar(produto));
+    }
+
+    private void registrar(Produto produto) {
+        this.produtos.compute(produto.id(), (id, atual) -> {
+            if (atual != null && atual.sequencia() >= produto.sequencia())
+                return atual;
+            this.recentes.put(id, produto);
+            return produto;
+        });
+    }
+
+    /**
+     * Cada produto lido recebe a marca do log do seu shard, lida antes dos produtos: alterações até a marca
+     * já estão no banco, e as posteriores, aplicadas durante a carga, prevalecem. Produtos ausentes do banco
+     * com alteração até a marca foram removidos. As sugestões recarregadas podem diferir das anteriores, então
+     * a versão do catálogo muda ao final.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${produto.sugestoes.recarga-ms:3600000}", initialDelayString = "${produto.sugestoes.recarga-ms:3600000}")
+    public synchronized void carregar() {
+        if (!this.habilitado)
+            return;
+        var inicio = System.nanoTime();
+        try {
+            var marcas = this.shards.emCadaShard(true, this.alteracoes::sequenciaVisivel);
+            var lidos = new HashSet<UUID>();
+            for (var shard = 0; shard < this.shards.quantidade(); shard++)
+                this.carregar(shard, marcas.get(shard), lidos);
+            this.produtos.values().removeIf(produto -> !lidos.contains(produto.id())
+                    && produto.sequencia() <= marcas.get(this.shards.shardDe(produto.id())));
+            this.compactar(true);
+            this.carregado = true;
+            this.versao.incrementar();
+            log.info("Índice de sugestões carregado em {} ms: {} produtos.", (System.nanoTime() - inicio) / 1_000_000, lidos.size());
+        } catch (RuntimeException e) {
+            log.error("Falha ao carregar o índice de sugestões; o índice anterior continua em uso.", e);
+        }
+    }
+
+    private void carregar(int shard, long marca, Set<UUID> lidos) {
+        var pagina = PageRequest.of(0, TAMANHO_PAGINA);
+        var nomes = this.shards.executar(shard, () -> this.repository.listarNomes(pagina));
+        while (!nomes.isEmpty()) {
+            for (var nome : nomes) {
+                lidos.add(nome.getId());
+                this.registrar(new Produto(nome.getId(), nome.getNome(), nome.getCategoria(), normalizar(nome.getNome()).strip(), marca));
+            }
+            if (nomes.size() < TAMANHO_PAGINA)
+                break;
+            var ultimo = nomes.get(nomes.size() - 1).getId();
+            nomes = this.shards.executar(shard, () -> this.repository.listarNomesApos(ultimo, pagina));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${produto.sugestoes.compactacao-ms:1000}")
+    public void compactar() {
+        if (this.habilitado)
+            this.compactar(false);
+    }
+
+    /**
+     * Incorpora os recentes a uma nova base quando passam do limite ou quando a última compactação ficou
+     * para trás do intervalo.
+     */
+    synchronized void compactar(boolean forcar) {
+        if (!forcar && (this.recentes.isEmpty()
+                || this.recentes.size() < this.limiteRecentes && System.nanoTime() - this.ultimaCompactacao < this.intervaloCompactacao))
+            return;
+        var incorporados = Map.copyOf(this.recentes);
+        var vivos = this.produtos.values().stream().filter(produto -> !produto.removido()).toList();
+        var categorias = new HashMap<String, Indice>();
+        vivos.stream()
+                .collect(Collectors.groupingBy(Produto::categoria))
+                .forEach((categoria, produtos) -> categorias.put(categoria, indexar(produtos)));
+        this.base = new Base(indexar(vivos), Map.copyOf(categorias));
+        incorporados.forEach(this.recentes::remove);
+        this.ultimaCompactacao = System.nanoTime();
+    }
+
+    private static Indice indexar(List<Produto> produtos) {
+        var nomes = new ArrayList<Chave>(produtos.size());
+        var palavras = new ArrayList<Chave>();
+        for (var produto : produtos) {
+            nomes.add(new Chave(produto, 0));
+            for (var inicio : inicioPalavras(produto.normalizado()))
+                palavras.add(new Chave(produto, inicio));
+        }
+        var indice = new Indice(nomes.toArray(Chave[]::new), palavras.toArray(Chave[]::new));
+        Arrays.sort(indice.nomes(), ORDEM_CHAVES);
+        Arrays.sort(indice.palavras(), ORDEM_CHAVES);
+        return indice;
+    }
+}
@@ -0,0 +1,215 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.IngestaoProdutoMessage;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.IngestaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoRequest;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AceiteIngestaoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.ProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.RejeicaoIngestaoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.IngestaoNaoEncontradaException;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import bassi.itau_unibanco.exerc4_itau_unibanco.mapper.ProdutoMapper;
+import bassi.itau_unibanco.exerc4_itau_unibanco.producer.IngestaoProdutoProducer;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.AceiteIngestaoRepository;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.ProdutoRepository;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.RejeicaoIngestaoRepository;
+import bassi.itau_unibanco.exerc4_itau_unibanco.util.AfterCommit;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.IntConsumer;
+
+/**
+ * Ingestão assíncrona de produtos (write-behind).
+ * <p>
+ * O cadastro é validado e aceito imediatamente, com o id já atribuído, e a gravação ocorre depois,
+ * em lotes consumidos da fila durável de ingestão. Picos de escrita ficam retidos no broker em vez de
+ * disputar as conexões do pool e as threads do servidor.
+ * <p>
+ * O aceite e as rejeições são gravados no shard do produto, então o status consultado é o mesmo em qualquer
+ * instância e após reinícios; ids sem aceite, produto ou rejeição não foram enviados por esta API. Aceites e
+ * rejeições são mantidos por {@code produto.ingestao.retencao-rejeicoes}; depois disso, o status de um produto
+ * gravado continua sendo obtido do próprio produto.
+ */
+@Slf4j
+@Service
+@Profile("!replica")
+public class IngestaoProdutoService {
+
+    private static final String URL_STATUS = "/v1/produto/ingestao/%s";
+
+    private final ProdutoRepository repository;
+
+    private final ProdutoMapper mapper;
+
+    private final EntityManager entityManager;
+
+    private final IngestaoProdutoProducer ingestaoProducer;
+
+    private final CategoriaDicionario categorias;
+
+    private final EstatisticaCategoriaService estatisticas;
+
+    private final AlteracaoProdutoService alteracoes;
+
+    private final Shards shards;
+
+    private final FiltroIdsProduto filtroIds;
+
+    private final IndiceSugestoes sugestoes;
+
+    private final IndiceFacetas facetas;
+
+    private final VersaoCatalogo versao;
+
+    private final RejeicaoIngestaoRepository rejeicoes;
+
+    private final AceiteIngestaoRepository aceites;
+
+    private final Duration retencaoRejeicoes;
+
+    public IngestaoProdutoService(
+            ProdutoRepository repository,
+            ProdutoMapper mapper,
+            EntityManager entityManager,
+            IngestaoProdutoProducer ingestaoProducer,
+            CategoriaDicionario categorias,
+            EstatisticaCategoriaService estatisticas,
+            AlteracaoProdutoService alteracoes,
+            Shards shards,
+            FiltroIdsProduto filtroIds,
+            IndiceSugestoes sugestoes,
+            IndiceFacetas facetas,
+            VersaoCatalogo versao,
+            RejeicaoIngestaoRepository rejeicoes,
+            AceiteIngestaoRepository aceites,
+            @Value("${produto.ingestao.retencao-rejeicoes:7d}") Duration retencaoRejeicoes
+    ) {
+        this.repository = repository;
+        this.mapper = mapper;
+        this.entityManager = entityManager;
+        this.ingestaoProducer = ingestaoProducer;
+        this.categorias = categorias;
+        this.estatisticas = estatisticas;
+        this.alteracoes = alteracoes;
+        this.shards = shards;
+        this.filtroIds = filtroIds;
+        this.sugestoes = sugestoes;
+        this.facetas = facetas;
+        this.versao = versao;
+        this.rejeicoes = rejeicoes;
+        this.aceites = aceites;
+        this.retencaoRejeicoes = retencaoRejeicoes;
+    }
+
+    /**
+     * Registra o aceite (uma linha, sem os dados do produto) antes de publicar a mensagem, para que o status
+     * do id devolvido nunca seja desconhecido.
+     */
+    public IngestaoProdutoResponse aceitar(ProdutoRequest produtoRequest) {
+        var id = UUID.randomUUID();
+        var aceite = new AceiteIngestaoEntity(id, Instant.now());
+        this.shards.executar(id, () -> this.aceites.save(aceite));
+        this.ingestaoProducer.sendMessage(new IngestaoProdutoMessage(id, produtoRequest));
+        return new IngestaoProdutoResponse(id, IngestaoProdutoResponse.Status.PENDENTE, URL_STATUS.formatted(id), null);
+    }
+
+    @Transactional(readOnly = true)
+    public IngestaoProdutoResponse consultar(UUID id) {
+        var url = URL_STATUS.formatted(id);
+        return this.shards.executar(id, () -> {
+            if (this.repository.existsById(id))
+                return new IngestaoProdutoResponse(id, IngestaoProdutoResponse.Status.CONCLUIDA, url, null);
+            return this.rejeicoes.findById(id)
+                    .map(rejeicao -> new IngestaoProdutoResponse(id, IngestaoProdutoResponse.Status.REJEITADA, url, rejeicao.getMotivo()))
+                    .or(() -> this.aceites.findById(id)
+                            .map(aceite -> new IngestaoProdutoResponse(id, IngestaoProdutoResponse.Status.PENDENTE, url, null)))
+                    .orElseThrow(() -> new IngestaoNaoEncontradaException(id));
+        });
+    }
+
+    /**
+     * Grava um lote de produtos em uma única transação (com sharding, uma por shard). Ids já gravados
+     * são ignorados, tornando seguro o reprocessamento de mensagens reentregues pelo broker.
+     */
+    public void gravarLote(List<IngestaoProdutoMessage> lote) {
+        this.gravarLote(lote, gravados -> {
+        });
+    }
+
+    /**
+     * @param gravados recebe, após o commit de cada transação, a quantidade de produtos de fato inseridos
+     *                 nela; com sharding, inclusive dos shards confirmados antes da falha de outro
+     */
+    public void gravarLote(List<IngestaoProdutoMessage> lote, IntConsumer gravados) {
+        this.shards.porShard(lote, IngestaoProdutoMessage::id, parte -> {
+            var inseridos = this.gravar(parte);
+            AfterCommit.execute(() -> gravados.accept(inseridos));
+        });
+    }
+
+    private int gravar(List<IngestaoProdutoMessage> lote) {
+        var existentes = new HashSet<UUID>();
+        this.repository.findAllById(lote.stream().map(IngestaoProdutoMessage::id).toList())
+                .forEach(entity -> existentes.add(entity.getId()));
+        var inseridos = 0;
+        for (var message : lote) {
+            if (!existentes.add(message.id()))
+                continue;
+            this.categorias.registrar(message.produto().categoria());
+            var entity = this.mapper.mapToProdutoEntity(message.produto());
+            entity.setId(message.id());
+            this.entityManager.persist(entity);
+            this.registrarInclusao(entity);
+            inseridos++;
+        }
+        this.entityManager.flush();
+        return inseridos;
+    }
+
+    /**
+     * Grava a rejeição no shard do produto; o motivo é truncado ao tamanho da coluna.
+     */
+    public void registrarRejeicao(UUID id, String motivo) {
+        var descricao = motivo == null ? "Rejeitado na ingestão." : motivo;
+        if (descricao.length() > RejeicaoIngestaoEntity.TAMANHO_MOTIVO)
+            descricao = descricao.substring(0, RejeicaoIngestaoEntity.TAMANHO_MOTIVO);
+        var rejeicao = new RejeicaoIngestaoEntity(id, descricao, Instant.now());
+        this.shards.executar(id, () -> this.rejeicoes.save(rejeicao));
+    }
+
+    /**
+     * Descarta os aceites e as rejeições mais antigos que a retenção; com sharding, em cada shard.
+     */
+    @Scheduled(cron = "${produto.ingestao.limpeza-rejeicoes-cron:0 30 3 * * *}")
+    public void removerRejeicoesExpiradas() {
+        var limite = Instant.now().minus(this.retencaoRejeicoes);
+        var removidas = this.shards.emCadaShard(false, () -> this.rejeicoes.removerAntesDe(limite)).stream()
+                .mapToInt(Integer::intValue)
+                .sum();
+        var aceites = this.shards.emCadaShard(false, () -> this.aceites.removerAntesDe(limite)).stream()
+                .mapToInt(Integer::intValue)
+                .sum();
+        log.info("Registros da ingestão anteriores a {} descartados: {} rejeições e {} aceites.", limite, removidas, aceites);
+    }
+
+    private void registrarInclusao(ProdutoEntity entity) {
+        this.filtroIds.registrar(entity.getId());
+        var alteracao = this.alteracoes.registrar(AlteracaoProdutoEntity.Operacao.CADASTRO, entity);
+        this.sugestoes.aplicar(alteracao);
+        this.facetas.aplicar(alteracao);
+        this.versao.incrementar();
+        this.estatisticas.registrarInclusao(entity.getCategoria(), entity.getPreco());
+    }
+}
@@ -1,19 +1,36 @@
 package bassi.itau_unibanco.exerc4_itau_unibanco.service;
 
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracoesProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.BuscaProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.EstatisticaCategoriaResponse;
 import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoRequest;
 import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutosPorIdResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.SugestaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
 import bassi.itau_unibanco.exerc4_itau_unibanco.entity.ProdutoEntity;
 import bassi.itau_unibanco.exerc4_itau_unibanco.exception.ProdutoNaoEncontradoException;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
 import bassi.itau_unibanco.exerc4_itau_unibanco.mapper.ProdutoMapper;
-import bassi.itau_unibanco.exerc4_itau_unibanco.producer.CadastroProdutoProducer;
 import bassi.itau_unibanco.exerc4_itau_unibanco.repository.ProdutoRepository;
+import io.micrometer.observation.annotation.Observed;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Classe de serviço responsável pelas operações de negócio relacionadas a produtos.
@@ -23,54 +40,225 @@ import java.util.UUID;
  * <p>
  * As dependências injetadas respeitam o DIP (Dependency Inversion Principle), permitindo
  * desacoplamento e facilidade para testes unitários ou substituições de implementação.
+ * <p>
+ * Com o {@link CatalogoLocal} disponível, as consultas são atendidas por ele, sem acessar o banco;
+ * por isso não são anotadas com {@code @Transactional}, que obteria uma conexão mesmo sem usá-la. Sem o
+ * catálogo, cada consulta ao banco abre a sua transação somente leitura pelo {@link Shards}.
+ * <p>
+ * As operações por id consultam antes o {@link FiltroIdsProduto}: ids certamente inexistentes são
+ * rejeitados sem ler a tabela de produtos. As alterações são aplicadas também ao {@link IndiceSugestoes} e ao {@link IndiceFacetas}.
  */
 @Service
+@Profile("!replica")
 @RequiredArgsConstructor
+@Observed(name = "produto.service")
 public class ProdutoService {
 
+    private static final Comparator<ProdutoEntity> ORDEM = Comparator.comparing(ProdutoEntity::getNome)
+            .thenComparing(ProdutoEntity::getId);
+
+    private static final int LIMITE_SUGESTOES = 50;
+
+    private static final int TAMANHO_LOTE_IDS = 100;
+
     private final ProdutoRepository repository;
 
     private final ProdutoMapper mapper;
 
-    private final CadastroProdutoProducer producer;
+    private final EstatisticaCategoriaService estatisticas;
+
+    private final CategoriaDicionario categorias;
+
+    private final AlteracaoProdutoService alteracoes;
+
+    private final Shards shards;
+
+    private final CatalogoLocal catalogo;
+
+    private final FiltroIdsProduto filtroIds;
+
+    private final IndiceSugestoes sugestoes;
+
+    private final IndiceFacetas facetas;
+
+    private final VersaoCatalogo versao;
 
-    @Transactional(readOnly = true)
     public List<ProdutoResponse> listar() {
-        return this.repository.findAll()
+        if (this.catalogo.disponivel())
+            return this.catalogo.listar(null, null, null);
+        return this.shards.reunir(this.repository::findAll, ORDEM)
                 .stream()
                 .map(this.mapper::mapToProdutoResponse)
                 .toList();
     }
 
-    @Transactional(readOnly = true)
     public ProdutoResponse listarPeloId(UUID id) {
-        return this.repository.findById(id)
-                .map(this.mapper::mapToProdutoResponse)
-                .orElseThrow(() -> new ProdutoNaoEncontradoException(id));
+        this.verificarExistencia(id);
+        var produto = this.catalogo.disponivel()
+                ? this.catalogo.buscar(id)
+                : this.shards.consultar(id, () -> this.repository.findById(id)).map(this.mapper::mapToProdutoResponse);
+        return produto.orElseThrow(() -> new ProdutoNaoEncontradoException(id));
+    }
+
+    /**
+     * Ids repetidos são considerados uma vez. Sem o {@link CatalogoLocal}, os produtos são lidos por shard,
+     * com consultas {@code IN} de até {@value #TAMANHO_LOTE_IDS} ids.
+     */
+    public ProdutosPorIdResponse listarPelosIds(List<UUID> ids) {
+        var solicitados = new LinkedHashSet<>(ids);
+        var encontrados = new HashMap<UUID, ProdutoResponse>();
+        var consultados = this.filtroIds.talvezExistam(solicitados);
+        if (this.catalogo.disponivel())
+            consultados.forEach(id -> this.catalogo.buscar(id).ifPresent(produto -> encontrados.put(id, produto)));
+        else
+            consultados.stream()
+                    .collect(Collectors.groupingBy(this.shards::shardDe))
+                    .forEach((shard, doShard) -> this.shards.consultar(shard, () -> {
+                        for (var inicio = 0; inicio < doShard.size(); inicio += TAMANHO_LOTE_IDS) {
+                            var lote = doShard.subList(inicio, Math.min(doShard.size(), inicio + TAMANHO_LOTE_IDS));
+                            this.repository.findAllById(lote)
+                                    .forEach(produto -> encontrados.put(produto.getId(), this.mapper.mapToProdutoResponse(produto)));
+                        }
+                        return null;
+                    }));
+        var produtos = new ArrayList<ProdutoResponse>(encontrados.size());
+        var naoEncontrados = new ArrayList<UUID>();
+        for (var id : solicitados) {
+            var produto = encontrados.get(id);
+            if (produto != null)
+                produtos.add(produto);
+            else
+                naoEncontrados.add(id);
+        }
+        return new ProdutosPorIdResponse(produtos, naoEncontrados);
     }
 
-    @Transactional(readOnly = true)
     public List<ProdutoResponse> listagemPersonalizada(String nome, BigDecimal preco, String categoria) {
-        return this.repository.listagemPersonalizada(nome, preco, categoria)
+        if (categoria != null && this.categorias.idDe(categoria) == null)
+            return List.of();
+        if (this.catalogo.disponivel())
+            return this.catalogo.listar(nome, preco, categoria);
+        return this.shards.reunir(() -> this.repository.listagemPersonalizada(nome, preco, categoria), ORDEM)
                 .stream()
                 .map(this.mapper::mapToProdutoResponse)
                 .toList();
     }
 
+    /**
+     * Com o {@link IndiceFacetas} disponível, o resultado e as facetas vêm das interseções dos seus bitmaps;
+     * sem ele, as facetas são calculadas a partir do resultado da listagem personalizada.
+     */
+    public BuscaProdutoResponse buscarComFacetas(String nome, BigDecimal preco, String categoria) {
+        if (this.facetas.disponivel())
+            return this.facetas.buscar(nome, preco, categoria);
+        return this.facetas.resumir(this.listagemPersonalizada(nome, preco, categoria));
+    }
+
+    /**
+     * Com o {@link IndiceSugestoes} disponível, atendidas sem acessar o banco; sem ele, consulta o início dos
+     * nomes em cada shard.
+     */
+    public List<SugestaoProdutoResponse> sugerir(String prefixo, String categoria, int limite) {
+        var maximo = Math.min(limite, LIMITE_SUGESTOES);
+        if (this.sugestoes.disponivel())
+            return this.sugestoes.sugerir(prefixo, categoria, maximo);
+        var chave = prefixo.strip();
+        if (chave.isEmpty() || maximo < 1)
+            return List.of();
+        return this.shards.reunir(() -> this.repository.sugerir(chave, categoria, PageRequest.of(0, maximo)),
+                        Comparator.comparing(ProdutoRepository.NomeProduto::getNome).thenComparing(ProdutoRepository.NomeProduto::getId))
+                .stream()
+                .limit(maximo)
+                .map(nome -> new SugestaoProdutoResponse(nome.getId(), nome.getNome(), nome.getCategoria()))
+                .toList();
+    }
+
+    /**
+     * Com sharding, o id é atribuído antes da gravação para definir o shard do produto.
+     */
     @Transactional
     public ProdutoResponse cadastrar(ProdutoRequest produtoRequest) {
-        var entity = this.repository.save(this.mapper.mapToProdutoEntity(produtoRequest));
-        this.producer.sendMessage(entity);
-        return this.mapper.mapToProdutoResponse(entity);
+        var produto = this.mapper.mapToProdutoEntity(produtoRequest);
+        if (this.shards.habilitado())
+            produto.setId(UUID.randomUUID());
+        return this.shards.executar(produto.getId(), () -> {
+            this.categorias.registrar(produtoRequest.categoria());
+            var entity = this.repository.save(produto);
+            this.filtroIds.registrar(entity.getId());
+            this.aplicar(this.alteracoes.registrar(AlteracaoProdutoEntity.Operacao.CADASTRO, entity));
+            this.estatisticas.registrarInclusao(entity.getCategoria(), entity.getPreco());
+            return this.mapper.mapToProdutoResponse(entity);
+        });
     }
 
     @Transactional
     public ProdutoResponse atualizar(UUID id, ProdutoRequest produtoRequest) {
-        var entity = this.repository.findById(id)
-                .orElseThrow(() -> new ProdutoNaoEncontradoException(id));
-        this.atualizar(produtoRequest, entity);
-        this.repository.save(entity);
-        return this.mapper.mapToProdutoResponse(entity);
+        this.verificarExistencia(id);
+        return this.shards.executar(id, () -> {
+            var entity = this.repository.findById(id)
+                    .orElseThrow(() -> new ProdutoNaoEncontradoException(id));
+            this.categorias.registrar(produtoRequest.categoria());
+            var categoriaAnterior = entity.getCategoria();
+            var precoAnterior = entity.getPreco();
+            this.atualizar(produtoRequest, entity);
+            this.repository.save(entity);
+            this.aplicar(this.alteracoes.registrar(AlteracaoProdutoEntity.Operacao.ATUALIZACAO, entity));
+            this.estatisticas.registrarAlteracao(categoriaAnterior, precoAnterior, entity.getCategoria(), entity.getPreco());
+            return this.mapper.mapToProdutoResponse(entity);
+        });
+    }
+
+    /**
+     * Resultado de {@link #atualizarLote}: os produtos gravados e, para cada id de um shard cuja transação
+     * falhou, a falha. Ids ausentes de ambos não têm produto.
+     */
+    public record LoteAtualizado(Map<UUID, ProdutoResponse> atualizados, Map<UUID, RuntimeException> falhas) {
+    }
+
+    /**
+     * Atualiza os produtos com uma consulta {@code IN} e uma transação por shard; as instruções
+     * {@code UPDATE} são enviadas em lote no flush. A falha de um shard não desfaz nem interrompe os demais,
+     * então o resultado separa os produtos gravados dos ids do shard que falhou. Usado pelo {@link AgrupadorAtualizacoes}.
+     */
+    public LoteAtualizado atualizarLote(Map<UUID, ProdutoRequest> atualizacoes) {
+        var atualizados = new HashMap<UUID, ProdutoResponse>();
+        var falhas = new HashMap<UUID, RuntimeException>();
+        this.filtroIds.talvezExistam(atualizacoes.keySet()).stream()
+                .collect(Collectors.groupingBy(this.shards::shardDe))
+                .forEach((shard, ids) -> {
+                    var gravados = new HashMap<UUID, ProdutoResponse>();
+                    try {
+                        this.shards.porShard(ids, Function.identity(), lote -> {
+                            var entities = this.repository.findAllById(lote);
+                            for (var entity : entities) {
+                                var produtoRequest = atualizacoes.get(entity.getId());
+                                this.categorias.registrar(produtoRequest.categoria());
+                                var categoriaAnterior = entity.getCategoria();
+                                var precoAnterior = entity.getPreco();
+                                this.atualizar(produtoRequest, entity);
+                                this.aplicar(this.alteracoes.registrar(AlteracaoProdutoEntity.Operacao.ATUALIZACAO, entity));
+                                this.estatisticas.registrarAlteracao(categoriaAnterior, precoAnterior, entity.getCategoria(), entity.getPreco());
+                                gravados.put(entity.getId(), this.mapper.mapToProdutoResponse(entity));
+                            }
+                            this.repository.saveAll(entities);
+                        });
+                        atualizados.putAll(gravados);
+                    } catch (RuntimeException e) {
+                        ids.forEach(id -> falhas.put(id, e));
+                    }
+                });
+        return new LoteAtualizado(atualizados, falhas);
+    }
+
+    private void aplicar(AlteracaoProdutoResponse alteracao) {
+        this.sugestoes.aplicar(alteracao);
+        this.facetas.aplicar(alteracao);
+        this.versao.incrementar();
+    }
+
+    private void verificarExistencia(UUID id) {
+        if (!this.filtroIds.talvezExista(id))
+            throw new ProdutoNaoEncontradoException(id);
     }
 
     private void atualizar(ProdutoRequest produtoRequest, ProdutoEntity produtoAtual) {
@@ -79,11 +267,26 @@ public class ProdutoService {
 
     @Transactional
     public void deletar(UUID id) {
-        this.repository.findById(id).ifPresentOrElse(
-                this.repository::delete,
-                () -> {
-                    throw new ProdutoNaoEncontradoException(id);
-                }
-        );
+        this.verificarExistencia(id);
+        var entity = this.shards.executar(id, () -> this.repository.findById(id))
+                .orElseThrow(() -> new ProdutoNaoEncontradoException(id));
+        this.repository.delete(entity);
+        this.aplicar(this.alteracoes.registrar(AlteracaoProdutoEntity.Operacao.REMOCAO, entity));
+        this.estatisticas.registrarRemocao(entity.getCategoria(), entity.getPreco());
+    }
+
+    /**
+     * @param shard com sharding, cada shard mantém o log de alterações dos seus produtos
+     */
+    public AlteracoesProdutoResponse listarAlteracoes(int shard, Long desde, int limite) {
+        return this.shards.executar(shard, () -> this.alteracoes.listar(desde, limite));
+    }
+
+    public List<EstatisticaCategoriaResponse> listarEstatisticas() {
+        return this.estatisticas.listar();
+    }
+
+    public List<EstatisticaCategoriaResponse> recalcularEstatisticas() {
+        return this.estatisticas.recalcular();
     }
 }
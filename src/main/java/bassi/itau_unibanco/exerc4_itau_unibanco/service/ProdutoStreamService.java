@@ -0,0 +1,275 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.CursorExpiradoException;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Distribui as alterações de produtos aos clientes conectados ao stream (Server-Sent Events).
+ * <p>
+ * Cada assinante tem um buffer limitado, esvaziado por uma tarefa própria, agendada apenas enquanto há o que
+ * escrever; quem recebe os eventos do broker nunca escreve diretamente na conexão de um cliente. As tarefas
+ * rodam em um pool sem limite fixo de threads, então a escrita bloqueada de um cliente lento não atrasa os
+ * demais. Um cliente lento, cujo buffer enche ou cuja escrita passa de {@code produto.stream.timeout-escrita},
+ * é desconectado e pode reconectar informando o {@code Last-Event-ID}: os eventos perdidos são reenviados a
+ * partir do log de alterações antes dos eventos ao vivo.
+ * <p>
+ * A cada {@code produto.stream.heartbeat-ms}, um comentário SSE é enviado a cada assinante, mantendo a conexão
+ * aberta em proxies com timeout de inatividade e detectando clientes que já se desconectaram.
+ * <p>
+ * Eventos de transações ainda não confirmadas no momento da retomada podem não ser reenviados;
+ * o log de alterações continua sendo a fonte exata para sincronização. Com sharding, a sequência dos eventos
+ * é própria de cada shard e a retomada não é suportada: o cliente é orientado a ressincronizar.
+ */
+@Slf4j
+@Service
+@Profile("!replica")
+public class ProdutoStreamService {
+
+    static final String EVENTO_RESSINCRONIZAR = "ressincronizar";
+
+    private static final int TAMANHO_PAGINA_RETOMADA = 500;
+
+    private static final String COMENTARIO_HEARTBEAT = "heartbeat";
+
+    private final AlteracaoProdutoService alteracoes;
+
+    private final Shards shards;
+
+    private final Executor executor;
+
+    private final int capacidadeBuffer;
+
+    private final long timeout;
+
+    private final long timeoutEscrita;
+
+    private final Set<Assinante> assinantes = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public ProdutoStreamService(
+            AlteracaoProdutoService alteracoes,
+            Shards shards,
+            @Value("${produto.stream.capacidade-buffer:256}") int capacidadeBuffer,
+            @Value("${produto.stream.timeout:30m}") Duration timeout,
+            @Value("${produto.stream.timeout-escrita:10s}") Duration timeoutEscrita
+    ) {
+        this(alteracoes, shards, Executors.newCachedThreadPool(new CustomizableThreadFactory("produto-stream-")), capacidadeBuffer, timeout, timeoutEscrita);
+    }
+
+    ProdutoStreamService(AlteracaoProdutoService alteracoes, Shards shards, Executor executor, int capacidadeBuffer,
+                         Duration timeout, Duration timeoutEscrita) {
+        this.alteracoes = alteracoes;
+        this.shards = shards;
+        this.executor = executor;
+        this.capacidadeBuffer = capacidadeBuffer;
+        this.timeout = timeout.toMillis();
+        this.timeoutEscrita = timeoutEscrita.toNanos();
+    }
+
+    /**
+     * @param categoria       quando informada, apenas alterações dessa categoria são enviadas
+     * @param ultimoEventoId  sequência do último evento recebido pelo cliente, para retomada
+     */
+    public SseEmitter assinar(String categoria, Long ultimoEventoId) {
+        var assinante = new Assinante(new SseEmitter(this.timeout), categoria, ultimoEventoId);
+        this.assinantes.add(assinante);
+        this.executor.execute(assinante);
+        return assinante.emitter;
+    }
+
+    public void publicar(AlteracaoProdutoResponse evento) {
+        this.assinantes.forEach(assinante -> assinante.entregar(evento));
+    }
+
+    public int quantidadeAssinantes() {
+        return this.assinantes.size();
+    }
+
+    /**
+     * Envia o heartbeat a cada assinante e desconecta os que estão com uma escrita bloqueada há mais que o
+     * timeout de escrita; encerrar o emitter com erro fecha a conexão e libera a thread da escrita.
+     */
+    @Scheduled(fixedDelayString = "${produto.stream.heartbeat-ms:15000}", initialDelayString = "${produto.stream.heartbeat-ms:15000}")
+    public void manterConexoes() {
+        var agora = System.nanoTime();
+        this.assinantes.forEach(assinante -> {
+            var enviandoDesde = assinante.enviandoDesde;
+            if (enviandoDesde != 0 && agora - enviandoDesde > this.timeoutEscrita)
+                assinante.abortar();
+            else
+                assinante.sinalizar();
+        });
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        this.assinantes.forEach(Assinante::desconectar);
+        if (this.executor instanceof ExecutorService executorService)
+            executorService.shutdownNow();
+    }
+
+    private final class Assinante implements Runnable {
+
+        private final SseEmitter emitter;
+
+        private final String categoria;
+
+        private final BlockingQueue<AlteracaoProdutoResponse> buffer;
+
+        private final AtomicBoolean agendado = new AtomicBoolean(true);
+
+        private final AtomicBoolean heartbeat = new AtomicBoolean();
+
+        /**
+         * Início da escrita em andamento, pelo {@link System#nanoTime()}; zero sem escrita.
+         */
+        private volatile long enviandoDesde;
+
+        private Long retomarDe;
+
+        private long sequenciaRetomada = -1;
+
+        private volatile boolean encerrado;
+
+        private Assinante(SseEmitter emitter, String categoria, Long retomarDe) {
+            this.emitter = emitter;
+            this.categoria = categoria;
+            this.retomarDe = retomarDe;
+            this.buffer = new LinkedBlockingQueue<>(ProdutoStreamService.this.capacidadeBuffer);
+            emitter.onCompletion(this::encerrar);
+            emitter.onTimeout(this::encerrar);
+            emitter.onError(erro -> this.encerrar());
+        }
+
+        private void entregar(AlteracaoProdutoResponse evento) {
+            if (this.encerrado || !this.aceita(evento))
+                return;
+            if (!this.buffer.offer(evento)) {
+                log.warn("Cliente do stream desconectado por não acompanhar os eventos (buffer de {} eventos cheio).", this.buffer.size());
+                this.desconectar();
+                return;
+            }
+            this.agendar();
+        }
+
+        private void sinalizar() {
+            if (this.encerrado)
+                return;
+            this.heartbeat.set(true);
+            this.agendar();
+        }
+
+        private void agendar() {
+            if (this.agendado.compareAndSet(false, true))
+                ProdutoStreamService.this.executor.execute(this);
+        }
+
+        /**
+         * Executado por uma única thread por vez, garantida pelo sinalizador {@code agendado}.
+         */
+        @Override
+        public void run() {
+            try {
+                if (this.retomarDe != null) {
+                    this.retomar(this.retomarDe);
+                    this.retomarDe = null;
+                }
+                do {
+                    if (!this.encerrado && this.heartbeat.getAndSet(false))
+                        this.enviar(SseEmitter.event().comment(COMENTARIO_HEARTBEAT));
+                    AlteracaoProdutoResponse evento;
+                    while (!this.encerrado && (evento = this.buffer.poll()) != null)
+                        if (evento.sequencia() > this.sequenciaRetomada)
+                            this.enviar(evento);
+                    this.agendado.set(false);
+                } while (!this.encerrado && (!this.buffer.isEmpty() || this.heartbeat.get()) && this.agendado.compareAndSet(false, true));
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Falha ao enviar evento ao cliente do stream, conexão encerrada.", e);
+                this.encerrar();
+            }
+        }
+
+        private void retomar(long desde) throws IOException {
+            if (ProdutoStreamService.this.shards.habilitado()) {
+                this.enviar(SseEmitter.event().name(EVENTO_RESSINCRONIZAR).data("Retomada não suportada com sharding."));
+                this.desconectar();
+                return;
+            }
+            try {
+                var cursor = desde;
+                boolean possuiMais;
+                do {
+                    var pagina = ProdutoStreamService.this.alteracoes.listarSemAtraso(cursor, TAMANHO_PAGINA_RETOMADA);
+                    for (var evento : pagina.alteracoes())
+                        if (this.aceita(evento))
+                            this.enviar(evento);
+                    cursor = pagina.cursor();
+                    possuiMais = pagina.possuiMais();
+                } while (possuiMais && !this.encerrado);
+                this.sequenciaRetomada = cursor;
+            } catch (CursorExpiradoException e) {
+                this.enviar(SseEmitter.event().name(EVENTO_RESSINCRONIZAR).data(e.getMessage()));
+                this.desconectar();
+            }
+        }
+
+        private void enviar(AlteracaoProdutoResponse evento) throws IOException {
+            this.enviar(SseEmitter.event()
+                    .id(String.valueOf(evento.sequencia()))
+                    .name(evento.operacao().name().toLowerCase())
+                    .data(evento, MediaType.APPLICATION_JSON));
+        }
+
+        private void enviar(SseEmitter.SseEventBuilder evento) throws IOException {
+            this.enviandoDesde = System.nanoTime();
+            try {
+                this.emitter.send(evento);
+            } finally {
+                this.enviandoDesde = 0;
+            }
+        }
+
+        private boolean aceita(AlteracaoProdutoResponse evento) {
+            return this.categoria == null || this.categoria.equals(evento.categoria());
+        }
+
+        private void desconectar() {
+            this.encerrar();
+            this.emitter.complete();
+        }
+
+        private void abortar() {
+            log.warn("Cliente do stream desconectado por não receber os eventos (escrita bloqueada há mais de {} ms).",
+                    ProdutoStreamService.this.timeoutEscrita / 1_000_000);
+            this.encerrar();
+            this.emitter.completeWithError(new IOException("Timeout de escrita no stream."));
+        }
+
+        private void encerrar() {
+            this.encerrado = true;
+            ProdutoStreamService.this.assinantes.remove(this);
+        }
+    }
+}
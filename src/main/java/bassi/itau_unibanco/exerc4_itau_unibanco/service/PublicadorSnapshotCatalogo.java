@@ -0,0 +1,100 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.SnapshotCatalogoMessage;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.SolicitacaoSnapshotMessage;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.rabbitmq.RabbitMqConfiguration;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import bassi.itau_unibanco.exerc4_itau_unibanco.mapper.ProdutoMapper;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.ProdutoRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Atende aos pedidos de snapshot das réplicas de leitura, enviando o catálogo em partes de até
+ * {@code produto.replica.snapshot.tamanho-parte} produtos à fila informada pela réplica.
+ * <p>
+ * O snapshot é reaproveitado por {@code produto.replica.snapshot.validade}: o banco é lido no máximo uma vez
+ * por intervalo, independentemente da quantidade de réplicas iniciando. As marcas são obtidas antes da leitura
+ * dos produtos, então alterações concorrentes são posteriores à marca e chegam às réplicas pelos eventos.
+ */
+@Slf4j
+@Component
+@Profile("!replica")
+public class PublicadorSnapshotCatalogo {
+
+    private final ProdutoRepository repository;
+
+    private final AlteracaoProdutoService alteracoes;
+
+    private final Shards shards;
+
+    private final ProdutoMapper mapper;
+
+    private final RabbitTemplate rabbitTemplate;
+
+    private final Duration validade;
+
+    private final int tamanhoParte;
+
+    private Snapshot atual;
+
+    public PublicadorSnapshotCatalogo(
+            ProdutoRepository repository,
+            AlteracaoProdutoService alteracoes,
+            Shards shards,
+            ProdutoMapper mapper,
+            RabbitTemplate rabbitTemplate,
+            @Value("${produto.replica.snapshot.validade:5m}") Duration validade,
+            @Value("${produto.replica.snapshot.tamanho-parte:10000}") int tamanhoParte
+    ) {
+        this.repository = repository;
+        this.alteracoes = alteracoes;
+        this.shards = shards;
+        this.mapper = mapper;
+        this.rabbitTemplate = rabbitTemplate;
+        this.validade = validade;
+        this.tamanhoParte = tamanhoParte;
+    }
+
+    private record Snapshot(List<Long> marcas, List<ProdutoResponse> produtos, long geradoEm) {
+    }
+
+    @RabbitListener(queues = RabbitMqConfiguration.PRODUTO_SNAPSHOT_SOLICITACOES_QUEUE)
+    public void responder(SolicitacaoSnapshotMessage solicitacao) {
+        var snapshot = this.snapshot();
+        var produtos = snapshot.produtos();
+        var partes = Math.max(1, (produtos.size() + this.tamanhoParte - 1) / this.tamanhoParte);
+        for (var parte = 0; parte < partes; parte++) {
+            var inicio = parte * this.tamanhoParte;
+            this.rabbitTemplate.convertAndSend(solicitacao.fila(), new SnapshotCatalogoMessage(solicitacao.id(), parte, partes,
+                    snapshot.marcas(), produtos.subList(inicio, Math.min(inicio + this.tamanhoParte, produtos.size()))));
+        }
+        log.info("Snapshot do catálogo enviado à réplica {}: {} produtos em {} partes, marcas {}.",
+                solicitacao.fila(), produtos.size(), partes, snapshot.marcas());
+    }
+
+    private synchronized Snapshot snapshot() {
+        if (this.atual != null && System.nanoTime() - this.atual.geradoEm() < this.validade.toNanos())
+            return this.atual;
+        var inicio = System.nanoTime();
+        var marcas = this.shards.emCadaShard(true, this.alteracoes::sequenciaVisivel);
+        var produtos = this.shards.emCadaShard(true, () -> this.repository.findAll().stream()
+                        .map(this.mapper::mapToProdutoResponse)
+                        .toList())
+                .stream()
+                .flatMap(List::stream)
+                .toList();
+        this.atual = new Snapshot(List.copyOf(marcas), produtos, inicio);
+        log.info("Snapshot do catálogo para as réplicas lido do banco em {} ms: {} produtos.",
+                (System.nanoTime() - inicio) / 1_000_000, produtos.size());
+        return this.atual;
+    }
+}
@@ -0,0 +1,233 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.SequenciaAlteracaoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.ReservaAlteracaoRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.UUID;
+
+/**
+ * Sequências do log de alterações, reservadas em blocos para que as alterações de uma transação sejam
+ * inseridas em lote; com IDENTITY, o Hibernate insere cada uma na hora para obter a chave.
+ * <p>
+ * Cada bloco é reservado em uma transação própria, que avança o contador do shard e registra a reserva, e a
+ * transação que usa o bloco remove a reserva no seu commit. Enquanto a reserva existir, o log só é entregue
+ * até a sequência anterior a ela: a transação dona ainda pode confirmar alterações no bloco, e as reservas
+ * seguintes recebem sequências maiores. Uma reserva de transação desfeita é removida logo após o rollback, e
+ * uma abandonada, como na queda da instância, deixa de reter o log após a expiração.
+ * <p>
+ * As reservas usam um pool pequeno e separado em cada shard: a transação que pede o bloco já ocupa uma
+ * conexão do pool da aplicação, e obter outra dele poderia esgotá-lo com escritas concorrentes.
+ */
+@Slf4j
+@Component
+@Profile("!replica")
+public class SequenciaAlteracoes implements AutoCloseable {
+
+    private final List<Contador> contadores;
+
+    private final ReservaAlteracaoRepository reservas;
+
+    private final Shards shards;
+
+    private final Clock clock;
+
+    private final int alocacao;
+
+    private final Duration expiracao;
+
+    @Autowired
+    public SequenciaAlteracoes(
+            ReservaAlteracaoRepository reservas,
+            Shards shards,
+            DataSource dataSource,
+            @Value("${produto.alteracoes.conexoes-reserva:2}") int conexoes,
+            @Value("${produto.alteracoes.alocacao:50}") int alocacao,
+            @Value("${produto.alteracoes.expiracao-reserva:5m}") Duration expiracao
+    ) {
+        this(contadores(shards.habilitado() ? shards.dataSources() : List.of(dataSource), conexoes),
+                reservas, shards, Clock.systemUTC(), alocacao, expiracao);
+    }
+
+    SequenciaAlteracoes(List<Contador> contadores, ReservaAlteracaoRepository reservas, Shards shards,
+                        Clock clock, int alocacao, Duration expiracao) {
+        this.contadores = List.copyOf(contadores);
+        this.reservas = reservas;
+        this.shards = shards;
+        this.clock = clock;
+        this.alocacao = alocacao;
+        this.expiracao = expiracao;
+    }
+
+    /**
+     * Próxima sequência do bloco da transação corrente, reservando um novo bloco quando ele se esgota.
+     *
+     * @param produto define o shard do contador, o mesmo em que a alteração é gravada
+     */
+    public long proxima(UUID produto) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+            throw new IllegalStateException("O log de alterações só é gravado dentro de uma transação.");
+        var bloco = TransactionSynchronizationManager.getSynchronizations().stream()
+                .filter(Bloco.class::isInstance)
+                .map(Bloco.class::cast)
+                .findFirst()
+                .orElseGet(() -> {
+                    var novo = new Bloco(this.contadores.get(this.shards.shardDe(produto)));
+                    TransactionSynchronizationManager.registerSynchronization(novo);
+                    return novo;
+                });
+        return bloco.proxima();
+    }
+
+    /**
+     * Última sequência que pode ser entregue, anterior à reserva pendente mais antiga; sem reservas, não há
+     * limite. Deve ser lida na mesma transação que lê o log, para que as duas leituras vejam o mesmo estado.
+     */
+    public long visivelAte() {
+        return this.reservas.menorInicioApos(this.clock.instant().minus(this.expiracao))
+                .map(inicio -> inicio - 1)
+                .orElse(Long.MAX_VALUE);
+    }
+
+    /**
+     * Descarta as reservas abandonadas, que já não retêm o log.
+     */
+    public int removerExpiradas() {
+        return this.reservas.removerAte(this.clock.instant().minus(this.expiracao));
+    }
+
+    @Override
+    public void close() {
+        this.contadores.forEach(Contador::close);
+    }
+
+    private static List<Contador> contadores(List<DataSource> dataSources, int conexoes) {
+        var contadores = new ArrayList<Contador>(dataSources.size());
+        for (var indice = 0; indice < dataSources.size(); indice++) {
+            var pool = new HikariDataSource();
+            try {
+                dataSources.get(indice).unwrap(HikariDataSource.class).copyStateTo(pool);
+            } catch (SQLException e) {
+                throw new IllegalStateException("DataSource do shard %d não é um pool Hikari.".formatted(indice), e);
+            }
+            pool.setPoolName("reserva-alteracoes-%d".formatted(indice));
+            pool.setMaximumPoolSize(conexoes);
+            pool.setMinimumIdle(0);
+            contadores.add(new Contador(pool));
+        }
+        return contadores;
+    }
+
+    /**
+     * Contador e reservas de um shard, gravados pelo pool separado.
+     */
+    record Contador(JdbcTemplate jdbcTemplate, TransactionTemplate transacao) {
+
+        Contador(DataSource pool) {
+            this(new JdbcTemplate(pool), new TransactionTemplate(new DataSourceTransactionManager(pool)));
+        }
+
+        long reservar(int alocacao, Clock clock) {
+            return this.transacao.execute(status -> {
+                var atual = this.jdbcTemplate.queryForList(
+                        "SELECT proxima FROM produto_alteracao_sequencia WHERE id = ? FOR UPDATE", Long.class, SequenciaAlteracaoEntity.ID);
+                var inicio = atual.isEmpty() ? 1L : atual.get(0);
+                if (atual.isEmpty())
+                    this.jdbcTemplate.update("INSERT INTO produto_alteracao_sequencia (id, proxima) VALUES (?, ?)",
+                            SequenciaAlteracaoEntity.ID, inicio + alocacao);
+                else
+                    this.jdbcTemplate.update("UPDATE produto_alteracao_sequencia SET proxima = ? WHERE id = ?",
+                            inicio + alocacao, SequenciaAlteracaoEntity.ID);
+                var reservadoEm = Timestamp.from(clock.instant());
+                this.jdbcTemplate.update("INSERT INTO produto_alteracao_reserva (inicio, reservado_em) VALUES (?, ?)", instrucao -> {
+                    instrucao.setLong(1, inicio);
+                    instrucao.setTimestamp(2, reservadoEm, Calendar.getInstance(TimeZone.getTimeZone("UTC")));
+                });
+                return inicio;
+            });
+        }
+
+        void remover(List<Long> inicios) {
+            this.transacao.executeWithoutResult(status -> this.jdbcTemplate.batchUpdate(
+                    "DELETE FROM produto_alteracao_reserva WHERE inicio = ?",
+                    inicios.stream().map(inicio -> new Object[]{inicio}).toList()));
+        }
+
+        void close() {
+            if (this.jdbcTemplate.getDataSource() instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    log.warn("Falha ao fechar o pool de reservas do log de alterações.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Blocos reservados por uma transação, no shard em que ela grava.
+     */
+    private final class Bloco implements TransactionSynchronization {
+
+        private final Contador contador;
+
+        private final List<Long> inicios = new ArrayList<>();
+
+        private long proxima;
+
+        private long fim;
+
+        Bloco(Contador contador) {
+            this.contador = contador;
+        }
+
+        long proxima() {
+            if (this.proxima == this.fim) {
+                this.proxima = this.contador.reservar(SequenciaAlteracoes.this.alocacao, SequenciaAlteracoes.this.clock);
+                this.fim = this.proxima + SequenciaAlteracoes.this.alocacao;
+                this.inicios.add(this.proxima);
+            }
+            return this.proxima++;
+        }
+
+        /**
+         * Na própria transação: as reservas deixam de existir no mesmo commit que torna as alterações visíveis.
+         */
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            SequenciaAlteracoes.this.reservas.deleteAllByIdInBatch(this.inicios);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (status == STATUS_COMMITTED)
+                return;
+            try {
+                this.contador.remover(this.inicios);
+            } catch (RuntimeException e) {
+                log.warn("Falha ao remover as reservas {} do log de alterações; elas expiram em {}.",
+                        this.inicios, SequenciaAlteracoes.this.expiracao, e);
+            }
+        }
+    }
+}
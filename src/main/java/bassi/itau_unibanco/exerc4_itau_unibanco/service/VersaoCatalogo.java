@@ -0,0 +1,30 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.util.AfterCommit;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versão do catálogo nesta instância, incrementada a cada alteração de produto aplicada às consultas,
+ * local ou recebida pelos eventos.
+ * <p>
+ * Deve ser incrementada depois de a alteração chegar às estruturas em memória: uma resposta calculada
+ * depois de lida a versão nunca é mais antiga que ela.
+ */
+@Component
+public class VersaoCatalogo {
+
+    private final AtomicLong versao = new AtomicLong();
+
+    public long atual() {
+        return this.versao.get();
+    }
+
+    /**
+     * Na transação da alteração, apenas após o commit.
+     */
+    public void incrementar() {
+        AfterCommit.execute(this.versao::incrementAndGet);
+    }
+}
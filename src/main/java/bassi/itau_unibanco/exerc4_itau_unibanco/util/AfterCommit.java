@@ -0,0 +1,28 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.util;
+
+import lombok.experimental.UtilityClass;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Adia a execução de uma ação até o commit da transação corrente.
+ * <p>
+ * Estruturas mantidas em memória só devem refletir alterações efetivamente persistidas;
+ * sem transação ativa (ex.: testes unitários) a ação é executada imediatamente.
+ */
+@UtilityClass
+public class AfterCommit {
+
+    public static void execute(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -12,14 +12,23 @@ public class BigDecimalTwoDecimalDeserializer extends JsonDeserializer<BigDecima
 
     @Override
     public BigDecimal deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException {
-        var value = jsonParser.getText();
         try {
-            var bigDecimal = new BigDecimal(value);
-            if (bigDecimal.scale() > 2)
-                throw new IllegalArgumentException("Valor não pode ter mais de duas casas decimais.");
-            return bigDecimal.setScale(2, RoundingMode.HALF_UP);
+            return converter(jsonParser.getText());
         } catch (NumberFormatException e) {
             throw new IOException("O formato ou a escala do número fornecido é inválido.", e);
         }
     }
+
+    /**
+     * Mesma regra aplicada ao JSON, para valores lidos de outras fontes, como a importação de CSV.
+     *
+     * @throws NumberFormatException    quando o texto não é um número
+     * @throws IllegalArgumentException quando o número tem mais de duas casas decimais
+     */
+    public static BigDecimal converter(String value) {
+        var bigDecimal = new BigDecimal(value);
+        if (bigDecimal.scale() > 2)
+            throw new IllegalArgumentException("Valor não pode ter mais de duas casas decimais.");
+        return bigDecimal.setScale(2, RoundingMode.HALF_UP);
+    }
 }
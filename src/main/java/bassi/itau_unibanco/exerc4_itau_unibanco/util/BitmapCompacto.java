@@ -0,0 +1,307 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Conjunto de inteiros não negativos comprimido no formato do Roaring Bitmap: os valores são divididos em
+ * blocos de 65.536, e cada bloco guarda os 16 bits inferiores em um array ordenado, enquanto tem até 4.096
+ * valores, ou em um mapa de bits de 8 KB, acima disso. Blocos esparsos ocupam 2 bytes por valor, e blocos
+ * densos, no máximo 8 KB.
+ * <p>
+ * A interseção e a sua cardinalidade são calculadas bloco a bloco, sem percorrer os valores de blocos
+ * densos: o custo depende da quantidade de blocos, e não da quantidade de valores. Não é thread-safe.
+ */
+public final class BitmapCompacto {
+
+    private static final int LIMITE_ESPARSO = 4096;
+
+    private static final int PALAVRAS = 1 << 16 >>> 6;
+
+    private Bloco[] blocos = new Bloco[0];
+
+    public boolean contem(int valor) {
+        var bloco = this.bloco(valor >>> 16);
+        return bloco != null && bloco.contem((char) valor);
+    }
+
+    public void adicionar(int valor) {
+        var indice = valor >>> 16;
+        if (indice >= this.blocos.length)
+            this.blocos = Arrays.copyOf(this.blocos, indice + 1);
+        var bloco = this.blocos[indice];
+        this.blocos[indice] = bloco == null ? new Esparso().adicionar((char) valor) : bloco.adicionar((char) valor);
+    }
+
+    public void remover(int valor) {
+        var indice = valor >>> 16;
+        var bloco = this.bloco(indice);
+        if (bloco != null)
+            this.blocos[indice] = bloco.remover((char) valor);
+    }
+
+    public int cardinalidade() {
+        var cardinalidade = 0;
+        for (var bloco : this.blocos)
+            if (bloco != null)
+                cardinalidade += bloco.cardinalidade();
+        return cardinalidade;
+    }
+
+    /**
+     * @return um novo bitmap com os valores presentes nos dois
+     */
+    public BitmapCompacto e(BitmapCompacto outro) {
+        var resultado = new BitmapCompacto();
+        resultado.blocos = new Bloco[Math.min(this.blocos.length, outro.blocos.length)];
+        for (var i = 0; i < resultado.blocos.length; i++)
+            if (this.blocos[i] != null && outro.blocos[i] != null)
+                resultado.blocos[i] = this.blocos[i].e(outro.blocos[i]);
+        return resultado;
+    }
+
+    /**
+     * Cardinalidade da interseção, sem criá-la.
+     */
+    public int cardinalidadeE(BitmapCompacto outro) {
+        var cardinalidade = 0;
+        for (var i = 0; i < Math.min(this.blocos.length, outro.blocos.length); i++)
+            if (this.blocos[i] != null && outro.blocos[i] != null)
+                cardinalidade += this.blocos[i].cardinalidadeE(outro.blocos[i]);
+        return cardinalidade;
+    }
+
+    /**
+     * Percorre os valores em ordem crescente.
+     */
+    public void paraCada(IntConsumer acao) {
+        for (var i = 0; i < this.blocos.length; i++)
+            if (this.blocos[i] != null)
+                this.blocos[i].paraCada(i << 16, acao);
+    }
+
+    /**
+     * @return tamanho aproximado dos blocos em bytes
+     */
+    public long bytes() {
+        var bytes = 0L;
+        for (var bloco : this.blocos)
+            if (bloco != null)
+                bytes += bloco.bytes();
+        return bytes;
+    }
+
+    private Bloco bloco(int indice) {
+        return indice < this.blocos.length ? this.blocos[indice] : null;
+    }
+
+    /**
+     * Bloco de 65.536 valores; as operações que o alteram retornam o bloco resultante, que pode mudar de
+     * formato, ou {@code null} quando fica vazio.
+     */
+    private sealed interface Bloco permits Esparso, Denso {
+
+        boolean contem(char valor);
+
+        Bloco adicionar(char valor);
+
+        Bloco remover(char valor);
+
+        int cardinalidade();
+
+        Bloco e(Bloco outro);
+
+        int cardinalidadeE(Bloco outro);
+
+        void paraCada(int base, IntConsumer acao);
+
+        long bytes();
+    }
+
+    private static final class Esparso implements Bloco {
+
+        private char[] valores = new char[4];
+
+        private int tamanho;
+
+        @Override
+        public boolean contem(char valor) {
+            return Arrays.binarySearch(this.valores, 0, this.tamanho, valor) >= 0;
+        }
+
+        @Override
+        public Bloco adicionar(char valor) {
+            var posicao = Arrays.binarySearch(this.valores, 0, this.tamanho, valor);
+            if (posicao >= 0)
+                return this;
+            if (this.tamanho == LIMITE_ESPARSO)
+                return this.denso().adicionar(valor);
+            posicao = -posicao - 1;
+            if (this.tamanho == this.valores.length)
+                this.valores = Arrays.copyOf(this.valores, Math.min(LIMITE_ESPARSO, this.tamanho * 2));
+            System.arraycopy(this.valores, posicao, this.valores, posicao + 1, this.tamanho - posicao);
+            this.valores[posicao] = valor;
+            this.tamanho++;
+            return this;
+        }
+
+        @Override
+        public Bloco remover(char valor) {
+            var posicao = Arrays.binarySearch(this.valores, 0, this.tamanho, valor);
+            if (posicao < 0)
+                return this;
+            System.arraycopy(this.valores, posicao + 1, this.valores, posicao, this.tamanho - posicao - 1);
+            this.tamanho--;
+            return this.tamanho == 0 ? null : this;
+        }
+
+        @Override
+        public int cardinalidade() {
+            return this.tamanho;
+        }
+
+        @Override
+        public Bloco e(Bloco outro) {
+            var resultado = new Esparso();
+            resultado.valores = new char[Math.max(1, Math.min(this.tamanho, outro.cardinalidade()))];
+            this.intersecao(outro, valor -> resultado.valores[resultado.tamanho++] = valor);
+            return resultado.tamanho == 0 ? null : resultado;
+        }
+
+        @Override
+        public int cardinalidadeE(Bloco outro) {
+            var cardinalidade = new int[1];
+            this.intersecao(outro, valor -> cardinalidade[0]++);
+            return cardinalidade[0];
+        }
+
+        private void intersecao(Bloco outro, CharConsumer acao) {
+            if (outro instanceof Esparso esparso) {
+                int i = 0, j = 0;
+                while (i < this.tamanho && j < esparso.tamanho) {
+                    if (this.valores[i] < esparso.valores[j])
+                        i++;
+                    else if (this.valores[i] > esparso.valores[j])
+                        j++;
+                    else {
+                        acao.aceitar(this.valores[i]);
+                        i++;
+                        j++;
+                    }
+                }
+                return;
+            }
+            for (var i = 0; i < this.tamanho; i++)
+                if (outro.contem(this.valores[i]))
+                    acao.aceitar(this.valores[i]);
+        }
+
+        @Override
+        public void paraCada(int base, IntConsumer acao) {
+            for (var i = 0; i < this.tamanho; i++)
+                acao.accept(base | this.valores[i]);
+        }
+
+        @Override
+        public long bytes() {
+            return (long) this.valores.length * Character.BYTES;
+        }
+
+        private Denso denso() {
+            var denso = new Denso();
+            for (var i = 0; i < this.tamanho; i++)
+                denso.adicionar(this.valores[i]);
+            return denso;
+        }
+    }
+
+    private static final class Denso implements Bloco {
+
+        private final long[] palavras = new long[PALAVRAS];
+
+        private int cardinalidade;
+
+        @Override
+        public boolean contem(char valor) {
+            return (this.palavras[valor >>> 6] & 1L << valor) != 0;
+        }
+
+        @Override
+        public Bloco adicionar(char valor) {
+            if (!this.contem(valor)) {
+                this.palavras[valor >>> 6] |= 1L << valor;
+                this.cardinalidade++;
+            }
+            return this;
+        }
+
+        @Override
+        public Bloco remover(char valor) {
+            if (!this.contem(valor))
+                return this;
+            this.palavras[valor >>> 6] &= ~(1L << valor);
+            this.cardinalidade--;
+            return this.cardinalidade <= LIMITE_ESPARSO / 2 ? this.esparso() : this;
+        }
+
+        @Override
+        public int cardinalidade() {
+            return this.cardinalidade;
+        }
+
+        @Override
+        public Bloco e(Bloco outro) {
+            if (outro instanceof Esparso)
+                return outro.e(this);
+            var denso = (Denso) outro;
+            var resultado = new Denso();
+            for (var i = 0; i < PALAVRAS; i++) {
+                resultado.palavras[i] = this.palavras[i] & denso.palavras[i];
+                resultado.cardinalidade += Long.bitCount(resultado.palavras[i]);
+            }
+            if (resultado.cardinalidade == 0)
+                return null;
+            return resultado.cardinalidade <= LIMITE_ESPARSO ? resultado.esparso() : resultado;
+        }
+
+        @Override
+        public int cardinalidadeE(Bloco outro) {
+            if (outro instanceof Esparso)
+                return outro.cardinalidadeE(this);
+            var denso = (Denso) outro;
+            var cardinalidade = 0;
+            for (var i = 0; i < PALAVRAS; i++)
+                cardinalidade += Long.bitCount(this.palavras[i] & denso.palavras[i]);
+            return cardinalidade;
+        }
+
+        @Override
+        public void paraCada(int base, IntConsumer acao) {
+            for (var i = 0; i < PALAVRAS; i++) {
+                var palavra = this.palavras[i];
+                while (palavra != 0) {
+                    acao.accept(base | i << 6 | Long.numberOfTrailingZeros(palavra));
+                    palavra &= palavra - 1;
+                }
+            }
+        }
+
+        @Override
+        public long bytes() {
+            return (long) PALAVRAS * Long.BYTES;
+        }
+
+        private Esparso esparso() {
+            var esparso = new Esparso();
+            esparso.valores = new char[Math.max(1, this.cardinalidade)];
+            this.paraCada(0, valor -> esparso.valores[esparso.tamanho++] = (char) valor);
+            return esparso;
+        }
+    }
+
+    @FunctionalInterface
+    private interface CharConsumer {
+
+        void aceitar(char valor);
+    }
+}
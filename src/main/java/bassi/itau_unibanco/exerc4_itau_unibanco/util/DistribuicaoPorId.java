@@ -0,0 +1,22 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.util;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.UUID;
+
+/**
+ * Distribuição estável dos produtos entre partes (shards do banco e partições dos eventos) pelo hash do id.
+ * <p>
+ * Shards e partições usam a mesma função, então, com a mesma quantidade, os eventos de uma partição são todos
+ * de um único shard.
+ */
+@UtilityClass
+public class DistribuicaoPorId {
+
+    /**
+     * @return a parte do produto, entre {@code 0} e {@code partes - 1}
+     */
+    public static int parte(UUID id, int partes) {
+        return (int) Math.floorMod(id.getMostSignificantBits() ^ id.getLeastSignificantBits(), (long) partes);
+    }
+}
@@ -0,0 +1,83 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.util;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filtro de Bloom de ids: responde se um id certamente não foi adicionado ou se talvez tenha sido.
+ * <p>
+ * Não há falsos negativos; a taxa de falsos positivos fica próxima da definida na criação enquanto a
+ * quantidade de ids não ultrapassar a capacidade, e cresce gradualmente depois dela. Os bits ficam em um
+ * {@link AtomicLongArray}, então adições e consultas concorrentes dispensam locks. Ids não são removidos.
+ */
+public final class FiltroBloom {
+
+    private final AtomicLongArray bits;
+
+    private final long tamanho;
+
+    private final int funcoes;
+
+    private FiltroBloom(long tamanho, int funcoes) {
+        this.bits = new AtomicLongArray(Math.toIntExact((tamanho + Long.SIZE - 1) / Long.SIZE));
+        this.tamanho = tamanho;
+        this.funcoes = funcoes;
+    }
+
+    /**
+     * Dimensiona o filtro pela fórmula usual: {@code m = -n ln p / (ln 2)²} bits e {@code k = m/n ln 2} funções.
+     */
+    public static FiltroBloom para(long capacidade, double falsosPositivos) {
+        if (capacidade < 1 || falsosPositivos <= 0 || falsosPositivos >= 1)
+            throw new IllegalArgumentException("Capacidade deve ser positiva e a taxa de falsos positivos entre 0 e 1.");
+        var tamanho = Math.max(Long.SIZE, (long) Math.ceil(-capacidade * Math.log(falsosPositivos) / (Math.log(2) * Math.log(2))));
+        var funcoes = Math.max(1, (int) Math.round((double) tamanho / capacidade * Math.log(2)));
+        return new FiltroBloom(tamanho, funcoes);
+    }
+
+    public void adicionar(UUID id) {
+        var h1 = misturar(id.getMostSignificantBits());
+        var h2 = misturar(id.getLeastSignificantBits());
+        for (var i = 0; i < this.funcoes; i++) {
+            var bit = Math.floorMod(h1 + i * h2, this.tamanho);
+            var mascara = 1L << bit;
+            var indice = (int) (bit >>> 6);
+            if ((this.bits.get(indice) & mascara) == 0)
+                this.bits.getAndAccumulate(indice, mascara, (atual, novo) -> atual | novo);
+        }
+    }
+
+    /**
+     * @return {@code false} quando o id certamente não foi adicionado
+     */
+    public boolean talvezContenha(UUID id) {
+        var h1 = misturar(id.getMostSignificantBits());
+        var h2 = misturar(id.getLeastSignificantBits());
+        for (var i = 0; i < this.funcoes; i++) {
+            var bit = Math.floorMod(h1 + i * h2, this.tamanho);
+            if ((this.bits.get((int) (bit >>> 6)) & 1L << bit) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return tamanho do filtro em bytes
+     */
+    public long bytes() {
+        return (long) this.bits.length() * Long.BYTES;
+    }
+
+    /**
+     * Finalizador do MurmurHash3: ids sequenciais ou com bits fixos (versão e variante do UUID) passam a
+     * ocupar posições independentes.
+     */
+    private static long misturar(long valor) {
+        valor ^= valor >>> 33;
+        valor *= 0xff51afd7ed558ccdL;
+        valor ^= valor >>> 33;
+        valor *= 0xc4ceb9fe1a85ec53L;
+        valor ^= valor >>> 33;
+        return valor;
+    }
+}
@@ -0,0 +1,61 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Decide quais eventos de um caminho quente devem ser registrados em log.
+ * <p>
+ * Registra um a cada {@code intervalo} eventos e nunca mais que {@code limitePorSegundo} registros
+ * por segundo, de modo que o custo de log permaneça constante independentemente do volume.
+ * A decisão é feita sem locks, apenas com contadores atômicos.
+ */
+public class LogAmostrado {
+
+    private static final long UM_SEGUNDO_NANOS = 1_000_000_000L;
+
+    private final long intervalo;
+
+    private final long limitePorSegundo;
+
+    private final LongSupplier relogio;
+
+    private final AtomicLong eventos = new AtomicLong();
+
+    private final AtomicLong janela = new AtomicLong();
+
+    private final AtomicLong registrosNaJanela = new AtomicLong();
+
+    public LogAmostrado(long intervalo, long limitePorSegundo) {
+        this(intervalo, limitePorSegundo, System::nanoTime);
+    }
+
+    LogAmostrado(long intervalo, long limitePorSegundo, LongSupplier relogio) {
+        if (intervalo < 1 || limitePorSegundo < 1)
+            throw new IllegalArgumentException("Intervalo e limite por segundo devem ser positivos.");
+        this.intervalo = intervalo;
+        this.limitePorSegundo = limitePorSegundo;
+        this.relogio = relogio;
+        this.janela.set(relogio.getAsLong() / UM_SEGUNDO_NANOS);
+    }
+
+    /**
+     * @return {@code true} quando o evento corrente deve ser registrado
+     */
+    public boolean amostrar() {
+        if (this.eventos.getAndIncrement() % this.intervalo != 0)
+            return false;
+        var segundo = this.relogio.getAsLong() / UM_SEGUNDO_NANOS;
+        var atual = this.janela.get();
+        if (segundo != atual && this.janela.compareAndSet(atual, segundo))
+            this.registrosNaJanela.set(0);
+        return this.registrosNaJanela.incrementAndGet() <= this.limitePorSegundo;
+    }
+
+    /**
+     * @return quantidade de eventos observados desde a criação, registrados ou não
+     */
+    public long eventos() {
+        return this.eventos.get();
+    }
+}
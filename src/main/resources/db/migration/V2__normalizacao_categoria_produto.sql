@@ -0,0 +1,24 @@
+-- Collation binária: categorias que diferem só em maiúsculas ou acentos continuam distintas, como no
+-- dicionário em memória, e cada produto mantém a grafia gravada.
+CREATE TABLE categoria
+(
+    id   SMALLINT AUTO_INCREMENT PRIMARY KEY,
+    nome VARCHAR(255) COLLATE utf8mb4_bin NOT NULL,
+    CONSTRAINT uk_categoria_nome UNIQUE (nome)
+);
+
+INSERT INTO categoria (nome)
+SELECT DISTINCT categoria COLLATE utf8mb4_bin
+FROM produto;
+
+ALTER TABLE produto
+    ADD COLUMN categoria_id SMALLINT NULL;
+
+UPDATE produto p
+    JOIN categoria c ON c.nome = p.categoria COLLATE utf8mb4_bin
+SET p.categoria_id = c.id;
+
+ALTER TABLE produto
+    MODIFY categoria_id SMALLINT NOT NULL,
+    DROP COLUMN categoria,
+    ADD CONSTRAINT fk_produto_categoria FOREIGN KEY (categoria_id) REFERENCES categoria (id);
@@ -0,0 +1,24 @@
+CREATE TABLE produto_alteracao
+(
+    sequencia     BIGINT AUTO_INCREMENT PRIMARY KEY,
+    produto_id    BINARY(16)     NOT NULL,
+    operacao      VARCHAR(20)    NOT NULL,
+    nome          VARCHAR(255)   NULL,
+    preco         DECIMAL(10, 2) NULL,
+    categoria_id  SMALLINT       NULL,
+    registrado_em DATETIME(6)    NOT NULL,
+    INDEX idx_produto_alteracao_produto (produto_id, sequencia)
+);
+
+CREATE TABLE produto_alteracao_retencao
+(
+    id                 TINYINT PRIMARY KEY,
+    sequencia_expirada BIGINT NOT NULL
+);
+
+INSERT INTO produto_alteracao (produto_id, operacao, nome, preco, categoria_id, registrado_em)
+SELECT id, 'CADASTRO', nome, preco, categoria_id, CURRENT_TIMESTAMP(6)
+FROM produto;
+
+INSERT INTO produto_alteracao_retencao (id, sequencia_expirada)
+VALUES (1, 0);
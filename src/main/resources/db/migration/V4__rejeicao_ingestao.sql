@@ -0,0 +1,7 @@
+CREATE TABLE produto_ingestao_rejeicao
+(
+    id           BINARY(16)    PRIMARY KEY,
+    motivo       VARCHAR(1000) NOT NULL,
+    rejeitado_em DATETIME(6)   NOT NULL,
+    INDEX idx_produto_ingestao_rejeicao_rejeitado_em (rejeitado_em)
+);
@@ -0,0 +1,19 @@
+ALTER TABLE produto_alteracao MODIFY sequencia BIGINT NOT NULL;
+
+CREATE TABLE produto_alteracao_sequencia
+(
+    id      TINYINT PRIMARY KEY,
+    proxima BIGINT NOT NULL
+);
+
+CREATE TABLE produto_alteracao_reserva
+(
+    inicio       BIGINT PRIMARY KEY,
+    reservado_em DATETIME(6) NOT NULL
+);
+
+INSERT INTO produto_alteracao_sequencia (id, proxima)
+SELECT 1, GREATEST(
+                  (SELECT COALESCE(MAX(sequencia), 0) FROM produto_alteracao),
+                  (SELECT COALESCE(MAX(sequencia_expirada), 0) FROM produto_alteracao_retencao)
+          ) + 1;
@@ -0,0 +1,7 @@
+-- Ids aceitos pela ingestão assíncrona, para distinguir um produto pendente de um id nunca aceito.
+CREATE TABLE produto_ingestao_aceite
+(
+    id        BINARY(16)  PRIMARY KEY,
+    aceito_em DATETIME(6) NOT NULL,
+    INDEX idx_produto_ingestao_aceite_aceito_em (aceito_em)
+);
@@ -0,0 +1,42 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco;
+
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.env.Environment;
+
+/**
+ * Inicialização fora do perfil {@code test}, com a configuração de log de produção; apenas o banco é
+ * substituído pelo H2.
+ */
+@Epic("Configuração do Ambiente de Teste")
+@Feature("Carregamento de Perfis")
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:perfilpadrao;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=password",
+        "spring.jpa.hibernate.ddl-auto=update",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.flyway.enabled=false",
+        "server.port=0"
+})
+class PerfilPadraoTests {
+
+    @Autowired
+    private Environment environment;
+
+    @Test
+    @Story("Validação do Carregamento de Perfis")
+    @Description("Verifica se a aplicação inicializa sem perfil ativo, com a saída de log estruturada usada em produção.")
+    @DisplayName("Inicialização sem perfil ativo")
+    void contextLoads() {
+        Assertions.assertEquals(0, this.environment.getActiveProfiles().length);
+    }
+}
@@ -0,0 +1,57 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.CatalogoReplica;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.sql.DataSource;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Inicialização com o perfil {@code replica}, sem banco: só o catálogo em memória atende às consultas.
+ */
+@Epic("Configuração do Ambiente de Teste")
+@Feature("Carregamento de Perfis")
+@SpringBootTest(properties = {
+        "produto.replica.id=perfil-replica-tests",
+        "server.port=0"
+})
+@ActiveProfiles({"replica"})
+@AutoConfigureMockMvc(addFilters = false)
+class PerfilReplicaTests {
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    @Story("Validação do Carregamento de Perfis")
+    @Description("Verifica se a réplica de leitura inicializa sem DataSource, com o catálogo em memória, e recusa escritas com 405.")
+    @DisplayName("Inicialização com o perfil replica")
+    @SneakyThrows
+    void contextLoads() {
+        Assertions.assertEquals(0, this.context.getBeanNamesForType(DataSource.class).length);
+        Assertions.assertNotNull(this.context.getBean(CatalogoReplica.class));
+        this.mockMvc.perform(post("/v1/produto")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isMethodNotAllowed());
+    }
+}
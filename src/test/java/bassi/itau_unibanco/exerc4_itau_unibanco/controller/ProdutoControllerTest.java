@@ -1,7 +1,16 @@
 package bassi.itau_unibanco.exerc4_itau_unibanco.controller;
 
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracoesProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.BuscaProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.EstatisticaCategoriaResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.CursorExpiradoException;
 import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoRequest;
 import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoStub;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutosPorIdRequest;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutosPorIdResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.SugestaoProdutoResponse;
 import bassi.itau_unibanco.exerc4_itau_unibanco.mapper.ProdutoMapper;
 import bassi.itau_unibanco.exerc4_itau_unibanco.service.ProdutoService;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -85,6 +94,160 @@ class ProdutoControllerTest {
         verify(this.service).listar();
     }
 
+    @SneakyThrows
+    @Test
+    @Story("Estatísticas por Categoria")
+    @Description("Verifica se as estatísticas por categoria são retornadas com sucesso.")
+    @DisplayName("Deve listar estatísticas por categoria com sucesso")
+    void listarEstatisticas_DeveRetornarEstatisticasComSucesso() {
+        when(this.service.listarEstatisticas()).thenReturn(List.of(new EstatisticaCategoriaResponse(
+                "PJ", 2, BigDecimal.valueOf(10.00), BigDecimal.valueOf(30.00), BigDecimal.valueOf(20.00)
+        )));
+
+        this.mockMvc.perform(get(URI_BASE.concat("/estatisticas"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].categoria").value("PJ"))
+                .andExpect(jsonPath("$[0].quantidade").value(2))
+                .andExpect(jsonPath("$[0].preco_minimo").value(10.00))
+                .andExpect(jsonPath("$[0].preco_maximo").value(30.00))
+                .andExpect(jsonPath("$[0].preco_medio").value(20.00));
+
+        verify(this.service).listarEstatisticas();
+    }
+
+    @SneakyThrows
+    @Test
+    @Story("Consultar Produtos por IDs")
+    @Description("Verifica se os produtos encontrados e os IDs não encontrados são retornados para a lista de IDs informada.")
+    @DisplayName("Deve consultar produtos por IDs com sucesso")
+    void listarPelosIds_DeveRetornarEncontradosENaoEncontrados() {
+        var encontrado = UUID.fromString("1429f29a-a611-4212-8418-39df2e8abe5c");
+        var naoEncontrado = UUID.fromString("144f6924-fd91-4d4c-b58f-e27c5d19e15f");
+        when(this.service.listarPelosIds(List.of(encontrado, naoEncontrado)))
+                .thenReturn(new ProdutosPorIdResponse(List.of(ProdutoStub.validProdutoResponse()), List.of(naoEncontrado)));
+
+        this.mockMvc.perform(post(URI_BASE.concat("/ids"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(this.objectMapper.writeValueAsBytes(new ProdutosPorIdRequest(List.of(encontrado, naoEncontrado))))
+                )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.produtos[0].id").value(encontrado.toString()))
+                .andExpect(jsonPath("$.nao_encontrados[0]").value(naoEncontrado.toString()));
+
+        verify(this.service).listarPelosIds(List.of(encontrado, naoEncontrado));
+    }
+
+    @SneakyThrows
+    @Test
+    @Story("Consultar Produtos por IDs")
+    @Description("Valida que uma lista de IDs vazia ou acima do limite é recusada sem consultar o serviço.")
+    @DisplayName("Deve falhar ao consultar produtos com lista de IDs inválida")
+    void listarPelosIds_DeveFalharQuandoListaInvalida() {
+        var excedente = Stream.generate(UUID::randomUUID).limit(ProdutosPorIdRequest.MAXIMO_IDS + 1).toList();
+        for (var ids : List.of(List.<UUID>of(), excedente))
+            this.mockMvc.perform(post(URI_BASE.concat("/ids"))
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(this.objectMapper.writeValueAsBytes(new ProdutosPorIdRequest(ids)))
+                    )
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.invalid-params[0].name").value("ids"));
+
+        verifyNoInteractions(this.service);
+    }
+
+    @SneakyThrows
+    @Test
+    @Story("Busca com Facetas")
+    @Description("Verifica se a busca com facetas retorna os produtos com as quantidades por categoria e por faixa de preço.")
+    @DisplayName("Deve buscar produtos com facetas com sucesso")
+    void buscarComFacetas_DeveRetornarProdutosEFacetasComSucesso() {
+        when(this.service.buscarComFacetas("cart", null, "PJ")).thenReturn(new BuscaProdutoResponse(
+                List.of(ProdutoStub.validProdutoResponse()), 1,
+                List.of(new BuscaProdutoResponse.FacetaCategoria("PJ", 1)),
+                List.of(new BuscaProdutoResponse.FacetaPreco(null, BigDecimal.valueOf(50), 1))));
+
+        this.mockMvc.perform(get(URI_BASE.concat("/busca/facetas"))
+                        .param("nome", "cart")
+                        .param("categoria", "PJ")
+                )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.produtos[0].nome").value("nome"))
+                .andExpect(jsonPath("$.total").value(1))
+                .andExpect(jsonPath("$.categorias[0].categoria").value("PJ"))
+                .andExpect(jsonPath("$.categorias[0].quantidade").value(1))
+                .andExpect(jsonPath("$.faixas_preco[0].minimo").doesNotExist())
+                .andExpect(jsonPath("$.faixas_preco[0].maximo").value(50))
+                .andExpect(jsonPath("$.faixas_preco[0].quantidade").value(1));
+
+        verify(this.service).buscarComFacetas("cart", null, "PJ");
+    }
+
+    @SneakyThrows
+    @Test
+    @Story("Sugestões de Produtos")
+    @Description("Verifica se as sugestões pelo prefixo são retornadas com a categoria e o limite informados.")
+    @DisplayName("Deve sugerir produtos pelo prefixo com sucesso")
+    void sugerir_DeveRetornarSugestoesComSucesso() {
+        var produtoId = UUID.fromString("144f6924-fd91-4d4c-b58f-e27c5d19e15f");
+        when(this.service.sugerir("car", "PJ", 5)).thenReturn(List.of(new SugestaoProdutoResponse(produtoId, "Cartão PJ", "PJ")));
+
+        this.mockMvc.perform(get(URI_BASE.concat("/sugestoes"))
+                        .param("prefixo", "car")
+                        .param("categoria", "PJ")
+                        .param("limit", "5")
+                )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(produtoId.toString()))
+                .andExpect(jsonPath("$[0].nome").value("Cartão PJ"))
+                .andExpect(jsonPath("$[0].categoria").value("PJ"));
+
+        verify(this.service).sugerir("car", "PJ", 5);
+    }
+
+    @SneakyThrows
+    @Test
+    @Story("Log de Alterações")
+    @Description("Verifica se as alterações posteriores ao cursor são retornadas com o cursor de continuação.")
+    @DisplayName("Deve listar alterações a partir do cursor com sucesso")
+    void listarAlteracoes_DeveRetornarAlteracoesComCursor() {
+        var produtoId = UUID.fromString("144f6924-fd91-4d4c-b58f-e27c5d19e15f");
+        when(this.service.listarAlteracoes(0, 10L, 2)).thenReturn(new AlteracoesProdutoResponse(List.of(
+                new AlteracaoProdutoResponse(11L, produtoId, AlteracaoProdutoEntity.Operacao.ATUALIZACAO, "Cartão PJ", BigDecimal.TEN, "PJ", null),
+                new AlteracaoProdutoResponse(12L, produtoId, AlteracaoProdutoEntity.Operacao.REMOCAO, null, null, null, null)
+        ), 12L, true));
+
+        this.mockMvc.perform(get(URI_BASE.concat("/alteracoes"))
+                        .param("desde", "10")
+                        .param("limit", "2")
+                )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.alteracoes[0].sequencia").value(11))
+                .andExpect(jsonPath("$.alteracoes[0].produto_id").value(produtoId.toString()))
+                .andExpect(jsonPath("$.alteracoes[1].operacao").value("REMOCAO"))
+                .andExpect(jsonPath("$.alteracoes[1].nome").doesNotExist())
+                .andExpect(jsonPath("$.cursor").value(12))
+                .andExpect(jsonPath("$.possui_mais").value(true));
+
+        verify(this.service).listarAlteracoes(0, 10L, 2);
+    }
+
+    @SneakyThrows
+    @Test
+    @Story("Log de Alterações")
+    @Description("Verifica se um cursor anterior à retenção do log retorna 410 Gone.")
+    @DisplayName("Deve retornar 410 quando o cursor estiver expirado")
+    void listarAlteracoes_DeveRetornarGoneQuandoCursorExpirado() {
+        when(this.service.listarAlteracoes(0, 1L, 100)).thenThrow(new CursorExpiradoException(1L, 50L));
+
+        this.mockMvc.perform(get(URI_BASE.concat("/alteracoes")).param("desde", "1"))
+                .andExpect(status().isGone())
+                .andExpect(jsonPath("$.sequencia_expirada").value(50));
+
+        verify(this.service).listarAlteracoes(0, 1L, 100);
+    }
+
     @SneakyThrows
     @Test
     @Story("Buscar Produto por ID")
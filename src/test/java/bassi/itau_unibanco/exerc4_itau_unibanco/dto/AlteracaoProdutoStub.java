@@ -0,0 +1,23 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.dto;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import lombok.experimental.UtilityClass;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+@UtilityClass
+public class AlteracaoProdutoStub {
+
+    private static final Instant REGISTRADO_EM = Instant.parse("2026-01-10T12:00:00Z");
+
+    public static AlteracaoProdutoResponse buildAlteracaoProdutoResponse(long sequencia, UUID id, AlteracaoProdutoEntity.Operacao operacao,
+                                                                         String nome, BigDecimal preco, String categoria) {
+        return new AlteracaoProdutoResponse(sequencia, id, operacao, nome, preco, categoria, REGISTRADO_EM);
+    }
+
+    public static AlteracaoProdutoResponse buildRemocaoProdutoResponse(long sequencia, UUID id) {
+        return new AlteracaoProdutoResponse(sequencia, id, AlteracaoProdutoEntity.Operacao.REMOCAO, null, null, null, REGISTRADO_EM);
+    }
+}
@@ -0,0 +1,156 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.alocacao;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.ProdutoService;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.ServletResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.SneakyThrows;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@Epic("Observabilidade")
+@Feature("Alocação e CPU por Requisição")
+class AlocacaoTest {
+
+    private static final int BYTES = 1024 * 1024;
+
+    private static final List<String> ROTAS_STREAM = List.of("/v1/produto/stream");
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final MedidorAlocacao medidor = new MedidorAlocacao(this.registry);
+
+    @SneakyThrows
+    @Test
+    @Story("Medir requisições")
+    @Description("Verifica se a alocação da requisição, inclusive a escrita da resposta, é registrada pelo padrão da rota e devolvida nos cabeçalhos de depuração quando solicitada.")
+    @DisplayName("Deve registrar a alocação da requisição e devolvê-la no cabeçalho.")
+    void filtro_DeveRegistrarAlocacaoDaRequisicao() {
+        var request = new MockHttpServletRequest("GET", "/v1/produto/123");
+        request.addHeader(AlocacaoFilter.PERFIL, "1");
+        var response = new MockHttpServletResponse();
+
+        new AlocacaoFilter(this.medidor, true, ROTAS_STREAM).doFilter(request, response, (req, res) -> {
+            req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/v1/produto/{id}");
+            res.getOutputStream().write(new byte[BYTES]);
+        });
+
+        var alocacao = this.registry.get("produto.requisicao.alocacao")
+                .tags("metodo", "GET", "uri", "/v1/produto/{id}", "status", "200")
+                .summary();
+        assertEquals(1, alocacao.count());
+        assertTrue(alocacao.totalAmount() >= BYTES);
+        assertTrue(Long.parseLong(response.getHeader(AlocacaoFilter.ALOCACAO_BYTES)) >= BYTES);
+        assertNotNull(response.getHeader(AlocacaoFilter.CPU_MS));
+        assertEquals(BYTES, response.getContentAsByteArray().length);
+        assertEquals(1, this.registry.get("produto.requisicao.cpu").timer().count());
+    }
+
+    @SneakyThrows
+    @Test
+    @Story("Medir requisições")
+    @Description("Verifica se, sem o cabeçalho de depuração habilitado, a resposta não recebe os cabeçalhos de consumo.")
+    @DisplayName("Não deve devolver o consumo sem o cabeçalho habilitado.")
+    void filtro_NaoDeveDevolverCabecalhoDesabilitado() {
+        var request = new MockHttpServletRequest("GET", "/v1/produto");
+        request.addHeader(AlocacaoFilter.PERFIL, "1");
+        var response = new MockHttpServletResponse();
+
+        new AlocacaoFilter(this.medidor, false, ROTAS_STREAM).doFilter(request, response, (req, res) -> res.getWriter().write("[]"));
+
+        assertNull(response.getHeader(AlocacaoFilter.ALOCACAO_BYTES));
+        assertEquals(1, this.registry.get("produto.requisicao.alocacao").tags("uri", "UNKNOWN").summary().count());
+    }
+
+    @SneakyThrows
+    @Test
+    @Story("Medir requisições")
+    @Description("Verifica se as rotas de stream não têm a resposta retida mesmo com o cabeçalho de depuração, e se uma resposta retida processada de forma assíncrona é liberada no despacho que a conclui, sem os cabeçalhos de consumo.")
+    @DisplayName("Não deve reter respostas de stream nem perder respostas assíncronas.")
+    void filtro_NaoDeveReterStreamNemRespostaAssincrona() {
+        var filtro = new AlocacaoFilter(this.medidor, true, ROTAS_STREAM);
+        var stream = new MockHttpServletRequest("GET", "/v1/produto/stream");
+        stream.addHeader(AlocacaoFilter.PERFIL, "1");
+        filtro.doFilter(stream, new MockHttpServletResponse(), (req, res) -> assertFalse(res instanceof ContentCachingResponseWrapper));
+
+        var request = new MockHttpServletRequest("GET", "/v1/produto");
+        request.addHeader(AlocacaoFilter.PERFIL, "1");
+        request.setAsyncSupported(true);
+        var response = new MockHttpServletResponse();
+        var retida = new AtomicReference<ServletResponse>();
+        filtro.doFilter(request, response, (req, res) -> {
+            req.startAsync(req, res);
+            retida.set(res);
+        });
+        assertNull(response.getHeader(AlocacaoFilter.ALOCACAO_BYTES));
+
+        request.setAsyncStarted(false);
+        request.setDispatcherType(DispatcherType.ASYNC);
+        filtro.doFilter(request, retida.get(), (req, res) -> res.getWriter().write("[]"));
+
+        assertEquals("[]", response.getContentAsString());
+        assertNull(response.getHeader(AlocacaoFilter.ALOCACAO_BYTES));
+        assertEquals(2, this.registry.get("produto.requisicao.alocacao").tags("uri", "UNKNOWN").summary().count());
+    }
+
+    @Test
+    @Story("Medir o serviço de produtos")
+    @Description("Verifica se cada método do serviço de produtos tem a sua alocação registrada, inclusive quando falha.")
+    @DisplayName("Deve registrar a alocação por método do serviço.")
+    void aspecto_DeveRegistrarAlocacaoPorMetodo() {
+        var service = mock(ProdutoService.class);
+        when(service.listar()).thenAnswer(invocacao -> List.of(new byte[BYTES]));
+        doThrow(new IllegalStateException("falha")).when(service).deletar(any());
+        var fabrica = new AspectJProxyFactory(service);
+        fabrica.setProxyTargetClass(true);
+        fabrica.addAspect(new AlocacaoAspect(this.medidor));
+        ProdutoService proxy = fabrica.getProxy();
+
+        proxy.listar();
+        assertThrows(IllegalStateException.class, () -> proxy.deletar(null));
+
+        assertTrue(this.registry.get("produto.servico.alocacao").tags("metodo", "listar").summary().totalAmount() >= BYTES);
+        assertEquals(1, this.registry.get("produto.servico.cpu").tags("metodo", "deletar").timer().count());
+    }
+
+    @Test
+    @Story("Medir mensagens")
+    @Description("Verifica se a entrega de uma mensagem ou de um lote tem a sua alocação registrada pela fila de origem.")
+    @DisplayName("Deve registrar a alocação das mensagens por fila.")
+    void interceptor_DeveRegistrarAlocacaoPorFila() throws Throwable {
+        var properties = new MessageProperties();
+        properties.setConsumerQueue("fila-teste");
+        var message = new Message(new byte[0], properties);
+        var interceptor = new AlocacaoListenerInterceptor(this.medidor);
+        var entrega = mock(MethodInvocation.class);
+        when(entrega.getArguments()).thenReturn(new Object[]{null, message});
+        when(entrega.proceed()).thenAnswer(invocacao -> new byte[BYTES]);
+        var lote = mock(MethodInvocation.class);
+        when(lote.getArguments()).thenReturn(new Object[]{null, List.of(message, message)});
+
+        interceptor.invoke(entrega);
+        interceptor.invoke(lote);
+
+        var alocacao = this.registry.get("produto.mensagem.alocacao").tags("fila", "fila-teste").summary();
+        assertEquals(2, alocacao.count());
+        assertTrue(alocacao.totalAmount() >= BYTES);
+    }
+}
@@ -0,0 +1,46 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.aot;
+
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Epic("Inicialização")
+@Feature("Condições Fixadas pelo AOT")
+class CondicoesAotTest {
+
+    @Test
+    @Story("Execução com os mesmos valores do build")
+    @Description("Verifica se não há divergência quando a execução usa os valores padrão capturados no build.")
+    @DisplayName("Não deve apontar divergência com os valores do build.")
+    void divergencias_NaoDeveApontarComValoresDoBuild() {
+        var build = CondicoesAot.capturar(new MockEnvironment());
+
+        assertEquals("false", build.getProperty("produto.sharding.enabled"));
+        assertEquals("", build.getProperty(CondicoesAot.PERFIS));
+        assertTrue(CondicoesAot.divergencias(build, new MockEnvironment().withProperty("produto.jfr.enabled", "FALSE")).isEmpty());
+    }
+
+    @Test
+    @Story("Execução com valores diferentes do build")
+    @Description("Verifica se propriedades e perfis alterados na execução são apontados com o valor fixado no build.")
+    @DisplayName("Deve apontar propriedades e perfis divergentes.")
+    void divergencias_DeveApontarPropriedadesEPerfisDivergentes() {
+        var build = CondicoesAot.capturar(new MockEnvironment());
+        var execucao = new MockEnvironment().withProperty("produto.sharding.enabled", "true");
+        execucao.setActiveProfiles("replica");
+
+        assertEquals(List.of(
+                "produto.sharding.enabled=true (build: false)",
+                "spring.profiles.active=replica (build: )"
+        ), CondicoesAot.divergencias(build, execucao));
+    }
+}
@@ -0,0 +1,114 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.cache;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.VersaoCatalogo;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Epic("Desempenho")
+@Feature("Cache de Respostas")
+class CacheRespostasFilterTest {
+
+    private static final String CORPO = "[{\"nome\":\"Cartão PJ\"}]";
+
+    private final VersaoCatalogo versao = new VersaoCatalogo();
+
+    private final AtomicInteger chamadas = new AtomicInteger();
+
+    private final FilterChain listagem = (request, response) -> {
+        this.chamadas.incrementAndGet();
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(CORPO);
+    };
+
+    private final CacheRespostasFilter filter = new CacheRespostasFilter(this.versao, 8, Duration.ofMinutes(1));
+
+    @SneakyThrows
+    @Test
+    @Story("Servir respostas em cache")
+    @Description("Verifica se a segunda requisição, com os parâmetros em outra ordem, é servida do cache com o mesmo ETag, em gzip quando aceito, e se o ETag correspondente recebe 304.")
+    @DisplayName("Deve servir a resposta do cache com gzip e ETag.")
+    void doFilter_DeveServirRespostaDoCache() {
+        var primeira = this.executar(requisicao("nome", "cart", "categoria", "PJ"));
+        var gzip = requisicao("categoria", "PJ", "nome", "cart");
+        gzip.addHeader(HttpHeaders.ACCEPT_ENCODING, "br, gzip;q=0.8");
+        var segunda = this.executar(gzip);
+
+        assertEquals(1, this.chamadas.get());
+        assertEquals(CORPO, primeira.getContentAsString());
+        assertEquals("application/json;charset=UTF-8", segunda.getContentType());
+        assertEquals("gzip", segunda.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(CORPO, descompactar(segunda.getContentAsByteArray()));
+        assertEquals(primeira.getHeader(HttpHeaders.ETAG).replace("\"", "") + "-gzip", segunda.getHeader(HttpHeaders.ETAG).replace("\"", ""));
+
+        var condicional = requisicao("nome", "cart", "categoria", "PJ");
+        condicional.addHeader(HttpHeaders.IF_NONE_MATCH, primeira.getHeader(HttpHeaders.ETAG));
+        var naoModificada = this.executar(condicional);
+        assertEquals(304, naoModificada.getStatus());
+        assertEquals(0, naoModificada.getContentLength());
+        assertEquals(1, this.chamadas.get());
+    }
+
+    @SneakyThrows
+    @Test
+    @Story("Invalidar respostas em cache")
+    @Description("Verifica se uma alteração do catálogo invalida a resposta em cache e muda o ETag, e se respostas de erro não são guardadas.")
+    @DisplayName("Deve recalcular a resposta após alteração do catálogo.")
+    void doFilter_DeveRecalcularAposAlteracao() {
+        var antes = this.executar(requisicao());
+
+        this.versao.incrementar();
+        var depois = this.executar(requisicao());
+
+        assertEquals(2, this.chamadas.get());
+        assertNotEquals(antes.getHeader(HttpHeaders.ETAG), depois.getHeader(HttpHeaders.ETAG));
+
+        FilterChain erro = (request, response) -> {
+            this.chamadas.incrementAndGet();
+            ((HttpServletResponse) response).setStatus(500);
+        };
+        var busca = new MockHttpServletRequest("GET", "/v1/produto/busca");
+        this.filter.doFilter(busca, new MockHttpServletResponse(), erro);
+        this.filter.doFilter(busca, new MockHttpServletResponse(), erro);
+        assertEquals(4, this.chamadas.get());
+    }
+
+    @SneakyThrows
+    private MockHttpServletResponse executar(MockHttpServletRequest request) {
+        var response = new MockHttpServletResponse();
+        this.filter.doFilter(request, response, this.listagem);
+        return response;
+    }
+
+    private static MockHttpServletRequest requisicao(String... parametros) {
+        var request = new MockHttpServletRequest("GET", "/v1/produto");
+        for (var i = 0; i < parametros.length; i += 2)
+            request.addParameter(parametros[i], parametros[i + 1]);
+        return request;
+    }
+
+    @SneakyThrows
+    private static String descompactar(byte[] gzip) {
+        try (var entrada = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            return new String(entrada.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
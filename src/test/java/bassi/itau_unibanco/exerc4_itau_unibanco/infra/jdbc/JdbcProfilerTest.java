@@ -0,0 +1,121 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.jdbc;
+
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Epic("Observabilidade")
+@Feature("Perfil de Instruções SQL")
+class JdbcProfilerTest {
+
+    private JdbcDataSource h2;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        this.h2 = new JdbcDataSource();
+        this.h2.setURL("jdbc:h2:mem:profiler;DB_CLOSE_DELAY=-1");
+        try (var connection = this.h2.getConnection(); var statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS item");
+            statement.execute("CREATE TABLE item (id INT PRIMARY KEY, nome VARCHAR(20))");
+        }
+    }
+
+    @Test
+    @Story("Agrupar instruções por formato")
+    @Description("Verifica se execuções, linhas lidas e tamanhos de lote são agregados pelo formato da instrução.")
+    @DisplayName("Deve agregar execuções, linhas e lotes por formato.")
+    void relatorio_DeveAgregarPorFormato() throws SQLException {
+        var profiler = new JdbcProfiler(60_000, 10);
+        var dataSource = ProfilingProxies.dataSource(this.h2, profiler);
+
+        try (var connection = dataSource.getConnection()) {
+            try (var insert = connection.prepareStatement("INSERT INTO item (id, nome) VALUES (?, ?)")) {
+                for (var i = 1; i <= 3; i++) {
+                    insert.setInt(1, i);
+                    insert.setString(2, "item " + i);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            try (var statement = connection.createStatement(); var resultSet = statement.executeQuery("SELECT * FROM item WHERE id > 1")) {
+                while (resultSet.next()) ;
+            }
+        }
+
+        var relatorio = profiler.relatorio();
+        var insert = relatorio.instrucoes().stream().filter(i -> i.sql().startsWith("INSERT")).findFirst().orElseThrow();
+        var select = relatorio.instrucoes().stream().filter(i -> i.sql().startsWith("SELECT")).findFirst().orElseThrow();
+        assertEquals(1, insert.lotes());
+        assertEquals(3, insert.tamanhoMedioLote());
+        assertEquals("SELECT * FROM item WHERE id > ?", select.sql());
+        assertEquals(2, select.linhas());
+        assertTrue(relatorio.lentas().isEmpty());
+    }
+
+    @Test
+    @Story("Registrar consultas lentas")
+    @Description("Verifica se consultas acima do limite de lentidão são registradas com seus parâmetros.")
+    @DisplayName("Deve registrar consultas lentas com parâmetros.")
+    void registrarExecucao_DeveRegistrarConsultaLentaComParametros() throws SQLException {
+        var profiler = new JdbcProfiler(0, 10);
+        var dataSource = ProfilingProxies.dataSource(this.h2, profiler);
+
+        try (var connection = dataSource.getConnection(); var select = connection.prepareStatement("SELECT * FROM item WHERE id = ?")) {
+            select.setInt(1, 42);
+            select.executeQuery().close();
+        }
+
+        var lenta = profiler.relatorio().lentas().get(0);
+        assertEquals("SELECT * FROM item WHERE id = ?", lenta.sql());
+        assertEquals("42", lenta.parametros().get(0));
+    }
+
+    @Test
+    @Story("Detectar N+1")
+    @Description("Verifica se a mesma consulta repetida dentro de um escopo acima do limite é sinalizada como N+1, e se uma chamada aninhada ao serviço conta no escopo já aberto, sem abrir outro.")
+    @DisplayName("Deve sinalizar consultas repetidas no mesmo escopo.")
+    void encerrarEscopo_DeveSinalizarNMaisUm() throws SQLException {
+        var profiler = new JdbcProfiler(60_000, 3);
+        var dataSource = profiler.instrumentar(this.h2);
+
+        assertTrue(profiler.iniciarEscopo("ProdutoService.buscarComFacetas"));
+        assertFalse(profiler.iniciarEscopo("ProdutoService.listagemPersonalizada"));
+        try (var connection = dataSource.getConnection()) {
+            for (var id = 1; id <= 5; id++)
+                try (var select = connection.prepareStatement("SELECT * FROM item WHERE id = " + id)) {
+                    select.executeQuery().close();
+                }
+        }
+        profiler.encerrarEscopo();
+
+        assertEquals(1, profiler.relatorio().suspeitasNMaisUm().size());
+        var suspeita = profiler.relatorio().suspeitasNMaisUm().get(0);
+        assertEquals("ProdutoService.buscarComFacetas", suspeita.escopo());
+        assertEquals("SELECT * FROM item WHERE id = ?", suspeita.sql());
+        assertEquals(5, suspeita.execucoes());
+    }
+
+    @Test
+    @Story("Preservar integrações do pool")
+    @Description("Verifica se unwrap continua alcançando o DataSource original através do proxy.")
+    @DisplayName("Deve desembrulhar até o DataSource original.")
+    void unwrap_DeveAlcancarDataSourceOriginal() throws SQLException {
+        DataSource dataSource = ProfilingProxies.dataSource(this.h2, new JdbcProfiler(200, 10));
+
+        assertTrue(dataSource.isWrapperFor(JdbcDataSource.class));
+        assertSame(this.h2, dataSource.unwrap(JdbcDataSource.class));
+    }
+}
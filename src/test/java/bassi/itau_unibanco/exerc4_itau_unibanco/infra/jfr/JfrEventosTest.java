@@ -0,0 +1,111 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.jfr;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoStub;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.ProdutoNaoEncontradoException;
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.ProdutoService;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@Epic("Observabilidade")
+@Feature("Eventos JFR")
+class JfrEventosTest {
+
+    private final GravacaoJfr gravacao = new GravacaoJfr(Duration.ofMinutes(1), 10 * 1024 * 1024);
+
+    @TempDir
+    private Path diretorio;
+
+    @AfterEach
+    void tearDown() {
+        this.gravacao.encerrar();
+    }
+
+    @SneakyThrows
+    @Test
+    @Story("Registrar operações de produto")
+    @Description("Verifica se cada operação do serviço de produtos gera um evento com método, id, resultado e linhas, incluindo as que falham.")
+    @DisplayName("Deve registrar as operações de produto durante a gravação.")
+    void operacao_DeveRegistrarEventoDuranteGravacao() {
+        var id = UUID.randomUUID();
+        var service = mock(ProdutoService.class);
+        when(service.listarPeloId(id)).thenThrow(new ProdutoNaoEncontradoException(id));
+        when(service.listar()).thenReturn(List.of(
+                ProdutoStub.buildProdutoResponse(UUID.randomUUID(), "Cartão PJ", BigDecimal.TEN, "PJ"),
+                ProdutoStub.buildProdutoResponse(UUID.randomUUID(), "Empréstimo PJ", BigDecimal.TEN, "PJ")
+        ));
+        var fabrica = new AspectJProxyFactory(service);
+        fabrica.setProxyTargetClass(true);
+        fabrica.addAspect(new JfrEventosAspect());
+        ProdutoService proxy = fabrica.getProxy();
+
+        proxy.listar();
+        this.gravacao.iniciar(null, "default");
+        proxy.listar();
+        assertThrows(ProdutoNaoEncontradoException.class, () -> proxy.listarPeloId(id));
+        this.gravacao.parar();
+
+        var eventos = this.eventos(OperacaoProdutoEvento.NOME);
+        assertEquals(2, eventos.size());
+        assertEquals("listar", eventos.get(0).getString("metodo"));
+        assertEquals(2, eventos.get(0).getInt("linhas"));
+        assertEquals(JfrEventosAspect.SUCESSO, eventos.get(0).getString("resultado"));
+        assertEquals("listarPeloId", eventos.get(1).getString("metodo"));
+        assertEquals(id.toString(), eventos.get(1).getString("produtoId"));
+        assertEquals("ProdutoNaoEncontradoException", eventos.get(1).getString("resultado"));
+    }
+
+    @SneakyThrows
+    @Test
+    @Story("Gravar sob demanda")
+    @Description("Verifica se a gravação é limitada à duração máxima, se uma segunda gravação não é iniciada enquanto a primeira está em andamento e se o download só está disponível após o início, lido de um arquivo temporário removido ao fim da leitura.")
+    @DisplayName("Deve limitar e controlar a gravação.")
+    void iniciar_DeveLimitarGravacao() {
+        assertTrue(this.gravacao.dump().isEmpty());
+        assertEquals("NEW", this.gravacao.estado().estado());
+
+        var estado = this.gravacao.iniciar(Duration.ofHours(1), "default");
+        assertEquals("RUNNING", estado.estado());
+        assertEquals(Duration.ofMinutes(1), estado.duracao());
+        assertEquals(estado.inicio(), this.gravacao.iniciar(Duration.ofSeconds(5), "profile").inicio());
+        assertEquals("default", this.gravacao.estado().configuracao());
+
+        assertEquals("STOPPED", this.gravacao.parar().estado());
+        var dump = this.gravacao.dump().orElseThrow();
+        var arquivo = dump.getFile().toPath();
+        try (var conteudo = dump.getInputStream()) {
+            assertTrue(conteudo.readAllBytes().length > 0);
+        }
+        assertFalse(Files.exists(arquivo));
+    }
+
+    @SneakyThrows
+    private List<RecordedEvent> eventos(String nome) {
+        var arquivo = this.diretorio.resolve("gravacao.jfr");
+        try (var conteudo = this.gravacao.dump().orElseThrow().getInputStream()) {
+            Files.copy(conteudo, arquivo);
+        }
+        return RecordingFile.readAllEvents(arquivo).stream()
+                .filter(evento -> evento.getEventType().getName().equals(nome))
+                .toList();
+    }
+}
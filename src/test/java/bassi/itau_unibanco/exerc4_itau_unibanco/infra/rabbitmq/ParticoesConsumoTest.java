@@ -0,0 +1,118 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.rabbitmq;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.listener.CadastroProdutoListener;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.listener.ListenerContainerConsumerFailedEvent;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+@Epic("Mensageria")
+@Feature("Consumo Particionado")
+class ParticoesConsumoTest {
+
+    private final AmqpAdmin admin = mock(AmqpAdmin.class);
+
+    private final RabbitListenerEndpointRegistry registry = mock(RabbitListenerEndpointRegistry.class);
+
+    private final ParticoesConsumo consumo = new ParticoesConsumo(
+            mock(CadastroProdutoListener.class), new SimpleRabbitListenerContainerFactory(), this.admin, this.registry, 4
+    );
+
+    @Test
+    @Story("Roteamento por produto")
+    @DisplayName("Deve rotear todos os eventos de um produto para a mesma partição.")
+    @Description("Verifica se a routing key dos eventos de um produto tem sempre a mesma partição, independente da operação, e se os produtos se distribuem entre as partições.")
+    void eventoRoutingKey_DeveManterProdutoNaMesmaParticao() {
+        var id = UUID.randomUUID();
+        var particao = RabbitMqConfiguration.particao(id, 8);
+
+        assertEquals("produto.cadastro.%d".formatted(particao), RabbitMqConfiguration.eventoRoutingKey(AlteracaoProdutoEntity.Operacao.CADASTRO, particao));
+        assertEquals("produto.remocao.%d".formatted(particao), RabbitMqConfiguration.eventoRoutingKey(AlteracaoProdutoEntity.Operacao.REMOCAO, RabbitMqConfiguration.particao(id, 8)));
+        var usadas = IntStream.range(0, 1000)
+                .map(i -> RabbitMqConfiguration.particao(UUID.randomUUID(), 8))
+                .distinct()
+                .count();
+        assertEquals(8, usadas);
+    }
+
+    @Test
+    @Story("Rebalanceamento")
+    @DisplayName("Deve liberar as partições ativas além da parte da instância.")
+    @Description("Verifica se, com uma nova instância no cluster, a instância que consome todas as partições reinicia o consumidor das excedentes para que passem à nova instância.")
+    void rebalancear_DeveLiberarParticoesExcedentes() {
+        when(this.admin.getQueueInfo(RabbitMqConfiguration.PRODUTO_PARTICOES_MEMBROS_QUEUE))
+                .thenReturn(new QueueInformation(RabbitMqConfiguration.PRODUTO_PARTICOES_MEMBROS_QUEUE, 0, 2));
+        var containers = IntStream.range(0, 4).mapToObj(particao -> {
+            var container = mock(MessageListenerContainer.class);
+            when(this.registry.getListenerContainer("particao-" + particao)).thenReturn(container);
+            this.consumo.registrarEntrega(entrega(particao));
+            return container;
+        }).toList();
+
+        this.consumo.rebalancear();
+
+        verifyNoInteractions(containers.get(0), containers.get(1));
+        for (var container : containers.subList(2, 4)) {
+            var ordem = inOrder(container);
+            ordem.verify(container).stop();
+            ordem.verify(container).start();
+        }
+        assertEquals(List.of(0, 1), this.consumo.ativas());
+    }
+
+    @Test
+    @Story("Rebalanceamento")
+    @DisplayName("Não deve liberar partições com uma única instância.")
+    @Description("Verifica se uma instância sozinha no cluster mantém todas as partições.")
+    void rebalancear_NaoDeveLiberarComInstanciaUnica() {
+        when(this.admin.getQueueInfo(RabbitMqConfiguration.PRODUTO_PARTICOES_MEMBROS_QUEUE))
+                .thenReturn(new QueueInformation(RabbitMqConfiguration.PRODUTO_PARTICOES_MEMBROS_QUEUE, 0, 1));
+        IntStream.range(0, 4).forEach(particao -> this.consumo.registrarEntrega(entrega(particao)));
+
+        this.consumo.rebalancear();
+
+        verifyNoInteractions(this.registry);
+        assertTrue(ParticoesConsumo.excedentes(List.of(0, 1, 2), 8, 3).isEmpty());
+    }
+
+    @Test
+    @Story("Rebalanceamento")
+    @DisplayName("Deve manter partições ociosas até o consumidor falhar.")
+    @Description("Verifica se uma partição continua ativa na instância sem novas entregas e deixa de ser ativa quando o seu consumidor falha.")
+    void ativas_DeveManterParticaoAteFalhaDoConsumidor() {
+        IntStream.range(0, 2).forEach(particao -> this.consumo.registrarEntrega(entrega(particao)));
+        assertEquals(List.of(0, 1), this.consumo.ativas());
+
+        var container = new SimpleMessageListenerContainer();
+        container.setQueueNames(ParticoesConfiguration.particaoQueue(1));
+        this.consumo.consumidorFalhou(new ListenerContainerConsumerFailedEvent(container, "Consumidor cancelado.", null, false));
+
+        assertEquals(List.of(0), this.consumo.ativas());
+    }
+
+    private static Message entrega(int particao) {
+        var properties = new MessageProperties();
+        properties.setConsumerQueue(ParticoesConfiguration.particaoQueue(particao));
+        return new Message(new byte[0], properties);
+    }
+}
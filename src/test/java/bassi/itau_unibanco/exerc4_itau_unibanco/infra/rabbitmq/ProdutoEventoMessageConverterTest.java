@@ -0,0 +1,143 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.rabbitmq;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Epic("Mensageria")
+@Feature("Codificação dos Eventos de Produto")
+class ProdutoEventoMessageConverterTest {
+
+    private final Jackson2JsonMessageConverter json = new Jackson2JsonMessageConverter();
+
+    private final ProdutoEventoMessageConverter converter = new ProdutoEventoMessageConverter(this.json, 1024);
+
+    @Test
+    @Story("Codificar eventos")
+    @Description("Verifica se eventos completos e marcadores de remoção são decodificados sem perda, com o cabeçalho de versão.")
+    @DisplayName("Deve codificar e decodificar eventos sem perda.")
+    void toMessage_DeveCodificarSemPerda() {
+        for (var evento : List.of(evento(42L), remocao(43L))) {
+            var message = this.converter.toMessage(evento, new MessageProperties());
+
+            assertEquals(ProdutoEventoMessageConverter.CONTENT_TYPE, message.getMessageProperties().getContentType());
+            assertEquals(ProdutoEventoMessageConverter.VERSAO, (int) message.getMessageProperties().getHeader(ProdutoEventoMessageConverter.X_VERSAO));
+            assertEquals(evento, this.converter.fromMessage(message));
+        }
+    }
+
+    @Test
+    @Story("Codificar eventos")
+    @Description("Verifica se o evento binário ocupa uma fração do mesmo evento em JSON.")
+    @DisplayName("Deve ocupar menos da metade do JSON.")
+    void toMessage_DeveSerMenorQueJson() {
+        var evento = evento(123_456L);
+
+        var binario = this.converter.toMessage(evento, new MessageProperties()).getBody().length;
+        var texto = this.json.toMessage(evento, new MessageProperties()).getBody().length;
+
+        assertTrue(binario * 2 < texto, "binário: %d bytes, JSON: %d bytes".formatted(binario, texto));
+    }
+
+    @Test
+    @Story("Codificar lotes")
+    @Description("Verifica se lotes acima do limite são comprimidos e decodificados como lista.")
+    @DisplayName("Deve comprimir lotes grandes.")
+    void toMessage_DeveComprimirLotes() {
+        var lote = LongStream.rangeClosed(1, 200).mapToObj(ProdutoEventoMessageConverterTest::evento).toList();
+
+        var message = this.converter.toMessage(lote, new MessageProperties());
+
+        assertEquals(ProdutoEventoMessageConverter.DEFLATE, message.getMessageProperties().getContentEncoding());
+        assertTrue(message.getBody().length < ProdutoEventoMessageConverter.codificar(lote).length);
+        assertEquals(lote, this.converter.fromMessage(message));
+    }
+
+    @Test
+    @Story("Versionamento")
+    @Description("Verifica se uma versão desconhecida do formato é recusada, em vez de decodificada incorretamente.")
+    @DisplayName("Deve recusar versão não suportada.")
+    void fromMessage_DeveRecusarVersaoDesconhecida() {
+        var message = this.converter.toMessage(evento(1L), new MessageProperties());
+        message.getMessageProperties().setHeader(ProdutoEventoMessageConverter.X_VERSAO, 2);
+
+        assertThrows(MessageConversionException.class, () -> this.converter.fromMessage(message));
+    }
+
+    @Test
+    @Story("Versionamento")
+    @Description("Verifica se as demais mensagens continuam em JSON.")
+    @DisplayName("Deve delegar outras mensagens ao conversor JSON.")
+    void toMessage_DeveDelegarOutrasMensagens() {
+        var message = this.converter.toMessage(Map.of("id", "1"), new MessageProperties());
+
+        assertEquals(MessageProperties.CONTENT_TYPE_JSON, message.getMessageProperties().getContentType());
+        assertEquals(Map.of("id", "1"), this.converter.fromMessage(message));
+    }
+
+    /**
+     * Comparação de tempo de codificação e decodificação com o JSON, executada apenas com
+     * {@code -Deventos.benchmark=true}.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "eventos.benchmark", matches = "true")
+    @DisplayName("Benchmark: binário x JSON.")
+    void benchmark() {
+        var eventos = LongStream.rangeClosed(1, 1_000).mapToObj(ProdutoEventoMessageConverterTest::evento).toList();
+        var jsonMessages = eventos.stream().map(evento -> this.json.toMessage(evento, new MessageProperties())).toList();
+        jsonMessages.forEach(message -> message.getMessageProperties().setInferredArgumentType(AlteracaoProdutoResponse.class));
+        var binarioMessages = eventos.stream().map(evento -> this.converter.toMessage(evento, new MessageProperties())).toList();
+
+        medir("JSON", eventos, jsonMessages, evento -> this.json.toMessage(evento, new MessageProperties()), this.json::fromMessage);
+        medir("binário", eventos, binarioMessages, evento -> this.converter.toMessage(evento, new MessageProperties()), this.converter::fromMessage);
+    }
+
+    private static void medir(String formato, List<AlteracaoProdutoResponse> eventos, List<Message> messages,
+                              Function<AlteracaoProdutoResponse, Message> codificar, Function<Message, Object> decodificar) {
+        for (var aquecimento = 0; aquecimento < 200; aquecimento++) {
+            eventos.forEach(codificar::apply);
+            messages.forEach(decodificar::apply);
+        }
+        var rodadas = 200;
+        var inicio = System.nanoTime();
+        for (var rodada = 0; rodada < rodadas; rodada++)
+            eventos.forEach(codificar::apply);
+        var codificacao = (System.nanoTime() - inicio) / (rodadas * eventos.size());
+        inicio = System.nanoTime();
+        for (var rodada = 0; rodada < rodadas; rodada++)
+            messages.forEach(decodificar::apply);
+        var decodificacao = (System.nanoTime() - inicio) / (rodadas * messages.size());
+        var bytes = messages.stream().mapToInt(message -> message.getBody().length).average().orElse(0);
+        System.out.printf("%-8s %6.1f bytes/evento  codificação %5d ns  decodificação %5d ns%n", formato, bytes, codificacao, decodificacao);
+    }
+
+    private static AlteracaoProdutoResponse evento(long sequencia) {
+        return new AlteracaoProdutoResponse(sequencia, UUID.randomUUID(), AlteracaoProdutoEntity.Operacao.ATUALIZACAO,
+                "Cartão de Crédito Platinum", new BigDecimal("1299.90"), "PJ", Instant.parse("2026-01-10T12:00:00.123456Z"));
+    }
+
+    private static AlteracaoProdutoResponse remocao(long sequencia) {
+        return new AlteracaoProdutoResponse(sequencia, UUID.randomUUID(), AlteracaoProdutoEntity.Operacao.REMOCAO,
+                null, null, "PF", Instant.parse("2026-01-10T12:00:01Z"));
+    }
+}
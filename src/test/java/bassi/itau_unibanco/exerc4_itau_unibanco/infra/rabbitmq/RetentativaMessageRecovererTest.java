@@ -0,0 +1,70 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.rabbitmq;
+
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@Epic("Mensageria")
+@Feature("Retentativas da Fila de Cadastro")
+class RetentativaMessageRecovererTest {
+
+    private final AmqpTemplate template = mock(AmqpTemplate.class);
+
+    private final RetentativaMessageRecoverer recoverer = new RetentativaMessageRecoverer(
+            this.template, RabbitMqConfiguration.CADASTRO_PRODUTO_RETRY_EXCHANGE, 4
+    );
+
+    @ParameterizedTest(name = "Tentativa anterior {0} deve ir para {1}")
+    @CsvSource({
+            "0, itau-unibanco-cadastro-produto.retry.1",
+            "1, itau-unibanco-cadastro-produto.retry.2",
+            "3, itau-unibanco-cadastro-produto.retry.4",
+            "4, parking-lot"
+    })
+    @Story("Roteamento de retentativas")
+    @Description("Verifica se cada falha é republicada na fila de espera da tentativa seguinte e, esgotadas as tentativas, estacionada na DLQ.")
+    @DisplayName("Deve republicar a mensagem na fila da próxima tentativa.")
+    void recover_DeveRepublicarNaFilaDaProximaTentativa(int tentativaAnterior, String routingKey) {
+        var properties = new MessageProperties();
+        if (tentativaAnterior > 0)
+            properties.setHeader(RetentativaMessageRecoverer.X_TENTATIVA, tentativaAnterior);
+        var message = new Message("{}".getBytes(), properties);
+
+        this.recoverer.recover(message, new IllegalStateException("falha"));
+
+        verify(this.template).send(eq(RabbitMqConfiguration.CADASTRO_PRODUTO_RETRY_EXCHANGE), eq(routingKey), eq(message));
+        assertEquals(tentativaAnterior + 1, (int) message.getMessageProperties().getHeader(RetentativaMessageRecoverer.X_TENTATIVA));
+    }
+
+    @Test
+    @Story("Roteamento de retentativas")
+    @Description("Verifica se, em um lote da ingestão, cada mensagem é republicada na topologia da ingestão conforme a sua própria contagem de tentativas.")
+    @DisplayName("Deve republicar cada mensagem do lote na fila da sua próxima tentativa.")
+    void recover_DeveRepublicarCadaMensagemDoLote() {
+        var recoverer = new RetentativaMessageRecoverer(this.template, RabbitMqConfiguration.INGESTAO_PRODUTO_RETRY_EXCHANGE, 2);
+        var primeira = new Message("{}".getBytes(), new MessageProperties());
+        var properties = new MessageProperties();
+        properties.setHeader(RetentativaMessageRecoverer.X_TENTATIVA, 2);
+        var esgotada = new Message("{}".getBytes(), properties);
+
+        recoverer.recover(List.of(primeira, esgotada), new IllegalStateException("banco indisponível"));
+
+        verify(this.template).send(eq(RabbitMqConfiguration.INGESTAO_PRODUTO_RETRY_EXCHANGE), eq("itau-unibanco-ingestao-produto.retry.1"), eq(primeira));
+        verify(this.template).send(eq(RabbitMqConfiguration.INGESTAO_PRODUTO_RETRY_EXCHANGE), eq(RabbitMqConfiguration.PARKING_LOT_ROUTING_KEY), eq(esgotada));
+    }
+}
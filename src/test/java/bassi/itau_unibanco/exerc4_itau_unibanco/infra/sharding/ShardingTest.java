@@ -0,0 +1,112 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoStub;
+import bassi.itau_unibanco.exerc4_itau_unibanco.producer.ProdutoEventoProducer;
+import bassi.itau_unibanco.exerc4_itau_unibanco.service.ProdutoService;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Epic("Banco de Dados")
+@Feature("Sharding de Produtos")
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=none",
+        "produto.sharding.enabled=true",
+        "produto.sharding.shards[0].url=" + ShardingTest.URL + "0;" + ShardingTest.INIT,
+        "produto.sharding.shards[1].url=" + ShardingTest.URL + "1;" + ShardingTest.INIT,
+        "produto.sharding.shards[2].url=" + ShardingTest.URL + "2;" + ShardingTest.INIT,
+})
+@ActiveProfiles({"test"})
+class ShardingTest {
+
+    static final String URL = "jdbc:h2:mem:shard-test-";
+
+    static final String INIT = "DB_CLOSE_DELAY=-1;INIT=RUNSCRIPT FROM 'classpath:sharding/schema-h2.sql'";
+
+    @Autowired
+    private ProdutoService service;
+
+    @Autowired
+    private Shards shards;
+
+    @MockitoBean
+    private ProdutoEventoProducer eventos;
+
+    @Test
+    @Story("Distribuir produtos")
+    @Description("Verifica se os produtos são gravados no shard do seu id, com as categorias replicadas com o mesmo id em todos os shards, e se as listagens e a consulta por ids reúnem todos os shards em ordem.")
+    @DisplayName("Deve distribuir produtos entre os shards e reuni-los nas listagens.")
+    void cadastrar_DeveDistribuirEntreShards() {
+        var cadastrados = IntStream.range(0, 30)
+                .mapToObj(i -> this.service.cadastrar(ProdutoStub.buildProdutoRequest(
+                        "Distribuído %02d".formatted(i), BigDecimal.valueOf(i + 1), i % 3 == 0 ? "Sharding PF" : "Sharding PJ")))
+                .toList();
+
+        for (var shard = 0; shard < this.shards.quantidade(); shard++) {
+            var jdbc = new JdbcTemplate(this.shards.dataSources().get(shard));
+            var indice = shard;
+            var ids = jdbc.queryForList("SELECT id FROM produto", UUID.class);
+            assertFalse(ids.isEmpty(), "shard %d vazio".formatted(shard));
+            assertTrue(ids.stream().allMatch(id -> this.shards.shardDe(id) == indice));
+            assertEquals(
+                    new JdbcTemplate(this.shards.dataSources().get(0)).queryForList("SELECT id FROM categoria ORDER BY nome", Integer.class),
+                    jdbc.queryForList("SELECT id FROM categoria ORDER BY nome", Integer.class)
+            );
+        }
+
+        var listados = this.service.listagemPersonalizada("Distribuído", null, null);
+        assertEquals(
+                cadastrados.stream().sorted(Comparator.comparing(ProdutoResponse::nome)).map(ProdutoResponse::id).toList(),
+                listados.stream().map(ProdutoResponse::id).toList()
+        );
+        assertEquals(10, this.service.listagemPersonalizada("Distribuído", null, "Sharding PF").size());
+
+        var inexistente = UUID.randomUUID();
+        var solicitados = Stream.concat(Stream.of(inexistente), cadastrados.stream().map(ProdutoResponse::id)).toList();
+        var porId = this.service.listarPelosIds(solicitados);
+        assertEquals(
+                cadastrados.stream().map(ProdutoResponse::id).toList(),
+                porId.produtos().stream().map(ProdutoResponse::id).toList()
+        );
+        assertEquals(List.of(inexistente), porId.naoEncontrados());
+    }
+
+    @Test
+    @Story("Operações sobre um produto")
+    @Description("Verifica se consulta, atualização e remoção por id são direcionadas ao shard do produto, com a alteração registrada no mesmo shard.")
+    @DisplayName("Deve direcionar operações por id ao shard do produto.")
+    void operacoesPorId_DevemIrAoShardDoProduto() {
+        var produto = this.service.cadastrar(ProdutoStub.buildProdutoRequest("Produto roteado", new BigDecimal("10.00"), "Sharding PJ"));
+        var shard = this.shards.shardDe(produto.id());
+
+        assertEquals(produto, this.service.listarPeloId(produto.id()));
+        var atualizado = this.service.atualizar(produto.id(), ProdutoStub.buildProdutoRequest("Produto roteado", new BigDecimal("1.00"), "Sharding PF"));
+        assertEquals("Sharding PF", atualizado.categoria());
+        this.service.deletar(produto.id());
+
+        var alteracoes = this.service.listarAlteracoes(shard, null, 1000).alteracoes().stream()
+                .filter(alteracao -> alteracao.produtoId().equals(produto.id()))
+                .map(alteracao -> alteracao.operacao().name())
+                .toList();
+        assertEquals(List.of("CADASTRO", "ATUALIZACAO", "REMOCAO"), alteracoes);
+        assertTrue(this.service.listagemPersonalizada("Produto roteado", null, null).isEmpty());
+    }
+}
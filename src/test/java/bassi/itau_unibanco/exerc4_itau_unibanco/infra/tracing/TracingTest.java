@@ -0,0 +1,122 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.infra.tracing;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoStub;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@Epic("Observabilidade")
+@Feature("Rastreamento Distribuído")
+@SpringBootTest(properties = "management.tracing.sampling.probability=1.0")
+@ActiveProfiles({"test"})
+@AutoConfigureMockMvc
+@AutoConfigureObservability(metrics = false)
+class TracingTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
+    @Autowired
+    private SdkTracerProvider tracerProvider;
+
+    @Autowired
+    private InMemorySpanExporter exporter;
+
+    private final Channel channel = mock(Channel.class);
+
+    @TestConfiguration
+    static class ExportadorEmMemoria {
+
+        @Bean
+        InMemorySpanExporter spanExporter() {
+            return InMemorySpanExporter.create();
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        var connection = mock(Connection.class);
+        var connectionFactory = mock(ConnectionFactory.class);
+        when(connectionFactory.createConnection()).thenReturn(connection);
+        when(connection.createChannel(anyBoolean())).thenReturn(this.channel);
+        when(this.channel.isOpen()).thenReturn(true);
+        this.rabbitTemplate.setConnectionFactory(connectionFactory);
+        this.exporter.reset();
+    }
+
+    @SneakyThrows
+    @Test
+    @Story("Rastrear o cadastro de produto")
+    @Description("Verifica se a requisição de cadastro, a operação do serviço, as instruções SQL e a publicação do evento pertencem ao mesmo trace, e se o contexto do trace segue nos cabeçalhos da mensagem.")
+    @DisplayName("Deve rastrear o cadastro da requisição HTTP até a mensagem publicada.")
+    void cadastrar_DeveRastrearDaRequisicaoAteAMensagem() {
+        this.mockMvc.perform(post("/v1/produto")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(this.objectMapper.writeValueAsString(
+                                ProdutoStub.buildProdutoRequest("Produto rastreado", new BigDecimal("10.00"), "Rastreamento"))))
+                .andExpect(status().isCreated());
+        this.tracerProvider.forceFlush().join(5, TimeUnit.SECONDS);
+
+        var spans = this.exporter.getFinishedSpanItems();
+        var requisicao = spans.stream().filter(span -> span.getKind() == SpanKind.SERVER).findFirst().orElseThrow();
+        var trace = spans.stream().filter(span -> span.getTraceId().equals(requisicao.getTraceId())).toList();
+        assertTrue(contem(trace, "cadastrar"), () -> "span do serviço ausente em " + nomes(trace));
+        assertTrue(contem(trace, "query"), () -> "span de SQL ausente em " + nomes(trace));
+        var publicacao = trace.stream().filter(span -> span.getKind() == SpanKind.PRODUCER).findFirst().orElseThrow();
+
+        var propriedades = ArgumentCaptor.forClass(AMQP.BasicProperties.class);
+        verify(this.channel).basicPublish(anyString(), anyString(), anyBoolean(), propriedades.capture(), any(byte[].class));
+        var traceparent = String.valueOf(propriedades.getValue().getHeaders().get("traceparent"));
+        assertTrue(traceparent.contains(publicacao.getTraceId()));
+        assertTrue(traceparent.contains(publicacao.getSpanId()));
+    }
+
+    private static boolean contem(List<SpanData> spans, String nome) {
+        return spans.stream().anyMatch(span -> span.getName().toLowerCase().contains(nome));
+    }
+
+    private static List<String> nomes(List<SpanData> spans) {
+        return spans.stream().map(SpanData::getName).toList();
+    }
+}
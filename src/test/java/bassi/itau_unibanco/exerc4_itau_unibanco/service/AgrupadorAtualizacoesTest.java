@@ -0,0 +1,150 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoRequest;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoStub;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.ProdutoNaoEncontradoException;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+@Epic("Desempenho")
+@Feature("Agrupamento de Atualizações")
+class AgrupadorAtualizacoesTest {
+
+    private final ProdutoService service = mock(ProdutoService.class);
+
+    private final AgrupadorAtualizacoes agrupador = new AgrupadorAtualizacoes(this.service, true, Duration.ofMillis(300));
+
+    private final ExecutorService chamadores = Executors.newCachedThreadPool();
+
+    private final UUID id = UUID.randomUUID();
+
+    private final UUID outro = UUID.randomUUID();
+
+    @AfterEach
+    void tearDown() {
+        this.agrupador.encerrar();
+        this.chamadores.shutdownNow();
+    }
+
+    @Test
+    @Story("Agrupar atualizações")
+    @Description("Verifica se atualizações recebidas na mesma janela são gravadas em um único lote, com a última atualização de cada produto prevalecendo, e se todos os chamadores recebem o estado gravado.")
+    @DisplayName("Deve gravar as atualizações da janela em um único lote.")
+    void atualizar_DeveAgruparAtualizacoesDaJanela() throws InterruptedException {
+        when(this.service.atualizarLote(anyMap())).thenAnswer(invocacao -> {
+            Map<UUID, ProdutoRequest> atualizacoes = invocacao.getArgument(0);
+            return new ProdutoService.LoteAtualizado(Map.of(
+                    this.id, ProdutoStub.toProdutoResponse(atualizacoes.get(this.id), this.id),
+                    this.outro, ProdutoStub.toProdutoResponse(atualizacoes.get(this.outro), this.outro)
+            ), Map.of());
+        });
+
+        var primeira = this.atualizarAsync(this.id, BigDecimal.ONE);
+        Thread.sleep(50);
+        var segunda = this.atualizarAsync(this.id, BigDecimal.valueOf(2));
+        var terceira = this.atualizarAsync(this.outro, BigDecimal.TEN);
+
+        assertEquals(BigDecimal.valueOf(2), primeira.join().preco());
+        assertEquals(BigDecimal.valueOf(2), segunda.join().preco());
+        assertEquals(BigDecimal.TEN, terceira.join().preco());
+        verify(this.service).atualizarLote(Map.of(
+                this.id, ProdutoStub.buildProdutoRequest("Cartão", BigDecimal.valueOf(2), "PJ"),
+                this.outro, ProdutoStub.buildProdutoRequest("Cartão", BigDecimal.TEN, "PJ")
+        ));
+        verifyNoMoreInteractions(this.service);
+    }
+
+    @Test
+    @Story("Agrupar atualizações")
+    @Description("Verifica se, quando o lote falha por dados inválidos, as atualizações são gravadas uma a uma e cada chamador recebe o próprio resultado.")
+    @DisplayName("Deve gravar individualmente quando o lote falhar.")
+    void atualizar_DeveGravarIndividualmenteQuandoLoteFalhar() {
+        var falha = new DataIntegrityViolationException("preco");
+        when(this.service.atualizarLote(anyMap())).thenReturn(new ProdutoService.LoteAtualizado(Map.of(), Map.of(this.id, falha, this.outro, falha)));
+        when(this.service.atualizar(eq(this.id), any(ProdutoRequest.class)))
+                .thenAnswer(invocacao -> ProdutoStub.toProdutoResponse(invocacao.getArgument(1), this.id));
+        when(this.service.atualizar(eq(this.outro), any(ProdutoRequest.class))).thenThrow(new ProdutoNaoEncontradoException(this.outro));
+
+        var encontrado = this.atualizarAsync(this.id, BigDecimal.ONE);
+        var inexistente = this.atualizarAsync(this.outro, BigDecimal.ONE);
+
+        assertEquals(BigDecimal.ONE, encontrado.join().preco());
+        var erro = assertThrows(CompletionException.class, inexistente::join);
+        assertInstanceOf(ProdutoNaoEncontradoException.class, erro.getCause());
+        verify(this.service).atualizarLote(anyMap());
+    }
+
+    @Test
+    @Story("Agrupar atualizações")
+    @Description("Verifica se, com sharding, apenas as atualizações do shard cuja transação falhou são regravadas, sem repetir as já gravadas pelos demais shards, e se falhas que não são de dados são repassadas ao chamador.")
+    @DisplayName("Deve regravar apenas as atualizações do shard que falhou.")
+    void atualizar_DeveRegravarApenasShardQueFalhou() {
+        var terceiro = UUID.randomUUID();
+        when(this.service.atualizarLote(anyMap())).thenAnswer(invocacao -> {
+            Map<UUID, ProdutoRequest> atualizacoes = invocacao.getArgument(0);
+            return new ProdutoService.LoteAtualizado(
+                    Map.of(this.id, ProdutoStub.toProdutoResponse(atualizacoes.get(this.id), this.id)),
+                    Map.of(this.outro, new DataIntegrityViolationException("preco"), terceiro, new IllegalStateException("shard indisponível")));
+        });
+        when(this.service.atualizar(eq(this.outro), any(ProdutoRequest.class)))
+                .thenAnswer(invocacao -> ProdutoStub.toProdutoResponse(invocacao.getArgument(1), this.outro));
+
+        var gravado = this.atualizarAsync(this.id, BigDecimal.ONE);
+        var regravado = this.atualizarAsync(this.outro, BigDecimal.TEN);
+        var indisponivel = this.atualizarAsync(terceiro, BigDecimal.TEN);
+
+        assertEquals(BigDecimal.ONE, gravado.join().preco());
+        assertEquals(BigDecimal.TEN, regravado.join().preco());
+        assertInstanceOf(IllegalStateException.class, assertThrows(CompletionException.class, indisponivel::join).getCause());
+        verify(this.service).atualizarLote(anyMap());
+        verify(this.service).atualizar(eq(this.outro), any(ProdutoRequest.class));
+        verifyNoMoreInteractions(this.service);
+    }
+
+    @Test
+    @Story("Encerrar o agrupamento")
+    @Description("Verifica se o encerramento grava as atualizações pendentes e se as recebidas depois dele são gravadas imediatamente, sem ficarem retidas em um executor encerrado.")
+    @DisplayName("Deve gravar imediatamente as atualizações recebidas após o encerramento.")
+    void encerrar_DeveGravarPendentesEDeixarDeReter() throws InterruptedException {
+        when(this.service.atualizarLote(anyMap())).thenAnswer(invocacao -> {
+            Map<UUID, ProdutoRequest> atualizacoes = invocacao.getArgument(0);
+            return new ProdutoService.LoteAtualizado(Map.of(this.id, ProdutoStub.toProdutoResponse(atualizacoes.get(this.id), this.id)), Map.of());
+        });
+        when(this.service.atualizar(eq(this.outro), any(ProdutoRequest.class)))
+                .thenAnswer(invocacao -> ProdutoStub.toProdutoResponse(invocacao.getArgument(1), this.outro));
+        var pendente = this.atualizarAsync(this.id, BigDecimal.ONE);
+        Thread.sleep(50);
+
+        this.agrupador.encerrar();
+
+        assertEquals(BigDecimal.ONE, pendente.join().preco());
+        assertEquals(BigDecimal.TEN, this.agrupador.atualizar(this.outro, ProdutoStub.buildProdutoRequest("Cartão", BigDecimal.TEN, "PJ")).preco());
+        verify(this.service).atualizarLote(anyMap());
+        verify(this.service).atualizar(eq(this.outro), any(ProdutoRequest.class));
+    }
+
+    private CompletableFuture<ProdutoResponse> atualizarAsync(UUID id, BigDecimal preco) {
+        return CompletableFuture.supplyAsync(() -> this.agrupador.atualizar(id, ProdutoStub.buildProdutoRequest("Cartão", preco, "PJ")), this.chamadores);
+    }
+}
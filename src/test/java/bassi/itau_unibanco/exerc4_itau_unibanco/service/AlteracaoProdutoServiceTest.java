@@ -0,0 +1,182 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.ProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.RetencaoAlteracaoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.CursorExpiradoException;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import bassi.itau_unibanco.exerc4_itau_unibanco.mapper.ProdutoMapper;
+import bassi.itau_unibanco.exerc4_itau_unibanco.producer.ProdutoEventoProducer;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.AlteracaoProdutoRepository;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.RetencaoAlteracaoRepository;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mapstruct.factory.Mappers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@Epic("Gestão de Produtos")
+@Feature("Log de Alterações")
+@ExtendWith(MockitoExtension.class)
+class AlteracaoProdutoServiceTest {
+
+    private static final Instant AGORA = Instant.parse("2026-01-10T12:00:00Z");
+
+    @Mock
+    private AlteracaoProdutoRepository repository;
+
+    @Mock
+    private RetencaoAlteracaoRepository retencao;
+
+    @Mock
+    private ProdutoEventoProducer eventos;
+
+    @Mock
+    private SequenciaAlteracoes sequencias;
+
+    @Mock
+    private EntityManager entityManager;
+
+    private AlteracaoProdutoService service;
+
+    @BeforeEach
+    void setUp() {
+        this.service = new AlteracaoProdutoService(
+                this.repository,
+                this.retencao,
+                Mappers.getMapper(ProdutoMapper.class),
+                this.eventos,
+                Shards.unico(() -> mock(PlatformTransactionManager.class)),
+                this.sequencias,
+                this.entityManager,
+                Clock.fixed(AGORA, ZoneOffset.UTC),
+                2,
+                Duration.ofDays(7)
+        );
+    }
+
+    @Test
+    @Story("Listar alterações")
+    @Description("Verifica se as alterações são paginadas a partir do cursor e se o cursor de continuação aponta para a última entregue.")
+    @DisplayName("Deve paginar alterações a partir do cursor.")
+    void listar_DevePaginarAPartirDoCursor() {
+        when(this.retencao.findById(RetencaoAlteracaoEntity.ID)).thenReturn(Optional.of(new RetencaoAlteracaoEntity(1, 5L)));
+        when(this.sequencias.visivelAte()).thenReturn(Long.MAX_VALUE);
+        when(this.repository.findBySequenciaGreaterThanOrderBySequencia(10L, Limit.of(3))).thenReturn(List.of(
+                alteracao(11L, AGORA.minusSeconds(60)),
+                alteracao(12L, AGORA.minusSeconds(30)),
+                alteracao(13L, AGORA.minusSeconds(10))
+        ));
+
+        var result = this.service.listar(10L, 50);
+
+        assertEquals(List.of(11L, 12L), result.alteracoes().stream().map(AlteracaoProdutoResponse::sequencia).toList());
+        assertEquals(12L, result.cursor());
+        assertTrue(result.possuiMais());
+    }
+
+    @Test
+    @Story("Listar alterações")
+    @Description("Verifica se alterações a partir do bloco de sequências pendente mais antigo são retidas, mesmo que já confirmadas por outra transação, sem avançar o cursor.")
+    @DisplayName("Deve reter alterações a partir de uma transação em andamento.")
+    void listar_DeveReterAlteracoesAposTransacaoEmAndamento() {
+        when(this.retencao.findById(RetencaoAlteracaoEntity.ID)).thenReturn(Optional.empty());
+        when(this.sequencias.visivelAte()).thenReturn(1L);
+        when(this.repository.findBySequenciaGreaterThanOrderBySequencia(0L, Limit.of(3))).thenReturn(List.of(
+                alteracao(1L, AGORA.minusSeconds(60)),
+                alteracao(51L, AGORA.minusSeconds(30))
+        ));
+
+        var result = this.service.listar(null, 2);
+
+        assertEquals(1, result.alteracoes().size());
+        assertEquals(1L, result.cursor());
+        assertTrue(result.possuiMais());
+    }
+
+    @Test
+    @Story("Listar alterações")
+    @Description("Verifica se a sequência visível para uma cópia do catálogo é a última gravada antes do bloco pendente mais antigo, sem recuar para antes da marca d'água da retenção.")
+    @DisplayName("Deve limitar a sequência visível às transações em andamento.")
+    void sequenciaVisivel_DevePararAntesDasTransacoesEmAndamento() {
+        when(this.retencao.findById(RetencaoAlteracaoEntity.ID)).thenReturn(Optional.of(new RetencaoAlteracaoEntity(1, 5L)));
+        when(this.sequencias.visivelAte()).thenReturn(100L);
+        when(this.repository.ultimaSequenciaAte(100L)).thenReturn(Optional.of(42L));
+
+        assertEquals(42L, this.service.sequenciaVisivel());
+
+        when(this.repository.ultimaSequenciaAte(100L)).thenReturn(Optional.empty());
+
+        assertEquals(5L, this.service.sequenciaVisivel());
+    }
+
+    @Test
+    @Story("Listar alterações")
+    @Description("Verifica se um cursor anterior à marca d'água da retenção é recusado.")
+    @DisplayName("Deve recusar cursor expirado.")
+    void listar_DeveRecusarCursorExpirado() {
+        when(this.retencao.findById(RetencaoAlteracaoEntity.ID)).thenReturn(Optional.of(new RetencaoAlteracaoEntity(1, 50L)));
+
+        assertThrows(CursorExpiradoException.class, () -> this.service.listar(10L, 10));
+        verifyNoInteractions(this.repository);
+    }
+
+    @Test
+    @Story("Compactar alterações")
+    @Description("Verifica se a compactação descarta remoções expiradas e avança a marca d'água dos cursores.")
+    @DisplayName("Deve descartar remoções expiradas e avançar a marca d'água.")
+    void compactar_DeveDescartarRemocoesExpiradas() {
+        when(this.repository.compactar()).thenReturn(3);
+        when(this.repository.ultimaSequenciaAntesDe(AlteracaoProdutoEntity.Operacao.REMOCAO, AGORA.minus(Duration.ofDays(7))))
+                .thenReturn(Optional.of(40L));
+        when(this.retencao.findById(RetencaoAlteracaoEntity.ID)).thenReturn(Optional.of(new RetencaoAlteracaoEntity(1, 5L)));
+
+        this.service.compactar();
+
+        verify(this.retencao).save(new RetencaoAlteracaoEntity(1, 40L));
+        verify(this.repository).removerAte(AlteracaoProdutoEntity.Operacao.REMOCAO, 40L);
+        verify(this.sequencias).removerExpiradas();
+    }
+
+    @Test
+    @Story("Registrar alterações")
+    @Description("Verifica se remoções são gravadas como marcadores, apenas com a categoria e com a sequência do bloco da transação, e publicadas como evento.")
+    @DisplayName("Deve gravar remoção como marcador e publicar o evento.")
+    void registrar_DeveGravarRemocaoComoMarcador() {
+        var produto = new ProdutoEntity(UUID.randomUUID(), "Cartão", BigDecimal.TEN, "PJ");
+        when(this.sequencias.proxima(produto.getId())).thenReturn(7L);
+
+        this.service.registrar(AlteracaoProdutoEntity.Operacao.REMOCAO, produto);
+
+        verify(this.entityManager).persist(new AlteracaoProdutoEntity(7L, produto.getId(), AlteracaoProdutoEntity.Operacao.REMOCAO, null, null, "PJ", AGORA));
+        verify(this.eventos).publicar(new AlteracaoProdutoResponse(7L, produto.getId(), AlteracaoProdutoEntity.Operacao.REMOCAO, null, null, "PJ", AGORA));
+        verifyNoInteractions(this.repository);
+        verifyNoInteractions(this.retencao);
+    }
+
+    private static AlteracaoProdutoEntity alteracao(long sequencia, Instant registradoEm) {
+        return new AlteracaoProdutoEntity(sequencia, UUID.randomUUID(), AlteracaoProdutoEntity.Operacao.CADASTRO, "Cartão", BigDecimal.TEN, "PJ", registradoEm);
+    }
+}
@@ -0,0 +1,197 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoStub;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracoesProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoStub;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.CursorExpiradoException;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.ProdutoRepository;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@Epic("Gestão de Produtos")
+@Feature("Catálogo Local")
+@ExtendWith(MockitoExtension.class)
+class CatalogoLocalTest {
+
+    private static final UUID CARTAO = UUID.fromString("32c6fc74-42f1-4edd-a6fa-3e137512cdcc");
+
+    private static final UUID EMPRESTIMO = UUID.fromString("1f0ab96e-a2de-4005-9013-95ff12aa89cc");
+
+    @Mock
+    private ProdutoRepository repository;
+
+    @Mock
+    private AlteracaoProdutoService alteracoes;
+
+    @Mock
+    private CategoriaDicionario categorias;
+
+    @TempDir
+    private Path diretorio;
+
+    private final VersaoCatalogo versao = new VersaoCatalogo();
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(this.categorias.idDe("PF")).thenReturn(1);
+        lenient().when(this.categorias.idDe("PJ")).thenReturn(2);
+        lenient().when(this.categorias.nomeDe(1)).thenReturn("PF");
+        lenient().when(this.categorias.nomeDe(2)).thenReturn("PJ");
+    }
+
+    @Test
+    @Story("Carregar o catálogo")
+    @Description("Verifica se, sem snapshot, o catálogo é carregado do banco e gravado em um snapshot, atendendo às consultas por id e às listagens filtradas.")
+    @DisplayName("Deve carregar do banco e gravar o snapshot quando ele não existir.")
+    void carregar_DeveCarregarDoBancoSemSnapshot() {
+        when(this.alteracoes.sequenciaVisivel()).thenReturn(10L);
+        when(this.repository.findAll()).thenReturn(List.of(
+                ProdutoStub.buildProdutoEntity(CARTAO, "Cartão PJ", new BigDecimal("50.00"), "PJ"),
+                ProdutoStub.buildProdutoEntity(EMPRESTIMO, "Empréstimo PF", new BigDecimal("10.00"), "PF")
+        ));
+
+        var catalogo = this.catalogo();
+        catalogo.carregar();
+
+        assertTrue(catalogo.disponivel());
+        assertEquals(1, this.versao.atual());
+        assertTrue(Files.exists(this.diretorio.resolve("catalogo.snapshot")));
+        assertEquals(Optional.of(new ProdutoResponse(CARTAO, "Cartão PJ", new BigDecimal("50.00"), "PJ")), catalogo.buscar(CARTAO));
+        assertEquals(Optional.empty(), catalogo.buscar(UUID.randomUUID()));
+        assertEquals(List.of(CARTAO, EMPRESTIMO), catalogo.listar(null, null, null).stream().map(ProdutoResponse::id).toList());
+        assertEquals(List.of(EMPRESTIMO), catalogo.listar("empré", BigDecimal.TEN, "PF").stream().map(ProdutoResponse::id).toList());
+    }
+
+    @Test
+    @Story("Carregar o catálogo")
+    @Description("Verifica se, com um snapshot gravado, uma nova instância o mapeia sem consultar os produtos no banco e lê do log apenas as alterações posteriores à marca.")
+    @DisplayName("Deve mapear o snapshot e sincronizar apenas as alterações posteriores à marca.")
+    void carregar_DeveMapearSnapshotESincronizarDelta() {
+        when(this.alteracoes.sequenciaVisivel()).thenReturn(10L);
+        when(this.repository.findAll()).thenReturn(List.of(
+                ProdutoStub.buildProdutoEntity(CARTAO, "Cartão PJ", new BigDecimal("50.00"), "PJ")
+        ));
+        this.catalogo().carregar();
+        clearInvocations(this.repository, this.alteracoes);
+
+        when(this.alteracoes.listar(10L, 1000)).thenReturn(new AlteracoesProdutoResponse(List.of(
+                AlteracaoProdutoStub.buildAlteracaoProdutoResponse(11L, CARTAO, AlteracaoProdutoEntity.Operacao.ATUALIZACAO, "Cartão Black", new BigDecimal("10.00"), "PJ"),
+                AlteracaoProdutoStub.buildAlteracaoProdutoResponse(12L, EMPRESTIMO, AlteracaoProdutoEntity.Operacao.CADASTRO, "Empréstimo PF", new BigDecimal("10.00"), "PF")
+        ), 12L, false));
+
+        var catalogo = this.catalogo();
+        catalogo.carregar();
+        assertEquals("Cartão PJ", catalogo.buscar(CARTAO).orElseThrow().nome());
+
+        catalogo.sincronizar();
+
+        assertEquals("Cartão Black", catalogo.buscar(CARTAO).orElseThrow().nome());
+        assertTrue(catalogo.buscar(EMPRESTIMO).isPresent());
+        verifyNoInteractions(this.repository);
+        verify(this.alteracoes, never()).sequenciaVisivel();
+    }
+
+    @Test
+    @Story("Consultar o catálogo")
+    @Description("Verifica se a listagem ordenada é reaproveitada enquanto a versão do catálogo não muda, sem decodificar o snapshot a cada consulta, e se a categoria é filtrada pela grafia exata, como no banco.")
+    @DisplayName("Deve reaproveitar a listagem até a versão do catálogo mudar.")
+    void listar_DeveReaproveitarListagemAteAVersaoMudar() {
+        when(this.alteracoes.sequenciaVisivel()).thenReturn(10L);
+        when(this.repository.findAll()).thenReturn(List.of(
+                ProdutoStub.buildProdutoEntity(CARTAO, "Cartão PJ", new BigDecimal("50.00"), "PJ")
+        ));
+        var catalogo = this.catalogo();
+        catalogo.carregar();
+
+        var listagem = catalogo.listar(null, null, null);
+        assertSame(listagem, catalogo.listar(null, null, null));
+        assertEquals(List.of(CARTAO), catalogo.listar(null, null, "PJ").stream().map(ProdutoResponse::id).toList());
+        assertEquals(List.of(), catalogo.listar(null, null, "pj"));
+
+        catalogo.aplicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(11L, EMPRESTIMO, AlteracaoProdutoEntity.Operacao.CADASTRO, "Empréstimo PF", new BigDecimal("10.00"), "PF"));
+        assertSame(listagem, catalogo.listar(null, null, null));
+        this.versao.incrementar();
+
+        assertEquals(List.of(CARTAO, EMPRESTIMO), catalogo.listar(null, null, null).stream().map(ProdutoResponse::id).toList());
+        assertEquals(List.of(EMPRESTIMO), catalogo.listar(null, null, "PF").stream().map(ProdutoResponse::id).toList());
+    }
+
+    @Test
+    @Story("Acompanhar alterações")
+    @Description("Verifica se alterações repetidas ou anteriores à última de cada produto são descartadas, inclusive após a gravação de um novo snapshot, e se remoções não são desfeitas por alterações antigas.")
+    @DisplayName("Deve descartar alterações fora de ordem.")
+    void aplicar_DeveDescartarAlteracoesForaDeOrdem() {
+        when(this.alteracoes.sequenciaVisivel()).thenReturn(10L);
+        when(this.repository.findAll()).thenReturn(List.of(
+                ProdutoStub.buildProdutoEntity(CARTAO, "Cartão PJ", new BigDecimal("50.00"), "PJ")
+        ));
+        var catalogo = this.catalogo();
+        catalogo.carregar();
+
+        catalogo.aplicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(9L, CARTAO, AlteracaoProdutoEntity.Operacao.ATUALIZACAO, "Cartão antigo", new BigDecimal("10.00"), "PJ"));
+        catalogo.aplicar(AlteracaoProdutoStub.buildRemocaoProdutoResponse(13L, EMPRESTIMO));
+        catalogo.aplicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(12L, CARTAO, AlteracaoProdutoEntity.Operacao.ATUALIZACAO, "Cartão novo", new BigDecimal("10.00"), "PJ"));
+        catalogo.aplicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(11L, CARTAO, AlteracaoProdutoEntity.Operacao.ATUALIZACAO, "Cartão atrasado", new BigDecimal("10.00"), "PJ"));
+        assertEquals("Cartão novo", catalogo.buscar(CARTAO).orElseThrow().nome());
+
+        catalogo.gravarSnapshot();
+        catalogo.aplicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(11L, CARTAO, AlteracaoProdutoEntity.Operacao.ATUALIZACAO, "Cartão atrasado", new BigDecimal("10.00"), "PJ"));
+        catalogo.aplicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(12L, EMPRESTIMO, AlteracaoProdutoEntity.Operacao.CADASTRO, "Empréstimo PF", new BigDecimal("10.00"), "PF"));
+
+        assertEquals("Cartão novo", catalogo.buscar(CARTAO).orElseThrow().nome());
+        assertEquals(Optional.empty(), catalogo.buscar(EMPRESTIMO));
+        assertEquals(1, catalogo.listar(null, null, null).size());
+    }
+
+    @Test
+    @Story("Carregar o catálogo")
+    @Description("Verifica se o catálogo é recarregado do banco quando a marca do snapshot já expirou no log de alterações, mudando a versão do catálogo.")
+    @DisplayName("Deve recarregar do banco quando a marca expirou.")
+    void sincronizar_DeveRecarregarQuandoMarcaExpirada() {
+        when(this.alteracoes.sequenciaVisivel()).thenReturn(10L, 50L);
+        when(this.repository.findAll()).thenReturn(
+                List.of(ProdutoStub.buildProdutoEntity(CARTAO, "Cartão PJ", new BigDecimal("50.00"), "PJ")),
+                List.of(ProdutoStub.buildProdutoEntity(EMPRESTIMO, "Empréstimo PF", new BigDecimal("10.00"), "PF"))
+        );
+        when(this.alteracoes.listar(10L, 1000)).thenThrow(new CursorExpiradoException(10L, 40L));
+        var catalogo = this.catalogo();
+        catalogo.carregar();
+        var versao = this.versao.atual();
+
+        catalogo.sincronizar();
+
+        assertTrue(this.versao.atual() > versao);
+        assertEquals(Optional.empty(), catalogo.buscar(CARTAO));
+        assertTrue(catalogo.buscar(EMPRESTIMO).isPresent());
+        catalogo.aplicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(45L, CARTAO, AlteracaoProdutoEntity.Operacao.CADASTRO, "Cartão PJ", new BigDecimal("10.00"), "PJ"));
+        assertEquals(Optional.empty(), catalogo.buscar(CARTAO));
+    }
+
+    private CatalogoLocal catalogo() {
+        return new CatalogoLocal(this.repository, this.alteracoes, this.categorias,
+                Shards.unico(() -> mock(PlatformTransactionManager.class)), this.versao, true, this.diretorio.resolve("catalogo.snapshot"));
+    }
+}
@@ -0,0 +1,177 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoStub;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracoesProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.SnapshotCatalogoMessage;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.CursorExpiradoException;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.ProdutoNaoEncontradoException;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.replica.CanalReplica;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.replica.LogAlteracoesPrimario;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.replica.ReplicaHealthIndicator;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.actuate.health.Status;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@Epic("Gestão de Produtos")
+@Feature("Réplica de Leitura")
+@ExtendWith(MockitoExtension.class)
+class CatalogoReplicaTest {
+
+    private static final UUID CARTAO = UUID.fromString("32c6fc74-42f1-4edd-a6fa-3e137512cdcc");
+
+    private static final UUID EMPRESTIMO = UUID.fromString("1f0ab96e-a2de-4005-9013-95ff12aa89cc");
+
+    private static final ProdutoResponse CARTAO_PJ = new ProdutoResponse(CARTAO, "Cartão PJ", new BigDecimal("50.00"), "PJ");
+
+    private static final ProdutoResponse EMPRESTIMO_PF = new ProdutoResponse(EMPRESTIMO, "Empréstimo PF", new BigDecimal("10.00"), "PF");
+
+    @Mock
+    private CanalReplica canal;
+
+    @Mock
+    private LogAlteracoesPrimario primario;
+
+    private final VersaoCatalogo versao = new VersaoCatalogo();
+
+    private CatalogoReplica catalogo;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(this.canal.eventosPendentes()).thenReturn(OptionalInt.of(0));
+        lenient().when(this.primario.alteracoes(anyInt(), anyLong(), anyInt()))
+                .thenAnswer(invocacao -> new AlteracoesProdutoResponse(List.of(), invocacao.getArgument(1), false));
+        this.catalogo = new CatalogoReplica(this.canal, this.primario, this.versao, Duration.ofSeconds(30));
+    }
+
+    @Test
+    @Story("Carregar o catálogo")
+    @Description("Verifica se a réplica pede o snapshot pelo broker, monta as partes recebidas e atende às consultas a partir da memória, sem ler o log do primário além da marca do snapshot.")
+    @DisplayName("Deve carregar o catálogo a partir do snapshot recebido pelo broker.")
+    void verificar_DeveCarregarDoSnapshot() {
+        var solicitacao = this.solicitar();
+        assertFalse(this.catalogo.disponivel());
+
+        this.catalogo.receber(new SnapshotCatalogoMessage(solicitacao, 1, 2, List.of(7L), List.of(EMPRESTIMO_PF)));
+        assertFalse(this.catalogo.disponivel());
+        this.catalogo.receber(new SnapshotCatalogoMessage(solicitacao, 0, 2, List.of(7L), List.of(CARTAO_PJ)));
+        this.catalogo.verificar();
+
+        assertTrue(this.catalogo.disponivel());
+        assertEquals(2, this.catalogo.quantidade());
+        assertEquals(CARTAO_PJ, this.catalogo.buscar(CARTAO));
+        assertEquals(List.of(CARTAO, EMPRESTIMO), this.catalogo.listar(null, null, null).stream().map(ProdutoResponse::id).toList());
+        assertEquals(List.of(EMPRESTIMO), this.catalogo.listar("empr", null, "PF").stream().map(ProdutoResponse::id).toList());
+        assertEquals(List.of(), this.catalogo.listar(null, null, "pj"));
+        var desconhecido = UUID.randomUUID();
+        var porIds = this.catalogo.listarPelosIds(List.of(CARTAO, desconhecido, CARTAO));
+        assertEquals(List.of(CARTAO), porIds.produtos().stream().map(ProdutoResponse::id).toList());
+        assertEquals(List.of(desconhecido), porIds.naoEncontrados());
+        verify(this.canal, times(1)).solicitarSnapshot(any());
+        verify(this.primario).alteracoes(eq(0), eq(7L), anyInt());
+        assertTrue(this.versao.atual() > 0);
+    }
+
+    @Test
+    @Story("Aplicar eventos")
+    @Description("Verifica se eventos recebidos antes do snapshot e posteriores à sua marca são mantidos, se eventos repetidos ou anteriores são descartados e se a remoção tira o produto das consultas.")
+    @DisplayName("Deve descartar eventos fora de ordem e aplicar remoções.")
+    void aplicar_DeveDescartarEventosForaDeOrdem() {
+        var solicitacao = this.solicitar();
+        this.catalogo.aplicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(9, CARTAO, AlteracaoProdutoEntity.Operacao.ATUALIZACAO, "Cartão PJ", new BigDecimal("60.00"), "PJ"));
+        this.catalogo.aplicar(AlteracaoProdutoStub.buildRemocaoProdutoResponse(3, EMPRESTIMO));
+        this.catalogo.receber(new SnapshotCatalogoMessage(solicitacao, 0, 1, List.of(5L), List.of(CARTAO_PJ, EMPRESTIMO_PF)));
+
+        assertEquals(new BigDecimal("60.00"), this.catalogo.buscar(CARTAO).preco());
+        assertEquals(EMPRESTIMO_PF, this.catalogo.buscar(EMPRESTIMO));
+        var versao = this.versao.atual();
+
+        this.catalogo.aplicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(4, CARTAO, AlteracaoProdutoEntity.Operacao.ATUALIZACAO, "Cartão PJ", new BigDecimal("40.00"), "PJ"));
+        this.catalogo.aplicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(9, CARTAO, AlteracaoProdutoEntity.Operacao.ATUALIZACAO, "Cartão PJ", new BigDecimal("40.00"), "PJ"));
+        assertEquals(new BigDecimal("60.00"), this.catalogo.buscar(CARTAO).preco());
+        assertEquals(versao, this.versao.atual());
+        var listagem = this.catalogo.listar(null, null, null);
+        assertSame(listagem, this.catalogo.listar(null, null, null));
+
+        this.catalogo.aplicar(AlteracaoProdutoStub.buildRemocaoProdutoResponse(10, CARTAO));
+        this.catalogo.aplicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(8, CARTAO, AlteracaoProdutoEntity.Operacao.CADASTRO, "Cartão PJ", new BigDecimal("40.00"), "PJ"));
+
+        assertThrows(ProdutoNaoEncontradoException.class, () -> this.catalogo.buscar(CARTAO));
+        assertEquals(1, this.catalogo.quantidade());
+        assertTrue(this.versao.atual() > versao);
+        assertEquals(List.of(EMPRESTIMO), this.catalogo.listar(null, null, null).stream().map(ProdutoResponse::id).toList());
+    }
+
+    @Test
+    @Story("Reparar lacunas")
+    @Description("Verifica se o reparo lê do log do primário apenas as alterações posteriores à marca e se, com a marca expirada, um novo snapshot é pedido e substitui os produtos ausentes dele.")
+    @DisplayName("Deve reparar lacunas pelo log e pedir novo snapshot com a marca expirada.")
+    void reparar_DeveLerLogEPedirSnapshotComMarcaExpirada() {
+        var solicitacao = this.solicitar();
+        this.catalogo.receber(new SnapshotCatalogoMessage(solicitacao, 0, 1, List.of(5L), List.of(CARTAO_PJ)));
+        when(this.primario.alteracoes(0, 5L, 1000)).thenReturn(new AlteracoesProdutoResponse(List.of(
+                AlteracaoProdutoStub.buildAlteracaoProdutoResponse(6, EMPRESTIMO, AlteracaoProdutoEntity.Operacao.CADASTRO, "Empréstimo PF", new BigDecimal("10.00"), "PF")
+        ), 6, false));
+        this.catalogo.verificar();
+        assertEquals(EMPRESTIMO_PF, this.catalogo.buscar(EMPRESTIMO));
+
+        when(this.primario.alteracoes(0, 6L, 1000)).thenThrow(new CursorExpiradoException(6, 20));
+        this.catalogo.reparar();
+        var novaSolicitacao = ArgumentCaptor.forClass(UUID.class);
+        this.catalogo.verificar();
+        verify(this.canal, times(2)).solicitarSnapshot(novaSolicitacao.capture());
+        assertTrue(this.catalogo.disponivel());
+
+        this.catalogo.receber(new SnapshotCatalogoMessage(novaSolicitacao.getValue(), 0, 1, List.of(20L), List.of(EMPRESTIMO_PF)));
+
+        assertEquals(List.of(EMPRESTIMO), this.catalogo.listar(null, null, null).stream().map(ProdutoResponse::id).toList());
+    }
+
+    @Test
+    @Story("Prontidão da réplica")
+    @Description("Verifica se a réplica fica fora de serviço até receber o snapshot e enquanto a sua fila de eventos não esvaziar por mais que o lag máximo, e se um pedido sem resposta é repetido.")
+    @DisplayName("Deve condicionar a prontidão ao snapshot e à fila de eventos.")
+    void health_DeveConsiderarSnapshotEFila() {
+        this.catalogo = new CatalogoReplica(this.canal, this.primario, this.versao, Duration.ZERO);
+        this.catalogo.verificar();
+        assertEquals(Status.OUT_OF_SERVICE, new ReplicaHealthIndicator(this.catalogo, Duration.ofSeconds(10)).health().getStatus());
+        var solicitacao = this.solicitar();
+        verify(this.canal, times(2)).solicitarSnapshot(any());
+
+        this.catalogo.receber(new SnapshotCatalogoMessage(solicitacao, 0, 1, List.of(0L), List.of()));
+        assertEquals(Status.UP, new ReplicaHealthIndicator(this.catalogo, Duration.ofSeconds(10)).health().getStatus());
+
+        when(this.canal.eventosPendentes()).thenReturn(OptionalInt.of(500));
+        this.catalogo.verificar();
+        assertEquals(Status.OUT_OF_SERVICE, new ReplicaHealthIndicator(this.catalogo, Duration.ofNanos(-1)).health().getStatus());
+    }
+
+    /**
+     * Executa uma verificação e retorna o pedido de snapshot feito.
+     */
+    private UUID solicitar() {
+        var solicitacao = ArgumentCaptor.forClass(UUID.class);
+        this.catalogo.verificar();
+        verify(this.canal, atLeastOnce()).solicitarSnapshot(solicitacao.capture());
+        return solicitacao.getValue();
+    }
+}
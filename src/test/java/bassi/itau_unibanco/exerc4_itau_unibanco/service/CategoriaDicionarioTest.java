@@ -0,0 +1,121 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.CategoriaRepository;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@Epic("Gestão de Produtos")
+@Feature("Dicionário de Categorias")
+@ExtendWith(MockitoExtension.class)
+class CategoriaDicionarioTest {
+
+    @Mock
+    private CategoriaRepository repository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private CategoriaDicionario dicionario;
+
+    @BeforeEach
+    void setUp() {
+        this.dicionario = new CategoriaDicionario(this.repository, Shards.unico(() -> mock(PlatformTransactionManager.class)), this.jdbcTemplate);
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.getSynchronizations().forEach(sincronizacao -> sincronizacao.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    @Story("Cadastrar categorias")
+    @Description("Verifica se a categoria cadastrada na transação do produto fica visível só a ela e entra no dicionário apenas após o commit, para que uma transação desfeita não deixe um id sem registro.")
+    @DisplayName("Deve armazenar a categoria cadastrada apenas após o commit.")
+    void registrar_DeveArmazenarApenasAposCommit() {
+        when(this.repository.findByNome(anyString())).thenReturn(Optional.empty());
+        when(this.jdbcTemplate.queryForObject(anyString(), eq(Integer.class), anyString()))
+                .thenAnswer(invocacao -> "PJ".equals(invocacao.getArgument(2)) ? 7 : 8);
+
+        assertEquals(7, this.dicionario.registrar("PJ"));
+        assertEquals(8, this.dicionario.registrar("PF"));
+        assertEquals(7, this.dicionario.idDe("PJ"));
+        assertEquals("PF", this.dicionario.nomeDe(8));
+
+        var sincronizacoes = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        assertNull(this.dicionario.idDe("PJ"));
+        sincronizacoes.forEach(TransactionSynchronization::afterCommit);
+        sincronizacoes.forEach(sincronizacao -> sincronizacao.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        TransactionSynchronizationManager.initSynchronization();
+
+        assertEquals(7, this.dicionario.idDe("PJ"));
+        assertEquals("PF", this.dicionario.nomeDe(8));
+        verify(this.repository, times(3)).findByNome(anyString());
+        verify(this.repository, never()).findById(any());
+    }
+
+    @Test
+    @Story("Cadastrar categorias")
+    @Description("Verifica se categorias que diferem só em maiúsculas ou acentos são cadastradas como categorias distintas, com a grafia informada, e se cada grafia é resolvida pelo dicionário sem nova consulta, como na collation binária da tabela.")
+    @DisplayName("Deve distinguir categorias que diferem só em maiúsculas ou acentos.")
+    void registrar_DeveDistinguirMaiusculasEAcentos() {
+        when(this.repository.findByNome(anyString())).thenReturn(Optional.empty());
+        when(this.jdbcTemplate.queryForObject(anyString(), eq(Integer.class), anyString()))
+                .thenAnswer(invocacao -> switch ((String) invocacao.getArgument(2)) {
+                    case "Livros" -> 1;
+                    case "livros" -> 2;
+                    default -> 3;
+                });
+
+        assertEquals(1, this.dicionario.registrar("Livros"));
+        assertEquals(2, this.dicionario.registrar("livros"));
+        assertEquals(3, this.dicionario.registrar("Livrós"));
+        var sincronizacoes = TransactionSynchronizationManager.getSynchronizations();
+        sincronizacoes.forEach(TransactionSynchronization::afterCommit);
+        clearInvocations(this.repository);
+
+        assertEquals(List.of(1, 2, 3), List.of(this.dicionario.idDe("Livros"), this.dicionario.idDe("livros"), this.dicionario.idDe("Livrós")));
+        assertEquals(List.of("Livros", "livros", "Livrós"), List.of(this.dicionario.nomeDe(1), this.dicionario.nomeDe(2), this.dicionario.nomeDe(3)));
+        verifyNoInteractions(this.repository);
+    }
+
+    @Test
+    @Story("Cadastrar categorias")
+    @Description("Verifica se, quando outra transação cadastra a mesma categoria ao mesmo tempo, a violação da chave única é tratada relendo o id existente, sem falhar a gravação do produto.")
+    @DisplayName("Deve reler o id da categoria cadastrada por outra transação.")
+    void registrar_DeveRelerCategoriaCadastradaPorOutraTransacao() {
+        when(this.repository.findByNome("PJ")).thenReturn(Optional.empty());
+        when(this.jdbcTemplate.update(anyString(), eq("PJ"))).thenThrow(new DuplicateKeyException("categoria.nome"));
+        when(this.jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq("PJ"))).thenReturn(3);
+
+        assertEquals(3, this.dicionario.registrar("PJ"));
+        verify(this.jdbcTemplate).queryForObject(contains("FOR UPDATE"), eq(Integer.class), eq("PJ"));
+    }
+}
@@ -0,0 +1,153 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.EstatisticaCategoriaResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.ProdutoRepository;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+@Epic("Gestão de Produtos")
+@Feature("Estatísticas por Categoria")
+@ExtendWith(MockitoExtension.class)
+class EstatisticaCategoriaServiceTest {
+
+    @InjectMocks
+    private EstatisticaCategoriaService service;
+
+    @Mock
+    private ProdutoRepository repository;
+
+    @Spy
+    private final Shards shards = Shards.unico(() -> mock(PlatformTransactionManager.class));
+
+    @Test
+    @Story("Carregar estatísticas")
+    @Description("Verifica se a visão é semeada pela consulta agregada por categoria e preço.")
+    @DisplayName("Deve calcular estatísticas a partir da consulta agregada.")
+    void carregar_DeveCalcularEstatisticasDaConsultaAgregada() {
+        when(this.repository.agruparPorCategoriaEPreco()).thenReturn(List.of(
+                linha("PJ", BigDecimal.valueOf(10.00), 2),
+                linha("PJ", BigDecimal.valueOf(40.00), 1),
+                linha("PF", BigDecimal.valueOf(5.00), 1)
+        ));
+
+        this.service.carregar();
+
+        assertEquals(List.of(
+                estatistica("PF", 1, 5.00, 5.00, 5.00),
+                estatistica("PJ", 3, 10.00, 40.00, 20.00)
+        ), this.service.listar());
+        verify(this.repository).agruparPorCategoriaEPreco();
+        verifyNoMoreInteractions(this.repository);
+    }
+
+    @Test
+    @Story("Atualizar estatísticas incrementalmente")
+    @Description("Verifica se inclusões, alterações e remoções mantêm mínimo, máximo e média exatos sem consultar o banco.")
+    @DisplayName("Deve manter estatísticas exatas a cada escrita.")
+    void registrarEscritas_DeveManterEstatisticasExatas() {
+        this.service.registrarInclusao("PJ", BigDecimal.valueOf(10.00));
+        this.service.registrarInclusao("PJ", BigDecimal.valueOf(30.00));
+        this.service.registrarInclusao("PF", BigDecimal.valueOf(50.00));
+        this.service.registrarAlteracao("PF", BigDecimal.valueOf(50.00), "PJ", BigDecimal.valueOf(50.00));
+        this.service.registrarRemocao("PJ", BigDecimal.valueOf(10.00));
+
+        assertEquals(List.of(estatistica("PJ", 2, 30.00, 50.00, 40.00)), this.service.listar());
+        verifyNoInteractions(this.repository);
+    }
+
+    @Test
+    @Story("Recalcular estatísticas")
+    @Description("Verifica se o recálculo substitui a visão incremental pelo resultado exato do banco de dados.")
+    @DisplayName("Deve substituir a visão incremental pelo recálculo.")
+    void recalcular_DeveSubstituirVisaoIncremental() {
+        this.service.registrarInclusao("PJ", BigDecimal.valueOf(10.00));
+        when(this.repository.agruparPorCategoriaEPreco()).thenReturn(List.of());
+
+        var result = this.service.recalcular();
+
+        assertTrue(result.isEmpty());
+        assertTrue(this.service.listar().isEmpty());
+    }
+
+    @Test
+    @Story("Recalcular estatísticas")
+    @Description("Verifica se o recálculo aguarda a escrita já registrada aplicar o seu delta após o commit antes de ler o banco, sem perder nem contar em dobro o produto.")
+    @DisplayName("Deve aguardar escritas em andamento antes de recalcular.")
+    void recalcular_DeveAguardarEscritasEmAndamento() throws Exception {
+        when(this.repository.agruparPorCategoriaEPreco()).thenReturn(
+                List.of(),
+                List.of(linha("PJ", BigDecimal.valueOf(10.00), 1))
+        );
+        this.service.carregar();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            this.service.registrarInclusao("PJ", BigDecimal.valueOf(10.00));
+
+            var recalculo = CompletableFuture.supplyAsync(this.service::recalcular);
+            assertThrows(TimeoutException.class, () -> recalculo.get(200, TimeUnit.MILLISECONDS));
+
+            var sincronizacoes = TransactionSynchronizationManager.getSynchronizations();
+            sincronizacoes.forEach(TransactionSynchronization::afterCommit);
+            sincronizacoes.forEach(sincronizacao -> sincronizacao.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+            var estatisticas = List.of(estatistica("PJ", 1, 10.00, 10.00, 10.00));
+            assertEquals(estatisticas, recalculo.get(5, TimeUnit.SECONDS));
+            assertEquals(estatisticas, this.service.listar());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static ProdutoRepository.QuantidadePorCategoriaEPreco linha(String categoria, BigDecimal preco, long quantidade) {
+        return new ProdutoRepository.QuantidadePorCategoriaEPreco() {
+            @Override
+            public String getCategoria() {
+                return categoria;
+            }
+
+            @Override
+            public BigDecimal getPreco() {
+                return preco;
+            }
+
+            @Override
+            public long getQuantidade() {
+                return quantidade;
+            }
+        };
+    }
+
+    private static EstatisticaCategoriaResponse estatistica(String categoria, long quantidade, double minimo, double maximo, double medio) {
+        return new EstatisticaCategoriaResponse(
+                categoria,
+                quantidade,
+                BigDecimal.valueOf(minimo).setScale(2),
+                BigDecimal.valueOf(maximo).setScale(2),
+                BigDecimal.valueOf(medio).setScale(2)
+        );
+    }
+}
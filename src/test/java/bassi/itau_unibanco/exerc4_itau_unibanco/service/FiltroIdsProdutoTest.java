@@ -0,0 +1,110 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.ProdutoRepository;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@Epic("Desempenho")
+@Feature("Filtro de Ids de Produto")
+@ExtendWith(MockitoExtension.class)
+class FiltroIdsProdutoTest {
+
+    @Mock
+    private ProdutoRepository repository;
+
+    private final Shards shards = Shards.unico(() -> mock(PlatformTransactionManager.class));
+
+    @Test
+    @Story("Carregar o filtro")
+    @Description("Verifica se os ids são lidos do banco em páginas, a partir do último id de cada página, e se apenas ids certamente inexistentes são rejeitados.")
+    @DisplayName("Deve carregar os ids do banco em páginas.")
+    void reconstruir_DeveCarregarIdsEmPaginas() {
+        var ids = IntStream.range(0, 10_001).mapToObj(i -> UUID.randomUUID()).toList();
+        when(this.repository.count()).thenReturn((long) ids.size());
+        when(this.repository.listarIds(any(Pageable.class))).thenReturn(ids.subList(0, 10_000));
+        when(this.repository.listarIdsApos(eq(ids.get(9_999)), any(Pageable.class))).thenReturn(ids.subList(10_000, 10_001));
+        var filtro = this.filtro(true);
+        var inexistente = UUID.randomUUID();
+        assertTrue(filtro.talvezExista(inexistente));
+
+        filtro.reconstruir();
+
+        assertTrue(ids.stream().allMatch(filtro::talvezExista));
+        assertFalse(filtro.talvezExista(inexistente));
+    }
+
+    @Test
+    @Story("Acompanhar cadastros")
+    @Description("Verifica se um produto cadastrado durante a reconstrução, depois da leitura do banco, continua no filtro que a substitui.")
+    @DisplayName("Deve manter cadastros concorrentes à reconstrução.")
+    void registrar_DeveManterCadastrosDuranteReconstrucao() {
+        var cadastrado = UUID.randomUUID();
+        var filtro = this.filtro(true);
+        when(this.repository.count()).thenReturn(0L);
+        when(this.repository.listarIds(any(Pageable.class))).thenAnswer(invocacao -> {
+            filtro.registrar(cadastrado);
+            return List.of();
+        });
+
+        filtro.reconstruir();
+
+        assertTrue(filtro.talvezExista(cadastrado));
+    }
+
+    @Test
+    @Story("Acompanhar cadastros")
+    @Description("Verifica se ids ausentes do filtro são rejeitados sem nenhuma consulta ao banco, e se o produto cadastrado em outra instância passa a constar no filtro quando o seu evento é registrado.")
+    @DisplayName("Deve rejeitar ids ausentes do filtro sem consultar o banco.")
+    void talvezExistam_DeveRejeitarAusentesSemConsultarBanco() {
+        var existente = UUID.randomUUID();
+        var cadastradoEmOutraInstancia = UUID.randomUUID();
+        var inexistente = UUID.randomUUID();
+        when(this.repository.count()).thenReturn(1L);
+        when(this.repository.listarIds(any(Pageable.class))).thenReturn(List.of(existente));
+        var filtro = this.filtro(true);
+        filtro.reconstruir();
+        clearInvocations(this.repository);
+
+        assertEquals(List.of(existente), filtro.talvezExistam(List.of(existente, cadastradoEmOutraInstancia, inexistente)));
+        filtro.registrar(cadastradoEmOutraInstancia);
+        assertEquals(List.of(existente, cadastradoEmOutraInstancia), filtro.talvezExistam(List.of(existente, cadastradoEmOutraInstancia, inexistente)));
+        verifyNoInteractions(this.repository);
+    }
+
+    @Test
+    @Story("Carregar o filtro")
+    @Description("Verifica se, desabilitado, o filtro não consulta o banco e considera todos os ids existentes.")
+    @DisplayName("Não deve filtrar quando desabilitado.")
+    void reconstruir_NaoDeveFiltrarQuandoDesabilitado() {
+        var filtro = this.filtro(false);
+
+        filtro.reconstruir();
+        filtro.registrar(UUID.randomUUID());
+
+        assertTrue(filtro.talvezExista(UUID.randomUUID()));
+        verifyNoInteractions(this.repository);
+    }
+
+    private FiltroIdsProduto filtro(boolean habilitado) {
+        return new FiltroIdsProduto(this.repository, this.shards, habilitado, 0.01, 1000);
+    }
+}
@@ -0,0 +1,249 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ImportacaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.IngestaoProdutoMessage;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.ArquivoImportacaoInvalidoException;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@Epic("Gestão de Produtos")
+@Feature("Importação de Produtos")
+@ExtendWith(MockitoExtension.class)
+class ImportacaoProdutoServiceTest {
+
+    private static final String CATALOGO = """
+            nome,preco,categoria
+            Cartão PJ,50.00,PJ
+            "Empréstimo, PF",10,PF
+            Seguro PF,10.001,PF
+
+            ,10.00,PF
+            Conta PJ,abc,PJ
+            Consórcio PF,20.00
+            Investimento PF,30.50,PF
+            """;
+
+    private static final Validator VALIDATOR = Validation.buildDefaultValidatorFactory().getValidator();
+
+    /**
+     * Simula a gravação de todos os produtos do lote, informando-os como inseridos.
+     */
+    private static final Answer<Void> GRAVA = invocacao -> {
+        ((IntConsumer) invocacao.getArgument(1)).accept(((List<?>) invocacao.getArgument(0)).size());
+        return null;
+    };
+
+    @Mock
+    private IngestaoProdutoService ingestao;
+
+    @TempDir
+    private Path diretorio;
+
+    private final List<ImportacaoProdutoService> services = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        this.services.forEach(ImportacaoProdutoService::encerrar);
+    }
+
+    @Test
+    @Story("Importar catálogo")
+    @Description("Verifica se o arquivo é lido em lotes, se as linhas válidas são gravadas com o preço convertido como no cadastro e se as inválidas são rejeitadas com a linha e o motivo, sem interromper a importação.")
+    @DisplayName("Deve gravar as linhas válidas em lotes e rejeitar as inválidas.")
+    void importar_DeveGravarEmLotesERejeitarLinhasInvalidas() {
+        doAnswer(GRAVA).when(this.ingestao).gravarLote(anyList(), any());
+        var service = this.service(Runnable::run);
+
+        var response = service.importar(csv(CATALOGO));
+
+        var lotes = ArgumentCaptor.forClass(List.class);
+        verify(this.ingestao, times(2)).gravarLote(lotes.capture(), any());
+        assertEquals(List.of("Cartão PJ", "Empréstimo, PF"), nomes(lotes.getAllValues().get(0)));
+        assertEquals(List.of("Investimento PF"), nomes(lotes.getAllValues().get(1)));
+        assertEquals(new BigDecimal("10.00"), ((IngestaoProdutoMessage) lotes.getAllValues().get(0).get(1)).produto().preco());
+
+        var status = service.consultar(response.id());
+        assertEquals(ImportacaoProdutoResponse.Status.CONCLUIDA, status.status());
+        assertEquals(7, status.linhasProcessadas());
+        assertEquals(3, status.linhasGravadas());
+        assertEquals(4, status.linhasRejeitadas());
+        assertEquals(List.of(4L, 6L, 7L, 8L), status.erros().stream().map(ImportacaoProdutoResponse.ErroLinha::linha).toList());
+        assertTrue(status.erros().get(0).motivo().contains("duas casas decimais"));
+        assertTrue(status.erros().get(1).motivo().startsWith("nome:"));
+        assertTrue(status.erros().get(2).motivo().startsWith("preco:"));
+        assertTrue(status.erros().get(3).motivo().contains("colunas"));
+        assertFalse(Files.exists(this.diretorio.resolve(response.id() + ".csv")));
+    }
+
+    @Test
+    @Story("Importar catálogo")
+    @Description("Verifica se, quando um lote falha por dados inválidos no banco, as linhas são gravadas individualmente e apenas a inválida é rejeitada.")
+    @DisplayName("Deve isolar a linha rejeitada pelo banco.")
+    void importar_DeveIsolarLinhaRejeitadaPeloBanco() {
+        doThrow(new DataIntegrityViolationException("lote"))
+                .doAnswer(GRAVA)
+                .doThrow(new DataIntegrityViolationException("nome muito longo"))
+                .when(this.ingestao).gravarLote(anyList(), any());
+        var service = this.service(Runnable::run);
+
+        var response = service.importar(csv("""
+                nome,preco,categoria
+                Cartão PJ,50.00,PJ
+                Empréstimo PF,10.00,PF
+                """));
+
+        var status = service.consultar(response.id());
+        assertEquals(1, status.linhasGravadas());
+        assertEquals(List.of(new ImportacaoProdutoResponse.ErroLinha(3, "nome muito longo")), status.erros());
+    }
+
+    @Test
+    @Story("Retomar importação")
+    @Description("Verifica se uma importação que falhou mantém o progresso após reiniciar a aplicação e, ao ser retomada, grava apenas os lotes posteriores ao último confirmado, com os mesmos ids.")
+    @DisplayName("Deve retomar a importação a partir do último lote confirmado.")
+    void retomar_DeveContinuarDoUltimoLoteConfirmado() {
+        doAnswer(GRAVA)
+                .doThrow(new CannotCreateTransactionException("banco indisponível"))
+                .doAnswer(GRAVA)
+                .when(this.ingestao).gravarLote(anyList(), any());
+        var response = this.service(Runnable::run).importar(csv("""
+                nome,preco,categoria
+                Produto 1,1.00,PF
+                Produto 2,2.00,PF
+                Produto 3,3.00,PF
+                Produto 4,4.00,PF
+                Produto 5,5.00,PF
+                """));
+        var lotes = ArgumentCaptor.forClass(List.class);
+        verify(this.ingestao, times(2)).gravarLote(lotes.capture(), any());
+        var idsAntes = ids(lotes.getAllValues());
+
+        var reiniciado = this.service(Runnable::run);
+        reiniciado.retomarInterrompidas();
+        var falha = reiniciado.consultar(response.id());
+        assertEquals(ImportacaoProdutoResponse.Status.FALHOU, falha.status());
+        assertEquals(2, falha.linhasGravadas());
+        assertEquals("banco indisponível", falha.motivo());
+
+        var retomada = reiniciado.retomar(response.id());
+
+        assertEquals(ImportacaoProdutoResponse.Status.CONCLUIDA, retomada.status());
+        assertEquals(5, retomada.linhasGravadas());
+        var todos = ArgumentCaptor.forClass(List.class);
+        verify(this.ingestao, times(4)).gravarLote(todos.capture(), any());
+        assertEquals(List.of("Produto 3", "Produto 4"), nomes(todos.getAllValues().get(2)));
+        assertEquals(List.of("Produto 5"), nomes(todos.getAllValues().get(3)));
+        assertEquals(idsAntes.subList(2, 4), ids(todos.getAllValues().subList(2, 3)));
+    }
+
+    @Test
+    @Story("Retomar importação")
+    @Description("Verifica se as linhas gravadas contam apenas os produtos inseridos, sem contar de novo os de um lote regravado que já estavam no banco.")
+    @DisplayName("Deve contar apenas os produtos inseridos.")
+    void importar_DeveContarApenasProdutosInseridos() {
+        doAnswer(invocacao -> {
+            ((IntConsumer) invocacao.getArgument(1)).accept(1);
+            return null;
+        }).when(this.ingestao).gravarLote(anyList(), any());
+        var service = this.service(Runnable::run);
+
+        var response = service.importar(csv("""
+                nome,preco,categoria
+                Cartão PJ,50.00,PJ
+                Empréstimo PF,10.00,PF
+                """));
+
+        var status = service.consultar(response.id());
+        assertEquals(ImportacaoProdutoResponse.Status.CONCLUIDA, status.status());
+        assertEquals(2, status.linhasProcessadas());
+        assertEquals(1, status.linhasGravadas());
+        assertEquals(0, status.linhasRejeitadas());
+    }
+
+    @Test
+    @Story("Retomar importação")
+    @Description("Verifica se uma importação aceita e não concluída antes do encerramento da aplicação é retomada na inicialização seguinte.")
+    @DisplayName("Deve retomar importações interrompidas na inicialização.")
+    void retomarInterrompidas_DeveProcessarImportacaoPendente() {
+        var response = this.service(tarefa -> {
+        }).importar(csv(CATALOGO));
+        verifyNoInteractions(this.ingestao);
+        doAnswer(GRAVA).when(this.ingestao).gravarLote(anyList(), any());
+
+        var reiniciado = this.service(Runnable::run);
+        reiniciado.retomarInterrompidas();
+
+        assertEquals(ImportacaoProdutoResponse.Status.CONCLUIDA, reiniciado.consultar(response.id()).status());
+        verify(this.ingestao, times(2)).gravarLote(anyList(), any());
+    }
+
+    @Test
+    @Story("Importar catálogo")
+    @Description("Verifica se um arquivo sem as colunas obrigatórias é recusado antes de ser agendado e removido do disco.")
+    @DisplayName("Deve recusar arquivo sem as colunas obrigatórias.")
+    void importar_DeveRecusarCabecalhoInvalido() throws Exception {
+        var service = this.service(Runnable::run);
+
+        assertThrows(ArquivoImportacaoInvalidoException.class, () -> service.importar(csv("nome;preco;categoria\n")));
+        try (var arquivos = Files.list(this.diretorio)) {
+            assertEquals(0, arquivos.count());
+        }
+        assertEquals(List.of("a", "b,c", "d\"e", ""), ImportacaoProdutoService.campos("a,\"b,c\",\"d\"\"e\","));
+        assertNull(ImportacaoProdutoService.campos("a,\"b"));
+    }
+
+    private ImportacaoProdutoService service(Executor executor) {
+        var service = new ImportacaoProdutoService(this.ingestao, VALIDATOR, this.diretorio, 2, executor, new ForkJoinPool(2));
+        this.services.add(service);
+        return service;
+    }
+
+    private static MockMultipartFile csv(String conteudo) {
+        return new MockMultipartFile("arquivo", "catalogo.csv", "text/csv", conteudo.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> ids(List<List> lotes) {
+        return lotes.stream()
+                .flatMap(lote -> ((List<IngestaoProdutoMessage>) lote).stream())
+                .map(IngestaoProdutoMessage::id)
+                .map(Object.class::cast)
+                .toList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> nomes(List lote) {
+        return ((List<IngestaoProdutoMessage>) lote).stream().map(mensagem -> mensagem.produto().nome()).toList();
+    }
+}
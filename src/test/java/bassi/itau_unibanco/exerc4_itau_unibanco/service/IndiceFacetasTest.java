@@ -0,0 +1,136 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoStub;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.BuscaProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoStub;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.ProdutoRepository;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@Epic("Desempenho")
+@Feature("Facetas de Produto")
+@ExtendWith(MockitoExtension.class)
+class IndiceFacetasTest {
+
+    private static final UUID CARTAO = UUID.fromString("32c6fc74-42f1-4edd-a6fa-3e137512cdcc");
+
+    private static final UUID EMPRESTIMO = UUID.fromString("1f0ab96e-a2de-4005-9013-95ff12aa89cc");
+
+    private static final UUID CONSORCIO = UUID.fromString("5b7e1c0a-9d3f-4e2b-8a6c-1d2e3f4a5b6c");
+
+    private static final BigDecimal[] FAIXAS = {new BigDecimal("50"), new BigDecimal("100")};
+
+    @Mock
+    private ProdutoRepository repository;
+
+    @Mock
+    private AlteracaoProdutoService alteracoes;
+
+    private final Shards shards = Shards.unico(() -> mock(PlatformTransactionManager.class));
+
+    private final VersaoCatalogo versao = new VersaoCatalogo();
+
+    @Test
+    @Story("Buscar com facetas")
+    @Description("Verifica se os filtros da busca são aplicados e se as facetas de categoria e de faixa de preço contam apenas os produtos encontrados, omitindo as vazias.")
+    @DisplayName("Deve contar os produtos encontrados por categoria e faixa de preço.")
+    void buscar_DeveContarProdutosPorCategoriaEFaixa() {
+        var indice = this.carregado();
+
+        var todos = indice.buscar(null, null, null);
+        assertEquals(List.of(CARTAO, CONSORCIO, EMPRESTIMO), ids(todos));
+        assertEquals(List.of(new BuscaProdutoResponse.FacetaCategoria("PF", 1), new BuscaProdutoResponse.FacetaCategoria("PJ", 2)), todos.categorias());
+        assertEquals(List.of(
+                new BuscaProdutoResponse.FacetaPreco(null, new BigDecimal("50"), 1),
+                new BuscaProdutoResponse.FacetaPreco(new BigDecimal("50"), new BigDecimal("100"), 1),
+                new BuscaProdutoResponse.FacetaPreco(new BigDecimal("100"), null, 1)), todos.faixasPreco());
+
+        var pj = indice.buscar("C", null, "PJ");
+        assertEquals(List.of(CARTAO, EMPRESTIMO), ids(pj));
+        assertEquals(2, pj.total());
+        assertEquals(List.of(new BuscaProdutoResponse.FacetaCategoria("PJ", 2)), pj.categorias());
+
+        var porPreco = indice.buscar(null, new BigDecimal("50"), null);
+        assertEquals(List.of(EMPRESTIMO), ids(porPreco));
+        assertEquals(List.of(new BuscaProdutoResponse.FacetaPreco(new BigDecimal("50"), new BigDecimal("100"), 1)), porPreco.faixasPreco());
+
+        assertEquals(0, indice.buscar(null, null, "Inexistente").total());
+    }
+
+    @Test
+    @Story("Acompanhar alterações")
+    @Description("Verifica se atualizações movem o produto entre categorias e faixas, se removidos deixam de ser contados e se alterações fora de ordem são descartadas.")
+    @DisplayName("Deve aplicar as alterações em ordem de sequência.")
+    void aplicar_DeveMoverProdutoEntreBitmaps() {
+        var indice = this.carregado();
+        var seguro = UUID.randomUUID();
+
+        indice.aplicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(11, CARTAO, AlteracaoProdutoEntity.Operacao.ATUALIZACAO, "Cartão PF", new BigDecimal("500.00"), "PF"));
+        indice.aplicar(AlteracaoProdutoStub.buildRemocaoProdutoResponse(12, CONSORCIO));
+        indice.aplicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(13, seguro, AlteracaoProdutoEntity.Operacao.ATUALIZACAO, "Seguro PJ", new BigDecimal("20.00"), "PJ"));
+        indice.aplicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(10, CONSORCIO, AlteracaoProdutoEntity.Operacao.ATUALIZACAO, "Consórcio Antigo", new BigDecimal("1.00"), "PF"));
+
+        var todos = indice.buscar(null, null, null);
+        assertEquals(List.of(CARTAO, EMPRESTIMO, seguro), ids(todos));
+        assertEquals(List.of(new BuscaProdutoResponse.FacetaCategoria("PF", 1), new BuscaProdutoResponse.FacetaCategoria("PJ", 2)), todos.categorias());
+        assertEquals(List.of(EMPRESTIMO, seguro), ids(indice.buscar(null, null, "PJ")));
+        assertEquals(List.of(CARTAO), ids(indice.buscar(null, new BigDecimal("500"), "PF")));
+    }
+
+    @Test
+    @Story("Buscar com facetas")
+    @Description("Verifica se, sem o índice, as facetas são calculadas a partir de um resultado já obtido.")
+    @DisplayName("Deve resumir um resultado obtido sem o índice.")
+    void resumir_DeveCalcularFacetasDoResultado() {
+        var indice = new IndiceFacetas(this.repository, this.alteracoes, this.shards, this.versao, false, FAIXAS);
+
+        indice.carregar();
+        var resumo = indice.resumir(List.of(
+                new ProdutoResponse(CARTAO, "Cartão PJ", new BigDecimal("10.00"), "PJ"),
+                new ProdutoResponse(EMPRESTIMO, "Empréstimo PJ", new BigDecimal("20.00"), "PJ")));
+
+        assertFalse(indice.disponivel());
+        assertEquals(0, this.versao.atual());
+        verifyNoInteractions(this.repository);
+        assertEquals(2, resumo.total());
+        assertEquals(List.of(new BuscaProdutoResponse.FacetaCategoria("PJ", 2)), resumo.categorias());
+        assertEquals(List.of(new BuscaProdutoResponse.FacetaPreco(null, new BigDecimal("50"), 2)), resumo.faixasPreco());
+    }
+
+    private IndiceFacetas carregado() {
+        when(this.alteracoes.sequenciaVisivel()).thenReturn(10L);
+        when(this.repository.listarProdutos(any(Pageable.class))).thenReturn(List.of(
+                ProdutoStub.buildProdutoEntity(CARTAO, "Cartão PJ", new BigDecimal("10.00"), "PJ"),
+                ProdutoStub.buildProdutoEntity(EMPRESTIMO, "Empréstimo Consignado", new BigDecimal("50.00"), "PJ"),
+                ProdutoStub.buildProdutoEntity(CONSORCIO, "Consórcio Imobiliário", new BigDecimal("150.00"), "PF")));
+        var indice = new IndiceFacetas(this.repository, this.alteracoes, this.shards, this.versao, true, FAIXAS);
+        indice.carregar();
+        assertTrue(indice.disponivel());
+        assertEquals(1, this.versao.atual());
+        return indice;
+    }
+
+    private static List<UUID> ids(BuscaProdutoResponse busca) {
+        return busca.produtos().stream().map(ProdutoResponse::id).toList();
+    }
+}
@@ -0,0 +1,157 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoStub;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.SugestaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.ProdutoRepository;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@Epic("Desempenho")
+@Feature("Sugestões de Produto")
+@ExtendWith(MockitoExtension.class)
+class IndiceSugestoesTest {
+
+    private static final UUID CARTAO = UUID.fromString("32c6fc74-42f1-4edd-a6fa-3e137512cdcc");
+
+    private static final UUID EMPRESTIMO = UUID.fromString("1f0ab96e-a2de-4005-9013-95ff12aa89cc");
+
+    private static final UUID CONSORCIO = UUID.fromString("5b7e1c0a-9d3f-4e2b-8a6c-1d2e3f4a5b6c");
+
+    @Mock
+    private ProdutoRepository repository;
+
+    @Mock
+    private AlteracaoProdutoService alteracoes;
+
+    private final Shards shards = Shards.unico(() -> mock(PlatformTransactionManager.class));
+
+    private final VersaoCatalogo versao = new VersaoCatalogo();
+
+    @Test
+    @Story("Sugerir produtos")
+    @Description("Verifica se o prefixo é encontrado no início do nome e das palavras seguintes, ignorando acentos e maiúsculas, com os que começam pelo prefixo primeiro, e se a categoria e o limite restringem as sugestões.")
+    @DisplayName("Deve sugerir produtos pelo prefixo do nome ou de uma palavra.")
+    void sugerir_DeveEncontrarPrefixoNoNomeENasPalavras() {
+        var indice = this.carregado();
+
+        assertTrue(indice.disponivel());
+        assertEquals(List.of(EMPRESTIMO), ids(indice.sugerir("EMPRE", null, 10)));
+        assertEquals(List.of(CONSORCIO, EMPRESTIMO), ids(indice.sugerir("con", null, 10)));
+        assertEquals(List.of(CONSORCIO), ids(indice.sugerir("con", null, 1)));
+        assertEquals(List.of(EMPRESTIMO), ids(indice.sugerir("con", "PJ", 10)));
+        assertEquals(List.of(CARTAO), ids(indice.sugerir("cartao  p", null, 10)));
+        assertEquals(List.of(), indice.sugerir(" ", null, 10));
+        assertEquals(List.of(), indice.sugerir("con", "Inexistente", 10));
+        assertEquals(new SugestaoProdutoResponse(CARTAO, "Cartão PJ", "PJ"), indice.sugerir("pj", "PJ", 10).get(0));
+    }
+
+    @Test
+    @Story("Acompanhar alterações")
+    @Description("Verifica se cadastros, atualizações e remoções aparecem nas sugestões antes e depois de incorporados ao índice, e se alterações repetidas ou fora de ordem são descartadas.")
+    @DisplayName("Deve aplicar as alterações em ordem de sequência.")
+    void aplicar_DeveAcompanharAlteracoesEmOrdem() {
+        var indice = this.carregado();
+        var seguro = UUID.randomUUID();
+
+        indice.aplicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(11, seguro, AlteracaoProdutoEntity.Operacao.CADASTRO, "Seguro Viagem", BigDecimal.TEN, "PJ"));
+        indice.aplicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(12, CARTAO, AlteracaoProdutoEntity.Operacao.ATUALIZACAO, "Cartão Black", BigDecimal.TEN, "PJ"));
+        indice.aplicar(AlteracaoProdutoStub.buildRemocaoProdutoResponse(13, CONSORCIO));
+        indice.aplicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(11, CARTAO, AlteracaoProdutoEntity.Operacao.ATUALIZACAO, "Cartão Antigo", BigDecimal.TEN, "PJ"));
+
+        assertEquals(List.of(seguro), ids(indice.sugerir("via", null, 10)));
+        assertEquals(List.of(CARTAO), ids(indice.sugerir("black", null, 10)));
+        assertEquals(List.of(), indice.sugerir("antigo", null, 10));
+        assertEquals(List.of(), indice.sugerir("pj", "PJ", 10));
+        assertEquals(List.of(EMPRESTIMO), ids(indice.sugerir("con", null, 10)));
+
+        indice.compactar(true);
+
+        assertEquals(List.of(seguro), ids(indice.sugerir("via", null, 10)));
+        assertEquals(List.of(CARTAO), ids(indice.sugerir("cartao", "PJ", 10)));
+        assertEquals(List.of(EMPRESTIMO), ids(indice.sugerir("con", null, 10)));
+    }
+
+    @Test
+    @Story("Carregar o índice")
+    @Description("Verifica se a recarga do banco mantém as alterações posteriores à marca do log e descarta os produtos removidos até ela.")
+    @DisplayName("Deve preservar alterações posteriores à marca na recarga.")
+    void carregar_DevePreservarAlteracoesPosterioresAMarca() {
+        var indice = this.carregado();
+        indice.aplicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(12, CARTAO, AlteracaoProdutoEntity.Operacao.ATUALIZACAO, "Cartão Black", BigDecimal.TEN, "PJ"));
+        when(this.repository.listarNomes(any(Pageable.class))).thenReturn(List.of(nome(CARTAO, "Cartão PJ", "PJ")));
+
+        indice.carregar();
+
+        assertEquals(List.of(CARTAO), ids(indice.sugerir("black", null, 10)));
+        assertEquals(List.of(), indice.sugerir("emp", null, 10));
+    }
+
+    @Test
+    @Story("Carregar o índice")
+    @Description("Verifica se, sem habilitar, o índice não é carregado nem acompanha as alterações, e fica indisponível para as consultas.")
+    @DisplayName("Deve ignorar a carga e as alterações sem habilitar.")
+    void carregar_DeveIgnorarSemHabilitar() {
+        var indice = new IndiceSugestoes(this.repository, this.alteracoes, this.shards, this.versao, false, 1000, Duration.ofMinutes(1));
+
+        indice.carregar();
+        indice.aplicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(11, CARTAO, AlteracaoProdutoEntity.Operacao.CADASTRO, "Cartão PJ", BigDecimal.TEN, "PJ"));
+        indice.compactar();
+
+        assertFalse(indice.disponivel());
+        assertEquals(0, this.versao.atual());
+        assertEquals(List.of(), indice.sugerir("car", null, 10));
+        verifyNoInteractions(this.repository, this.alteracoes);
+    }
+
+    private IndiceSugestoes carregado() {
+        when(this.alteracoes.sequenciaVisivel()).thenReturn(10L);
+        when(this.repository.listarNomes(any(Pageable.class))).thenReturn(List.of(
+                nome(CARTAO, "Cartão PJ", "PJ"),
+                nome(EMPRESTIMO, "Empréstimo Consignado", "PJ"),
+                nome(CONSORCIO, "Consórcio Imobiliário", "PF")));
+        var indice = new IndiceSugestoes(this.repository, this.alteracoes, this.shards, this.versao, true, 1000, Duration.ofMinutes(1));
+        indice.carregar();
+        assertEquals(1, this.versao.atual());
+        return indice;
+    }
+
+    private static List<UUID> ids(List<SugestaoProdutoResponse> sugestoes) {
+        return sugestoes.stream().map(SugestaoProdutoResponse::id).toList();
+    }
+
+    private static ProdutoRepository.NomeProduto nome(UUID id, String nome, String categoria) {
+        return new ProdutoRepository.NomeProduto() {
+            public UUID getId() {
+                return id;
+            }
+
+            public String getNome() {
+                return nome;
+            }
+
+            public String getCategoria() {
+                return categoria;
+            }
+        };
+    }
+}
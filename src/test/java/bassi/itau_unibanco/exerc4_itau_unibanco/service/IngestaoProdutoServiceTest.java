@@ -0,0 +1,187 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.IngestaoProdutoMessage;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.IngestaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoStub;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AceiteIngestaoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.ProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.RejeicaoIngestaoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.IngestaoNaoEncontradaException;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import bassi.itau_unibanco.exerc4_itau_unibanco.mapper.ProdutoMapper;
+import bassi.itau_unibanco.exerc4_itau_unibanco.producer.IngestaoProdutoProducer;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.AceiteIngestaoRepository;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.ProdutoRepository;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.RejeicaoIngestaoRepository;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mapstruct.factory.Mappers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@Epic("Gestão de Produtos")
+@Feature("Ingestão Assíncrona de Produtos")
+@ExtendWith(MockitoExtension.class)
+class IngestaoProdutoServiceTest {
+
+    @InjectMocks
+    private IngestaoProdutoService service;
+
+    @Mock
+    private ProdutoRepository repository;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private IngestaoProdutoProducer ingestaoProducer;
+
+    @Mock
+    private CategoriaDicionario categorias;
+
+    @Mock
+    private EstatisticaCategoriaService estatisticas;
+
+    @Mock
+    private AlteracaoProdutoService alteracoes;
+
+    @Mock
+    private FiltroIdsProduto filtroIds;
+
+    @Mock
+    private IndiceSugestoes sugestoes;
+
+    @Mock
+    private IndiceFacetas facetas;
+
+    @Mock
+    private VersaoCatalogo versao;
+
+    @Mock
+    private RejeicaoIngestaoRepository rejeicoes;
+
+    @Mock
+    private AceiteIngestaoRepository aceites;
+
+    @Spy
+    private final Shards shards = Shards.unico(() -> mock(PlatformTransactionManager.class));
+
+    @Spy
+    private final ProdutoMapper mapper = Mappers.getMapper(ProdutoMapper.class);
+
+    @Test
+    @Story("Aceitar produto para ingestão")
+    @Description("Verifica se o aceite é registrado e o produto é enfileirado com um ID atribuído, e se a resposta aponta para a URL de status.")
+    @DisplayName("Deve enfileirar produto e retornar status pendente.")
+    void aceitar_DeveEnfileirarProdutoComIdAtribuido() {
+        var produtoRequest = ProdutoStub.validProdutoResquest();
+
+        var result = this.service.aceitar(produtoRequest);
+
+        var captor = ArgumentCaptor.forClass(IngestaoProdutoMessage.class);
+        verify(this.ingestaoProducer).sendMessage(captor.capture());
+        assertEquals(result.id(), captor.getValue().id());
+        assertEquals(produtoRequest, captor.getValue().produto());
+        verify(this.aceites).save(argThat(aceite -> aceite.getId().equals(result.id())));
+        assertEquals(IngestaoProdutoResponse.Status.PENDENTE, result.status());
+        assertEquals("/v1/produto/ingestao/%s".formatted(result.id()), result.url());
+        verifyNoInteractions(this.repository);
+    }
+
+    @Test
+    @Story("Gravar lote de ingestão")
+    @Description("Verifica se o lote é gravado com os IDs atribuídos, ignorando produtos já gravados em uma entrega anterior, e se apenas os inseridos são informados.")
+    @DisplayName("Deve gravar apenas os produtos ainda não gravados.")
+    void gravarLote_DeveIgnorarProdutosJaGravados() {
+        var gravado = UUID.randomUUID();
+        var novo = UUID.randomUUID();
+        when(this.repository.findAllById(List.of(gravado, novo)))
+                .thenReturn(List.of(ProdutoStub.buildProdutoEntity(gravado, "Cartão PJ", BigDecimal.TEN, "PJ")));
+
+        var inseridos = new AtomicInteger();
+        this.service.gravarLote(List.of(
+                new IngestaoProdutoMessage(gravado, ProdutoStub.buildProdutoRequest("Cartão PJ", BigDecimal.TEN, "PJ")),
+                new IngestaoProdutoMessage(novo, ProdutoStub.buildProdutoRequest("Cartão PF", BigDecimal.ONE, "PF"))
+        ), inseridos::addAndGet);
+
+        var captor = ArgumentCaptor.forClass(ProdutoEntity.class);
+        verify(this.entityManager).persist(captor.capture());
+        verify(this.entityManager).flush();
+        assertEquals(novo, captor.getValue().getId());
+        assertEquals("Cartão PF", captor.getValue().getNome());
+        assertEquals(1, inseridos.get());
+        verify(this.categorias).registrar("PF");
+        verify(this.estatisticas).registrarInclusao("PF", BigDecimal.ONE);
+        verify(this.alteracoes).registrar(eq(AlteracaoProdutoEntity.Operacao.CADASTRO), any(ProdutoEntity.class));
+        verifyNoMoreInteractions(this.entityManager);
+    }
+
+    @Test
+    @Story("Consultar status da ingestão")
+    @Description("Verifica se o status reflete produtos gravados, rejeitados e pendentes, com aceites e rejeições gravados no banco para serem vistos por qualquer instância.")
+    @DisplayName("Deve retornar o status da ingestão.")
+    void consultar_DeveRetornarStatusDaIngestao() {
+        var concluido = UUID.randomUUID();
+        var rejeitado = UUID.randomUUID();
+        var pendente = UUID.randomUUID();
+        when(this.repository.existsById(any(UUID.class))).thenAnswer(invocation -> concluido.equals(invocation.getArgument(0)));
+        this.service.registrarRejeicao(rejeitado, "nome muito longo");
+        var captor = ArgumentCaptor.forClass(RejeicaoIngestaoEntity.class);
+        verify(this.rejeicoes).save(captor.capture());
+        assertEquals(rejeitado, captor.getValue().getId());
+        when(this.rejeicoes.findById(any(UUID.class))).thenAnswer(invocation -> Optional.of(captor.getValue()).filter(rejeicao -> rejeicao.getId().equals(invocation.getArgument(0))));
+        when(this.aceites.findById(pendente)).thenReturn(Optional.of(new AceiteIngestaoEntity(pendente, Instant.now())));
+
+        assertEquals(IngestaoProdutoResponse.Status.CONCLUIDA, this.service.consultar(concluido).status());
+        assertEquals(IngestaoProdutoResponse.Status.PENDENTE, this.service.consultar(pendente).status());
+        var result = this.service.consultar(rejeitado);
+        assertEquals(IngestaoProdutoResponse.Status.REJEITADA, result.status());
+        assertEquals("nome muito longo", result.motivo());
+    }
+
+    @Test
+    @Story("Consultar status da ingestão")
+    @Description("Verifica se um id sem aceite, produto ou rejeição é informado como não encontrado, em vez de pendente.")
+    @DisplayName("Deve falhar ao consultar id não aceito pela ingestão.")
+    void consultar_DeveFalharParaIdNaoAceito() {
+        var id = UUID.randomUUID();
+        when(this.aceites.findById(id)).thenReturn(Optional.empty());
+
+        assertThrows(IngestaoNaoEncontradaException.class, () -> this.service.consultar(id));
+    }
+
+    @Test
+    @Story("Consultar status da ingestão")
+    @Description("Verifica se o motivo da rejeição é truncado ao tamanho da coluna antes de ser gravado.")
+    @DisplayName("Deve truncar o motivo da rejeição.")
+    void registrarRejeicao_DeveTruncarMotivo() {
+        var id = UUID.randomUUID();
+
+        this.service.registrarRejeicao(id, "x".repeat(RejeicaoIngestaoEntity.TAMANHO_MOTIVO + 1));
+
+        verify(this.rejeicoes).save(argThat(rejeicao -> rejeicao.getMotivo().length() == RejeicaoIngestaoEntity.TAMANHO_MOTIVO));
+    }
+}
@@ -1,11 +1,14 @@
 package bassi.itau_unibanco.exerc4_itau_unibanco.service;
 
 import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoRequest;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoResponse;
 import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoStub;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.SugestaoProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
 import bassi.itau_unibanco.exerc4_itau_unibanco.entity.ProdutoEntity;
 import bassi.itau_unibanco.exerc4_itau_unibanco.exception.ProdutoNaoEncontradoException;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
 import bassi.itau_unibanco.exerc4_itau_unibanco.mapper.ProdutoMapper;
-import bassi.itau_unibanco.exerc4_itau_unibanco.producer.CadastroProdutoProducer;
 import bassi.itau_unibanco.exerc4_itau_unibanco.repository.ProdutoRepository;
 import io.qameta.allure.Description;
 import io.qameta.allure.Epic;
@@ -20,14 +23,23 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @Epic("Gestão de Produtos")
@@ -42,7 +54,31 @@ class ProdutoServiceTest {
     private ProdutoRepository repository;
 
     @Mock
-    private CadastroProdutoProducer producer;
+    private EstatisticaCategoriaService estatisticas;
+
+    @Mock
+    private CategoriaDicionario categorias;
+
+    @Mock
+    private AlteracaoProdutoService alteracoes;
+
+    @Mock
+    private CatalogoLocal catalogo;
+
+    @Mock
+    private IndiceSugestoes sugestoes;
+
+    @Mock
+    private IndiceFacetas facetas;
+
+    @Mock
+    private VersaoCatalogo versao;
+
+    @Spy
+    private final Shards shards = Shards.unico(() -> mock(PlatformTransactionManager.class));
+
+    @Spy
+    private final FiltroIdsProduto filtroIds = new FiltroIdsProduto(mock(ProdutoRepository.class), this.shards, false, 0.01, 1000);
 
     @Spy
     private final ProdutoMapper mapper = Mappers.getMapper(ProdutoMapper.class);
@@ -77,7 +113,7 @@ class ProdutoServiceTest {
 
     @Test
     @Story("Testar a busca de produto por ID")
-    @Description("Este teste verifica se o serviço de produtos retorna o produto correto quando um ID válido é fornecido.")
+    @Description("Este teste verifica se o serviço de produtos retorna o produto correto quando um ID válido é fornecido, lendo-o do banco em uma consulta somente leitura no shard do produto.")
     @DisplayName("Deve retornar produto com sucesso quando ID válido for fornecido.")
     void listarProdutoPorId_DeveRetornarProdutoExistente() {
         var id = UUID.randomUUID();
@@ -91,12 +127,54 @@ class ProdutoServiceTest {
         assertNotNull(result);
         assertEquals(ProdutoStub.buildProdutoResponse(id, "Cartão PJ", BigDecimal.valueOf(50.00), "PJ"), result);
 
+        verify(this.shards).consultar(eq(id), any());
         verify(this.repository).findById(any(UUID.class));
         verify(this.mapper).mapToProdutoResponse(any(ProdutoEntity.class));
         verifyNoMoreInteractions(this.repository);
         verifyNoMoreInteractions(this.mapper);
     }
 
+    @Test
+    @Story("Testar a busca de produtos por IDs")
+    @Description("Este teste verifica se os produtos são lidos em lotes de até 100 IDs, se a resposta segue a ordem da requisição sem repetições e se os IDs não encontrados são informados.")
+    @DisplayName("Deve retornar produtos na ordem da requisição e os IDs não encontrados.")
+    @SuppressWarnings("unchecked")
+    void listarPelosIds_DeveLerEmLotesEPreservarOrdem() {
+        var ids = IntStream.range(0, 150).mapToObj(i -> UUID.randomUUID()).toList();
+        var solicitados = new ArrayList<>(ids);
+        solicitados.add(ids.get(0));
+        when(this.repository.findAllById(any(Iterable.class))).thenAnswer(invocacao -> {
+            var lote = new ArrayList<>((List<UUID>) invocacao.getArgument(0));
+            Collections.reverse(lote);
+            return lote.stream()
+                    .filter(id -> ids.indexOf(id) % 2 == 0)
+                    .map(id -> ProdutoStub.buildProdutoEntity(id, "Produto", BigDecimal.TEN, "PJ"))
+                    .toList();
+        });
+
+        var resultado = this.service.listarPelosIds(solicitados);
+
+        verify(this.repository, times(2)).findAllById(any(Iterable.class));
+        assertEquals(ids.stream().filter(id -> ids.indexOf(id) % 2 == 0).toList(), resultado.produtos().stream().map(ProdutoResponse::id).toList());
+        assertEquals(ids.stream().filter(id -> ids.indexOf(id) % 2 == 1).toList(), resultado.naoEncontrados());
+    }
+
+    @Test
+    @Story("Testar a busca de produto por ID")
+    @Description("Este teste verifica se, com o catálogo local disponível, o produto é consultado nele, sem acessar o banco de dados.")
+    @DisplayName("Deve consultar o catálogo local quando disponível.")
+    void listarProdutoPorId_DeveConsultarCatalogoLocal() {
+        var id = UUID.randomUUID();
+        var produto = ProdutoStub.buildProdutoResponse(id, "Cartão PJ", BigDecimal.TEN, "PJ");
+
+        when(this.catalogo.disponivel()).thenReturn(true);
+        when(this.catalogo.buscar(id)).thenReturn(Optional.of(produto));
+
+        assertEquals(produto, this.service.listarPeloId(id));
+        verifyNoInteractions(this.repository);
+        verify(this.shards, never()).consultar(any(UUID.class), any());
+    }
+
     @Test
     @Story("Testar a busca de produto por ID inválido")
     @Description("Este teste verifica se o serviço de produtos lança uma exceção quando um ID inválido (não encontrado) é fornecido.")
@@ -110,6 +188,22 @@ class ProdutoServiceTest {
         assertEquals("Produto não encontrado pelo id %s.".formatted(id), result.getMessage());
     }
 
+    @Test
+    @Story("Testar a busca de produto por ID inválido")
+    @Description("Este teste verifica se ids que o filtro de ids indica como certamente inexistentes são rejeitados sem consultar o banco e sem capturar a pilha de chamadas.")
+    @DisplayName("Deve rejeitar id inexistente sem consultar o banco.")
+    void operacoesPorId_DevemRejeitarIdInexistenteSemConsultarBanco() {
+        var id = UUID.randomUUID();
+        doReturn(false).when(this.filtroIds).talvezExista(id);
+
+        var result = Assertions.assertThrows(ProdutoNaoEncontradoException.class, () -> this.service.listarPeloId(id));
+        Assertions.assertThrows(ProdutoNaoEncontradoException.class, () -> this.service.atualizar(id, ProdutoStub.validProdutoResquest()));
+        Assertions.assertThrows(ProdutoNaoEncontradoException.class, () -> this.service.deletar(id));
+
+        assertEquals(0, result.getStackTrace().length);
+        verifyNoInteractions(this.repository, this.catalogo);
+    }
+
     @Test
     @Story("Testa a busca de produtos por nome, categoria e preço")
     @Description("Valida a busca de uma lista de produtos por nome, categoria e preço.")
@@ -124,6 +218,7 @@ class ProdutoServiceTest {
                 ProdutoStub.buildProdutoResponse(UUID.fromString("1f0ab96e-a2de-4005-9013-95ff12aa89cc"), "Empréstimo PJ", BigDecimal.TEN, "PJ")
         );
 
+        when(this.categorias.idDe("categoria")).thenReturn(1);
         when(this.repository.listagemPersonalizada(anyString(), any(BigDecimal.class), anyString()))
                 .thenReturn(produtoEntities);
 
@@ -139,12 +234,25 @@ class ProdutoServiceTest {
         verifyNoMoreInteractions(this.mapper);
     }
 
+    @Test
+    @Story("Testa a busca de produtos por nome, categoria e preço")
+    @Description("Valida que a busca por uma categoria inexistente retorna lista vazia sem consultar os produtos.")
+    @DisplayName("Deve retornar lista vazia quando a categoria não existir")
+    void listarProdutosPorCategoriaInexistente_DeveRetornarListaVazia() {
+        when(this.categorias.idDe("inexistente")).thenReturn(null);
+
+        var result = Assertions.assertDoesNotThrow(() -> this.service.listagemPersonalizada(null, null, "inexistente"));
+
+        assertTrue(result.isEmpty());
+        verifyNoInteractions(this.repository);
+        verifyNoInteractions(this.mapper);
+    }
+
     @Test
     @Story("Testar o cadastro de produto")
     @Description("Este teste verifica se o serviço de produtos consegue cadastrar um novo produto e retorna o produto com ID gerado corretamente.")
     @DisplayName("Deve cadastrar produto e retornar produto com ID.")
     void cadastrarProduto_DeveRetornarProdutoComIdCadastrado() {
-        doNothing().when(this.producer).sendMessage(any(ProdutoEntity.class));
         var produtoRequest = ProdutoStub.buildProdutoRequest("Cartão PF", BigDecimal.valueOf(25.00), "PF");
         var id = UUID.randomUUID();
         when(this.repository.save(any(ProdutoEntity.class))).thenReturn(ProdutoStub.toProdutoEntity(produtoRequest, id));
@@ -160,10 +268,11 @@ class ProdutoServiceTest {
         verify(this.mapper).mapToProdutoEntity(any(ProdutoRequest.class));
         verify(this.mapper).mapToProdutoResponse(any(ProdutoEntity.class));
         verify(this.repository).save(any(ProdutoEntity.class));
-        verify(this.producer).sendMessage(any(ProdutoEntity.class));
+        verify(this.categorias).registrar("PF");
+        verify(this.estatisticas).registrarInclusao("PF", BigDecimal.valueOf(25.00));
+        verify(this.alteracoes).registrar(eq(AlteracaoProdutoEntity.Operacao.CADASTRO), any(ProdutoEntity.class));
         verifyNoMoreInteractions(this.mapper);
         verifyNoMoreInteractions(this.repository);
-        verifyNoMoreInteractions(this.producer);
     }
 
     @Test
@@ -189,10 +298,54 @@ class ProdutoServiceTest {
         verify(this.mapper).mapToProdutoResponse(any(ProdutoEntity.class));
         verify(this.repository).findById(any(UUID.class));
         verify(this.repository).save(any(ProdutoEntity.class));
+        verify(this.categorias).registrar("PF");
+        verify(this.estatisticas).registrarAlteracao("categoria", BigDecimal.valueOf(10.00), "PF", BigDecimal.valueOf(25.00));
+        verify(this.alteracoes).registrar(eq(AlteracaoProdutoEntity.Operacao.ATUALIZACAO), any(ProdutoEntity.class));
         verifyNoMoreInteractions(this.mapper);
         verifyNoMoreInteractions(this.repository);
     }
 
+    @Test
+    @Story("Testar a atualização de produtos em lote")
+    @Description("Este teste verifica se a atualização em lote lê os produtos em uma única consulta, grava todos de uma vez e omite do resultado os IDs não encontrados.")
+    @DisplayName("Deve atualizar produtos em lote e omitir os não encontrados.")
+    @SuppressWarnings("unchecked")
+    void atualizarLote_DeveAtualizarEncontradosEmUmaConsulta() {
+        var id = UUID.fromString("1429f29a-a611-4212-8418-39df2e8abe5c");
+        var inexistente = UUID.randomUUID();
+        when(this.repository.findAllById(any(Iterable.class))).thenReturn(List.of(ProdutoStub.validProdutoEntity()));
+
+        var resultado = this.service.atualizarLote(Map.of(
+                id, ProdutoStub.buildProdutoRequest("Cartão PF", BigDecimal.valueOf(25.00), "PF"),
+                inexistente, ProdutoStub.buildProdutoRequest("Cartão PJ", BigDecimal.TEN, "PJ")
+        ));
+
+        assertEquals(Map.of(id, ProdutoStub.buildProdutoResponse(id, "Cartão PF", BigDecimal.valueOf(25.00), "PF")), resultado.atualizados());
+        assertTrue(resultado.falhas().isEmpty());
+        verify(this.repository).findAllById(argThat(ids -> ids instanceof List<?> lista && lista.size() == 2));
+        verify(this.repository).saveAll(argThat(entities -> entities instanceof List<?> lista && lista.size() == 1));
+        verify(this.estatisticas).registrarAlteracao("categoria", BigDecimal.valueOf(10.00), "PF", BigDecimal.valueOf(25.00));
+        verify(this.alteracoes).registrar(eq(AlteracaoProdutoEntity.Operacao.ATUALIZACAO), any(ProdutoEntity.class));
+        verifyNoMoreInteractions(this.repository);
+    }
+
+    @Test
+    @Story("Testar a atualização de produtos em lote")
+    @Description("Este teste verifica se a falha na transação de um shard é devolvida para os IDs desse shard, sem que os produtos sejam dados como gravados.")
+    @DisplayName("Deve devolver a falha do shard sem marcar os produtos como gravados.")
+    @SuppressWarnings("unchecked")
+    void atualizarLote_DeveDevolverFalhaDoShard() {
+        var id = UUID.fromString("1429f29a-a611-4212-8418-39df2e8abe5c");
+        var falha = new DataIntegrityViolationException("preco");
+        when(this.repository.findAllById(any(Iterable.class))).thenReturn(List.of(ProdutoStub.validProdutoEntity()));
+        when(this.repository.saveAll(any(Iterable.class))).thenThrow(falha);
+
+        var resultado = this.service.atualizarLote(Map.of(id, ProdutoStub.buildProdutoRequest("Cartão PF", BigDecimal.valueOf(25.00), "PF")));
+
+        assertTrue(resultado.atualizados().isEmpty());
+        assertEquals(Map.of(id, falha), resultado.falhas());
+    }
+
     @Test
     @Story("Testar a falha ao tentar atualizar produto com ID inválido")
     @Description("Este teste verifica se o serviço de produtos lança uma exceção quando tenta atualizar um produto com um ID inexistente.")
@@ -228,6 +381,8 @@ class ProdutoServiceTest {
 
         verify(this.repository).findById(any(UUID.class));
         verify(this.repository).delete(any(ProdutoEntity.class));
+        verify(this.estatisticas).registrarRemocao("categoria", BigDecimal.valueOf(10.00));
+        verify(this.alteracoes).registrar(eq(AlteracaoProdutoEntity.Operacao.REMOCAO), any(ProdutoEntity.class));
         verifyNoMoreInteractions(this.repository);
     }
 
@@ -247,4 +402,23 @@ class ProdutoServiceTest {
         verify(this.repository).findById(any(UUID.class));
         verifyNoMoreInteractions(this.repository);
     }
-}
\ No newline at end of file
+
+    @Test
+    @Story("Testar as sugestões sem o índice")
+    @Description("Este teste verifica se, sem o índice de sugestões carregado, as sugestões são consultadas no banco pelo início do nome, com o limite máximo aplicado.")
+    @DisplayName("Deve consultar as sugestões no banco sem o índice.")
+    void sugerir_DeveConsultarBancoSemIndice() {
+        var id = UUID.randomUUID();
+        var nome = mock(ProdutoRepository.NomeProduto.class);
+        when(nome.getId()).thenReturn(id);
+        when(nome.getNome()).thenReturn("Cartão PJ");
+        when(nome.getCategoria()).thenReturn("PJ");
+        when(this.repository.sugerir("car", "PJ", PageRequest.of(0, 50))).thenReturn(List.of(nome));
+
+        var result = this.service.sugerir(" car ", "PJ", 100);
+
+        assertEquals(List.of(new SugestaoProdutoResponse(id, "Cartão PJ", "PJ")), result);
+        verify(this.sugestoes).disponivel();
+        verifyNoMoreInteractions(this.sugestoes);
+    }
+}
@@ -0,0 +1,146 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.controller.ProdutoStreamController;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracaoProdutoStub;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.AlteracoesProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.entity.AlteracaoProdutoEntity;
+import bassi.itau_unibanco.exerc4_itau_unibanco.exception.CursorExpiradoException;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+@Epic("Gestão de Produtos")
+@Feature("Stream de Alterações")
+@ExtendWith(MockitoExtension.class)
+class ProdutoStreamServiceTest {
+
+    private static final String URI_BASE = "/v1/produto/stream";
+
+    @Mock
+    private AlteracaoProdutoService alteracoes;
+
+    private ProdutoStreamService service;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        this.service = new ProdutoStreamService(this.alteracoes, Shards.unico(() -> mock(PlatformTransactionManager.class)), Runnable::run, 2, Duration.ofMinutes(1), Duration.ofSeconds(10));
+        this.mockMvc = MockMvcBuilders.standaloneSetup(new ProdutoStreamController(this.service)).build();
+    }
+
+    @SneakyThrows
+    @Test
+    @Story("Acompanhar alterações")
+    @Description("Verifica se os eventos publicados são enviados ao assinante, apenas os da categoria filtrada.")
+    @DisplayName("Deve enviar apenas eventos da categoria filtrada.")
+    void assinar_DeveFiltrarPorCategoria() {
+        var response = this.mockMvc.perform(get(URI_BASE).param("categoria", "PJ"))
+                .andExpect(request().asyncStarted())
+                .andReturn()
+                .getResponse();
+
+        this.service.publicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(1L, UUID.randomUUID(), AlteracaoProdutoEntity.Operacao.CADASTRO, "Cartão", BigDecimal.TEN, "PF"));
+        this.service.publicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(2L, UUID.randomUUID(), AlteracaoProdutoEntity.Operacao.ATUALIZACAO, "Cartão", BigDecimal.TEN, "PJ"));
+
+        var conteudo = response.getContentAsString();
+        assertFalse(conteudo.contains("id:1\n"));
+        assertTrue(conteudo.contains("id:2\nevent:atualizacao\n"));
+        verifyNoInteractions(this.alteracoes);
+    }
+
+    @SneakyThrows
+    @Test
+    @Story("Acompanhar alterações")
+    @Description("Verifica se a reconexão com Last-Event-ID reenvia os eventos perdidos, sem duplicar os que também chegam ao vivo.")
+    @DisplayName("Deve retomar a partir do Last-Event-ID.")
+    void assinar_DeveRetomarAPartirDoUltimoEvento() {
+        when(this.alteracoes.listarSemAtraso(10L, 500)).thenReturn(new AlteracoesProdutoResponse(
+                List.of(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(11L, UUID.randomUUID(), AlteracaoProdutoEntity.Operacao.REMOCAO, "Cartão", BigDecimal.TEN, "PJ")), 11L, false));
+
+        var response = this.mockMvc.perform(get(URI_BASE).header("Last-Event-ID", 10))
+                .andExpect(request().asyncStarted())
+                .andReturn()
+                .getResponse();
+
+        this.service.publicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(11L, UUID.randomUUID(), AlteracaoProdutoEntity.Operacao.REMOCAO, "Cartão", BigDecimal.TEN, "PJ"));
+        this.service.publicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(12L, UUID.randomUUID(), AlteracaoProdutoEntity.Operacao.CADASTRO, "Cartão", BigDecimal.TEN, "PF"));
+
+        var conteudo = response.getContentAsString();
+        assertEquals(1, conteudo.split("id:11\nevent:remocao\n", -1).length - 1);
+        assertTrue(conteudo.contains("id:12\nevent:cadastro\n"));
+    }
+
+    @SneakyThrows
+    @Test
+    @Story("Acompanhar alterações")
+    @Description("Verifica se o cliente é orientado a ressincronizar quando o Last-Event-ID já expirou.")
+    @DisplayName("Deve encerrar o stream quando o cursor expirou.")
+    void assinar_DeveEncerrarQuandoCursorExpirado() {
+        when(this.alteracoes.listarSemAtraso(10L, 500)).thenThrow(new CursorExpiradoException(10L, 50L));
+
+        var response = this.mockMvc.perform(get(URI_BASE).header("Last-Event-ID", 10))
+                .andReturn()
+                .getResponse();
+
+        assertTrue(response.getContentAsString().contains("event:ressincronizar\n"));
+        assertEquals(0, this.service.quantidadeAssinantes());
+    }
+
+    @SneakyThrows
+    @Test
+    @Story("Acompanhar alterações")
+    @Description("Verifica se o heartbeat envia um comentário SSE a cada assinante, sem gerar eventos para o cliente.")
+    @DisplayName("Deve enviar heartbeat aos assinantes.")
+    void manterConexoes_DeveEnviarHeartbeat() {
+        var response = this.mockMvc.perform(get(URI_BASE))
+                .andExpect(request().asyncStarted())
+                .andReturn()
+                .getResponse();
+
+        this.service.manterConexoes();
+
+        assertEquals(":heartbeat\n\n", response.getContentAsString());
+        assertEquals(1, this.service.quantidadeAssinantes());
+    }
+
+    @Test
+    @Story("Acompanhar alterações")
+    @Description("Verifica se um assinante que não acompanha os eventos é desconectado quando o buffer enche.")
+    @DisplayName("Deve desconectar assinante lento.")
+    void publicar_DeveDesconectarAssinanteLento() {
+        var pendentes = new ArrayList<Runnable>();
+        var service = new ProdutoStreamService(this.alteracoes, Shards.unico(() -> mock(PlatformTransactionManager.class)), pendentes::add, 2, Duration.ofMinutes(1), Duration.ofSeconds(10));
+        service.assinar(null, null);
+
+        service.publicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(1L, UUID.randomUUID(), AlteracaoProdutoEntity.Operacao.CADASTRO, "Cartão", BigDecimal.TEN, "PF"));
+        service.publicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(2L, UUID.randomUUID(), AlteracaoProdutoEntity.Operacao.CADASTRO, "Cartão", BigDecimal.TEN, "PF"));
+        assertEquals(1, service.quantidadeAssinantes());
+
+        service.publicar(AlteracaoProdutoStub.buildAlteracaoProdutoResponse(3L, UUID.randomUUID(), AlteracaoProdutoEntity.Operacao.CADASTRO, "Cartão", BigDecimal.TEN, "PF"));
+        assertEquals(0, service.quantidadeAssinantes());
+    }
+}
@@ -0,0 +1,89 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoResponse;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.ProdutoStub;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.SnapshotCatalogoMessage;
+import bassi.itau_unibanco.exerc4_itau_unibanco.dto.SolicitacaoSnapshotMessage;
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import bassi.itau_unibanco.exerc4_itau_unibanco.mapper.ProdutoMapper;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.ProdutoRepository;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mapstruct.factory.Mappers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+@Epic("Gestão de Produtos")
+@Feature("Réplica de Leitura")
+@ExtendWith(MockitoExtension.class)
+class PublicadorSnapshotCatalogoTest {
+
+    @Mock
+    private ProdutoRepository repository;
+
+    @Mock
+    private AlteracaoProdutoService alteracoes;
+
+    @Mock
+    private RabbitTemplate rabbitTemplate;
+
+    private PublicadorSnapshotCatalogo publicador;
+
+    @BeforeEach
+    void setUp() {
+        this.publicador = new PublicadorSnapshotCatalogo(this.repository, this.alteracoes,
+                Shards.unico(() -> mock(PlatformTransactionManager.class)), Mappers.getMapper(ProdutoMapper.class),
+                this.rabbitTemplate, Duration.ofMinutes(5), 2);
+    }
+
+    @Test
+    @Story("Publicar o snapshot")
+    @Description("Verifica se o catálogo é enviado em partes à fila da réplica, com a marca do log lida antes dos produtos, e se o snapshot é reaproveitado dentro da validade, sem nova leitura do banco.")
+    @DisplayName("Deve enviar o snapshot em partes e reaproveitá-lo dentro da validade.")
+    void responder_DeveEnviarPartesEReaproveitarSnapshot() {
+        when(this.alteracoes.sequenciaVisivel()).thenReturn(42L);
+        when(this.repository.findAll()).thenReturn(List.of(
+                ProdutoStub.buildProdutoEntity(UUID.randomUUID(), "A", BigDecimal.ONE, "PF"),
+                ProdutoStub.buildProdutoEntity(UUID.randomUUID(), "B", BigDecimal.ONE, "PF"),
+                ProdutoStub.buildProdutoEntity(UUID.randomUUID(), "C", BigDecimal.ONE, "PJ")));
+        var solicitacao = new SolicitacaoSnapshotMessage(UUID.randomUUID(), "fila-da-replica");
+
+        this.publicador.responder(solicitacao);
+        this.publicador.responder(new SolicitacaoSnapshotMessage(UUID.randomUUID(), "outra-replica"));
+
+        var partes = ArgumentCaptor.forClass(SnapshotCatalogoMessage.class);
+        verify(this.rabbitTemplate, times(2)).convertAndSend(eq("fila-da-replica"), partes.capture());
+        verify(this.rabbitTemplate, times(2)).convertAndSend(eq("outra-replica"), any(SnapshotCatalogoMessage.class));
+        assertEquals(List.of(0, 1), partes.getAllValues().stream().map(SnapshotCatalogoMessage::parte).toList());
+        assertEquals(List.of("A", "B", "C"), partes.getAllValues().stream()
+                .flatMap(parte -> parte.produtos().stream())
+                .map(ProdutoResponse::nome)
+                .toList());
+        partes.getAllValues().forEach(parte -> {
+            assertEquals(solicitacao.id(), parte.solicitacao());
+            assertEquals(2, parte.partes());
+            assertEquals(List.of(42L), parte.marcas());
+        });
+        var ordem = inOrder(this.alteracoes, this.repository);
+        ordem.verify(this.alteracoes).sequenciaVisivel();
+        ordem.verify(this.repository).findAll();
+        verifyNoMoreInteractions(this.repository, this.alteracoes);
+    }
+}
@@ -0,0 +1,124 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.service;
+
+import bassi.itau_unibanco.exerc4_itau_unibanco.infra.sharding.Shards;
+import bassi.itau_unibanco.exerc4_itau_unibanco.repository.ReservaAlteracaoRepository;
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@Epic("Gestão de Produtos")
+@Feature("Log de Alterações")
+@ExtendWith(MockitoExtension.class)
+class SequenciaAlteracoesTest {
+
+    private static final Instant AGORA = Instant.parse("2026-01-10T12:00:00Z");
+
+    private static final UUID PRODUTO = UUID.fromString("32c6fc74-42f1-4edd-a6fa-3e137512cdcc");
+
+    @Mock
+    private JdbcTemplate contador;
+
+    @Mock
+    private ReservaAlteracaoRepository reservas;
+
+    private SequenciaAlteracoes sequencias;
+
+    @BeforeEach
+    void setUp() {
+        var contador = new SequenciaAlteracoes.Contador(this.contador, new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        this.sequencias = new SequenciaAlteracoes(List.of(contador), this.reservas, Shards.unico(() -> mock(PlatformTransactionManager.class)),
+                Clock.fixed(AGORA, ZoneOffset.UTC), 2, Duration.ofMinutes(5));
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    @Story("Reservar sequências")
+    @Description("Verifica se a transação usa as sequências do seu bloco, reservando outro ao esgotá-lo, e se as reservas são removidas na própria transação, antes do commit.")
+    @DisplayName("Deve reservar blocos por transação e removê-los no commit.")
+    void proxima_DeveReservarBlocosERemoverNoCommit() {
+        when(this.contador.queryForList(contains("FOR UPDATE"), eq(Long.class), any())).thenReturn(List.of(11L), List.of(13L));
+
+        assertEquals(List.of(11L, 12L, 13L), List.of(this.sequencias.proxima(PRODUTO), this.sequencias.proxima(PRODUTO), this.sequencias.proxima(PRODUTO)));
+
+        verify(this.contador).update(startsWith("UPDATE"), eq(13L), any());
+        verify(this.contador).update(startsWith("UPDATE"), eq(15L), any());
+        verify(this.contador, times(2)).update(startsWith("INSERT INTO produto_alteracao_reserva"), any(PreparedStatementSetter.class));
+        TransactionSynchronizationManager.getSynchronizations().forEach(sincronizacao -> sincronizacao.beforeCommit(false));
+        TransactionSynchronizationManager.getSynchronizations().forEach(sincronizacao -> sincronizacao.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        verify(this.reservas, times(1)).deleteAllByIdInBatch(List.of(11L, 13L));
+    }
+
+    @Test
+    @Story("Reservar sequências")
+    @Description("Verifica se as reservas de uma transação desfeita são removidas logo após o rollback, sem esperar a expiração.")
+    @DisplayName("Deve remover as reservas de uma transação desfeita.")
+    void proxima_DeveRemoverReservasNoRollback() {
+        when(this.contador.queryForList(anyString(), eq(Long.class), any())).thenReturn(List.of());
+
+        assertEquals(1L, this.sequencias.proxima(PRODUTO));
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(sincronizacao -> sincronizacao.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        verify(this.contador).update(startsWith("INSERT INTO produto_alteracao_sequencia"), any(), eq(3L));
+        verify(this.contador).batchUpdate(startsWith("DELETE"), ArgumentMatchers.<List<Object[]>>argThat(lote -> lote.size() == 1 && Arrays.equals(lote.get(0), new Object[]{1L})));
+        verify(this.reservas, never()).deleteAllByIdInBatch(anyList());
+    }
+
+    @Test
+    @Story("Entregar o log")
+    @Description("Verifica se o log é entregue até a sequência anterior à reserva pendente mais antiga ainda não expirada, e sem limite quando não há reservas.")
+    @DisplayName("Deve limitar a entrega à reserva pendente mais antiga.")
+    void visivelAte_DevePararAntesDaReservaMaisAntiga() {
+        when(this.reservas.menorInicioApos(AGORA.minus(Duration.ofMinutes(5)))).thenReturn(Optional.of(51L), Optional.empty());
+
+        assertEquals(50L, this.sequencias.visivelAte());
+        assertEquals(Long.MAX_VALUE, this.sequencias.visivelAte());
+    }
+
+    @Test
+    @Story("Reservar sequências")
+    @Description("Verifica se sequências pedidas fora de uma transação são recusadas, já que a reserva só seria removida ao expirar.")
+    @DisplayName("Deve recusar sequências fora de uma transação.")
+    void proxima_DeveRecusarForaDeTransacao() {
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertThrows(IllegalStateException.class, () -> this.sequencias.proxima(PRODUTO));
+
+        TransactionSynchronizationManager.initSynchronization();
+        verifyNoInteractions(this.contador, this.reservas);
+    }
+}
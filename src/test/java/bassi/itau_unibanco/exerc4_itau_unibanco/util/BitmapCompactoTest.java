@@ -0,0 +1,80 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.util;
+
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Epic("Desempenho")
+@Feature("Bitmap Compacto")
+class BitmapCompactoTest {
+
+    @Test
+    @Story("Interseção de bitmaps")
+    @Description("Verifica, contra um BitSet, se adições, remoções, interseções e cardinalidades estão corretas com blocos esparsos e densos, inclusive nas conversões entre os formatos.")
+    @DisplayName("Deve calcular interseções como um BitSet.")
+    void e_DeveCalcularIntersecoesComoBitSet() {
+        var aleatorio = new Random(42);
+        var a = new BitmapCompacto();
+        var b = new BitmapCompacto();
+        var esperadoA = new BitSet();
+        var esperadoB = new BitSet();
+        for (var i = 0; i < 200_000; i++) {
+            var valor = aleatorio.nextInt(300_000);
+            a.adicionar(valor);
+            esperadoA.set(valor);
+            if (valor < 70_000 || valor % 50 == 0) {
+                b.adicionar(valor);
+                esperadoB.set(valor);
+            }
+        }
+        for (var i = 0; i < 50_000; i++) {
+            var valor = aleatorio.nextInt(300_000);
+            a.remover(valor);
+            esperadoA.clear(valor);
+        }
+        var esperado = (BitSet) esperadoA.clone();
+        esperado.and(esperadoB);
+
+        var intersecao = a.e(b);
+
+        assertEquals(esperadoA.cardinality(), a.cardinalidade());
+        assertEquals(esperado.cardinality(), intersecao.cardinalidade());
+        assertEquals(esperado.cardinality(), a.cardinalidadeE(b));
+        assertEquals(esperado.cardinality(), b.cardinalidadeE(a));
+        assertEquals(esperado.stream().boxed().toList(), valores(intersecao));
+        assertTrue(esperado.stream().allMatch(intersecao::contem));
+        assertFalse(intersecao.contem(esperado.nextClearBit(0)));
+    }
+
+    @Test
+    @Story("Compressão")
+    @Description("Verifica se blocos esparsos ocupam 2 bytes por valor e se um bloco esvaziado por remoções deixa de ocupar espaço.")
+    @DisplayName("Deve ocupar pouco espaço com valores esparsos.")
+    void bytes_DeveOcuparPoucoEspacoComValoresEsparsos() {
+        var bitmap = new BitmapCompacto();
+        for (var i = 0; i < 1_000; i++)
+            bitmap.adicionar(i * 1_000);
+
+        assertTrue(bitmap.bytes() < 4_000, () -> "bytes: " + bitmap.bytes());
+        for (var i = 0; i < 1_000; i++)
+            bitmap.remover(i * 1_000);
+        assertEquals(0, bitmap.cardinalidade());
+        assertEquals(0, bitmap.bytes());
+    }
+
+    private static List<Integer> valores(BitmapCompacto bitmap) {
+        var valores = new ArrayList<Integer>();
+        bitmap.paraCada(valores::add);
+        return valores;
+    }
+}
@@ -0,0 +1,46 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.util;
+
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Epic("Desempenho")
+@Feature("Filtro de Bloom")
+class FiltroBloomTest {
+
+    @Test
+    @Story("Consultar ids")
+    @Description("Verifica se todos os ids adicionados são encontrados, inclusive ids sequenciais, e se a taxa de falsos positivos para ids não adicionados fica próxima da configurada.")
+    @DisplayName("Deve encontrar todos os ids adicionados e respeitar a taxa de falsos positivos.")
+    void talvezContenha_DeveEncontrarAdicionadosERespeitarFalsosPositivos() {
+        var filtro = FiltroBloom.para(10_000, 0.01);
+        var adicionados = IntStream.range(0, 10_000).mapToObj(i -> new UUID(0, i)).toList();
+        adicionados.forEach(filtro::adicionar);
+
+        assertTrue(adicionados.stream().allMatch(filtro::talvezContenha));
+        var falsosPositivos = IntStream.range(0, 100_000)
+                .mapToObj(i -> UUID.randomUUID())
+                .filter(filtro::talvezContenha)
+                .count();
+        assertTrue(falsosPositivos < 2_000, () -> "falsos positivos: " + falsosPositivos);
+        assertEquals(12_000, filtro.bytes(), 200);
+    }
+
+    @Test
+    @Story("Dimensionar o filtro")
+    @Description("Verifica se capacidade e taxa de falsos positivos inválidas são recusadas.")
+    @DisplayName("Deve recusar parâmetros inválidos.")
+    void para_DeveRecusarParametrosInvalidos() {
+        assertThrows(IllegalArgumentException.class, () -> FiltroBloom.para(0, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> FiltroBloom.para(10, 1));
+        assertFalse(FiltroBloom.para(1, 0.5).talvezContenha(UUID.randomUUID()));
+    }
+}
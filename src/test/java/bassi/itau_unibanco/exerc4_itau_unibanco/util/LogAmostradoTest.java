@@ -0,0 +1,49 @@
+package bassi.itau_unibanco.exerc4_itau_unibanco.util;
+
+import io.qameta.allure.Description;
+import io.qameta.allure.Epic;
+import io.qameta.allure.Feature;
+import io.qameta.allure.Story;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@Epic("Observabilidade")
+@Feature("Log Amostrado")
+class LogAmostradoTest {
+
+    private static final long UM_SEGUNDO_NANOS = 1_000_000_000L;
+
+    @Test
+    @Story("Amostrar eventos")
+    @Description("Verifica se apenas um a cada N eventos é registrado.")
+    @DisplayName("Deve registrar um a cada N eventos.")
+    void amostrar_DeveRegistrarUmACadaNEventos() {
+        var amostragem = new LogAmostrado(10, 1_000, () -> 0L);
+
+        var registrados = IntStream.range(0, 100).filter(i -> amostragem.amostrar()).count();
+
+        assertEquals(10, registrados);
+        assertEquals(100, amostragem.eventos());
+    }
+
+    @Test
+    @Story("Limitar registros por segundo")
+    @Description("Verifica se o limite por segundo é respeitado e renovado a cada novo segundo.")
+    @DisplayName("Deve respeitar o limite de registros por segundo.")
+    void amostrar_DeveRespeitarLimitePorSegundo() {
+        var relogio = new AtomicLong();
+        var amostragem = new LogAmostrado(1, 5, relogio::get);
+
+        var primeiroSegundo = IntStream.range(0, 50).filter(i -> amostragem.amostrar()).count();
+        relogio.addAndGet(UM_SEGUNDO_NANOS);
+        var segundoSegundo = IntStream.range(0, 50).filter(i -> amostragem.amostrar()).count();
+
+        assertEquals(5, primeiroSegundo);
+        assertEquals(5, segundoSegundo);
+    }
+}
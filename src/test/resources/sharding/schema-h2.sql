@@ -0,0 +1,44 @@
+CREATE TABLE IF NOT EXISTS categoria
+(
+    id   SMALLINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    nome VARCHAR(255) NOT NULL,
+    CONSTRAINT uk_categoria_nome UNIQUE (nome)
+);
+
+CREATE TABLE IF NOT EXISTS produto
+(
+    id           UUID PRIMARY KEY,
+    nome         VARCHAR(100)   NOT NULL,
+    preco        DECIMAL(10, 2) NOT NULL,
+    categoria_id SMALLINT       NOT NULL,
+    CONSTRAINT fk_produto_categoria FOREIGN KEY (categoria_id) REFERENCES categoria (id)
+);
+
+CREATE TABLE IF NOT EXISTS produto_alteracao
+(
+    sequencia     BIGINT PRIMARY KEY,
+    produto_id    UUID                     NOT NULL,
+    operacao      VARCHAR(20)              NOT NULL,
+    nome          VARCHAR(255)             NULL,
+    preco         DECIMAL(10, 2)           NULL,
+    categoria_id  SMALLINT                 NULL,
+    registrado_em TIMESTAMP(6) WITH TIME ZONE NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS produto_alteracao_retencao
+(
+    id                 TINYINT PRIMARY KEY,
+    sequencia_expirada BIGINT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS produto_alteracao_sequencia
+(
+    id      TINYINT PRIMARY KEY,
+    proxima BIGINT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS produto_alteracao_reserva
+(
+    inicio       BIGINT PRIMARY KEY,
+    reservado_em TIMESTAMP(6) WITH TIME ZONE NOT NULL
+);